@@ -29,6 +29,7 @@ import com.netprogs.minecraft.plugins.social.command.SocialNetworkDispatcher;
 import com.netprogs.minecraft.plugins.social.command.help.HelpBook;
 import com.netprogs.minecraft.plugins.social.command.util.ChatManager;
 import com.netprogs.minecraft.plugins.social.command.util.TimerManager;
+import com.netprogs.minecraft.plugins.social.command.util.TimerSnapshot;
 import com.netprogs.minecraft.plugins.social.config.resources.ResourcesConfig;
 import com.netprogs.minecraft.plugins.social.config.settings.SettingsConfig;
 import com.netprogs.minecraft.plugins.social.integration.LWCIntegration;
@@ -37,6 +38,7 @@ import com.netprogs.minecraft.plugins.social.integration.WorldGuardIntegration;
 import com.netprogs.minecraft.plugins.social.listener.CommandPreprocessListener;
 import com.netprogs.minecraft.plugins.social.listener.PlayerChatListener;
 import com.netprogs.minecraft.plugins.social.listener.PlayerJoinListener;
+import com.netprogs.minecraft.plugins.social.listener.PlayerPreLoginListener;
 import com.netprogs.minecraft.plugins.social.listener.PlayerMoveListener;
 import com.netprogs.minecraft.plugins.social.listener.PlayerQuitListener;
 import com.netprogs.minecraft.plugins.social.listener.perk.BonusExperienceListener;
@@ -67,11 +69,15 @@ public class SocialNetworkPlugin extends JavaPlugin {
     private ResourcesConfig resourcesConfig;
 
     // used to manage the social network data storage
-    private SocialNetworkStorage storage;
+    // read from the login threads by PlayerPreLoginListener, so it's only set once it's fully built
+    private volatile SocialNetworkStorage storage;
 
     // used to manage command/event timers
     private TimerManager timerManager;
 
+    // used to save the timers so they carry over a restart
+    private TimerSnapshot timerSnapshot;
+
     // used to maintain the list of players how have their chat turned off
     private ChatManager chatManager;
 
@@ -173,9 +179,81 @@ public class SocialNetworkPlugin extends JavaPlugin {
         // create the storage manager instance
         storage = new SocialNetworkStorage();
 
+        // Pre-login events come in on their own threads, even while we're still enabling, so this is only attached
+        // once there's storage for it to load people into.
+        getServer().getPluginManager().registerEvents(new PlayerPreLoginListener(), this);
+
+        // bring back the timers that were still running when we were last disabled
+        timerSnapshot = new TimerSnapshot(timerManager, new File(getDataFolder(), "timers.dat"), settingsConfig
+                .getStorageSettings().getTimerSnapshotInterval());
+
         // start up the metrics engine
         try {
             metrics = new Metrics(this);
+
+            // report how well the player saves are keeping up
+            Metrics.Graph storageGraph = metrics.createGraph("Storage");
+            storageGraph.addPlotter(new Metrics.Plotter("Save Queue Depth") {
+                @Override
+                public int getValue() {
+                    return storage.getSaveQueue().getQueueDepth();
+                }
+            });
+            storageGraph.addPlotter(new Metrics.Plotter("Average Flush Time") {
+                @Override
+                public int getValue() {
+                    return (int) storage.getSaveQueue().getAverageFlushTime();
+                }
+            });
+            storageGraph.addPlotter(new Metrics.Plotter("Skipped Saves") {
+                @Override
+                public int getValue() {
+                    return (int) storage.getSaveQueue().getSkippedSaves();
+                }
+            });
+
+            // report how well the loaded player cache is working
+            Metrics.Graph cacheGraph = metrics.createGraph("Player Cache");
+            cacheGraph.addPlotter(new Metrics.Plotter("Hits") {
+                @Override
+                public int getValue() {
+                    return (int) storage.getPersonCache().getHitCount();
+                }
+            });
+            cacheGraph.addPlotter(new Metrics.Plotter("Misses") {
+                @Override
+                public int getValue() {
+                    return (int) storage.getPersonCache().getMissCount();
+                }
+            });
+            cacheGraph.addPlotter(new Metrics.Plotter("Evictions") {
+                @Override
+                public int getValue() {
+                    return (int) storage.getPersonCache().getEvictionCount();
+                }
+            });
+
+            // report how many old messages have been cleared out of the mailboxes
+            Metrics.Graph mailboxGraph = metrics.createGraph("Mailboxes");
+            mailboxGraph.addPlotter(new Metrics.Plotter("Messages Removed") {
+                @Override
+                public int getValue() {
+                    return (int) storage.getMailboxStore().getRemovedCount();
+                }
+            });
+            mailboxGraph.addPlotter(new Metrics.Plotter("Memory Reclaimed (KB)") {
+                @Override
+                public int getValue() {
+                    return (int) (storage.getMailboxStore().getReclaimedMemory() / 1024);
+                }
+            });
+            mailboxGraph.addPlotter(new Metrics.Plotter("Disk Reclaimed (KB)") {
+                @Override
+                public int getValue() {
+                    return (int) (storage.getMailboxStore().getReclaimedDisk() / 1024);
+                }
+            });
+
             metrics.start();
         } catch (IOException e) {
             getLogger().log(Level.WARNING, "Error while enabling Metrics.");
@@ -187,6 +265,16 @@ public class SocialNetworkPlugin extends JavaPlugin {
 
     public void onDisable() {
 
+        // save the timers that are still running
+        if (timerSnapshot != null) {
+            timerSnapshot.shutdown(settingsConfig.getStorageSettings().getSaveShutdownTimeout());
+        }
+
+        // make sure all the pending player saves get written out
+        if (storage != null) {
+            storage.shutdown();
+        }
+
         PluginDescriptionFile pdfFile = getDescription();
         getLogger().info("Disabled v" + pdfFile.getVersion());
 
@@ -235,8 +323,14 @@ public class SocialNetworkPlugin extends JavaPlugin {
         return instance.resourcesConfig;
     }
 
+    /**
+     * @return The storage, or null if we aren't enabled.
+     */
     public static SocialNetworkStorage getStorage() {
-        return instance.storage;
+
+        // the login threads can get here before we're enabled or after we've been disabled
+        SocialNetworkPlugin plugin = instance;
+        return (plugin != null) ? plugin.storage : null;
     }
 
     public static TimerManager getTimerManager() {
@@ -2,12 +2,12 @@ package com.netprogs.minecraft.plugins.social;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.netprogs.minecraft.plugins.social.command.ISocialNetworkCommand.ICommandType;
 import com.netprogs.minecraft.plugins.social.command.SocialNetworkCommandType;
@@ -27,6 +27,10 @@ import com.netprogs.minecraft.plugins.social.config.settings.perk.IPerkSettings;
 import com.netprogs.minecraft.plugins.social.event.PlayerMemberChangeEvent;
 import com.netprogs.minecraft.plugins.social.event.PlayerMemberChangeEvent.Type;
 import com.netprogs.minecraft.plugins.social.storage.IMessage;
+import com.netprogs.minecraft.plugins.social.storage.Mailbox;
+import com.netprogs.minecraft.plugins.social.storage.NameKeyedMap;
+import com.netprogs.minecraft.plugins.social.storage.PersistentIntMap;
+import com.netprogs.minecraft.plugins.social.storage.PlayerNameTable;
 import com.netprogs.minecraft.plugins.social.storage.data.Affair;
 import com.netprogs.minecraft.plugins.social.storage.data.Alert;
 import com.netprogs.minecraft.plugins.social.storage.data.Child;
@@ -35,6 +39,7 @@ import com.netprogs.minecraft.plugins.social.storage.data.Engagement;
 import com.netprogs.minecraft.plugins.social.storage.data.Friend;
 import com.netprogs.minecraft.plugins.social.storage.data.Marriage;
 import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonChange;
 import com.netprogs.minecraft.plugins.social.storage.data.Relationship;
 import com.netprogs.minecraft.plugins.social.storage.data.Request;
 
@@ -85,108 +90,129 @@ public class SocialPerson {
     // We use this to allow us to ignore the changes events during a large update
     // private transient boolean ignoreEvents;
 
-    // Thread locking. These are set to be "fair" so first-come, first-serve.
-    // Anyone can read. Locks reads while writing.
-    private final ReentrantReadWriteLock rwMessageQueueLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwWaitLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwIgnoreLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwStatusLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwStatusMessageLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwNotificationsLock = new ReentrantReadWriteLock(true);
-
-    private final ReentrantReadWriteLock rwChildLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwFriendLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwAffairLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwRelationshipLock = new ReentrantReadWriteLock(true);
-
-    private final ReentrantReadWriteLock rwNameLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwGenderLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwChildOfLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwEngagementLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwMarriageLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwWeddingLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwDivorceLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwLawyerLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwPriestLock = new ReentrantReadWriteLock(true);
-
-    private final Map<String, SocialFriend> friends = new HashMap<String, SocialFriend>();
-    private final Map<String, SocialAffair> affairs = new HashMap<String, SocialAffair>();
-    private final Map<String, SocialChild> children = new HashMap<String, SocialChild>();
-    private final Map<String, SocialRelationship> relationships = new HashMap<String, SocialRelationship>();
-
-    private SocialEngagement socialEngagement;
-    private SocialMarriage socialMarriage;
-    private SocialDivorce socialDivorce;
-
-    // This stores the current list of group settings this person belongs to
-    private final Map<Class<? extends GroupSettings>, GroupSettings> settingsMap =
-            new HashMap<Class<? extends GroupSettings>, GroupSettings>();
+    // Held while changing this person. Readers don't take it, they use the current state instead. It's the lock of
+    // the Person underneath, so the save queue can take it to copy them.
+    private final ReentrantLock writeLock;
+
+    // What readers see. A new one is published after every change.
+    private volatile State state;
+
+    // This person's id and name, and the table used to find the ids of their group members
+    private final int id;
+    private final String name;
+    private final PlayerNameTable playerNames;
+
+    /**
+     * <pre>
+     * Everything about this person that can be read, as of their last change.
+     *
+     * Each change builds a new state and publishes it through the volatile field, so a state is never changed once
+     * readers can see it and they never need a lock. Anything that didn't change is shared with the state before.
+     * </pre>
+     */
+    private class State {
+
+        private boolean loginUpdatesIgnored;
+        private boolean statusUpdatesIgnored;
+        private boolean genderChoiceRemindersIgnored;
+
+        private Status socialStatus;
+        private String statusMessage;
+        private Gender gender;
+        private boolean lawyer;
+        private boolean priest;
+
+        private WaitState waitState;
+        private ICommandType waitCommand;
+        private IMessage waitData;
+        private WeddingVows weddingVows;
+
+        private List<String> ignoreList;
+
+        // Map<PlayerId, Member>
+        // These are the only copy of the groups that's read after loading. A change shares most of the map with the
+        // one before it, so older states stay intact for whoever is still reading them.
+        private PersistentIntMap<SocialFriend> friends;
+        private PersistentIntMap<SocialAffair> affairs;
+        private PersistentIntMap<SocialChild> children;
+        private PersistentIntMap<SocialRelationship> relationships;
+
+        private String childOf;
+        private SocialEngagement socialEngagement;
+        private SocialMarriage socialMarriage;
+        private SocialDivorce socialDivorce;
+
+        // This stores the current list of group settings this person belongs to
+        private Map<Class<? extends GroupSettings>, GroupSettings> settingsMap;
+    }
 
     public SocialPerson(Person person) {
 
         this.person = person;
+        writeLock = person.getLock();
 
-        generateSocialMappings();
-        generateGroupSettingsMap();
+        name = person.getName();
+        playerNames = SocialNetworkPlugin.getStorage().getPlayerNames();
+        id = playerNames.getId(name);
+
+        // nothing can see this person yet, so there's no need for the lock
+        State initial = new State();
+        readPerson(initial);
+        initial.ignoreList = Collections.unmodifiableList(new ArrayList<String>(person.getIgnoreList()));
+        generateSocialMappings(initial);
+        initial.settingsMap =
+                generateGroupSettingsMap(initial, new HashMap<Class<? extends GroupSettings>, GroupSettings>());
+        state = initial;
     }
 
     public boolean isLoginUpdatesIgnored() {
-        Lock lock = rwNotificationsLock.readLock();
-        lock.lock();
-        try {
-            return person.isLoginUpdatesIgnored();
-        } finally {
-            lock.unlock();
-        }
+        return state.loginUpdatesIgnored;
     }
 
     public void setLoginUpdatesIgnored(boolean ignoreUpdates) {
-        Lock lock = rwNotificationsLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setLoginUpdatesIgnored(ignoreUpdates);
+            if (person.isLoginUpdatesIgnored() != ignoreUpdates) {
+                person.setLoginUpdatesIgnored(ignoreUpdates);
+                person.recordChange(PersonChange.set("loginUpdatesIgnored", ignoreUpdates));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isStatusUpdatesIgnored() {
-        Lock lock = rwNotificationsLock.readLock();
-        lock.lock();
-        try {
-            return person.isStatusUpdatesIgnored();
-        } finally {
-            lock.unlock();
-        }
+        return state.statusUpdatesIgnored;
     }
 
     public void setStatusUpdatesIgnored(boolean ignoreUpdates) {
-        Lock lock = rwNotificationsLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setStatusUpdatesIgnored(ignoreUpdates);
+            if (person.isStatusUpdatesIgnored() != ignoreUpdates) {
+                person.setStatusUpdatesIgnored(ignoreUpdates);
+                person.recordChange(PersonChange.set("statusUpdatesIgnored", ignoreUpdates));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isGenderChoiceRemindersIgnored() {
-        Lock lock = rwNotificationsLock.readLock();
-        lock.lock();
-        try {
-            return person.isGenderChoiceRemindersIgnored();
-        } finally {
-            lock.unlock();
-        }
+        return state.genderChoiceRemindersIgnored;
     }
 
     public void setGenderChoiceRemindersIgnored(boolean ignoreUpdates) {
-        Lock lock = rwNotificationsLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setGenderChoiceRemindersIgnored(ignoreUpdates);
+            if (person.isGenderChoiceRemindersIgnored() != ignoreUpdates) {
+                person.setGenderChoiceRemindersIgnored(ignoreUpdates);
+                person.recordChange(PersonChange.set("genderChoiceRemindersIgnored", ignoreUpdates));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
@@ -195,111 +221,111 @@ public class SocialPerson {
      * @return
      */
     public Map<String, SocialFriend> getFriends() {
-        Lock lock = rwFriendLock.readLock();
-        lock.lock();
-        try {
-            return Collections.unmodifiableMap(friends);
-        } finally {
-            lock.unlock();
-        }
+        return new NameKeyedMap<SocialFriend>(state.friends, playerNames);
     }
 
     public void addFriend(SocialPerson memberPerson) {
-        Lock lock = rwFriendLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.friend, Type.preAdd, false);
 
             Friend friend = new Friend(memberName);
             person.getFriends().put(memberName, friend);
-            friends.put(memberName, new SocialFriend(friend));
+            person.recordChange(PersonChange.put("friends", memberName, friend));
+
+            State next = nextState();
+            next.friends = next.friends.plus(memberPerson.getId(), new SocialFriend(friend));
+            state = next;
 
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.friend, Type.postAdd, false);
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void removeFriend(SocialPerson memberPerson) {
-        Lock lock = rwFriendLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
-            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.friend, Type.preRemove, (person
-                    .getFriends().size() == 0));
+            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.friend, Type.preRemove,
+                    state.friends.isEmpty());
 
             person.getFriends().remove(memberName);
-            friends.remove(memberName);
+            person.recordChange(PersonChange.remove("friends", memberName));
+
+            State next = nextState();
+            next.friends = next.friends.minus(memberPerson.getId());
+            state = next;
 
-            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.friend, Type.postRemove, (person
-                    .getFriends().size() == 0));
+            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.friend, Type.postRemove,
+                    state.friends.isEmpty());
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isFriendWith(SocialPerson memberPerson) {
-        return friends.containsKey(memberPerson.getName());
+        return state.friends.containsKey(memberPerson.getId());
     }
 
     public int getNumberFriends() {
-        return friends.values().size();
+        return state.friends.size();
     }
 
     public Map<String, SocialAffair> getAffairs() {
-        Lock lock = rwAffairLock.readLock();
-        lock.lock();
-        try {
-            return Collections.unmodifiableMap(affairs);
-        } finally {
-            lock.unlock();
-        }
+        return new NameKeyedMap<SocialAffair>(state.affairs, playerNames);
     }
 
     public void addAffair(SocialPerson memberPerson) {
-        Lock lock = rwAffairLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.affair, Type.preAdd, false);
 
             Affair affair = new Affair(memberName);
             person.getAffairs().put(memberName, affair);
-            affairs.put(memberName, new SocialAffair(affair));
+            person.recordChange(PersonChange.put("affairs", memberName, affair));
+
+            State next = nextState();
+            next.affairs = next.affairs.plus(memberPerson.getId(), new SocialAffair(affair));
+            state = next;
 
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.affair, Type.postAdd, false);
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void removeAffair(SocialPerson memberPerson) {
-        Lock lock = rwAffairLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
-            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.affair, Type.preRemove, (person
-                    .getAffairs().size() == 0));
+            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.affair, Type.preRemove,
+                    state.affairs.isEmpty());
 
             person.getAffairs().remove(memberName);
-            affairs.remove(memberName);
+            person.recordChange(PersonChange.remove("affairs", memberName));
 
-            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.affair, Type.postRemove, (person
-                    .getAffairs().size() == 0));
+            State next = nextState();
+            next.affairs = next.affairs.minus(memberPerson.getId());
+            state = next;
+
+            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.affair, Type.postRemove,
+                    state.affairs.isEmpty());
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isAffairWith(SocialPerson memberPerson) {
-        return affairs.containsKey(memberPerson.getName());
+        return state.affairs.containsKey(memberPerson.getId());
     }
 
     public int getNumberAffairs() {
-        return affairs.values().size();
+        return state.affairs.size();
     }
 
     /**
@@ -307,64 +333,58 @@ public class SocialPerson {
      * @return
      */
     public Map<String, SocialChild> getChildren() {
-        Lock lock = rwChildLock.readLock();
-        lock.lock();
-        try {
-            return Collections.unmodifiableMap(children);
-        } finally {
-            lock.unlock();
-        }
+        return new NameKeyedMap<SocialChild>(state.children, playerNames);
     }
 
     public void addChild(SocialPerson memberPerson) {
-        Lock lock = rwChildLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             firePlayerMemberChangeEvent(memberPerson.getName(), SocialNetworkCommandType.child, Type.preAdd, false);
 
             Child child = new Child(memberPerson.getName());
             person.getChildren().put(memberPerson.getName(), child);
-            children.put(memberPerson.getName(), new SocialChild(child));
+            person.recordChange(PersonChange.put("children", memberPerson.getName(), child));
+
+            State next = nextState();
+            next.children = next.children.plus(memberPerson.getId(), new SocialChild(child));
+            state = next;
 
             firePlayerMemberChangeEvent(memberPerson.getName(), SocialNetworkCommandType.child, Type.postAdd, false);
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void removeChild(SocialPerson memberPerson) {
-        Lock lock = rwChildLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            firePlayerMemberChangeEvent(memberPerson.getName(), SocialNetworkCommandType.child, Type.preRemove, (person
-                    .getChildren().size() == 0));
+            firePlayerMemberChangeEvent(memberPerson.getName(), SocialNetworkCommandType.child, Type.preRemove,
+                    state.children.isEmpty());
 
             person.getChildren().remove(memberPerson.getName());
-            children.remove(memberPerson.getName());
+            person.recordChange(PersonChange.remove("children", memberPerson.getName()));
+
+            State next = nextState();
+            next.children = next.children.minus(memberPerson.getId());
+            state = next;
 
             firePlayerMemberChangeEvent(memberPerson.getName(), SocialNetworkCommandType.child, Type.postRemove,
-                    (person.getChildren().size() == 0));
+                    state.children.isEmpty());
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isParentOf(SocialPerson memberPerson) {
-        return children.containsKey(memberPerson.getName());
+        return state.children.containsKey(memberPerson.getId());
     }
 
     public int getNumberChildren() {
-        return children.values().size();
+        return state.children.size();
     }
 
     public String getChildOf() {
-        Lock lock = rwChildOfLock.readLock();
-        lock.lock();
-        try {
-            return person.getChildOf();
-        } finally {
-            lock.unlock();
-        }
+        return state.childOf;
     }
 
     public boolean isChildOf(SocialPerson memberPerson) {
@@ -378,23 +398,23 @@ public class SocialPerson {
     }
 
     public void createChildOf(SocialPerson memberPerson) {
-        Lock lock = rwChildOfLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String childOf = memberPerson.getName();
             if (childOf != null) {
                 firePlayerMemberChangeEvent(childOf, SocialNetworkCommandType.child, Type.preAdd, false);
                 person.setChildOf(childOf);
+                person.recordChange(PersonChange.set("childOf", childOf));
+                state = nextState();
                 firePlayerMemberChangeEvent(childOf, SocialNetworkCommandType.child, Type.postAdd, false);
             }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void breakChildOf() {
-        Lock lock = rwChildOfLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
 
             String childOf = StringUtils.EMPTY;
@@ -404,78 +424,74 @@ public class SocialPerson {
             }
 
             person.setChildOf(null);
+            person.recordChange(PersonChange.set("childOf", null));
+            state = nextState();
 
             if (StringUtils.isNotEmpty(childOf)) {
                 firePlayerMemberChangeEvent(childOf, SocialNetworkCommandType.child, Type.postRemove, true);
             }
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public Map<String, SocialRelationship> getRelationships() {
-        Lock lock = rwRelationshipLock.readLock();
-        lock.lock();
-        try {
-            return Collections.unmodifiableMap(relationships);
-        } finally {
-            lock.unlock();
-        }
+        return new NameKeyedMap<SocialRelationship>(state.relationships, playerNames);
     }
 
     public void addRelationship(SocialPerson memberPerson) {
-        Lock lock = rwRelationshipLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.relationship, Type.preAdd, false);
 
             Relationship relationship = new Relationship(memberName);
             person.getRelationships().put(memberName, relationship);
-            relationships.put(memberName, new SocialRelationship(relationship));
+            person.recordChange(PersonChange.put("relationships", memberName, relationship));
+
+            State next = nextState();
+            next.relationships =
+                    next.relationships.plus(memberPerson.getId(), new SocialRelationship(relationship));
+            state = next;
 
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.relationship, Type.postAdd, false);
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void removeRelationship(SocialPerson memberPerson) {
-        Lock lock = rwRelationshipLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
-            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.relationship, Type.preRemove, (person
-                    .getRelationships().size() == 0));
+            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.relationship, Type.preRemove,
+                    state.relationships.isEmpty());
 
             person.getRelationships().remove(memberName);
-            relationships.remove(memberName);
+            person.recordChange(PersonChange.remove("relationships", memberName));
+
+            State next = nextState();
+            next.relationships = next.relationships.minus(memberPerson.getId());
+            state = next;
 
-            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.relationship, Type.postRemove, (person
-                    .getRelationships().size() == 0));
+            firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.relationship, Type.postRemove,
+                    state.relationships.isEmpty());
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isRelationshipWith(SocialPerson memberPerson) {
-        String memberName = memberPerson.getName();
-        return relationships.containsKey(memberName);
+        return state.relationships.containsKey(memberPerson.getId());
     }
 
     public int getNumberRelationships() {
-        return relationships.values().size();
+        return state.relationships.size();
     }
 
     public SocialEngagement getEngagement() {
-        Lock lock = rwEngagementLock.readLock();
-        lock.lock();
-        try {
-            return socialEngagement;
-        } finally {
-            lock.unlock();
-        }
+        return state.socialEngagement;
     }
 
     public boolean isEngagedTo(SocialPerson memberPerson) {
@@ -491,26 +507,28 @@ public class SocialPerson {
     }
 
     public void createEngagement(SocialPerson memberPerson) {
-        Lock lock = rwEngagementLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.engagement, Type.preAdd, false);
 
             Engagement engagement = new Engagement(memberName);
-            socialEngagement = new SocialEngagement(engagement);
             person.setEngagement(engagement);
+            person.recordChange(PersonChange.set("engagement", engagement));
+
+            State next = nextState();
+            next.socialEngagement = new SocialEngagement(engagement);
+            state = next;
 
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.engagement, Type.postAdd, false);
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void breakEngagement() {
-        Lock lock = rwEngagementLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
 
             String engagementName = StringUtils.EMPTY;
@@ -520,24 +538,22 @@ public class SocialPerson {
             }
 
             person.setEngagement(null);
-            socialEngagement = null;
+            person.recordChange(PersonChange.set("engagement", null));
+
+            State next = nextState();
+            next.socialEngagement = null;
+            state = next;
 
             if (StringUtils.isNotEmpty(engagementName)) {
                 firePlayerMemberChangeEvent(engagementName, SocialNetworkCommandType.engagement, Type.postRemove, true);
             }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public SocialMarriage getMarriage() {
-        Lock lock = rwMarriageLock.readLock();
-        lock.lock();
-        try {
-            return socialMarriage;
-        } finally {
-            lock.unlock();
-        }
+        return state.socialMarriage;
     }
 
     public boolean isMarriedTo(SocialPerson memberPerson) {
@@ -552,26 +568,28 @@ public class SocialPerson {
     }
 
     public void createMarriage(SocialPerson memberPerson) {
-        Lock lock = rwMarriageLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.marriage, Type.preAdd, false);
 
             Marriage marriage = new Marriage(memberName);
-            socialMarriage = new SocialMarriage(marriage);
             person.setMarriage(marriage);
+            person.recordChange(PersonChange.set("marriage", marriage));
+
+            State next = nextState();
+            next.socialMarriage = new SocialMarriage(marriage);
+            state = next;
 
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.marriage, Type.postAdd, false);
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void breakMarriage() {
-        Lock lock = rwMarriageLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
 
             String spouseName = StringUtils.EMPTY;
@@ -581,25 +599,23 @@ public class SocialPerson {
             }
 
             person.setMarriage(null);
-            socialMarriage = null;
+            person.recordChange(PersonChange.set("marriage", null));
+
+            State next = nextState();
+            next.socialMarriage = null;
+            state = next;
 
             if (StringUtils.isNotEmpty(spouseName)) {
                 firePlayerMemberChangeEvent(spouseName, SocialNetworkCommandType.marriage, Type.postRemove, true);
             }
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public SocialDivorce getDivorce() {
-        Lock lock = rwDivorceLock.readLock();
-        lock.lock();
-        try {
-            return socialDivorce;
-        } finally {
-            lock.unlock();
-        }
+        return state.socialDivorce;
     }
 
     public boolean isDivorcedFrom(SocialPerson memberPerson) {
@@ -614,26 +630,28 @@ public class SocialPerson {
     }
 
     public void createDivorce(SocialPerson memberPerson) {
-        Lock lock = rwDivorceLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String memberName = memberPerson.getName();
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.divorce, Type.preAdd, false);
 
             Divorce divorce = new Divorce(memberName);
-            socialDivorce = new SocialDivorce(divorce);
             person.setDivorce(divorce);
+            person.recordChange(PersonChange.set("divorce", divorce));
+
+            State next = nextState();
+            next.socialDivorce = new SocialDivorce(divorce);
+            state = next;
 
             firePlayerMemberChangeEvent(memberName, SocialNetworkCommandType.divorce, Type.postAdd, false);
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void endDivorce() {
-        Lock lock = rwDivorceLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String spouseName = StringUtils.EMPTY;
             if (person.getDivorce() != null) {
@@ -642,75 +660,125 @@ public class SocialPerson {
             }
 
             person.setDivorce(null);
-            socialDivorce = null;
+            person.recordChange(PersonChange.set("divorce", null));
+
+            State next = nextState();
+            next.socialDivorce = null;
+            state = next;
 
             if (StringUtils.isNotEmpty(spouseName)) {
                 firePlayerMemberChangeEvent(spouseName, SocialNetworkCommandType.divorce, Type.postRemove, true);
             }
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
-    public Status getSocialStatus() {
-        Lock lock = rwStatusLock.readLock();
-        lock.lock();
-        try {
-            return person.getSocialStatus();
-        } finally {
-            lock.unlock();
+    /**
+     * Returns the names of everyone in this person's groups, all taken from the same state.
+     * Groups with nobody in them are left out. The person they're a child of is listed under child.
+     * @return Map<groupType, memberNames>
+     */
+    public Map<SocialNetworkCommandType, List<String>> getGroupMemberNames() {
+
+        State current = state;
+        Map<SocialNetworkCommandType, List<String>> members =
+                new EnumMap<SocialNetworkCommandType, List<String>>(SocialNetworkCommandType.class);
+
+        if (current.socialMarriage != null) {
+            addMemberName(members, SocialNetworkCommandType.marriage, current.socialMarriage.getPlayerName());
+        }
+        if (current.socialEngagement != null) {
+            addMemberName(members, SocialNetworkCommandType.engagement, current.socialEngagement.getPlayerName());
+        }
+        if (current.socialDivorce != null) {
+            addMemberName(members, SocialNetworkCommandType.divorce, current.socialDivorce.getPlayerName());
+        }
+
+        addMemberName(members, SocialNetworkCommandType.child, current.childOf);
+
+        addMemberNames(members, SocialNetworkCommandType.friend, current.friends);
+        addMemberNames(members, SocialNetworkCommandType.child, current.children);
+        addMemberNames(members, SocialNetworkCommandType.relationship, current.relationships);
+        addMemberNames(members, SocialNetworkCommandType.affair, current.affairs);
+
+        return members;
+    }
+
+    private void addMemberNames(Map<SocialNetworkCommandType, List<String>> members,
+            SocialNetworkCommandType groupType, PersistentIntMap<?> group) {
+
+        PersistentIntMap.Cursor<?> cursor = group.cursor();
+        while (cursor.next()) {
+            addMemberName(members, groupType, playerNames.getName(cursor.key()));
         }
     }
 
+    private void addMemberName(Map<SocialNetworkCommandType, List<String>> members,
+            SocialNetworkCommandType groupType, String memberName) {
+
+        if (memberName == null) {
+            return;
+        }
+
+        List<String> names = members.get(groupType);
+        if (names == null) {
+            names = new ArrayList<String>();
+            members.put(groupType, names);
+        }
+        names.add(memberName);
+    }
+
+    public Status getSocialStatus() {
+        return state.socialStatus;
+    }
+
     public void setSocialStatus(Status socialStatus) {
-        Lock lock = rwStatusLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setSocialStatus(socialStatus);
+            if (person.getSocialStatus() != socialStatus) {
+                person.setSocialStatus(socialStatus);
+                person.recordChange(PersonChange.set("socialStatus", socialStatus));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public String getStatusMessage() {
-        Lock lock = rwStatusMessageLock.readLock();
-        lock.lock();
-        try {
-            return person.getStatusMessage();
-        } finally {
-            lock.unlock();
-        }
+        return state.statusMessage;
     }
 
     public void setStatusMessage(String statusMessage) {
-        Lock lock = rwStatusMessageLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setStatusMessage(statusMessage);
+            String currentMessage = person.getStatusMessage();
+            boolean changed = (statusMessage == null) ? currentMessage != null : !statusMessage.equals(currentMessage);
+            if (changed) {
+                person.setStatusMessage(statusMessage);
+                person.recordChange(PersonChange.set("statusMessage", statusMessage));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
+    /**
+     * Returns the id this person was given by the {@link PlayerNameTable}.
+     */
+    public int getId() {
+        return id;
+    }
+
     public String getName() {
-        Lock lock = rwNameLock.readLock();
-        lock.lock();
-        try {
-            return person.getName();
-        } finally {
-            lock.unlock();
-        }
+        return name;
     }
 
     public Gender getGender() {
-        Lock lock = rwGenderLock.readLock();
-        lock.lock();
-        try {
-            return person.getGender();
-        } finally {
-            lock.unlock();
-        }
+        return state.gender;
     }
 
     public String getGenderDisplay() {
@@ -724,12 +792,15 @@ public class SocialPerson {
     }
 
     public void setGender(Gender gender) {
-        Lock lock = rwGenderLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setGender(gender);
+            if (person.getGender() != gender) {
+                person.setGender(gender);
+                person.recordChange(PersonChange.set("gender", gender));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
@@ -742,139 +813,124 @@ public class SocialPerson {
     }
 
     public <U extends IMessage> void waitOn(WaitState waitState, ICommandType waitCommand, U waitData) {
-        Lock lock = rwWaitLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
+
+            // clearing a wait that was already cleared isn't a change worth saving
+            if (person.getWaitState() == waitState && person.getWaitCommand() == waitCommand
+                    && person.getWaitData() == waitData) {
+                return;
+            }
+
             person.setWaitState(waitState);
+            person.recordChange(PersonChange.set("waitState", waitState));
             person.setWaitCommand(waitCommand);
             person.setWaitData(waitData);
+            person.recordChange(PersonChange.set("waitData", waitData));
+            state = nextState();
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public ICommandType getWaitCommand() {
-        Lock lock = rwWaitLock.readLock();
-        lock.lock();
-        try {
-            return person.getWaitCommand();
-        } finally {
-            lock.unlock();
-        }
+        return state.waitCommand;
     }
 
     public WaitState getWaitState() {
-        Lock lock = rwRelationshipLock.readLock();
-        lock.lock();
-        try {
-            return person.getWaitState();
-        } finally {
-            lock.unlock();
-        }
+        return state.waitState;
     }
 
+    @SuppressWarnings("unchecked")
     public <U extends IMessage> U getWaitData() {
-        Lock lock = rwRelationshipLock.readLock();
-        lock.lock();
-        try {
-            return person.getWaitData();
-        } finally {
-            lock.unlock();
-        }
+        return (U) state.waitData;
     }
 
     public WeddingVows getWeddingVows() {
-        Lock lock = rwWeddingLock.readLock();
-        lock.lock();
-        try {
-            return person.getWeddingVows();
-        } finally {
-            lock.unlock();
-        }
+        return state.weddingVows;
     }
 
     public void setWeddingVows(WeddingVows weddingVows) {
-        Lock lock = rwWeddingLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             person.setWeddingVows(weddingVows);
+            person.recordChange(PersonChange.set("weddingVows", weddingVows));
+            state = nextState();
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isLawyer() {
-        Lock lock = rwLawyerLock.readLock();
-        lock.lock();
-        try {
-            return person.isLawyer();
-        } finally {
-            lock.unlock();
-        }
+        return state.lawyer;
     }
 
     public void setLawyer(boolean lawyer) {
-        Lock lock = rwLawyerLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setLawyer(lawyer);
+            if (person.isLawyer() != lawyer) {
+                person.setLawyer(lawyer);
+                person.recordChange(PersonChange.set("lawyer", lawyer));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public boolean isPriest() {
-        Lock lock = rwPriestLock.readLock();
-        lock.lock();
-        try {
-            return person.isPriest();
-        } finally {
-            lock.unlock();
-        }
+        return state.priest;
     }
 
     public void setPriest(boolean priest) {
-        Lock lock = rwPriestLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
-            person.setPriest(priest);
+            if (person.isPriest() != priest) {
+                person.setPriest(priest);
+                person.recordChange(PersonChange.set("priest", priest));
+                state = nextState();
+            }
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void addIgnore(SocialPerson memberPerson) {
-        Lock lock = rwIgnoreLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String playerName = memberPerson.getName();
             person.getIgnoreList().add(playerName);
-            SocialNetworkPlugin.log("[" + person.getName() + "] is now ignoring " + playerName);
+            person.recordChange(PersonChange.add("ignoreList", playerName));
+
+            State next = nextState();
+            next.ignoreList = Collections.unmodifiableList(new ArrayList<String>(person.getIgnoreList()));
+            state = next;
+
+            SocialNetworkPlugin.log("[" + name + "] is now ignoring " + playerName);
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public void removeIgnore(SocialPerson memberPerson) {
-        Lock lock = rwIgnoreLock.writeLock();
-        lock.lock();
+        writeLock.lock();
         try {
             String playerName = memberPerson.getName();
             person.getIgnoreList().remove(playerName);
-            SocialNetworkPlugin.log("[" + person.getName() + "] is no longer ignoring " + playerName);
+            person.recordChange(PersonChange.remove("ignoreList", playerName));
+
+            State next = nextState();
+            next.ignoreList = Collections.unmodifiableList(new ArrayList<String>(person.getIgnoreList()));
+            state = next;
+
+            SocialNetworkPlugin.log("[" + name + "] is no longer ignoring " + playerName);
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
     public List<String> getIgnoredPlayers() {
-        Lock lock = rwIgnoreLock.writeLock();
-        lock.lock();
-        try {
-            return Collections.unmodifiableList(person.getIgnoreList());
-        } finally {
-            lock.unlock();
-        }
+        return state.ignoreList;
     }
 
     /**
@@ -883,16 +939,17 @@ public class SocialPerson {
      * @return True if ignored, false otherwise.
      */
     public boolean isOnIgnore(SocialPerson memberPerson) {
-        Lock lock = rwIgnoreLock.writeLock();
-        lock.lock();
-        try {
-            String playerName = memberPerson.getName();
-            boolean isOnIgnore = person.getIgnoreList().contains(playerName);
-            SocialNetworkPlugin.log("[" + person.getName() + "] is ignoring " + playerName + ":" + isOnIgnore);
-            return isOnIgnore;
-        } finally {
-            lock.unlock();
-        }
+        String playerName = memberPerson.getName();
+        boolean isOnIgnore = state.ignoreList.contains(playerName);
+        SocialNetworkPlugin.log("[" + name + "] is ignoring " + playerName + ":" + isOnIgnore);
+        return isOnIgnore;
+    }
+
+    /**
+     * Returns the mailbox holding the messages sent to this person. It's read in from their mailbox file when needed.
+     */
+    private Mailbox getMailbox() {
+        return SocialNetworkPlugin.getStorage().getMailboxStore().getMailbox(getName());
     }
 
     /**
@@ -900,28 +957,9 @@ public class SocialPerson {
      * @param messageClass
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <U extends IMessage> Map<String, List<U>> getMessages(Class<U> messageClass) {
 
-        Lock lock = rwMessageQueueLock.readLock();
-        lock.lock();
-        try {
-
-            String className = messageClass.getCanonicalName();
-            if (person.getMessageQueue().containsKey(className)) {
-
-                Map<String, List<U>> map =
-                        new HashMap<String, List<U>>((Map<? extends String, ? extends List<U>>) person
-                                .getMessageQueue().get(className));
-                return Collections.unmodifiableMap(map);
-            }
-
-            // return an empty list
-            return Collections.emptyMap();
-
-        } finally {
-            lock.unlock();
-        }
+        return getMailbox().getMessages(messageClass);
     }
 
     /**
@@ -932,11 +970,12 @@ public class SocialPerson {
      */
     public <U extends IMessage> List<U> getMessagesFrom(SocialPerson playerFrom, Class<U> classObject) {
 
-        return getMessagesFrom(playerFrom.getName(), classObject, true);
+        return getMailbox().getMessagesFrom(playerFrom.getName(), classObject);
     }
 
     /**
      * Returns all the messages of the given type for the given player name.
+     * The mailbox always hands out a read-only snapshot, so createCopy no longer makes a difference.
      * @param playerFrom
      * @param classObject
      * @return
@@ -944,179 +983,37 @@ public class SocialPerson {
     public <U extends IMessage> List<U> getMessagesFrom(SocialPerson playerFrom, Class<U> classObject,
             boolean createCopy) {
 
-        return getMessagesFrom(playerFrom.getName(), classObject, createCopy);
-    }
-
-    /**
-     * Returns all the messages of the given type for the given player name.
-     * This version allows us to not create a copy allowing us to work with it internally.
-     * @param fromPlayerName
-     * @param messageClass
-     * @return
-     */
-    @SuppressWarnings("unchecked")
-    private <U extends IMessage> List<U> getMessagesFrom(String fromPersonName, Class<U> messageClass,
-            boolean createCopy) {
-
-        Lock lock = rwMessageQueueLock.readLock();
-        lock.lock();
-        try {
-
-            String className = messageClass.getCanonicalName();
-            if (person.getMessageQueue().containsKey(className)) {
-                if (person.getMessageQueue().get(className).containsKey(fromPersonName)) {
-
-                    // send back a copy of the items instead of the original list
-                    List<U> messages = (List<U>) person.getMessageQueue().get(className).get(fromPersonName);
-
-                    if (createCopy) {
-                        return Collections.unmodifiableList(messages);
-                    } else {
-                        return messages;
-                    }
-                }
-            }
-
-            // return an empty list
-            return Collections.emptyList();
-
-        } finally {
-            lock.unlock();
-        }
+        return getMailbox().getMessagesFrom(playerFrom.getName(), classObject);
     }
 
     public Set<String> getMessagePlayers(Class<? extends IMessage> messageClass) {
 
-        Lock lock = rwMessageQueueLock.readLock();
-        lock.lock();
-        try {
-            String className = messageClass.getCanonicalName();
-            if (person.getMessageQueue().get(className) != null) {
-                return Collections.unmodifiableSet(person.getMessageQueue().get(className).keySet());
-            }
-
-            // return an empty list
-            return Collections.emptySet();
-
-        } finally {
-            lock.unlock();
-        }
+        return getMailbox().getSenders(messageClass);
     }
 
     public <U extends IMessage> int getMessagesCount(Class<U> messageClass) {
 
-        Lock lock = rwMessageQueueLock.readLock();
-        lock.lock();
-        try {
-
-            int count = 0;
-            String className = messageClass.getCanonicalName();
-            if (person.getMessageQueue().containsKey(className)) {
-                Set<String> senders = person.getMessageQueue().get(className).keySet();
-                for (String sender : senders) {
-                    count += person.getMessageQueue().get(className).get(sender).size();
-                }
-            }
-
-            return count;
-
-        } finally {
-            lock.unlock();
-        }
+        return getMailbox().getCount(messageClass);
     }
 
     public <U extends IMessage> int getMessageCountFrom(String fromPlayerName, Class<U> messageClass) {
 
-        Lock lock = rwMessageQueueLock.readLock();
-        lock.lock();
-        try {
-
-            String className = messageClass.getCanonicalName();
-            if (person.getMessageQueue().containsKey(className)) {
-                if (person.getMessageQueue().get(className).containsKey(fromPlayerName)) {
-                    return person.getMessageQueue().get(className).get(fromPlayerName).size();
-                }
-            }
-
-            return 0;
-
-        } finally {
-            lock.unlock();
-        }
+        return getMailbox().getCountFrom(fromPlayerName, messageClass);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Delivers the message to this person's mailbox. Their person data isn't changed, so there's no need to save them.
+     */
     public <U extends IMessage> void addMessage(SocialPerson fromPerson, U message) {
 
-        Lock lock = rwMessageQueueLock.writeLock();
-        lock.lock();
-        try {
+        SocialNetworkPlugin.log("Adding message entry: [" + fromPerson.getName() + ", " + message + "]");
 
-            // check to see if this message type has a queue entry, if not, make one
-            String className = message.getClass().getCanonicalName();
-
-            SocialNetworkPlugin.log("Adding message entry: [" + fromPerson.getName() + ", " + message + "]");
-
-            // If there isn't an entry for this message type, then create one
-            Map<String, List<? extends IMessage>> playerMessageMap = person.getMessageQueue().get(className);
-            if (playerMessageMap == null) {
-
-                playerMessageMap = new HashMap<String, List<? extends IMessage>>();
-                person.getMessageQueue().put(className, playerMessageMap);
-            }
-
-            // If there isn't an entry for given fromPerson, then create their list now
-            List<U> messageList = (List<U>) playerMessageMap.get(fromPerson.getName());
-            if (messageList == null) {
-
-                SocialNetworkPlugin.log("Creating new message entry: [" + fromPerson.getName() + ", " + message + "]");
-
-                messageList = new ArrayList<U>();
-                playerMessageMap.put(fromPerson.getName(), messageList);
-            }
-
-            // add the message
-            messageList.add(message);
-
-        } finally {
-            lock.unlock();
-        }
+        SocialNetworkPlugin.getStorage().getMailboxStore().deliver(getName(), fromPerson.getName(), message);
     }
 
     public <U extends IMessage> void removeMessage(SocialPerson fromPerson, U message) {
 
-        String fromPlayerName = fromPerson.getName();
-
-        Lock lock = rwMessageQueueLock.writeLock();
-        lock.lock();
-        try {
-
-            String className = message.getClass().getCanonicalName();
-
-            // check to make sure there is a message of this type in the queue
-            if (person.getMessageQueue().containsKey(className)) {
-
-                // check to see if that list of types contains an entry for the player
-                if (person.getMessageQueue().get(className).containsKey(fromPlayerName)) {
-
-                    // remove the message from the list
-                    person.getMessageQueue().get(className).get(fromPlayerName).remove(message);
-
-                    // if the list is empty now, remove it from the map, just to save object memory
-                    if (person.getMessageQueue().get(className).get(fromPlayerName).size() == 0) {
-                        person.getMessageQueue().get(className).remove(fromPlayerName);
-                    }
-
-                    // if the message type list is empty, remove it also, just to save object memory
-                    if (person.getMessageQueue().get(className).keySet().size() == 0) {
-                        person.getMessageQueue().remove(className);
-                    }
-                }
-            }
-
-        } finally {
-            lock.unlock();
-        }
+        getMailbox().remove(fromPerson.getName(), message);
     }
 
     /**
@@ -1127,25 +1024,7 @@ public class SocialPerson {
      */
     public void removeMessagesFrom(SocialPerson fromPerson) {
 
-        Lock lock = rwMessageQueueLock.writeLock();
-        lock.lock();
-        try {
-
-            // go through every class in the message queue and remove the player list from it
-            for (String className : person.getMessageQueue().keySet()) {
-
-                // remove the person
-                person.getMessageQueue().get(className).remove(fromPerson.getName());
-
-                // if the message type list is empty, remove it also, just to save object memory
-                if (person.getMessageQueue().get(className).keySet().size() == 0) {
-                    person.getMessageQueue().remove(className);
-                }
-            }
-
-        } finally {
-            lock.unlock();
-        }
+        getMailbox().removeFrom(fromPerson.getName());
     }
 
     public boolean addRequest(SocialPerson playerFrom, ICommandType requestType) {
@@ -1248,18 +1127,7 @@ public class SocialPerson {
 
     public void removeAllAlerts() {
 
-        Lock lock = rwMessageQueueLock.writeLock();
-        lock.lock();
-        try {
-
-            String className = Alert.class.getCanonicalName();
-            if (person.getMessageQueue().containsKey(className)) {
-                person.getMessageQueue().remove(className);
-            }
-
-        } finally {
-            lock.unlock();
-        }
+        getMailbox().removeAll(Alert.class);
     }
 
     public boolean removeAlert(SocialPerson playerFrom, Alert.Type alertType) {
@@ -1304,31 +1172,33 @@ public class SocialPerson {
      */
     public boolean hasGroupMembers() {
 
-        if (person.getFriends().size() > 0) {
+        State current = state;
+
+        if (current.friends.size() > 0) {
             return true;
         }
 
-        if (person.getAffairs().size() > 0) {
+        if (current.affairs.size() > 0) {
             return true;
         }
 
-        if (person.getRelationships().size() > 0) {
+        if (current.relationships.size() > 0) {
             return true;
         }
 
-        if (person.getChildOf() != null) {
+        if (current.childOf != null) {
             return true;
         }
 
-        if (person.getEngagement() != null) {
+        if (current.socialEngagement != null) {
             return true;
         }
 
-        if (person.getDivorce() != null) {
+        if (current.socialDivorce != null) {
             return true;
         }
 
-        if (person.getMarriage() != null) {
+        if (current.socialMarriage != null) {
             return true;
         }
 
@@ -1511,25 +1381,26 @@ public class SocialPerson {
      */
     public <U extends GroupSettings> boolean hasGroupSettings(U groupSettings) {
 
-        return settingsMap.containsKey(groupSettings.getClass());
+        return state.settingsMap.containsKey(groupSettings.getClass());
     }
 
-    private Map<Class<? extends GroupSettings>, ? extends GroupSettings> generateGroupSettingsMap() {
+    private Map<Class<? extends GroupSettings>, GroupSettings> generateGroupSettingsMap(State source,
+            Map<Class<? extends GroupSettings>, GroupSettings> settingsMap) {
 
         // get the settings
         SettingsConfig settingsConfig = SocialNetworkPlugin.getSettings();
 
-        if (person.getFriends().size() > 0) {
+        if (!source.friends.isEmpty()) {
             FriendSettings settings = settingsConfig.getSocialNetworkSettings(FriendSettings.class);
             settingsMap.put(FriendSettings.class, settings);
         }
 
-        if (person.getAffairs().size() > 0) {
+        if (!source.affairs.isEmpty()) {
             AffairSettings settings = settingsConfig.getSocialNetworkSettings(AffairSettings.class);
             settingsMap.put(AffairSettings.class, settings);
         }
 
-        if (person.getRelationships().size() > 0) {
+        if (!source.relationships.isEmpty()) {
             RelationshipSettings settings = settingsConfig.getSocialNetworkSettings(RelationshipSettings.class);
             settingsMap.put(RelationshipSettings.class, settings);
         }
@@ -1567,42 +1438,100 @@ public class SocialPerson {
         return settingsMap;
     }
 
-    private void generateSocialMappings() {
+    private void generateSocialMappings(State initial) {
 
+        PersistentIntMap<SocialFriend> friends = PersistentIntMap.empty();
         for (Friend friend : person.getFriends().values()) {
-            friends.put(friend.getPlayerName(), new SocialFriend(friend));
+            friends = friends.plus(playerNames.getId(friend.getPlayerName()), new SocialFriend(friend));
         }
+        initial.friends = friends;
 
+        PersistentIntMap<SocialChild> children = PersistentIntMap.empty();
         for (Child child : person.getChildren().values()) {
-            children.put(child.getPlayerName(), new SocialChild(child));
+            children = children.plus(playerNames.getId(child.getPlayerName()), new SocialChild(child));
         }
+        initial.children = children;
 
+        PersistentIntMap<SocialAffair> affairs = PersistentIntMap.empty();
         for (Affair affair : person.getAffairs().values()) {
-            affairs.put(affair.getPlayerName(), new SocialAffair(affair));
+            affairs = affairs.plus(playerNames.getId(affair.getPlayerName()), new SocialAffair(affair));
         }
+        initial.affairs = affairs;
 
+        PersistentIntMap<SocialRelationship> relationships = PersistentIntMap.empty();
         for (Relationship relationship : person.getRelationships().values()) {
-            relationships.put(relationship.getPlayerName(), new SocialRelationship(relationship));
+            relationships = relationships.plus(playerNames.getId(relationship.getPlayerName()),
+                    new SocialRelationship(relationship));
         }
+        initial.relationships = relationships;
 
         if (person.getEngagement() != null) {
-            socialEngagement = new SocialEngagement(person.getEngagement());
+            initial.socialEngagement = new SocialEngagement(person.getEngagement());
         }
 
         if (person.getMarriage() != null) {
-            socialMarriage = new SocialMarriage(person.getMarriage());
+            initial.socialMarriage = new SocialMarriage(person.getMarriage());
         }
 
         if (person.getDivorce() != null) {
-            socialDivorce = new SocialDivorce(person.getDivorce());
+            initial.socialDivorce = new SocialDivorce(person.getDivorce());
         }
     }
 
+    /**
+     * Starts the state that will replace the current one. The simple values are read from the person data, and
+     * everything else is shared with the current state until the caller replaces it.
+     * Must only be called while holding the write lock.
+     */
+    private State nextState() {
+
+        State current = state;
+        State next = new State();
+        readPerson(next);
+
+        next.ignoreList = current.ignoreList;
+
+        next.friends = current.friends;
+        next.affairs = current.affairs;
+        next.children = current.children;
+        next.relationships = current.relationships;
+
+        next.socialEngagement = current.socialEngagement;
+        next.socialMarriage = current.socialMarriage;
+        next.socialDivorce = current.socialDivorce;
+
+        next.settingsMap = current.settingsMap;
+
+        return next;
+    }
+
+    private void readPerson(State next) {
+
+        next.loginUpdatesIgnored = person.isLoginUpdatesIgnored();
+        next.statusUpdatesIgnored = person.isStatusUpdatesIgnored();
+        next.genderChoiceRemindersIgnored = person.isGenderChoiceRemindersIgnored();
+
+        next.socialStatus = person.getSocialStatus();
+        next.statusMessage = person.getStatusMessage();
+        next.gender = person.getGender();
+        next.lawyer = person.isLawyer();
+        next.priest = person.isPriest();
+
+        next.waitState = person.getWaitState();
+        next.waitCommand = person.getWaitCommand();
+        next.waitData = person.getWaitData();
+        next.weddingVows = person.getWeddingVows();
+        next.childOf = person.getChildOf();
+    }
+
     private void firePlayerMemberChangeEvent(String memberName, ICommandType groupType, Type eventType,
             boolean groupEmpty) {
 
         // regenerate the settings map since something changed
-        generateGroupSettingsMap();
+        State next = nextState();
+        next.settingsMap = generateGroupSettingsMap(next,
+                new HashMap<Class<? extends GroupSettings>, GroupSettings>(next.settingsMap));
+        state = next;
 
         // create the event
         PlayerMemberChangeEvent event =
@@ -19,6 +19,7 @@ import com.netprogs.minecraft.plugins.social.command.help.HelpMessage;
 import com.netprogs.minecraft.plugins.social.command.help.HelpSegment;
 import com.netprogs.minecraft.plugins.social.command.util.MessageParameter;
 import com.netprogs.minecraft.plugins.social.command.util.MessageUtil;
+import com.netprogs.minecraft.plugins.social.command.util.TimerManager.EventType;
 import com.netprogs.minecraft.plugins.social.config.resources.ResourcesConfig;
 import com.netprogs.minecraft.plugins.social.config.settings.ISocialNetworkSettings;
 import com.netprogs.minecraft.plugins.social.storage.SocialNetworkStorage;
@@ -98,7 +99,7 @@ public class CommandStatusMessage extends SocialNetworkCommand<ISocialNetworkSet
 
         // We want to notify everyone that is in this players groups that they updated their status message.
         // Make sure that the event timer for this has expired. This is used to avoid spamming the chat.
-        long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(player.getName(), "STATUS");
+        long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(player.getName(), EventType.status);
         if (timeRemaining <= 0) {
 
             // Get the list of all unique player among all their groups
@@ -128,7 +129,7 @@ public class CommandStatusMessage extends SocialNetworkCommand<ISocialNetworkSet
 
             // reset their timer for this notification
             long cooldown = SocialNetworkPlugin.getSettings().getLoginNotificationCooldown();
-            SocialNetworkPlugin.getTimerManager().updateEventTimer(player.getName(), "STATUS", cooldown);
+            SocialNetworkPlugin.getTimerManager().updateEventTimer(player.getName(), EventType.status, cooldown);
         }
 
         return true;
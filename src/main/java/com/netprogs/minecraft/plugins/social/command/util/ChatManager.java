@@ -1,8 +1,8 @@
 package com.netprogs.minecraft.plugins.social.command.util;
 
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.entity.Player;
 
@@ -33,24 +33,31 @@ import org.bukkit.entity.Player;
  */
 public class ChatManager {
 
-    private final Set<String> disabledPlayers = new HashSet<String>();
+    // Changed on the main thread and read by the async chat threads. Only online players are kept, since their chat
+    // is turned back on when they log in anyway.
+    private final Set<Player> disabledPlayers = Collections.newSetFromMap(new ConcurrentHashMap<Player, Boolean>());
+
+    private final Set<Player> disabledPlayersView = Collections.unmodifiableSet(disabledPlayers);
 
     public void enable(Player player) {
 
-        disabledPlayers.remove(player.getName());
+        disabledPlayers.remove(player);
     }
 
     public void disable(Player player) {
 
-        disabledPlayers.add(player.getName());
+        disabledPlayers.add(player);
     }
 
     public boolean isDisabled(Player player) {
 
-        return disabledPlayers.contains(player.getName());
+        return disabledPlayers.contains(player);
     }
 
-    public Iterator<String> getDisabledPlayers() {
-        return disabledPlayers.iterator();
+    /**
+     * @return A read-only view of the players with their chat disabled. It's safe to use from any thread.
+     */
+    public Set<Player> getDisabledPlayers() {
+        return disabledPlayersView;
     }
 }
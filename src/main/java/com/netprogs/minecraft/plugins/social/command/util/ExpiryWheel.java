@@ -0,0 +1,165 @@
+package com.netprogs.minecraft.plugins.social.command.util;
+
+import java.util.List;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * A hierarchical timing wheel that says when entries fall due. The {@link TimerManager} uses it to drop timers once
+ * they've run out, without having to look at all the others.
+ *
+ * Time is counted in ticks. The first wheel has a slot for each of the next 64 ticks, the second a slot for each of
+ * the next 64 turns of the first, and so on. Adding an entry only links it into one slot. When the current tick comes
+ * round to a slot in a higher wheel, its entries are moved down a wheel, until they reach the first one and fall due.
+ * An entry moves at most once per wheel, so it costs the same however long it waits.
+ *
+ * This class is not thread safe. Its owner must guard access to it.
+ * </pre>
+ */
+class ExpiryWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    // 64^5 ticks, which is over 30 years at a second a tick
+    private static final int LEVELS = 5;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    /**
+     * Something waiting in the wheel. Extended to carry whatever needs to be done once it's due.
+     */
+    static class Entry {
+
+        private final long time;
+        private Entry next;
+
+        Entry(long time) {
+            this.time = time;
+        }
+
+        long getTime() {
+            return time;
+        }
+    }
+
+    private final long tickMillis;
+
+    // Each slot is a linked list of the entries in it
+    private final Entry[][] wheels = new Entry[LEVELS][SLOTS];
+
+    private long currentTick;
+    private int size;
+
+    ExpiryWheel(long tickMillis, long startTime) {
+
+        this.tickMillis = tickMillis;
+        currentTick = startTime / tickMillis;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(Entry entry) {
+
+        // anything already due is handed back on the next tick
+        place(entry, Math.max(tickOf(entry.time), currentTick + 1));
+        size++;
+    }
+
+    /**
+     * Moves the wheel up to the given time.
+     * @param time The current time.
+     * @param due Where to put the entries that are now due.
+     */
+    void advance(long time, List<Entry> due) {
+
+        long targetTick = time / tickMillis;
+
+        while (currentTick < targetTick) {
+
+            // nothing is waiting, so there's nothing to step through
+            if (size == 0) {
+                currentTick = targetTick;
+                return;
+            }
+
+            currentTick++;
+
+            // Find out which of the higher wheels have come round to a new slot. They're moved down starting with
+            // the highest so that nothing lands in a slot that has already been emptied for this tick.
+            int levels = 1;
+            while (levels < LEVELS && (currentTick & ((1L << (SLOT_BITS * levels)) - 1)) == 0) {
+                levels++;
+            }
+
+            for (int level = levels - 1; level > 0; level--) {
+
+                int slot = (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+                Entry entry = wheels[level][slot];
+                wheels[level][slot] = null;
+
+                while (entry != null) {
+                    Entry next = entry.next;
+                    place(entry, Math.max(tickOf(entry.time), currentTick));
+                    entry = next;
+                }
+            }
+
+            int slot = (int) currentTick & SLOT_MASK;
+            Entry entry = wheels[0][slot];
+            wheels[0][slot] = null;
+
+            while (entry != null) {
+                Entry next = entry.next;
+                entry.next = null;
+                due.add(entry);
+                size--;
+                entry = next;
+            }
+        }
+    }
+
+    private void place(Entry entry, long tick) {
+
+        // Anything further out than the wheels reach is parked in the last slot they have. It's placed again from
+        // there when that slot comes round.
+        if (tick - currentTick >= SPAN) {
+            tick = currentTick + SPAN - 1;
+        }
+
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+        entry.next = wheels[level][slot];
+        wheels[level][slot] = entry;
+    }
+
+    /**
+     * Rounded up, so an entry is never due before its time.
+     */
+    private long tickOf(long time) {
+        return (time + tickMillis - 1) / tickMillis;
+    }
+}
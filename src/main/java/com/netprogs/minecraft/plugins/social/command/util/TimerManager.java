@@ -1,15 +1,19 @@
 package com.netprogs.minecraft.plugins.social.command.util;
 
 import java.text.SimpleDateFormat;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.TimeZone;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.command.ISocialNetworkCommand.ICommandType;
+import com.netprogs.minecraft.plugins.social.listener.perk.IPerkListener.IListenerType;
+import com.netprogs.minecraft.plugins.social.storage.IntHashMap;
+import com.netprogs.minecraft.plugins.social.storage.PersistentIntMap;
+import com.netprogs.minecraft.plugins.social.storage.PlayerNameTable;
 
 import org.bukkit.plugin.Plugin;
 
@@ -32,78 +36,262 @@ import org.bukkit.plugin.Plugin;
 
 /**
  * This utility class keeps track of timers for commands and events.
- * The information stored here is not persisted, so when the server is restarted, the timers are cleared.
+ * The timers still running are saved by {@link TimerSnapshot} when the plug-in is disabled and put back when it's
+ * enabled, so a restart doesn't clear them.
  */
 public class TimerManager {
 
+    /**
+     * Event timers that aren't tied to a perk listener.
+     */
+    public enum EventType {
+        login, status
+    }
+
+    /**
+     * Where the timers get the current time from. Can be swapped out to control the time they see.
+     */
+    public interface Clock {
+        public long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    // Used for timers that aren't against another player
+    static final int NO_MEMBER = -1;
+
+    private static final long TICK_MILLIS = 1000;
+
+    // How often the temporary ids of players without timers are given back to the name table
+    private static final long RELEASE_INTERVAL = 60 * 1000L;
+
     private Logger logger;
     private boolean isLoggingDebug;
+    private final Clock clock;
+
+    // Map<PlayerId, PlayerTimers>
+    // A new map is published after every change, so checking a timer never takes a lock.
+    private volatile PersistentIntMap<PlayerTimers> timers = PersistentIntMap.empty();
+
+    // Held while changing the timers. Also guards the expiry wheel.
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Says when each timer runs out so it can be dropped
+    private final ExpiryWheel expiryWheel;
+    private final List<ExpiryWheel.Entry> expired = new ArrayList<ExpiryWheel.Entry>();
+
+    // Guarded by the write lock
+    private long nextReleaseTime;
+
+    /**
+     * The timers one player has running. Never changed once it's published. Players only ever have a few timers, so
+     * they're kept in small arrays and searched in order.
+     */
+    static final class PlayerTimers {
+
+        private static final PlayerTimers NONE = new PlayerTimers(new Object[0], new int[0], new long[0]);
+
+        // Each timer is its type (a command, event or listener type) and the member it's against, if any
+        private final Object[] timerTypes;
+        private final int[] memberIds;
+        private final long[] expiryTimes;
+
+        PlayerTimers(Object[] timerTypes, int[] memberIds, long[] expiryTimes) {
+            this.timerTypes = timerTypes;
+            this.memberIds = memberIds;
+            this.expiryTimes = expiryTimes;
+        }
+
+        int size() {
+            return timerTypes.length;
+        }
+
+        Object getTimerType(int index) {
+            return timerTypes[index];
+        }
+
+        int getMemberId(int index) {
+            return memberIds[index];
+        }
+
+        long getExpiryTime(int index) {
+            return expiryTimes[index];
+        }
 
-    // Map<PlayerName, Map<CommandType, TimeInSeconds>>
-    private final Map<String, Map<ICommandType, Long>> commandTimers = new HashMap<String, Map<ICommandType, Long>>();
+        private int indexOf(Object timerType, int memberId) {
 
-    // Map<PlayerName, Map<StringEventName, TimeInSeconds>>
-    private final Map<String, Map<String, Long>> eventTimers = new HashMap<String, Map<String, Long>>();
+            for (int i = 0; i < timerTypes.length; i++) {
+                if (timerTypes[i] == timerType && memberIds[i] == memberId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private PlayerTimers with(Object timerType, int memberId, long expiryTime) {
+
+            int index = indexOf(timerType, memberId);
+            if (index != -1) {
+                long[] times = expiryTimes.clone();
+                times[index] = expiryTime;
+                return new PlayerTimers(timerTypes, memberIds, times);
+            }
 
-    private final ReentrantReadWriteLock rwCommandLock = new ReentrantReadWriteLock(true);
-    private final ReentrantReadWriteLock rwEventLock = new ReentrantReadWriteLock(true);
+            int count = timerTypes.length;
+
+            Object[] types = Arrays.copyOf(timerTypes, count + 1);
+            int[] members = Arrays.copyOf(memberIds, count + 1);
+            long[] times = Arrays.copyOf(expiryTimes, count + 1);
+
+            types[count] = timerType;
+            members[count] = memberId;
+            times[count] = expiryTime;
+
+            return new PlayerTimers(types, members, times);
+        }
+
+        /**
+         * @return The timers without the one at the index, or null if there are none left.
+         */
+        private PlayerTimers without(int index) {
+
+            int count = timerTypes.length - 1;
+            if (count == 0) {
+                return null;
+            }
+
+            Object[] types = new Object[count];
+            int[] members = new int[count];
+            long[] times = new long[count];
+
+            System.arraycopy(timerTypes, 0, types, 0, index);
+            System.arraycopy(memberIds, 0, members, 0, index);
+            System.arraycopy(expiryTimes, 0, times, 0, index);
+
+            System.arraycopy(timerTypes, index + 1, types, index, count - index);
+            System.arraycopy(memberIds, index + 1, members, index, count - index);
+            System.arraycopy(expiryTimes, index + 1, times, index, count - index);
+
+            return new PlayerTimers(types, members, times);
+        }
+    }
+
+    /**
+     * A timer waiting in the expiry wheel. If the timer is reset, this is left where it is and ignored once it's due.
+     */
+    private static final class Expiry extends ExpiryWheel.Entry {
+
+        private final int playerId;
+        private final Object timerType;
+        private final int memberId;
+
+        private Expiry(int playerId, Object timerType, int memberId, long expiryTime) {
+            super(expiryTime);
+            this.playerId = playerId;
+            this.timerType = timerType;
+            this.memberId = memberId;
+        }
+    }
 
     public TimerManager(Plugin plugin, boolean isLoggingDebug) {
+        this(plugin, isLoggingDebug, SYSTEM_CLOCK);
+    }
+
+    public TimerManager(Plugin plugin, boolean isLoggingDebug, Clock clock) {
+        this(plugin.getLogger(), isLoggingDebug, clock);
+    }
+
+    TimerManager(Logger logger, boolean isLoggingDebug, Clock clock) {
 
-        logger = plugin.getLogger();
+        this.logger = logger;
         this.isLoggingDebug = isLoggingDebug;
+        this.clock = clock;
+
+        expiryWheel = new ExpiryWheel(TICK_MILLIS, clock.currentTimeMillis());
+        nextReleaseTime = clock.currentTimeMillis() + RELEASE_INTERVAL;
     }
 
     /**
-     * Cleans up old timers to let them get GC and reduce memory stamp.
+     * Drops the timers that have run out, to let them get GC and reduce memory stamp.
+     * Must only be called while holding the write lock.
      */
-    private void cleanCommandTimers() {
+    private void cleanTimers() {
 
-        for (Iterator<String> it = commandTimers.keySet().iterator(); it.hasNext();) {
+        expiryWheel.advance(clock.currentTimeMillis(), expired);
+        if (expired.isEmpty()) {
+            return;
+        }
 
-            String playerName = it.next();
-            Map<ICommandType, Long> playerMap = commandTimers.get(playerName);
+        PersistentIntMap<PlayerTimers> remaining = timers;
 
-            // get the timer map for the player
-            for (Iterator<ICommandType> playerMapIterator = playerMap.keySet().iterator(); playerMapIterator.hasNext();) {
+        for (ExpiryWheel.Entry entry : expired) {
 
-                ICommandType commandType = playerMapIterator.next();
-                long lastCommandTime = playerMap.get(commandType);
+            Expiry expiry = (Expiry) entry;
 
-                if (lastCommandTime <= System.currentTimeMillis()) {
-                    if (isLoggingDebug) {
-                        logger.info("Removing expired command timer: [" + playerName + ", " + commandType + "]");
-                    }
-                    playerMapIterator.remove();
-                }
+            PlayerTimers playerTimers = remaining.get(expiry.playerId);
+            if (playerTimers == null) {
+                continue;
+            }
+
+            // skip it if the timer was removed or has been reset since
+            int index = playerTimers.indexOf(expiry.timerType, expiry.memberId);
+            if (index == -1 || playerTimers.expiryTimes[index] != expiry.getTime()) {
+                continue;
+            }
+
+            if (isLoggingDebug) {
+                logger.info("Removing expired timer: [" + getPlayerNames().getName(expiry.playerId) + ", "
+                        + describe(expiry.timerType, expiry.memberId) + "]");
             }
+
+            PlayerTimers rest = playerTimers.without(index);
+            remaining = (rest == null) ? remaining.minus(expiry.playerId) : remaining.plus(expiry.playerId, rest);
         }
+
+        expired.clear();
+        timers = remaining;
+
+        releaseIds();
     }
 
     /**
-     * Cleans up old timers to let them get GC and reduce memory stamp.
+     * Gives the ids of players outside the network back to the name table once none of their timers are left, so
+     * the table doesn't keep a slot for everyone that had a cooldown this run. Timers are only given ids while
+     * holding the write lock, so nothing can start using one while this runs.
+     * Must only be called while holding the write lock.
      */
-    private void cleanEventTimers() {
+    private void releaseIds() {
+
+        long currentTime = clock.currentTimeMillis();
+        if (currentTime < nextReleaseTime) {
+            return;
+        }
 
-        for (Iterator<String> it = eventTimers.keySet().iterator(); it.hasNext();) {
+        nextReleaseTime = currentTime + RELEASE_INTERVAL;
 
-            String playerName = it.next();
-            Map<String, Long> playerMap = eventTimers.get(playerName);
+        IntHashMap<Boolean> inUse = new IntHashMap<Boolean>();
 
-            // get the timer map for the player
-            for (Iterator<String> playerMapIterator = playerMap.keySet().iterator(); playerMapIterator.hasNext();) {
+        PersistentIntMap.Cursor<PlayerTimers> cursor = timers.cursor();
+        while (cursor.next()) {
 
-                String eventType = playerMapIterator.next();
-                long lastCommandTime = playerMap.get(eventType);
+            inUse.put(cursor.key(), Boolean.TRUE);
 
-                if (lastCommandTime <= System.currentTimeMillis()) {
-                    if (isLoggingDebug) {
-                        logger.info("Removing expired event timer: [" + playerName + ", " + eventType + "]");
-                    }
-                    playerMapIterator.remove();
+            PlayerTimers playerTimers = cursor.value();
+            for (int i = 0; i < playerTimers.size(); i++) {
+                if (playerTimers.memberIds[i] != NO_MEMBER) {
+                    inUse.put(playerTimers.memberIds[i], Boolean.TRUE);
                 }
             }
         }
+
+        int released = getPlayerNames().releaseTemporaryIds(inUse);
+        if (isLoggingDebug && released > 0) {
+            logger.info("Released " + released + " player ids");
+        }
     }
 
     /**
@@ -113,181 +301,258 @@ public class TimerManager {
      * @return Amount of time remaining. If 0, means it's not on timer.
      */
     public long commandOnTimer(String playerName, ICommandType commandType) {
+        return onTimer("commandOnTimer", getPlayerNames().findId(playerName), commandType, NO_MEMBER);
+    }
 
-        Lock lock = rwCommandLock.readLock();
-        lock.lock();
-        try {
-
-            // check the timer map to see if they have one there already
-            Map<ICommandType, Long> timerInfo = commandTimers.get(playerName);
-            if (timerInfo != null && timerInfo.containsKey(commandType)) {
-
-                long lastCommandTime = timerInfo.get(commandType);
+    /**
+     * Updates the command timer for the player.
+     * @param playerName The name of the player running the command.
+     * @param commandType The command type.
+     * @param timer The new timer period to assign (in seconds).
+     */
+    public void updateCommandTimer(String playerName, ICommandType commandType, long timer) {
+        updateTimer(playerName, commandType, null, timer);
+    }
 
-                if (isLoggingDebug) {
-                    logger.info("commandOnTimer, lastCommandTime: " + formatTimeUtc(lastCommandTime) + " > "
-                            + formatTimeUtc(System.currentTimeMillis()));
-                }
+    /**
+     * Determines if the provided event is on timer for the user.
+     * @param player The name of the player.
+     * @param eventType The event being run.
+     * @return Amount of time remaining. If 0, means it's not on timer.
+     */
+    public long eventOnTimer(String playerName, EventType eventType) {
+        return onTimer("eventOnTimer", getPlayerNames().findId(playerName), eventType, NO_MEMBER);
+    }
 
-                // check to see if they're allowed to use the command
-                if (lastCommandTime > System.currentTimeMillis()) {
+    /**
+     * Updates the event timer for the player.
+     * @param playerName The name of the player.
+     * @param eventType The event type.
+     * @param timer The new timer period to assign (in seconds).
+     */
+    public void updateEventTimer(String playerName, EventType eventType, long timer) {
+        updateTimer(playerName, eventType, null, timer);
+    }
 
-                    long remaining = (lastCommandTime - System.currentTimeMillis());
+    /**
+     * Determines if the named event is on timer for the user.
+     * @param player The name of the player.
+     * @param eventType The event name.
+     * @return Amount of time remaining. If 0, means it's not on timer.
+     * @deprecated Use {@link #eventOnTimer(String, EventType)}.
+     */
+    @Deprecated
+    public long eventOnTimer(String playerName, String eventType) {
+        return onTimer("eventOnTimer", getPlayerNames().findId(playerName), toTimerType(eventType), NO_MEMBER);
+    }
 
-                    if (isLoggingDebug) {
-                        logger.info("commandOnTimer, timeRemaining: " + formatTimeUtc(remaining));
-                    }
+    /**
+     * Updates the named event timer for the player.
+     * @param playerName The name of the player.
+     * @param eventType The event name.
+     * @param timer The new timer period to assign (in seconds).
+     * @deprecated Use {@link #updateEventTimer(String, EventType, long)}.
+     */
+    @Deprecated
+    public void updateEventTimer(String playerName, String eventType, long timer) {
+        updateTimer(playerName, toTimerType(eventType), null, timer);
+    }
 
-                    // It's on timer, return the time
-                    return remaining;
-                }
-            }
+    /**
+     * Determines if the listener's event is on timer for the user against the given member.
+     * @param player The name of the player.
+     * @param listenerType The listener the event is for.
+     * @param memberName The other player in the event.
+     * @return Amount of time remaining. If 0, means it's not on timer.
+     */
+    public long eventOnTimer(String playerName, IListenerType listenerType, String memberName) {
 
+        // a player without an id can't have a timer against them
+        int memberId = getPlayerNames().findId(memberName);
+        if (memberId == -1) {
             return 0L;
-
-        } finally {
-            lock.unlock();
         }
+
+        return onTimer("eventOnTimer", getPlayerNames().findId(playerName), listenerType, memberId);
     }
 
     /**
-     * Updates the command timer for the player.
-     * @param playerName The name of the player running the command.
-     * @param commandType The command type.
+     * Updates the listener's event timer for the player against the given member.
+     * @param playerName The name of the player.
+     * @param listenerType The listener the event is for.
+     * @param memberName The other player in the event.
      * @param timer The new timer period to assign (in seconds).
      */
-    public void updateCommandTimer(String playerName, ICommandType commandType, long timer) {
+    public void updateEventTimer(String playerName, IListenerType listenerType, String memberName, long timer) {
+        updateTimer(playerName, listenerType, memberName, timer);
+    }
 
-        Lock lock = rwCommandLock.writeLock();
-        lock.lock();
-        try {
+    /**
+     * The timers as they are now. The map never changes, so it can be read while timers are being updated.
+     */
+    PersistentIntMap<PlayerTimers> getTimers() {
+        return timers;
+    }
 
-            // clean out old timers
-            cleanCommandTimers();
+    Clock getClock() {
+        return clock;
+    }
 
-            if (isLoggingDebug) {
-                logger.info("updateCommandTimer: " + commandType + " " + timer);
-            }
+    Logger getLogger() {
+        return logger;
+    }
 
-            // check the timer map to see if they have one there already
-            Map<ICommandType, Long> timerInfo = commandTimers.get(playerName);
-            if (timerInfo == null) {
+    boolean isLoggingDebug() {
+        return isLoggingDebug;
+    }
+
+    /**
+     * Adds timers that were saved earlier. Any player that already has timers keeps theirs.
+     * @param restored Map<PlayerId, PlayerTimers>
+     */
+    void restoreTimers(PersistentIntMap<PlayerTimers> restored) {
+
+        writeLock.lock();
+        try {
 
-                // nope, let's create it
-                timerInfo = new HashMap<ICommandType, Long>();
-                commandTimers.put(playerName, timerInfo);
+            PersistentIntMap<PlayerTimers> merged = timers;
 
-                if (isLoggingDebug) {
-                    logger.info("Created new timer entry for: " + commandType);
+            PersistentIntMap.Cursor<PlayerTimers> cursor = restored.cursor();
+            while (cursor.next()) {
+
+                int playerId = cursor.key();
+                if (merged.containsKey(playerId)) {
+                    continue;
                 }
-            }
 
-            if (isLoggingDebug) {
-                logger.info("Updating timer for command: " + commandType + " to: "
-                        + formatTimeUtc(System.currentTimeMillis() + (timer * 1000)));
+                PlayerTimers playerTimers = cursor.value();
+                merged = merged.plus(playerId, playerTimers);
+
+                for (int i = 0; i < playerTimers.size(); i++) {
+                    expiryWheel.add(new Expiry(playerId, playerTimers.timerTypes[i], playerTimers.memberIds[i],
+                            playerTimers.expiryTimes[i]));
+                }
             }
 
-            // now update the cooldown
-            timerInfo.put(commandType, (System.currentTimeMillis() + (timer * 1000)));
+            timers = merged;
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
-    /**
-     * Determines if the provided event is on timer for the user.
-     * @param player The name of the player.
-     * @param eventType The event being run.
-     * @return Amount of time remaining. If 0, means it's not on timer.
-     */
-    public long eventOnTimer(String playerName, String eventType) {
+    public void removeTimers(String playerName) {
+
+        int playerId = getPlayerNames().findId(playerName);
+        if (playerId == -1) {
+            return;
+        }
 
-        Lock lock = rwEventLock.readLock();
-        lock.lock();
+        // anything they had in the expiry wheel is skipped once it's due
+        writeLock.lock();
         try {
+            timers = timers.minus(playerId);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            // check the timer map to see if they have one there already
-            Map<String, Long> timerInfo = eventTimers.get(playerName);
-            if (timerInfo != null && timerInfo.containsKey(eventType)) {
+    private long onTimer(String label, int playerId, Object timerType, int memberId) {
 
-                long lastEventTime = timerInfo.get(eventType);
+        // check the timer map to see if they have one there already
+        PlayerTimers playerTimers = timers.get(playerId);
+        if (playerTimers == null) {
+            return 0L;
+        }
 
-                if (isLoggingDebug) {
-                    logger.info("eventOnTimer, lastEventTime: " + formatTimeUtc(lastEventTime) + " > "
-                            + formatTimeUtc(System.currentTimeMillis()));
-                }
+        int index = playerTimers.indexOf(timerType, memberId);
+        if (index == -1) {
+            return 0L;
+        }
+
+        long expiryTime = playerTimers.expiryTimes[index];
+        long currentTime = clock.currentTimeMillis();
 
-                // check to see if the event is allowed to happen
-                if (lastEventTime > System.currentTimeMillis()) {
+        if (isLoggingDebug) {
+            logger.info(label + ", expiryTime: " + formatTimeUtc(expiryTime) + " > " + formatTimeUtc(currentTime));
+        }
 
-                    long remaining = (lastEventTime - System.currentTimeMillis());
+        // check to see if they're allowed to do it yet
+        if (expiryTime > currentTime) {
 
-                    if (isLoggingDebug) {
-                        logger.info("eventOnTimer, timeRemaining: " + formatTimeUtc(remaining));
-                    }
+            long remaining = (expiryTime - currentTime);
 
-                    // It's on timer, return the time
-                    return remaining;
-                }
+            if (isLoggingDebug) {
+                logger.info(label + ", timeRemaining: " + formatTimeUtc(remaining));
             }
 
-            return 0L;
-
-        } finally {
-            lock.unlock();
+            // It's on timer, return the time
+            return remaining;
         }
+
+        return 0L;
     }
 
     /**
-     * Updates the command timer for the player.
-     * @param playerName The name of the player running the command.
-     * @param eventType The event name.
-     * @param timer The new timer period to assign (in seconds).
+     * @param memberName The other player in the event, or null if there isn't one.
      */
-    public void updateEventTimer(String playerName, String eventType, long timer) {
+    private void updateTimer(String playerName, Object timerType, String memberName, long timer) {
 
-        Lock lock = rwEventLock.writeLock();
-        lock.lock();
+        long expiryTime = clock.currentTimeMillis() + (timer * 1000);
+
+        writeLock.lock();
         try {
 
             // clean out old timers
-            cleanEventTimers();
-
-            if (isLoggingDebug) {
-                logger.info("updateEventTimer: " + eventType + " " + timer);
-            }
-
-            // check the timer map to see if they have one there already
-            Map<String, Long> timerInfo = eventTimers.get(playerName);
-            if (timerInfo == null) {
+            cleanTimers();
 
-                // nope, let's create it
-                timerInfo = new HashMap<String, Long>();
-                eventTimers.put(playerName, timerInfo);
+            // Either of them may be outside the network, so they're only given ids for this run. That's done while
+            // holding the lock so the ids can't be released before the timer is added.
+            PlayerNameTable playerNames = getPlayerNames();
+            int playerId = playerNames.getTemporaryId(playerName);
+            int memberId = (memberName == null) ? NO_MEMBER : playerNames.getTemporaryId(memberName);
 
-                if (isLoggingDebug) {
-                    logger.info("Created new timer entry for: " + eventType);
-                }
+            if (isLoggingDebug) {
+                logger.info("Updating timer for: " + describe(timerType, memberId) + " to: "
+                        + formatTimeUtc(expiryTime));
             }
 
-            if (isLoggingDebug) {
-                logger.info("Updating timer for event: " + eventType + " to: "
-                        + formatTimeUtc(System.currentTimeMillis() + (timer * 1000)));
+            PlayerTimers playerTimers = timers.get(playerId);
+            if (playerTimers == null) {
+                playerTimers = PlayerTimers.NONE;
             }
 
             // now update the cooldown
-            timerInfo.put(eventType, (System.currentTimeMillis() + (timer * 1000)));
+            timers = timers.plus(playerId, playerTimers.with(timerType, memberId, expiryTime));
+            expiryWheel.add(new Expiry(playerId, timerType, memberId, expiryTime));
 
         } finally {
-            lock.unlock();
+            writeLock.unlock();
         }
     }
 
-    public void removeTimers(String playerName) {
+    /**
+     * Finds the timer type for an event name used by the old API. "LOGIN" and "STATUS" are the {@link EventType}
+     * with that name. Any other name is its own type, interned so it's found again by identity. Those timers aren't
+     * kept over a restart, as only enum types are saved.
+     */
+    private static Object toTimerType(String eventType) {
+
+        for (EventType type : EventType.values()) {
+            if (type.name().equalsIgnoreCase(eventType)) {
+                return type;
+            }
+        }
+
+        return eventType.intern();
+    }
+
+    private String describe(Object timerType, int memberId) {
+        return (memberId == NO_MEMBER) ? timerType.toString() : timerType + "_" + getPlayerNames().getName(memberId);
+    }
 
-        commandTimers.remove(playerName);
-        eventTimers.remove(playerName);
+    private PlayerNameTable getPlayerNames() {
+        return SocialNetworkPlugin.getStorage().getPlayerNames();
     }
 
     public static String formatTime(long time, boolean utcFormat, boolean longDescription) {
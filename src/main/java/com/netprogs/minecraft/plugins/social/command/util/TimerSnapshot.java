@@ -0,0 +1,417 @@
+package com.netprogs.minecraft.plugins.social.command.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.command.util.TimerManager.PlayerTimers;
+import com.netprogs.minecraft.plugins.social.storage.IntHashMap;
+import com.netprogs.minecraft.plugins.social.storage.PersistentIntMap;
+import com.netprogs.minecraft.plugins.social.storage.PlayerNameTable;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Saves the timers that are still running to a single binary file, so cooldowns carry over a restart or reload.
+ *
+ * The file is written when the plug-in is disabled, and every snapshotInterval in the background if that's set. The
+ * timers are an immutable map, so a snapshot never has to stop them being updated. It's read back in one pass when
+ * the plug-in is enabled, building each player's timers at their final size.
+ *
+ * File layout, all big endian:
+ *   int magic, int version
+ *   int typeCount, then for each: UTF className, UTF constantName
+ *   int nameCount, then for each: UTF playerName
+ *   int playerCount, then for each: int nameIndex, int timerCount,
+ *       then for each timer: int typeIndex, int memberNameIndex (-1 for none), long expiryTime
+ *
+ * Players are saved by name rather than id, so the file still reads correctly if the ids are ever handed out again.
+ * A file that can't be read is logged and left out, so a damaged snapshot only costs the timers in it.
+ * </pre>
+ */
+public class TimerSnapshot {
+
+    private static final int MAGIC = 0x534E544D;
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final TimerManager timerManager;
+    private final PlayerNameTable playerNames;
+    private final File file;
+
+    private final Logger logger;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Restores the timers from the file and starts the background snapshots.
+     * @param snapshotInterval The period of time (in seconds) between each snapshot. 0 only saves on shutdown.
+     */
+    public TimerSnapshot(TimerManager timerManager, File file, long snapshotInterval) {
+        this(timerManager, SocialNetworkPlugin.getStorage().getPlayerNames(), file, snapshotInterval);
+    }
+
+    TimerSnapshot(TimerManager timerManager, PlayerNameTable playerNames, File file, long snapshotInterval) {
+
+        this.timerManager = timerManager;
+        this.playerNames = playerNames;
+        this.file = file;
+
+        logger = timerManager.getLogger();
+
+        restore();
+
+        if (snapshotInterval > 0) {
+
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SocialNetwork-Timers");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    save();
+                }
+            }, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Stops the background snapshots and saves the timers one last time.
+     * @param timeout The maximum time (in seconds) to wait for a snapshot that is already running.
+     */
+    public void shutdown(long timeout) {
+
+        if (executor != null) {
+
+            executor.shutdown();
+
+            try {
+                if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                    logger.log(Level.WARNING, "Timed out waiting for the timer snapshot.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        save();
+    }
+
+    /**
+     * Writes the timers that haven't run out yet to the file.
+     */
+    public synchronized void save() {
+
+        PersistentIntMap<PlayerTimers> timers = timerManager.getTimers();
+        long currentTime = timerManager.getClock().currentTimeMillis();
+
+        // First find the types and names used, so each is only written once
+        Map<Object, Integer> typeIndexes = new IdentityHashMap<Object, Integer>();
+        List<Object> types = new ArrayList<Object>();
+
+        IntHashMap<Integer> nameIndexes = new IntHashMap<Integer>();
+        List<String> names = new ArrayList<String>();
+
+        int playerCount = 0;
+
+        PersistentIntMap.Cursor<PlayerTimers> cursor = timers.cursor();
+        while (cursor.next()) {
+
+            PlayerTimers playerTimers = cursor.value();
+            if (countSaved(playerTimers, currentTime) == 0) {
+                continue;
+            }
+
+            playerCount++;
+            addName(cursor.key(), nameIndexes, names, playerNames);
+
+            for (int i = 0; i < playerTimers.size(); i++) {
+
+                if (!isSaved(playerTimers, i, currentTime)) {
+                    continue;
+                }
+
+                Object timerType = playerTimers.getTimerType(i);
+                if (!typeIndexes.containsKey(timerType)) {
+                    typeIndexes.put(timerType, types.size());
+                    types.add(timerType);
+                }
+
+                if (playerTimers.getMemberId(i) != TimerManager.NO_MEMBER) {
+                    addName(playerTimers.getMemberId(i), nameIndexes, names, playerNames);
+                }
+            }
+        }
+
+        // write to a temporary file first so a crash can never leave us with a damaged snapshot
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try {
+
+            FileOutputStream fileOutput = new FileOutputStream(tempFile);
+            try {
+
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE));
+
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+
+                output.writeInt(types.size());
+                for (Object timerType : types) {
+                    output.writeUTF(((Enum<?>) timerType).getDeclaringClass().getName());
+                    output.writeUTF(((Enum<?>) timerType).name());
+                }
+
+                output.writeInt(names.size());
+                for (String name : names) {
+                    output.writeUTF(name);
+                }
+
+                output.writeInt(playerCount);
+
+                cursor = timers.cursor();
+                while (cursor.next()) {
+
+                    PlayerTimers playerTimers = cursor.value();
+                    int saved = countSaved(playerTimers, currentTime);
+                    if (saved == 0) {
+                        continue;
+                    }
+
+                    output.writeInt(nameIndexes.get(cursor.key()));
+                    output.writeInt(saved);
+
+                    for (int i = 0; i < playerTimers.size(); i++) {
+
+                        if (!isSaved(playerTimers, i, currentTime)) {
+                            continue;
+                        }
+
+                        int memberId = playerTimers.getMemberId(i);
+
+                        output.writeInt(typeIndexes.get(playerTimers.getTimerType(i)));
+                        output.writeInt((memberId == TimerManager.NO_MEMBER) ? -1 : nameIndexes.get(memberId));
+                        output.writeLong(playerTimers.getExpiryTime(i));
+                    }
+                }
+
+                output.flush();
+                fileOutput.getFD().sync();
+
+            } finally {
+                fileOutput.close();
+            }
+
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                logger.log(Level.WARNING, "Unable to replace the timer snapshot");
+            }
+
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to write the timer snapshot", e);
+        }
+    }
+
+    /**
+     * Reads the file back into the timer manager, skipping anything that has run out since.
+     */
+    private void restore() {
+
+        if (!file.exists()) {
+            return;
+        }
+
+        long currentTime = timerManager.getClock().currentTimeMillis();
+
+        PersistentIntMap<PlayerTimers> restored = PersistentIntMap.empty();
+        int restoredCount = 0;
+
+        try {
+
+            DataInputStream input =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            try {
+
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    logger.log(Level.WARNING, "Ignoring an unknown timer snapshot: " + file);
+                    return;
+                }
+
+                // null where the type no longer exists
+                Object[] types = new Object[readCount(input)];
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = findType(input.readUTF(), input.readUTF());
+                }
+
+                int[] nameIds = new int[readCount(input)];
+                for (int i = 0; i < nameIds.length; i++) {
+                    nameIds[i] = playerNames.getTemporaryId(input.readUTF());
+                }
+
+                int playerCount = readCount(input);
+                for (int player = 0; player < playerCount; player++) {
+
+                    int playerId = nameIds[input.readInt()];
+
+                    // Read straight into arrays of the size written. They're only cut down if some were dropped.
+                    int timerCount = readCount(input);
+                    Object[] timerTypes = new Object[timerCount];
+                    int[] memberIds = new int[timerCount];
+                    long[] expiryTimes = new long[timerCount];
+
+                    int kept = 0;
+                    for (int i = 0; i < timerCount; i++) {
+
+                        Object timerType = types[input.readInt()];
+                        int memberIndex = input.readInt();
+                        long expiryTime = input.readLong();
+
+                        if (timerType == null || expiryTime <= currentTime) {
+                            continue;
+                        }
+
+                        timerTypes[kept] = timerType;
+                        memberIds[kept] = (memberIndex == -1) ? TimerManager.NO_MEMBER : nameIds[memberIndex];
+                        expiryTimes[kept] = expiryTime;
+                        kept++;
+                    }
+
+                    if (kept == 0) {
+                        continue;
+                    }
+
+                    if (kept < timerCount) {
+                        timerTypes = Arrays.copyOf(timerTypes, kept);
+                        memberIds = Arrays.copyOf(memberIds, kept);
+                        expiryTimes = Arrays.copyOf(expiryTimes, kept);
+                    }
+
+                    restored = restored.plus(playerId, new PlayerTimers(timerTypes, memberIds, expiryTimes));
+                    restoredCount += kept;
+                }
+
+            } finally {
+                input.close();
+            }
+
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to read the timer snapshot", e);
+            return;
+        } catch (RuntimeException e) {
+            // an index that points past what was written
+            logger.log(Level.WARNING, "Ignoring a damaged timer snapshot: " + file, e);
+            return;
+        }
+
+        timerManager.restoreTimers(restored);
+
+        if (timerManager.isLoggingDebug()) {
+            logger.info("Restored " + restoredCount + " timers for " + restored.size() + " players");
+        }
+    }
+
+    /**
+     * Reads the size of what follows. Each entry takes at least 2 bytes, so a count larger than the file can't be
+     * right and is turned away before anything is made that big.
+     */
+    private int readCount(DataInputStream input) throws IOException {
+
+        int count = input.readInt();
+        if (count < 0 || count > file.length() / 2) {
+            throw new IOException("Damaged timer snapshot, bad count: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Only timers that are still running are saved. Their type has to be an enum constant so it can be found again.
+     */
+    private static boolean isSaved(PlayerTimers playerTimers, int index, long currentTime) {
+        return playerTimers.getExpiryTime(index) > currentTime && playerTimers.getTimerType(index) instanceof Enum;
+    }
+
+    private static int countSaved(PlayerTimers playerTimers, long currentTime) {
+
+        int saved = 0;
+        for (int i = 0; i < playerTimers.size(); i++) {
+            if (isSaved(playerTimers, i, currentTime)) {
+                saved++;
+            }
+        }
+        return saved;
+    }
+
+    private static void addName(int playerId, IntHashMap<Integer> nameIndexes, List<String> names,
+            PlayerNameTable playerNames) {
+
+        if (!nameIndexes.containsKey(playerId)) {
+            nameIndexes.put(playerId, names.size());
+            names.add(playerNames.getName(playerId));
+        }
+    }
+
+    /**
+     * Timer types are enum constants (commands, events and perk listeners).
+     * @return The constant, or null if it no longer exists.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object findType(String className, String constantName) {
+
+        try {
+
+            Class<?> typeClass = Class.forName(className, true, TimerSnapshot.class.getClassLoader());
+            if (typeClass.isEnum()) {
+                return Enum.valueOf((Class<? extends Enum>) typeClass, constantName);
+            }
+
+        } catch (ClassNotFoundException e) {
+            // fall through
+        } catch (IllegalArgumentException e) {
+            // fall through
+        }
+
+        logger.log(Level.WARNING, "Skipping saved timers of an unknown type: " + className + "." + constantName);
+        return null;
+    }
+}
@@ -50,6 +50,8 @@ public class Settings {
 
     private CommandMapSettings commandMapSettings;
 
+    private StorageSettings storageSettings;
+
     public boolean isLoggingDebug() {
         return loggingDebug;
     }
@@ -107,6 +109,15 @@ public class Settings {
         this.commandMapSettings = commandMapSettings;
     }
 
+    public StorageSettings getStorageSettings() {
+
+        // older configurations won't have this section, so fall back to the defaults
+        if (storageSettings == null) {
+            storageSettings = new StorageSettings();
+        }
+        return storageSettings;
+    }
+
     public long getStatusMessageNotificationCooldown() {
         return statusMessageNotificationCooldown;
     }
@@ -43,7 +43,7 @@ import com.netprogs.minecraft.plugins.social.config.settings.group.PriestSetting
 import com.netprogs.minecraft.plugins.social.config.settings.group.RelationshipSettings;
 import com.netprogs.minecraft.plugins.social.config.settings.perk.IPerkSettings;
 import com.netprogs.minecraft.plugins.social.io.JsonConfiguration;
-import com.netprogs.minecraft.plugins.social.io.JsonInterfaceAdapter;
+import com.netprogs.minecraft.plugins.social.io.JsonInterfaceTypeAdapterFactory;
 
 import org.bukkit.craftbukkit.libs.com.google.gson.GsonBuilder;
 
@@ -69,7 +69,8 @@ public class SettingsConfig extends JsonConfiguration<Settings> {
     protected void registerTypeAdapters(GsonBuilder builder) {
 
         // register the Message interface
-        builder.registerTypeAdapter(IPerkSettings.class, new JsonInterfaceAdapter<IPerkSettings>()).create();
+        builder.registerTypeAdapterFactory(new JsonInterfaceTypeAdapterFactory<IPerkSettings>(
+                IPerkSettings.class));
     }
 
     @Override
@@ -125,6 +126,10 @@ public class SettingsConfig extends JsonConfiguration<Settings> {
         return getDataObject().getCommandMapSettings();
     }
 
+    public StorageSettings getStorageSettings() {
+        return getDataObject().getStorageSettings();
+    }
+
     public Iterator<GroupSettings> getSocialNetworkGroupSettings() {
         return settings.iterator();
     }
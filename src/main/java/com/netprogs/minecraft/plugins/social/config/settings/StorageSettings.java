@@ -0,0 +1,200 @@
+package com.netprogs.minecraft.plugins.social.config.settings;
+
+/*
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class StorageSettings {
+
+    // The type of storage to use for the player data. Either "json", "binary", "sqlite" or "journal".
+    private String driver = "json";
+
+    // The name of the database file used by the sqlite driver. This is placed in the plug-in data folder.
+    private String databaseFile = "social.db";
+
+    // The period of time (in seconds) between each fold of the journal into the player data files.
+    private long journalCompactInterval = 300;
+
+    // The period of time (in seconds) between each fold of the network change log into network.json.
+    private long networkCompactInterval = 300;
+
+    // The period of time (in seconds) between each background save of the running timers. 0 only saves on shutdown.
+    private long timerSnapshotInterval = 300;
+
+    // The period of time (in milliseconds) between each write of the pending person saves to disk.
+    private long saveFlushInterval = 2000;
+
+    // The maximum period of time (in seconds) we'll wait for pending saves to be written when the plug-in is disabled.
+    private long saveShutdownTimeout = 10;
+
+    // The period of time (in milliseconds) a data file write waits for others to join it before they are all forced to
+    // disk together. Writes that arrive while another group is being forced are always grouped.
+    private long fileSyncWindow = 0;
+
+    // Compresses the player data files when they're saved. Files are checked for compression as they're loaded.
+    private boolean compressDataFiles = false;
+
+    // The number of messages removed from a mailbox file before it's rewritten without them. 0 turns this off.
+    private int mailboxCompactThreshold = 32;
+
+    // How long (in hours) each type of message is kept before it's removed. 0 keeps them until they're used.
+    private int requestTimeToLive = 168;
+    private int alertTimeToLive = 336;
+    private int stickyTimeToLive = 720;
+    private int giftTimeToLive = 0;
+
+    // The most messages of one type a player can have waiting, and the most of one type from a single sender.
+    // When a new message goes over either, the oldest one is removed. 0 turns the limit off.
+    private int messageTypeLimit = 100;
+    private int messageSenderLimit = 20;
+
+    // The period of time (in seconds) between each batch of mailbox files checked for old messages.
+    private int mailboxSweepInterval = 10;
+
+    // The most mailbox files checked in each batch.
+    private int mailboxSweepBatchSize = 20;
+
+    // The most players kept loaded once the idle ones have been removed. Online players are always kept.
+    private int cacheMaximumSize = 1000;
+
+    // The period of time (in seconds) an offline player can go unused before they're removed from memory.
+    private long cacheIdleTime = 1800;
+
+    // The period of time (in seconds) between each check for players to remove from memory.
+    private long cacheSweepInterval = 60;
+
+    // The longest period of time (in milliseconds) a login will wait for the player to be loaded in the background.
+    private long preloadTimeout = 2000;
+
+    // The number of players that can be loaded in the background at the same time.
+    private int preloadThreads = 2;
+
+    // How many steps out from a player that has logged in we load the people in their groups. 0 turns this off.
+    private int prefetchDepth = 1;
+
+    // The most group members loaded in advance for each person.
+    private int prefetchLimit = 20;
+
+    // The number of group members that can be loaded in the background at the same time.
+    private int prefetchThreads = 1;
+
+    public String getDriver() {
+        return driver;
+    }
+
+    public String getDatabaseFile() {
+        return databaseFile;
+    }
+
+    public long getJournalCompactInterval() {
+        return journalCompactInterval;
+    }
+
+    public long getNetworkCompactInterval() {
+        return networkCompactInterval;
+    }
+
+    public long getTimerSnapshotInterval() {
+        return timerSnapshotInterval;
+    }
+
+    public long getFileSyncWindow() {
+        return fileSyncWindow;
+    }
+
+    public boolean isCompressDataFiles() {
+        return compressDataFiles;
+    }
+
+    public int getMailboxCompactThreshold() {
+        return mailboxCompactThreshold;
+    }
+
+    public int getRequestTimeToLive() {
+        return requestTimeToLive;
+    }
+
+    public int getAlertTimeToLive() {
+        return alertTimeToLive;
+    }
+
+    public int getStickyTimeToLive() {
+        return stickyTimeToLive;
+    }
+
+    public int getGiftTimeToLive() {
+        return giftTimeToLive;
+    }
+
+    public int getMessageTypeLimit() {
+        return messageTypeLimit;
+    }
+
+    public int getMessageSenderLimit() {
+        return messageSenderLimit;
+    }
+
+    public int getMailboxSweepInterval() {
+        return mailboxSweepInterval;
+    }
+
+    public int getMailboxSweepBatchSize() {
+        return mailboxSweepBatchSize;
+    }
+
+    public long getSaveFlushInterval() {
+        return saveFlushInterval;
+    }
+
+    public long getSaveShutdownTimeout() {
+        return saveShutdownTimeout;
+    }
+
+    public int getCacheMaximumSize() {
+        return cacheMaximumSize;
+    }
+
+    public long getCacheIdleTime() {
+        return cacheIdleTime;
+    }
+
+    public long getCacheSweepInterval() {
+        return cacheSweepInterval;
+    }
+
+    public long getPreloadTimeout() {
+        return preloadTimeout;
+    }
+
+    public int getPreloadThreads() {
+        return preloadThreads;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public int getPrefetchLimit() {
+        return prefetchLimit;
+    }
+
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+}
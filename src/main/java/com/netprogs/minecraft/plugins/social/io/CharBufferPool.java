@@ -0,0 +1,66 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * Keeps a small number of char buffers around so reading and writing the data files doesn't allocate new ones each
+ * time. Buffers must be given back with {@link #release(char[])} once they are no longer being used.
+ */
+public final class CharBufferPool {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    // more than this and we let the extras be garbage collected
+    private static final int MAX_POOLED = 16;
+
+    private static final ConcurrentLinkedQueue<char[]> buffers = new ConcurrentLinkedQueue<char[]>();
+    private static final AtomicInteger pooledCount = new AtomicInteger();
+
+    private CharBufferPool() {
+    }
+
+    public static char[] acquire() {
+
+        char[] buffer = buffers.poll();
+        if (buffer != null) {
+            pooledCount.decrementAndGet();
+            return buffer;
+        }
+
+        return new char[BUFFER_SIZE];
+    }
+
+    public static void release(char[] buffer) {
+
+        if (buffer == null || buffer.length != BUFFER_SIZE) {
+            return;
+        }
+
+        if (pooledCount.incrementAndGet() <= MAX_POOLED) {
+            buffers.offer(buffer);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Compresses data files using Deflate with a preset dictionary.
+ *
+ * Player files are small and mostly made up of the same keys and class names, which leaves plain Deflate (or GZIP)
+ * very little to work with. The dictionary holds those common strings so even a short file can refer back to them.
+ *
+ * A compressed file starts with a short header, which is how {@link #openFile(File)} tells the two apart. Plain files
+ * are still read as they are, so a folder can hold a mix of both while players are saved for the first time.
+ * </pre>
+ */
+public final class DataFileCompression {
+
+    private static final byte[] MAGIC = { 'S', 'N', 'Z' };
+
+    // The dictionary used to compress a file is part of its format. If it ever changes, this has to change with it.
+    private static final int VERSION = 1;
+
+    // magic + version + the uncompressed length
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4;
+
+    // Deflate looks backwards for matches, so the most common strings go last where they are the cheapest to reach.
+    private static final byte[] DICTIONARY = toBytes(""
+            + "\"perkSettingsList\": {\"type\": \"com.netprogs.minecraft.plugins.social.storage.data.perk."
+            + "PersonTeleportSettings\", \"world\": \"blockX\": \"blockY\": \"blockZ\": "
+            + "\"type\": \"com.netprogs.minecraft.plugins.social.storage.data.perk.PersonPlayerDamageSettings\", "
+            + "\"waitCommandType\": \"waitState\": \"notWaiting\", \"waitGenderResponse\", \"waitMarriageResponse\", "
+            + "\"waitCashGiftVerification\", \"waitHandGiftVerification\", \"waitData\": null, "
+            + "\"genderChoiceRemindersIgnored\": false, \"statusUpdatesIgnored\": false, "
+            + "\"loginUpdatesIgnored\": false, \"lawyer\": false, \"priest\": false, "
+            + "\"engagement\": null, \"marriage\": null, \"weddingVows\": null, \"divorce\": null, "
+            + "\"childOf\": null, \"ignoreList\": [], \"statusMessage\": null, \"dateJoined\": "
+            + "\"gender\": \"male\", \"female\", \"socialStatus\": \"single\", \"relationship\", \"engaged\", "
+            + "\"married\", \"divorced\", \"senderPlayerName\": \"receiverPlayerName\": \"senderWorld\": "
+            + "\"cash\", \"item\", \"amount\": \"itemId\": \"itemCount\": \"alertMessage\": \"deleted\", "
+            + "\"spouseName\": \"message\": \"friends\": {}, \"relationships\": {}, \"affairs\": {}, "
+            + "\"children\": {}, \"com.netprogs.minecraft.plugins.social.storage.data.Sticky\": {"
+            + "\"com.netprogs.minecraft.plugins.social.storage.data.Alert\": {"
+            + "\"com.netprogs.minecraft.plugins.social.storage.data.Gift\": {"
+            + "\"com.netprogs.minecraft.plugins.social.storage.data.Wedding\": {"
+            + "\"com.netprogs.minecraft.plugins.social.storage.data.Request\": {"
+            + "\"messageQueue\": {\"type\": \"com.netprogs.minecraft.plugins.social.storage.data.\n"
+            + "  \"data\": {\n        \"playerName\": \"\n      },\n    \"name\": \"\n  },\n  \"");
+
+    // The compressors hold native memory, so each thread keeps its own and resets them between files.
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private DataFileCompression() {
+    }
+
+    /**
+     * Checks if the data starts with the compressed file header.
+     */
+    public static boolean isCompressed(byte[] data, int length) {
+
+        if (length < MAGIC.length) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compresses the data and places the header in front of it.
+     */
+    public static byte[] compress(byte[] data) {
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(HEADER_LENGTH + data.length / 2);
+        output.write(MAGIC, 0, MAGIC.length);
+        output.write(VERSION);
+        output.write(data.length >>> 24);
+        output.write(data.length >>> 16);
+        output.write(data.length >>> 8);
+        output.write(data.length);
+
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            output.write(buffer, 0, count);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns the original data from a compressed file's contents.
+     */
+    public static byte[] decompress(byte[] data) throws IOException {
+
+        if (data.length < HEADER_LENGTH || !isCompressed(data, data.length)) {
+            throw new IOException("Not a compressed data file");
+        }
+
+        if (data[MAGIC.length] != VERSION) {
+            throw new IOException("Unknown compressed data file version: " + data[MAGIC.length]);
+        }
+
+        int offset = MAGIC.length + 1;
+        int length = ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+
+        byte[] result = new byte[length];
+        int position = 0;
+
+        try {
+
+            while (!inflater.finished()) {
+
+                int count = inflater.inflate(result, position, result.length - position);
+                position += count;
+
+                if (count == 0) {
+
+                    if (!inflater.needsDictionary()) {
+                        break;
+                    }
+                    inflater.setDictionary(DICTIONARY);
+                }
+            }
+
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed data file is damaged", e);
+        }
+
+        if (!inflater.finished() || position != result.length) {
+            throw new IOException("Compressed data file is incomplete");
+        }
+
+        return result;
+    }
+
+    /**
+     * Opens the file for reading, decompressing it first if needed. Either way the stream returns the plain data.
+     */
+    public static InputStream openFile(File file) throws IOException {
+
+        PushbackInputStream input = new PushbackInputStream(new FileInputStream(file), MAGIC.length);
+
+        byte[] header = new byte[MAGIC.length];
+        int length = 0;
+
+        try {
+
+            while (length < header.length) {
+                int count = input.read(header, length, header.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+            }
+
+            input.unread(header, 0, length);
+
+            // plain files are streamed straight from the disk
+            if (!isCompressed(header, length)) {
+                return input;
+            }
+
+            // compressed files are small enough to be read in whole
+            ByteArrayOutputStream data = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                data.write(buffer, 0, count);
+            }
+
+            input.close();
+            return new ByteArrayInputStream(decompress(data.toByteArray()));
+
+        } catch (IOException e) {
+
+            input.close();
+            throw e;
+        }
+    }
+
+    private static byte[] toBytes(String value) {
+
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
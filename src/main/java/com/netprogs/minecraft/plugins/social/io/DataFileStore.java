@@ -0,0 +1,305 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/*
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Writes data files so that a crash can never leave a file half written.
+ *
+ * Each write goes to a new temporary file next to the real one. Once the data has been forced to disk, the temporary
+ * file is renamed over the real one. Anyone reading the file sees either the old contents or the new ones.
+ * Temporary files left behind by a crash are removed the first time each folder is written to.
+ *
+ * Forcing data to disk is the expensive part, so writes are grouped:
+ *   - Writes made while another thread is forcing its group are collected and forced together once it's done.
+ *     Setting a sync window makes each group wait that long for more writes to join before forcing.
+ *   - A thread can call beginBatch() to hold all of its own writes until commitBatch(), which forces them together.
+ *
+ * The data is copied into the channel through a direct buffer that each thread keeps and reuses.
+ * </pre>
+ */
+public final class DataFileStore {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // <name>.<sequence>.tmp, as named by stage()
+    private static final Pattern TEMP_NAME = Pattern.compile(".+\\.\\d+\\.tmp");
+
+    private static final ThreadLocal<ByteBuffer> directBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    // the writes being held for the current thread, null if it hasn't started a batch
+    private static final ThreadLocal<List<PendingWrite>> batches = new ThreadLocal<List<PendingWrite>>();
+
+    // used to give every temporary file a unique name
+    private static final AtomicLong tempSequence = new AtomicLong();
+
+    // the folders that have already been cleared of temporary files left over from before this run
+    private static final ConcurrentMap<File, Boolean> cleanedFolders = new ConcurrentHashMap<File, Boolean>();
+
+    // The group that new writes join. It's closed off once its sync begins.
+    private static final Object groupLock = new Object();
+    private static SyncGroup currentGroup;
+
+    // only one group is forced at a time so the next one has a chance to fill up
+    private static final Object syncLock = new Object();
+
+    // The period of time (in milliseconds) a group waits for more writes before forcing them
+    private static volatile long syncWindow;
+
+    private static class PendingWrite {
+
+        private final File targetFile;
+        private final File tempFile;
+        private final RandomAccessFile file;
+
+        public PendingWrite(File targetFile, File tempFile, RandomAccessFile file) {
+            this.targetFile = targetFile;
+            this.tempFile = tempFile;
+            this.file = file;
+        }
+    }
+
+    private static class SyncGroup {
+
+        private final List<PendingWrite> writes = new ArrayList<PendingWrite>();
+        private boolean synced;
+        private IOException failure;
+    }
+
+    private DataFileStore() {
+    }
+
+    public static void setSyncWindow(long syncWindow) {
+        DataFileStore.syncWindow = syncWindow;
+    }
+
+    /**
+     * Replaces the contents of the file with the given data.
+     * Unless a batch has been started, this only returns once the data is safely on disk.
+     */
+    public static void write(File targetFile, byte[] data) throws IOException {
+
+        PendingWrite write = stage(targetFile, data);
+
+        List<PendingWrite> batch = batches.get();
+        if (batch != null) {
+            batch.add(write);
+            return;
+        }
+
+        SyncGroup group;
+        synchronized (groupLock) {
+            if (currentGroup == null) {
+                currentGroup = new SyncGroup();
+            }
+            group = currentGroup;
+            group.writes.add(write);
+        }
+
+        synchronized (syncLock) {
+
+            // The first one in gets to sync the whole group. The rest will find it's already been done.
+            if (!group.synced) {
+
+                if (syncWindow > 0) {
+                    try {
+                        Thread.sleep(syncWindow);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                synchronized (groupLock) {
+                    if (currentGroup == group) {
+                        currentGroup = null;
+                    }
+                }
+
+                try {
+                    commit(group.writes);
+                } catch (IOException e) {
+                    group.failure = e;
+                }
+                group.synced = true;
+            }
+        }
+
+        if (group.failure != null) {
+            throw new IOException("Unable to write " + targetFile.getName(), group.failure);
+        }
+    }
+
+    /**
+     * Holds all writes made by this thread until {@link #commitBatch()} is called.
+     */
+    public static void beginBatch() {
+
+        if (batches.get() == null) {
+            batches.set(new ArrayList<PendingWrite>());
+        }
+    }
+
+    /**
+     * Forces all the writes held since {@link #beginBatch()} to disk and moves them into place.
+     */
+    public static void commitBatch() throws IOException {
+
+        List<PendingWrite> batch = batches.get();
+        batches.remove();
+
+        if (batch != null) {
+            commit(batch);
+        }
+    }
+
+    /**
+     * Writes the data into a new temporary file, leaving it open for the sync.
+     */
+    private static PendingWrite stage(File targetFile, byte[] data) throws IOException {
+
+        File parentFolder = targetFile.getAbsoluteFile().getParentFile();
+        if (parentFolder != null) {
+            parentFolder.mkdirs();
+            removeStaleTempFiles(parentFolder);
+        }
+
+        File tempFile =
+                new File(parentFolder, targetFile.getName() + "." + tempSequence.incrementAndGet() + TEMP_SUFFIX);
+
+        RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+        try {
+
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = directBuffers.get();
+
+            int offset = 0;
+            while (offset < data.length) {
+
+                int count = Math.min(buffer.capacity(), data.length - offset);
+
+                buffer.clear();
+                buffer.put(data, offset, count);
+                buffer.flip();
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                offset += count;
+            }
+
+        } catch (IOException e) {
+
+            file.close();
+            tempFile.delete();
+            throw e;
+        }
+
+        return new PendingWrite(targetFile, tempFile, file);
+    }
+
+    /**
+     * The first time a folder is written to, removes the temporary files a crash left between staging and commit.
+     * Nothing can be staged in the folder until it's done, so none of this run's own files are in there yet.
+     */
+    private static void removeStaleTempFiles(File folder) {
+
+        if (cleanedFolders.containsKey(folder)) {
+            return;
+        }
+
+        synchronized (cleanedFolders) {
+
+            if (cleanedFolders.containsKey(folder)) {
+                return;
+            }
+
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile() && TEMP_NAME.matcher(file.getName()).matches()) {
+                        file.delete();
+                    }
+                }
+            }
+
+            cleanedFolders.put(folder, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Forces every write to disk, then renames each one into place in the order they were made.
+     */
+    private static void commit(List<PendingWrite> writes) throws IOException {
+
+        IOException failure = null;
+
+        for (PendingWrite write : writes) {
+            try {
+                write.file.getChannel().force(true);
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                write.file.close();
+            }
+        }
+
+        for (PendingWrite write : writes) {
+
+            if (failure != null) {
+                write.tempFile.delete();
+                continue;
+            }
+
+            if (!write.tempFile.renameTo(write.targetFile)) {
+
+                // Some platforms can't rename over an existing file, so remove it first.
+                // We lose the atomic replace here, but the new data is already safely on disk in the temporary file.
+                write.targetFile.delete();
+                if (!write.tempFile.renameTo(write.targetFile)) {
+                    failure = new IOException("Unable to rename " + write.tempFile + " to " + write.targetFile);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
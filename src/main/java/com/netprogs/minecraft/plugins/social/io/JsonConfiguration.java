@@ -20,18 +20,23 @@ package com.netprogs.minecraft.plugins.social.io;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>
  */
 
-import java.io.BufferedWriter;
-import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.craftbukkit.libs.com.google.gson.Gson;
 import org.bukkit.craftbukkit.libs.com.google.gson.GsonBuilder;
+import org.bukkit.craftbukkit.libs.com.google.gson.JsonParseException;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonReader;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonWriter;
 
 public abstract class JsonConfiguration<T> extends Configuration<T> {
 
+    // The Gson instance built for each configuration class. Map<ConfigurationClass, Gson>
+    private static final ConcurrentHashMap<Class<?>, Gson> jsonCache = new ConcurrentHashMap<Class<?>, Gson>();
+
     private Gson json;
 
     protected JsonConfiguration(String configFileName) {
@@ -46,55 +51,66 @@ public abstract class JsonConfiguration<T> extends Configuration<T> {
 
     private void init() {
 
-        GsonBuilder builder = new GsonBuilder();
-        builder.setPrettyPrinting();
-        builder.disableHtmlEscaping();
-        builder.serializeNulls();
+        // Gson instances are thread safe, so each type of configuration only needs to build one
+        json = jsonCache.get(getClass());
+        if (json == null) {
+
+            GsonBuilder builder = new GsonBuilder();
+            builder.setPrettyPrinting();
+            builder.disableHtmlEscaping();
+            builder.serializeNulls();
 
-        // allow sub-classes to register type adapters
-        registerTypeAdapters(builder);
+            // allow sub-classes to register type adapters
+            registerTypeAdapters(builder);
 
-        // initialize the json instance
-        json = builder.create();
+            // initialize the json instance
+            json = builder.create();
+            jsonCache.putIfAbsent(getClass(), json);
+        }
     }
 
     protected void registerTypeAdapters(GsonBuilder builder) {
 
     }
 
+    /**
+     * Allows sub-classes to have their file compressed when it's saved. Compressed files are always readable.
+     */
+    protected boolean isCompressionEnabled() {
+        return false;
+    }
+
     /**
      * Implements {@link Configuration#load()} to process a JSON based file load.
      */
     protected synchronized void load() {
 
-        InputStream inputStream = null;
-        InputStreamReader reader = null;
-
         try {
-
-            inputStream = new FileInputStream(getConfigFile());
-            reader = new InputStreamReader(inputStream);
-
-            setDataObject(json.fromJson(reader, getClassObject()));
-
+            read();
         } catch (Exception ex) {
             ex.printStackTrace();
+        }
+    }
 
-        } finally {
+    /**
+     * Reads the data object in from the file, letting the caller know if it could not be read.
+     */
+    protected synchronized void read() throws IOException {
+
+        // stream straight from the file into the object instead of building a tree first
+        InputStreamReader fileReader = new InputStreamReader(DataFileCompression.openFile(getConfigFile()));
+        JsonReader reader = new JsonReader(new PooledBufferedReader(fileReader));
 
-            try {
+        try {
 
-                if (reader != null) {
-                    reader.close();
-                }
+            T dataObject = json.fromJson(reader, getClassObject());
+            setDataObject(dataObject);
 
-                if (inputStream != null) {
-                    inputStream.close();
-                }
+        } catch (JsonParseException e) {
+            throw new IOException("Unable to parse " + getConfigFile().getName(), e);
 
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        } finally {
+            reader.close();
         }
     }
 
@@ -103,38 +119,45 @@ public abstract class JsonConfiguration<T> extends Configuration<T> {
      */
     protected synchronized void save() {
 
-        FileWriter fstream = null;
-        BufferedWriter out = null;
-
         try {
-
-            String jsonOutput = json.toJson(getDataObject());
-
-            fstream = new FileWriter(getConfigFile());
-            out = new BufferedWriter(fstream);
-
-            out.write(jsonOutput);
-            out.close();
-            fstream.close();
-
+            write();
         } catch (Exception ex) {
             ex.printStackTrace();
+        }
+    }
 
-        } finally {
+    /**
+     * Writes the data object out to the file, letting the caller know if it could not be saved.
+     */
+    protected synchronized void write() throws IOException {
+        write(getDataObject());
+    }
 
-            try {
+    /**
+     * Writes the given object out to the file in place of the data object, letting the caller know if it could not be
+     * saved.
+     */
+    protected synchronized void write(T dataObject) throws IOException {
 
-                if (fstream != null) {
-                    fstream.close();
-                }
+        // write it out to memory first, then hand it to the file store so it can be safely placed on disk
+        ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
 
-                if (out != null) {
-                    out.close();
-                }
+        JsonWriter writer = new JsonWriter(new PooledBufferedWriter(new OutputStreamWriter(output)));
+        writer.setIndent("  ");
+        writer.setHtmlSafe(false);
+        writer.setSerializeNulls(true);
 
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        try {
+            json.toJson(dataObject, getClassObject(), writer);
+        } finally {
+            writer.close();
+        }
+
+        byte[] data = output.toByteArray();
+        if (isCompressionEnabled()) {
+            data = DataFileCompression.compress(data);
         }
+
+        DataFileStore.write(getConfigFile(), data);
     }
 }
@@ -54,11 +54,7 @@ public class JsonInterfaceAdapter<T> implements JsonSerializer<T>, JsonDeseriali
 
     private Type typeForName(final JsonElement typeElem) {
         try {
-            String className = typeElem.getAsString();
-            if (!className.contains(".")) {
-                className = "com.netprogs.minecraft.plugins.social.config.settings.perk." + className;
-            }
-            return Class.forName(className);
+            return JsonInterfaceTypeAdapterFactory.classForName(typeElem.getAsString());
         } catch (ClassNotFoundException e) {
             throw new JsonParseException(e);
         }
@@ -0,0 +1,166 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.craftbukkit.libs.com.google.gson.Gson;
+import org.bukkit.craftbukkit.libs.com.google.gson.JsonElement;
+import org.bukkit.craftbukkit.libs.com.google.gson.JsonParseException;
+import org.bukkit.craftbukkit.libs.com.google.gson.TypeAdapter;
+import org.bukkit.craftbukkit.libs.com.google.gson.TypeAdapterFactory;
+import org.bukkit.craftbukkit.libs.com.google.gson.reflect.TypeToken;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonReader;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonToken;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonWriter;
+
+/*
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * Streaming version of {@link JsonInterfaceAdapter}. Reads and writes the same {type, data} wrapper, but does so
+ * directly on the JsonReader/JsonWriter instead of building a JsonElement tree for every object.
+ * The adapters it creates hold no state, so a single Gson instance using this can be shared between threads.
+ * @param <T>
+ */
+public class JsonInterfaceTypeAdapterFactory<T> implements TypeAdapterFactory {
+
+    private static final String TYPE = "type";
+    private static final String DATA = "data";
+
+    // Class.forName is slow, so we keep every class we've looked up. Map<ClassName, Class>
+    private static final ConcurrentHashMap<String, Class<?>> classCache = new ConcurrentHashMap<String, Class<?>>();
+
+    private final Class<T> interfaceClass;
+
+    public JsonInterfaceTypeAdapterFactory(Class<T> interfaceClass) {
+        this.interfaceClass = interfaceClass;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A> TypeAdapter<A> create(Gson gson, TypeToken<A> type) {
+
+        if (type.getRawType() != interfaceClass) {
+            return null;
+        }
+
+        return (TypeAdapter<A>) new InterfaceTypeAdapter(gson);
+    }
+
+    /**
+     * Looks up the class for a name stored in the "type" field.
+     * Names without a package are from older versions and belong to the perk settings package.
+     */
+    public static Class<?> classForName(String className) throws ClassNotFoundException {
+
+        Class<?> classObject = classCache.get(className);
+        if (classObject == null) {
+
+            String fullClassName = className;
+            if (!fullClassName.contains(".")) {
+                fullClassName = "com.netprogs.minecraft.plugins.social.config.settings.perk." + fullClassName;
+            }
+
+            classObject = Class.forName(fullClassName);
+            classCache.put(className, classObject);
+        }
+
+        return classObject;
+    }
+
+    private class InterfaceTypeAdapter extends TypeAdapter<T> {
+
+        private final Gson gson;
+
+        public InterfaceTypeAdapter(Gson gson) {
+            this.gson = gson;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(JsonWriter out, T value) throws IOException {
+
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name(TYPE).value(value.getClass().getName());
+            out.name(DATA);
+            ((TypeAdapter<T>) gson.getAdapter(value.getClass())).write(out, value);
+            out.endObject();
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Class<?> classObject = null;
+            Object value = null;
+
+            // the data found before the type, which can only happen if the file was edited by hand
+            JsonElement unreadData = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+
+                String name = in.nextName();
+                if (TYPE.equals(name)) {
+
+                    classObject = getClass(in.nextString());
+
+                } else if (DATA.equals(name)) {
+
+                    if (classObject != null) {
+                        value = gson.getAdapter(classObject).read(in);
+                    } else {
+                        unreadData = gson.getAdapter(JsonElement.class).read(in);
+                    }
+
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (classObject == null) {
+                throw new JsonParseException("no 'type' member found in what was expected to be an interface wrapper");
+            }
+
+            if (unreadData != null) {
+                value = gson.fromJson(unreadData, classObject);
+            }
+
+            return interfaceClass.cast(value);
+        }
+
+        private Class<?> getClass(String className) {
+            try {
+                return classForName(className);
+            } catch (ClassNotFoundException e) {
+                throw new JsonParseException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/*
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * Buffered reader that borrows its buffer from the {@link CharBufferPool}. The buffer is returned on close.
+ */
+public class PooledBufferedReader extends Reader {
+
+    private final Reader reader;
+    private char[] buffer = CharBufferPool.acquire();
+    private int position;
+    private int limit;
+
+    public PooledBufferedReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+
+        if (buffer == null) {
+            throw new IOException("Reader closed");
+        }
+
+        if (position == limit) {
+
+            // large reads can skip our buffer entirely
+            if (length >= buffer.length) {
+                return reader.read(chars, offset, length);
+            }
+
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        int count = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, chars, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            reader.close();
+        } finally {
+            CharBufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * Buffered writer that borrows its buffer from the {@link CharBufferPool}. The buffer is returned on close.
+ */
+public class PooledBufferedWriter extends Writer {
+
+    private final Writer writer;
+    private char[] buffer = CharBufferPool.acquire();
+    private int position;
+
+    public PooledBufferedWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+
+        if (buffer == null) {
+            throw new IOException("Writer closed");
+        }
+
+        // large writes go straight through
+        if (length >= buffer.length) {
+            flushBuffer();
+            writer.write(chars, offset, length);
+            return;
+        }
+
+        if (length > buffer.length - position) {
+            flushBuffer();
+        }
+
+        System.arraycopy(chars, offset, buffer, position, length);
+        position += length;
+    }
+
+    @Override
+    public void write(String value, int offset, int length) throws IOException {
+
+        if (buffer == null) {
+            throw new IOException("Writer closed");
+        }
+
+        while (length > 0) {
+
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+
+            int count = Math.min(length, buffer.length - position);
+            value.getChars(offset, offset + count, buffer, position);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            flushBuffer();
+            writer.close();
+        } finally {
+            CharBufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+
+        if (position > 0) {
+            writer.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package com.netprogs.minecraft.plugins.social.listener;
 
-import java.util.Iterator;
+import java.util.Set;
 
 import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -52,14 +51,9 @@ public class PlayerChatListener implements Listener {
             } else {
 
                 // if they have their chat disabled, this stops them from receiving messages
-                Iterator<String> disabledPlayers = SocialNetworkPlugin.getChatManager().getDisabledPlayers();
-                while (disabledPlayers.hasNext()) {
-
-                    String playerName = disabledPlayers.next();
-                    Player player = Bukkit.getServer().getPlayer(playerName);
-                    if (player != null) {
-                        event.getRecipients().remove(player);
-                    }
+                Set<Player> disabledPlayers = SocialNetworkPlugin.getChatManager().getDisabledPlayers();
+                if (!disabledPlayers.isEmpty()) {
+                    event.getRecipients().removeAll(disabledPlayers);
                 }
             }
         }
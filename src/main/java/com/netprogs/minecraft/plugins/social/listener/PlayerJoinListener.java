@@ -6,6 +6,7 @@ import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.SocialPerson;
 import com.netprogs.minecraft.plugins.social.command.util.MessageParameter;
 import com.netprogs.minecraft.plugins.social.command.util.MessageUtil;
+import com.netprogs.minecraft.plugins.social.command.util.TimerManager.EventType;
 import com.netprogs.minecraft.plugins.social.config.resources.ResourcesConfig;
 import com.netprogs.minecraft.plugins.social.event.PlayerMessageCountEvent;
 import com.netprogs.minecraft.plugins.social.storage.data.Alert;
@@ -74,7 +75,7 @@ public class PlayerJoinListener implements Listener {
 
             // We want to notify everyone that is in this players groups that they have logged in.
             // Make sure that the event timer for this has expired. This is used to avoid spamming the chat.
-            long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(player.getName(), "LOGIN");
+            long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(player.getName(), EventType.login);
             if (timeRemaining <= 0) {
 
                 // Get the list of all unique player among all their groups
@@ -98,7 +99,7 @@ public class PlayerJoinListener implements Listener {
 
                 // reset their timer for this notification
                 long cooldown = SocialNetworkPlugin.getSettings().getLoginNotificationCooldown();
-                SocialNetworkPlugin.getTimerManager().updateEventTimer(player.getName(), "LOGIN", cooldown);
+                SocialNetworkPlugin.getTimerManager().updateEventTimer(player.getName(), EventType.login, cooldown);
             }
 
             // now let's check to see what's available to them.
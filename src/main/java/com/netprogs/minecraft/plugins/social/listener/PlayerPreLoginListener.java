@@ -0,0 +1,50 @@
+package com.netprogs.minecraft.plugins.social.listener;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.storage.SocialNetworkStorage;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class PlayerPreLoginListener implements Listener {
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLoginEvent(AsyncPlayerPreLoginEvent event) {
+
+        // This is called on a login thread before the player joins. We use it to get their data loaded so the join
+        // handler doesn't have to read it from disk on the main thread.
+
+        // don't bother if someone else has already turned them away
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        // we may be part way through being enabled or disabled, in which case they're loaded when they join
+        SocialNetworkStorage storage = SocialNetworkPlugin.getStorage();
+        if (storage != null) {
+            storage.preloadPerson(event.getName());
+        }
+    }
+}
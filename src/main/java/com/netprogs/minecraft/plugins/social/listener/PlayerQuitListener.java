@@ -6,6 +6,7 @@ import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.SocialPerson;
 import com.netprogs.minecraft.plugins.social.command.util.MessageParameter;
 import com.netprogs.minecraft.plugins.social.command.util.MessageUtil;
+import com.netprogs.minecraft.plugins.social.command.util.TimerManager.EventType;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -45,9 +46,12 @@ public class PlayerQuitListener implements Listener {
 
             Player player = event.getPlayer();
 
+            // their chat is turned back on when they log in anyway, so doing it now means we don't hold on to them
+            SocialNetworkPlugin.getChatManager().enable(player);
+
             // We want to notify everyone that is in this players groups that they have logged out.
             // Make sure that the event timer for this has expired. This is used to avoid spamming the chat.
-            long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(player.getName(), "LOGIN");
+            long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(player.getName(), EventType.login);
             if (timeRemaining <= 0) {
 
                 SocialPerson playerPerson = SocialNetworkPlugin.getStorage().getPerson(player.getName());
@@ -74,7 +78,7 @@ public class PlayerQuitListener implements Listener {
 
                     // reset their timer for this notification
                     long cooldown = SocialNetworkPlugin.getSettings().getLoginNotificationCooldown();
-                    SocialNetworkPlugin.getTimerManager().updateEventTimer(player.getName(), "LOGIN", cooldown);
+                    SocialNetworkPlugin.getTimerManager().updateEventTimer(player.getName(), EventType.login, cooldown);
                 }
             }
         }
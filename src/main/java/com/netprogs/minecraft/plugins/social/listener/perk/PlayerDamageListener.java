@@ -97,9 +97,8 @@ public class PlayerDamageListener extends PerkListener<PlayerDamageSettings, Per
 
                 // set the timer
                 if (coolDownPeriod != 0) {
-                    String timerKey = getListenerType() + "_" + event.getMemberName();
-                    SocialNetworkPlugin.getTimerManager().updateEventTimer(event.getPlayerName(), timerKey,
-                            coolDownPeriod);
+                    SocialNetworkPlugin.getTimerManager().updateEventTimer(event.getPlayerName(), getListenerType(),
+                            event.getMemberName(), coolDownPeriod);
                 }
             }
         }
@@ -202,8 +201,8 @@ public class PlayerDamageListener extends PerkListener<PlayerDamageSettings, Per
         // At this point, both the target and the damager as player instances. So let's load their network data.
 
         // first, lets check to see if this event is still on timer
-        String timerKey = getListenerType() + "_" + damager.getName();
-        long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(target.getName(), timerKey);
+        long timeRemaining = SocialNetworkPlugin.getTimerManager().eventOnTimer(target.getName(), getListenerType(),
+                damager.getName());
         if (timeRemaining > 0) {
 
             SocialNetworkPlugin.log("PlayerDamage_Timer: " + target.getName() + " on timer for: "
@@ -1,5 +1,7 @@
 package com.netprogs.minecraft.plugins.social.storage;
 
+import java.io.IOException;
+
 import com.netprogs.minecraft.plugins.social.storage.data.Person;
 import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
 
@@ -25,15 +27,25 @@ import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
 
 public interface IPersonDataManager {
 
-    public Person loadPerson(String personName);
+    /**
+     * @return The person, or null if they don't exist.
+     * @throws IOException If they exist but could not be read. They must not be treated as missing.
+     */
+    public Person loadPerson(String personName) throws IOException;
 
-    public void savePerson(Person person);
+    /**
+     * @throws IOException If they could not be written. The caller is expected to try again later.
+     */
+    public void savePerson(Person person) throws IOException;
 
     public void deletePerson(Person person);
 
     public PersonSettings loadPersonSettings(Person person);
 
-    public void savePersonSettings(Person person, PersonSettings settings);
+    /**
+     * @throws IOException If they could not be written. The caller is expected to try again later.
+     */
+    public void savePersonSettings(Person person, PersonSettings settings) throws IOException;
 
     public void deletePersonSettings(Person person);
 }
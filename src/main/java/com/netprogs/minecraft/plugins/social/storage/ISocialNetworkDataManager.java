@@ -55,4 +55,14 @@ public interface ISocialNetworkDataManager {
     public void addLawyer(String playerName);
 
     public void removeLawyer(String playerName);
+
+    /**
+     * Returns the names of the network members given an id by the {@link PlayerNameTable}, in the order the ids were
+     * given out.
+     */
+    public List<String> getPlayerNames();
+
+    public void addPlayerName(String playerName);
+
+    public void removePlayerName(String playerName);
 }
@@ -0,0 +1,239 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.util.Arrays;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * A hash map keyed by a primitive int, used for everything keyed by a player id from {@link PlayerNameTable}.
+ *
+ * Keys are stored in a plain int array next to the values (open addressing, linear probing), so there's no boxing
+ * and no entry object per mapping. Null values are not allowed; an empty slot is one without a value.
+ * This class is not thread safe. Its owner must guard access to it.
+ * </pre>
+ */
+public class IntHashMap<V> {
+
+    private static final int MINIMUM_CAPACITY = 8;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IntHashMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    public IntHashMap(int expectedSize) {
+
+        // keep the table no more than half full
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+
+        int slot = findSlot(key);
+        return (slot == -1) ? null : (V) values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return findSlot(key) != -1;
+    }
+
+    /**
+     * @return The value that was replaced, or null if there wasn't one.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed");
+        }
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The value that was removed, or null if there wasn't one.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return null;
+        }
+
+        V previous = (V) values[slot];
+        values[slot] = null;
+        size--;
+
+        // Move back any entries after it that would no longer be found past the gap
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (slot + 1) & mask;
+        while (values[next] != null) {
+
+            int home = hash(keys[next]) & mask;
+
+            // the entry can fill the gap if its home slot isn't between the gap and where it is now
+            boolean canMove = (gap <= next) ? (home <= gap || home > next) : (home <= gap && home > next);
+            if (canMove) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                values[next] = null;
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        return previous;
+    }
+
+    public void clear() {
+
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return A copy of the keys, in no particular order.
+     */
+    public int[] keys() {
+
+        int[] result = new int[size];
+        int index = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Used to walk the map without copying it. Returns the first slot at or after the given one that holds a value.
+     * @return The slot, or -1 if there are no more.
+     */
+    int nextSlot(int slot) {
+
+        for (; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    private int findSlot(int key) {
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+
+            if (keys[slot] == key) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void resize(int capacity) {
+
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Ids are handed out in order, so spread them out before they're masked down to a slot.
+     */
+    private static int hash(int key) {
+
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
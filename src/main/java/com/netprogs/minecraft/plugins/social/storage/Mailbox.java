@@ -0,0 +1,482 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * The messages waiting for a single person, as loaded from their mailbox file by {@link MailboxStore}.
+ *
+ * Every change made here is appended to the mailbox file before returning. The maps and lists handed out are read-only
+ * snapshots, so they can be used without holding on to the mailbox. A snapshot is built the first time it's asked for
+ * after a change and shared until the next one, so reading doesn't copy anything. Counts are kept as messages come and
+ * go rather than added up on each call.
+ *
+ * Messages are removed once they're older than the time to live for their type. If a sender, or a type as a whole,
+ * goes over its limit, the oldest messages are removed to make room.
+ * </pre>
+ */
+public class Mailbox {
+
+    private final String ownerName;
+    private final MailboxStore store;
+    private final PlayerNameTable playerNames;
+
+    // set once the messages from their old person file have been moved in, so it's never done twice
+    private volatile boolean imported;
+
+    // The messages of each kind. Every kind has a queue, so the map itself never changes after construction.
+    private final Map<MessageKind, KindQueue> queues = new EnumMap<MessageKind, KindQueue>(MessageKind.class);
+
+    /**
+     * The messages of one kind, grouped by who sent them.
+     */
+    private static class KindQueue {
+
+        // Map<PlayerId, Messages>. Guarded by synchronizing on the mailbox.
+        private final IntHashMap<MessageList> senderMap = new IntHashMap<MessageList>();
+
+        // Updated with every message added or removed, so it can be read without going through the lists
+        private volatile int count;
+
+        // Map<PlayerName, Messages> as handed out to readers. It's never changed once built. Any change to the queue
+        // clears it, and it's built again the next time someone asks for it.
+        private volatile Map<String, List<IMessage>> view;
+    }
+
+    /**
+     * The messages from one sender along with the id each one was stored under and when it was sent.
+     */
+    private static class MessageList {
+
+        private final List<IMessage> messages = new ArrayList<IMessage>();
+        private final List<Long> ids = new ArrayList<Long>();
+        private final List<Long> times = new ArrayList<Long>();
+
+        // A read-only copy of the messages, kept until the list changes
+        private List<IMessage> view;
+    }
+
+    Mailbox(String ownerName, MailboxStore store) {
+
+        this.ownerName = ownerName;
+        this.store = store;
+        this.playerNames = store.getPlayerNames();
+
+        for (MessageKind kind : MessageKind.values()) {
+            queues.put(kind, new KindQueue());
+        }
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    boolean isImported() {
+        return imported;
+    }
+
+    void setImported(boolean imported) {
+        this.imported = imported;
+    }
+
+    /**
+     * Returns all the messages of the given type, grouped by who sent them.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <U extends IMessage> Map<String, List<U>> getMessages(Class<U> messageClass) {
+        return (Map) getView(getKind(messageClass));
+    }
+
+    /**
+     * Returns all the messages of the given type from the given player.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <U extends IMessage> List<U> getMessagesFrom(String senderName, Class<U> messageClass) {
+
+        List<IMessage> messages = getView(getKind(messageClass)).get(senderName);
+        if (messages == null) {
+            return Collections.emptyList();
+        }
+
+        return (List) messages;
+    }
+
+    public Set<String> getSenders(Class<? extends IMessage> messageClass) {
+        return getView(getKind(messageClass)).keySet();
+    }
+
+    public int getCount(Class<? extends IMessage> messageClass) {
+        return queues.get(getKind(messageClass)).count;
+    }
+
+    public int getCountFrom(String senderName, Class<? extends IMessage> messageClass) {
+
+        List<IMessage> messages = getView(getKind(messageClass)).get(senderName);
+        return (messages == null) ? 0 : messages.size();
+    }
+
+    public boolean isEmpty() {
+
+        for (KindQueue queue : queues.values()) {
+            if (queue.count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the message and stores it in the mailbox file.
+     */
+    public synchronized void add(String senderName, IMessage message) {
+
+        MessageKind kind = getKind(message.getClass());
+
+        long time = System.currentTimeMillis();
+        long id = store.appendAdd(ownerName, senderName, message, time);
+        addMessage(kind, senderName, message, id, time);
+
+        // make room if this put them over a limit
+        List<IMessage> removed = expire(time, true);
+        if (!removed.isEmpty()) {
+            store.countRemoved(removed, true);
+        }
+    }
+
+    /**
+     * Removes the given message instance, storing the removal in the mailbox file.
+     * @return True if it was found.
+     */
+    public synchronized boolean remove(String senderName, IMessage message) {
+
+        MessageKind kind = getKind(message.getClass());
+
+        int senderId = playerNames.findId(senderName);
+        MessageList messageList = (senderId == -1) ? null : queues.get(kind).senderMap.get(senderId);
+        if (messageList == null) {
+            return false;
+        }
+
+        int index = messageList.messages.indexOf(message);
+        if (index == -1) {
+            return false;
+        }
+
+        store.appendRemove(ownerName, messageList.ids.get(index));
+        removeMessage(kind, senderId, index);
+        return true;
+    }
+
+    /**
+     * Removes every message of every type sent by the given player.
+     */
+    public synchronized void removeFrom(String senderName) {
+
+        int senderId = playerNames.findId(senderName);
+        if (senderId == -1) {
+            return;
+        }
+
+        boolean found = false;
+        for (KindQueue queue : queues.values()) {
+            if (queue.senderMap.containsKey(senderId)) {
+                found = true;
+                break;
+            }
+        }
+
+        if (found) {
+            store.appendRemoveFrom(ownerName, senderName);
+            removeSender(senderName);
+        }
+    }
+
+    /**
+     * Removes every message of the given type.
+     */
+    public synchronized void removeAll(Class<? extends IMessage> messageClass) {
+
+        MessageKind kind = getKind(messageClass);
+        if (queues.get(kind).count > 0) {
+            store.appendRemoveType(ownerName, kind);
+            removeType(kind);
+        }
+    }
+
+    /**
+     * Adds a message that has already been stored. Used while reading the mailbox file.
+     */
+    synchronized void addMessage(MessageKind kind, String senderName, IMessage message, long id, long time) {
+
+        KindQueue queue = queues.get(kind);
+        int senderId = playerNames.getId(senderName);
+
+        MessageList messageList = queue.senderMap.get(senderId);
+        if (messageList == null) {
+            messageList = new MessageList();
+            queue.senderMap.put(senderId, messageList);
+        }
+
+        messageList.messages.add(message);
+        messageList.ids.add(id);
+        messageList.times.add(time);
+        messageList.view = null;
+
+        queue.count++;
+        queue.view = null;
+    }
+
+    /**
+     * Removes the message stored under the given id. Used while reading the mailbox file.
+     * @return True if it was found.
+     */
+    synchronized boolean removeMessage(long id) {
+
+        for (Map.Entry<MessageKind, KindQueue> kindEntry : queues.entrySet()) {
+
+            IntHashMap<MessageList> senderMap = kindEntry.getValue().senderMap;
+            for (int slot = senderMap.nextSlot(0); slot != -1; slot = senderMap.nextSlot(slot + 1)) {
+
+                int index = senderMap.valueAt(slot).ids.indexOf(id);
+                if (index != -1) {
+                    removeMessage(kindEntry.getKey(), senderMap.keyAt(slot), index);
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes every message from the sender. Used while reading the mailbox file.
+     */
+    synchronized void removeSender(String senderName) {
+
+        int senderId = playerNames.findId(senderName);
+        if (senderId == -1) {
+            return;
+        }
+
+        for (KindQueue queue : queues.values()) {
+
+            MessageList messageList = queue.senderMap.remove(senderId);
+            if (messageList != null) {
+                queue.count -= messageList.messages.size();
+                queue.view = null;
+            }
+        }
+    }
+
+    /**
+     * Removes every message of the given type. Used while reading the mailbox file.
+     */
+    synchronized void removeType(MessageKind kind) {
+
+        KindQueue queue = queues.get(kind);
+        if (queue.count > 0) {
+            queue.senderMap.clear();
+            queue.count = 0;
+            queue.view = null;
+        }
+    }
+
+    /**
+     * Calls the visitor for every message in the mailbox. Used to write out a compacted mailbox file.
+     */
+    synchronized void visit(MessageVisitor visitor) {
+
+        for (KindQueue queue : queues.values()) {
+
+            IntHashMap<MessageList> senderMap = queue.senderMap;
+            for (int slot = senderMap.nextSlot(0); slot != -1; slot = senderMap.nextSlot(slot + 1)) {
+
+                String senderName = playerNames.getName(senderMap.keyAt(slot));
+                MessageList messageList = senderMap.valueAt(slot);
+                for (int i = 0; i < messageList.messages.size(); i++) {
+                    visitor.visit(senderName, messageList.messages.get(i), messageList.ids.get(i),
+                            messageList.times.get(i));
+                }
+            }
+        }
+    }
+
+    interface MessageVisitor {
+
+        public void visit(String senderName, IMessage message, long id, long time);
+    }
+
+    /**
+     * Removes the messages that are past their time to live, then the oldest ones from any sender or type that is
+     * over its limit.
+     * @param record True to store the removals in the mailbox file. The caller is responsible for the file otherwise.
+     * @return The messages that were removed.
+     */
+    synchronized List<IMessage> expire(long now, boolean record) {
+
+        List<IMessage> removed = new ArrayList<IMessage>();
+
+        int senderLimit = store.getSenderLimit();
+        int typeLimit = store.getTypeLimit();
+
+        for (Map.Entry<MessageKind, KindQueue> kindEntry : queues.entrySet()) {
+
+            MessageKind kind = kindEntry.getKey();
+            KindQueue queue = kindEntry.getValue();
+            if (queue.count == 0) {
+                continue;
+            }
+
+            long timeToLive = store.getTimeToLive(kind);
+
+            for (int senderId : queue.senderMap.keys()) {
+
+                MessageList messageList = queue.senderMap.get(senderId);
+
+                // Once the list is emptied it's removed from the map, but we can keep checking our reference to it.
+                if (timeToLive > 0) {
+                    int index = 0;
+                    while (index < messageList.messages.size()) {
+                        if (now - messageList.times.get(index) > timeToLive) {
+                            removed.add(remove(kind, senderId, index, record));
+                        } else {
+                            index++;
+                        }
+                    }
+                }
+
+                // messages are kept in the order they arrived, so the oldest is always first
+                while (senderLimit > 0 && messageList.messages.size() > senderLimit) {
+                    removed.add(remove(kind, senderId, 0, record));
+                }
+            }
+
+            // now make sure the type as a whole isn't over the limit, oldest first
+            while (typeLimit > 0 && queue.count > typeLimit) {
+
+                IntHashMap<MessageList> senderMap = queue.senderMap;
+
+                int oldestSender = -1;
+                long oldestTime = Long.MAX_VALUE;
+                for (int slot = senderMap.nextSlot(0); slot != -1; slot = senderMap.nextSlot(slot + 1)) {
+                    if (senderMap.valueAt(slot).times.get(0) < oldestTime) {
+                        oldestTime = senderMap.valueAt(slot).times.get(0);
+                        oldestSender = senderMap.keyAt(slot);
+                    }
+                }
+
+                removed.add(remove(kind, oldestSender, 0, record));
+            }
+        }
+
+        return removed;
+    }
+
+    private MessageKind getKind(Class<?> messageClass) {
+
+        MessageKind kind = MessageKind.forClass(messageClass);
+        if (kind == null) {
+            throw new IllegalArgumentException(messageClass.getName() + " can't be sent as a message.");
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the current snapshot of the queue, building it first if it's been changed since it was last asked for.
+     */
+    private Map<String, List<IMessage>> getView(MessageKind kind) {
+
+        Map<String, List<IMessage>> view = queues.get(kind).view;
+        if (view == null) {
+            view = buildView(queues.get(kind));
+        }
+        return view;
+    }
+
+    private synchronized Map<String, List<IMessage>> buildView(KindQueue queue) {
+
+        // someone else may have built it while we were waiting
+        if (queue.view != null) {
+            return queue.view;
+        }
+
+        if (queue.senderMap.isEmpty()) {
+            queue.view = Collections.emptyMap();
+            return queue.view;
+        }
+
+        // this is where the senders get their names back
+        IntHashMap<MessageList> senderMap = queue.senderMap;
+        Map<String, List<IMessage>> view = new HashMap<String, List<IMessage>>();
+        for (int slot = senderMap.nextSlot(0); slot != -1; slot = senderMap.nextSlot(slot + 1)) {
+
+            // the senders that haven't changed can keep the copy they already have
+            MessageList messageList = senderMap.valueAt(slot);
+            if (messageList.view == null) {
+                messageList.view = Collections.unmodifiableList(new ArrayList<IMessage>(messageList.messages));
+            }
+            view.put(playerNames.getName(senderMap.keyAt(slot)), messageList.view);
+        }
+
+        queue.view = Collections.unmodifiableMap(view);
+        return queue.view;
+    }
+
+    private IMessage remove(MessageKind kind, int senderId, int index, boolean record) {
+
+        MessageList messageList = queues.get(kind).senderMap.get(senderId);
+        IMessage message = messageList.messages.get(index);
+
+        if (record) {
+            store.appendRemove(ownerName, messageList.ids.get(index));
+        }
+
+        removeMessage(kind, senderId, index);
+        return message;
+    }
+
+    private void removeMessage(MessageKind kind, int senderId, int index) {
+
+        KindQueue queue = queues.get(kind);
+        MessageList messageList = queue.senderMap.get(senderId);
+
+        messageList.messages.remove(index);
+        messageList.ids.remove(index);
+        messageList.times.remove(index);
+        messageList.view = null;
+
+        queue.count--;
+        queue.view = null;
+
+        // if the list is empty now, remove it from the map, just to save object memory
+        if (messageList.messages.isEmpty()) {
+            queue.senderMap.remove(senderId);
+        }
+    }
+}
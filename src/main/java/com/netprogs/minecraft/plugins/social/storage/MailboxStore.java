@@ -0,0 +1,894 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.bukkit.craftbukkit.libs.com.google.gson.Gson;
+import org.bukkit.craftbukkit.libs.com.google.gson.GsonBuilder;
+import org.bukkit.craftbukkit.libs.com.google.gson.JsonParseException;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.io.DataFileStore;
+import com.netprogs.minecraft.plugins.social.io.JsonInterfaceTypeAdapterFactory;
+import com.netprogs.minecraft.plugins.social.storage.driver.json.DataFileLayout;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Keeps the messages waiting for each person in their own mailbox file, away from their person file.
+ *
+ * A mailbox file is only ever appended to. Each line is a single record: a message being added under a new id, a
+ * marker removing a message by id, every message from a sender or every message of a type, or a marker saying the
+ * messages from the old person file have been moved in. Sending someone a
+ * message is a single append. Their person file isn't touched and nothing has to be loaded, so it works just the
+ * same for players that are offline.
+ *
+ * Appends are queued and written in the background, so the thread sending a message never waits on the disk. Each
+ * file gets one write and one sync for everything queued for it since the last one. Until they're written, queued
+ * records are read along with the file.
+ *
+ * A person's {@link Mailbox} is only read into memory when their messages are looked at, and it's dropped again
+ * once they've been removed from the {@link PersonCache}. Once a file has collected enough removal markers, it's
+ * rewritten in the background with only the messages that are left, or deleted if there are none.
+ *
+ * Each type of message can be given a time to live, and there are limits on how many can be waiting from a single
+ * sender and of a single type. These are checked as messages arrive in a mailbox that's in memory, when a mailbox is
+ * read, and by a sweeper that works through the mailbox files a few at a time in the background.
+ *
+ * The files sit next to the person files in DataFiles and share their locks from {@link DataFileLayout}.
+ * </pre>
+ */
+public class MailboxStore {
+
+    private static final String OPERATION_ADD = "add";
+    private static final String OPERATION_REMOVE = "remove";
+    private static final String OPERATION_REMOVE_FROM = "removeFrom";
+    private static final String OPERATION_REMOVE_TYPE = "removeType";
+    private static final String OPERATION_IMPORTED = "imported";
+
+    private static final String UTF8 = "UTF-8";
+
+    private final Gson json = new GsonBuilder().disableHtmlEscaping()
+            .registerTypeAdapterFactory(new JsonInterfaceTypeAdapterFactory<IMessage>(IMessage.class)).create();
+
+    // The mailboxes that have been read into memory. Map<LowerCasePersonName, Mailbox>
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<String, Mailbox>();
+
+    // How many records in each file are no longer needed. Map<LowerCasePersonName, Count>
+    // Only changed while holding the lock for that person.
+    private final ConcurrentHashMap<String, Integer> deadRecords = new ConcurrentHashMap<String, Integer>();
+
+    // The records waiting to be appended to each file. Map<LowerCasePersonName, PendingAppends>
+    // Only changed while holding the lock for that person.
+    private final ConcurrentHashMap<String, PendingAppends> pendingAppends =
+            new ConcurrentHashMap<String, PendingAppends>();
+
+    // set while a write of the queued appends is waiting to run
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // the people waiting for their file to be compacted
+    private final Set<String> pendingCompactions =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Ids only need to be unique within a file. Starting from the clock keeps them ahead of any used before a restart.
+    private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private final PlayerNameTable playerNames;
+
+    private final int compactThreshold;
+
+    // How long (in milliseconds) each type of message is kept. Map<MessageKind, TimeToLive>
+    private final Map<MessageKind, Long> timeToLive;
+    private final int typeLimit;
+    private final int senderLimit;
+
+    private final ScheduledExecutorService executor;
+
+    // The next sub-folder of DataFiles for the sweeper to check. Only used by the executor thread.
+    private int sweepFolder;
+    private int sweepBatchSize;
+
+    // What's been removed for being too old or over a limit
+    private final AtomicLong removedCount = new AtomicLong();
+    private final AtomicLong reclaimedMemory = new AtomicLong();
+    private final AtomicLong reclaimedDisk = new AtomicLong();
+
+    // The totals when the sweeper started its current pass, so it can report what that pass removed
+    private long passRemovedCount;
+    private long passReclaimedMemory;
+    private long passReclaimedDisk;
+
+    /**
+     * A single line of a mailbox file.
+     */
+    private static class MailboxRecord {
+
+        private String operation;
+        private long id;
+        private String type;
+        private String sender;
+        private long time;
+        private IMessage message;
+    }
+
+    /**
+     * The records queued for a single mailbox file.
+     */
+    private static class PendingAppends {
+
+        private final String personName;
+        private final List<MailboxRecord> records = new ArrayList<MailboxRecord>();
+
+        public PendingAppends(String personName) {
+            this.personName = personName;
+        }
+    }
+
+    /**
+     * @param timeToLive How long (in milliseconds) each type of message is kept. Types not listed are kept until read.
+     * @param typeLimit The most messages of one type a person can have waiting. 0 for no limit.
+     * @param senderLimit The most messages of one type a person can have waiting from a single sender.
+     */
+    public MailboxStore(PlayerNameTable playerNames, int compactThreshold, Map<MessageKind, Long> timeToLive,
+            int typeLimit, int senderLimit) {
+
+        this.playerNames = playerNames;
+        this.compactThreshold = compactThreshold;
+        this.timeToLive = timeToLive;
+        this.typeLimit = typeLimit;
+        this.senderLimit = senderLimit;
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocialNetwork-Mailbox");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the mailbox of the person, reading it from their file if it isn't in memory yet.
+     */
+    public Mailbox getMailbox(String personName) {
+
+        String key = personName.toLowerCase();
+
+        Mailbox mailbox = mailboxes.get(key);
+        if (mailbox != null) {
+            return mailbox;
+        }
+
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            // someone else may have read it while we were waiting
+            mailbox = mailboxes.get(key);
+            if (mailbox == null) {
+
+                mailbox = readMailbox(personName, true);
+
+                // it isn't shared yet, so this can't hold up anyone using it
+                List<IMessage> removed = mailbox.expire(System.currentTimeMillis(), true);
+                if (!removed.isEmpty()) {
+                    countRemoved(removed, false);
+                }
+
+                mailboxes.put(key, mailbox);
+            }
+        }
+
+        return mailbox;
+    }
+
+    /**
+     * Delivers a message to the person. If their mailbox isn't in memory, it's simply appended to their file.
+     */
+    public void deliver(String personName, String senderName, IMessage message) {
+
+        Mailbox mailbox;
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            // Mailboxes are only read while holding this lock, so if it isn't here now the append can't be missed.
+            mailbox = mailboxes.get(personName.toLowerCase());
+            if (mailbox == null) {
+                appendAdd(personName, senderName, message, System.currentTimeMillis());
+                return;
+            }
+        }
+
+        mailbox.add(senderName, message);
+    }
+
+    /**
+     * Moves messages that were kept in the person file into their mailbox. The mailbox remembers that it's been done,
+     * so if the person file still has them the next time it's loaded they aren't delivered again. They're written out
+     * before returning, so the person file can be saved without them.
+     * @param messageQueue <MessageClassName, <PlayerName, List<MessageInstance>>>
+     */
+    public void importMessages(String personName, Map<String, Map<String, List<? extends IMessage>>> messageQueue) {
+
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            Mailbox mailbox = mailboxes.get(personName.toLowerCase());
+            boolean imported = (mailbox != null) ? mailbox.isImported() : readMailbox(personName, false).isImported();
+
+            if (imported) {
+                SocialNetworkPlugin.log("[" + personName + "] Their old messages are already in their mailbox.");
+                return;
+            }
+
+            MailboxRecord record = new MailboxRecord();
+            record.operation = OPERATION_IMPORTED;
+            append(personName, record, 0);
+
+            if (mailbox != null) {
+                mailbox.setImported(true);
+            }
+        }
+
+        int count = 0;
+        for (Map<String, List<? extends IMessage>> senderMap : messageQueue.values()) {
+            for (Map.Entry<String, List<? extends IMessage>> entry : senderMap.entrySet()) {
+                for (IMessage message : entry.getValue()) {
+                    deliver(personName, entry.getKey(), message);
+                    count++;
+                }
+            }
+        }
+
+        flushAppends();
+
+        SocialNetworkPlugin.log("[" + personName + "] Moved " + count + " messages into their mailbox.");
+    }
+
+    /**
+     * Deletes the mailbox of the person along with their file.
+     */
+    public void deleteMailbox(String personName) {
+
+        String key = personName.toLowerCase();
+
+        synchronized (DataFileLayout.getLock(personName)) {
+            mailboxes.remove(key);
+            deadRecords.remove(key);
+            pendingAppends.remove(key);
+            DataFileLayout.deleteFile(personName, DataFileLayout.MAILBOX_SUFFIX);
+        }
+    }
+
+    /**
+     * Drops the mailboxes of anyone that is no longer in the cache. Their files already have everything in them.
+     */
+    public void unloadMailboxes(PersonCache personCache) {
+
+        for (Mailbox mailbox : mailboxes.values()) {
+
+            String personName = mailbox.getOwnerName();
+            if (personCache.peek(personName) != null) {
+                continue;
+            }
+
+            synchronized (DataFileLayout.getLock(personName)) {
+                mailboxes.remove(personName.toLowerCase(), mailbox);
+            }
+        }
+    }
+
+    /**
+     * @return The number of mailboxes read into memory.
+     */
+    public int getLoadedCount() {
+        return mailboxes.size();
+    }
+
+    /**
+     * Starts checking the mailbox files in the background for messages that are too old or over a limit.
+     * @param interval The period of time (in seconds) between each batch.
+     * @param batchSize The most mailbox files checked in each batch.
+     */
+    public void startSweeper(long interval, int batchSize) {
+
+        if (interval <= 0 || batchSize <= 0) {
+            return;
+        }
+
+        sweepBatchSize = batchSize;
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sweep();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return The number of messages removed for being too old or over a limit.
+     */
+    public long getRemovedCount() {
+        return removedCount.get();
+    }
+
+    /**
+     * @return About how much memory (in bytes) the removed messages were using.
+     */
+    public long getReclaimedMemory() {
+        return reclaimedMemory.get();
+    }
+
+    /**
+     * @return How much smaller (in bytes) the mailbox files are after removing messages.
+     */
+    public long getReclaimedDisk() {
+        return reclaimedDisk.get();
+    }
+
+    /**
+     * Stops the background compaction and writes out any appends that are still queued. Compactions that didn't get
+     * to run will be picked up the next time the file is read.
+     * @param timeout The maximum time (in seconds) to wait for a compaction that is already running.
+     */
+    public void shutdown(long timeout) {
+
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Timed out waiting for the mailbox compaction.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flushAppends();
+    }
+
+    long getTimeToLive(MessageKind kind) {
+        Long value = timeToLive.get(kind);
+        return (value == null) ? 0 : value;
+    }
+
+    PlayerNameTable getPlayerNames() {
+        return playerNames;
+    }
+
+    int getTypeLimit() {
+        return typeLimit;
+    }
+
+    int getSenderLimit() {
+        return senderLimit;
+    }
+
+    /**
+     * Adds the removed messages to the totals.
+     * @param inMemory True if they were removed from a mailbox that is in memory.
+     */
+    void countRemoved(List<IMessage> messages, boolean inMemory) {
+
+        removedCount.addAndGet(messages.size());
+
+        if (inMemory) {
+
+            // a rough guess, based on two bytes for each character it takes to write them out
+            long size = 0;
+            for (IMessage message : messages) {
+                size += json.toJson(message, IMessage.class).length() * 2;
+            }
+            reclaimedMemory.addAndGet(size);
+        }
+    }
+
+    long appendAdd(String personName, String senderName, IMessage message, long time) {
+
+        MailboxRecord record = new MailboxRecord();
+        record.operation = OPERATION_ADD;
+        record.id = nextId.incrementAndGet();
+        record.sender = senderName;
+        record.time = time;
+        record.message = message;
+
+        append(personName, record, 0);
+        return record.id;
+    }
+
+    void appendRemove(String personName, long id) {
+
+        MailboxRecord record = new MailboxRecord();
+        record.operation = OPERATION_REMOVE;
+        record.id = id;
+
+        // both the marker and the message it removes can go
+        append(personName, record, 2);
+    }
+
+    void appendRemoveFrom(String personName, String senderName) {
+
+        MailboxRecord record = new MailboxRecord();
+        record.operation = OPERATION_REMOVE_FROM;
+        record.sender = senderName;
+
+        append(personName, record, 1);
+    }
+
+    void appendRemoveType(String personName, MessageKind kind) {
+
+        MailboxRecord record = new MailboxRecord();
+        record.operation = OPERATION_REMOVE_TYPE;
+        record.type = kind.getMessageClass().getCanonicalName();
+
+        append(personName, record, 1);
+    }
+
+    /**
+     * Queues the record to be appended to the end of the mailbox file.
+     * @param deadCount How many records in the file are no longer needed because of this one.
+     */
+    private void append(String personName, MailboxRecord record, int deadCount) {
+
+        String key = personName.toLowerCase();
+
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            PendingAppends pending = pendingAppends.get(key);
+            if (pending == null) {
+                pending = new PendingAppends(personName);
+                pendingAppends.put(key, pending);
+            }
+            pending.records.add(record);
+
+            if (deadCount > 0) {
+                addDeadRecords(personName, deadCount);
+            }
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        flushAppends();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+
+                // we're shutting down, so write it out now
+                flushAppends();
+            }
+        }
+    }
+
+    /**
+     * Writes out everything that's queued, one file at a time.
+     */
+    private void flushAppends() {
+
+        flushScheduled.set(false);
+
+        for (PendingAppends pending : pendingAppends.values()) {
+
+            String personName = pending.personName;
+            String key = personName.toLowerCase();
+
+            // Readers take the lock too, so they see the records either in the queue or in the file
+            synchronized (DataFileLayout.getLock(personName)) {
+
+                // it may have been written or compacted since we started
+                if (pendingAppends.get(key) != pending) {
+                    continue;
+                }
+
+                if (writeAppends(personName, pending.records)) {
+                    pendingAppends.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the records to the end of the mailbox file and makes sure they're on disk.
+     * Call this while holding the lock for the person.
+     * @return False if they couldn't be written. They're left in the queue for the next try.
+     */
+    private boolean writeAppends(String personName, List<MailboxRecord> records) {
+
+        File file = DataFileLayout.prepareWrite(personName, DataFileLayout.MAILBOX_SUFFIX);
+
+        FileOutputStream output = null;
+        try {
+
+            StringBuilder lines = new StringBuilder();
+            for (MailboxRecord record : records) {
+                lines.append(json.toJson(record)).append('\n');
+            }
+
+            output = new FileOutputStream(file, true);
+
+            FileChannel channel = output.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(UTF8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            return true;
+
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to write to " + file.getName(), e);
+            return false;
+
+        } finally {
+
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to close " + file.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the mailbox file of the person, along with anything still queued for it. Call this while holding the lock
+     * for the person.
+     * @param countDeadRecords True to check if the file needs to be compacted.
+     */
+    private Mailbox readMailbox(String personName, boolean countDeadRecords) {
+
+        Mailbox mailbox = new Mailbox(personName, this);
+
+        int recordCount = 0;
+        int liveCount = 0;
+
+        // messages stored before they were given a time start their time to live from now
+        long now = System.currentTimeMillis();
+
+        File file = DataFileLayout.findFile(personName, DataFileLayout.MAILBOX_SUFFIX);
+        if (file.exists()) {
+
+            BufferedReader reader = null;
+            try {
+
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    MailboxRecord record;
+                    try {
+                        record = json.fromJson(line, MailboxRecord.class);
+                    } catch (JsonParseException e) {
+
+                        // most likely the last line, cut short by a crash
+                        SocialNetworkPlugin.logger().log(Level.WARNING,
+                                "Skipping a damaged record in " + file.getName());
+                        continue;
+                    }
+
+                    recordCount++;
+                    liveCount += applyRecord(mailbox, record, now, file.getName());
+                }
+
+            } catch (IOException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to read " + file.getName(), e);
+
+            } finally {
+
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to close " + file.getName(), e);
+                    }
+                }
+            }
+        }
+
+        // these are written to the end of the file later, so they come after everything in it
+        PendingAppends pending = pendingAppends.get(personName.toLowerCase());
+        if (pending != null) {
+            for (MailboxRecord record : pending.records) {
+                recordCount++;
+                liveCount += applyRecord(mailbox, record, now, file.getName());
+            }
+        }
+
+        // The sender and type markers don't say how many messages they removed, so this may be an over-estimate,
+        // which is fine since it only decides when to compact.
+        if (countDeadRecords) {
+            deadRecords.remove(personName.toLowerCase());
+            addDeadRecords(personName, recordCount - Math.max(liveCount, 0));
+        }
+
+        return mailbox;
+    }
+
+    /**
+     * Applies a single record to the mailbox.
+     * @return The change in the number of messages it holds, as far as can be told.
+     */
+    private int applyRecord(Mailbox mailbox, MailboxRecord record, long now, String fileName) {
+
+        if (OPERATION_ADD.equals(record.operation) && record.message != null) {
+
+            MessageKind kind = MessageKind.forClass(record.message.getClass());
+            if (kind == null) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Skipping a message of an unknown type in " + fileName);
+                return 0;
+            }
+
+            long time = (record.time == 0) ? now : record.time;
+            mailbox.addMessage(kind, record.sender, record.message, record.id, time);
+
+            // keep new ids ahead of the ones in the file in case the clock has gone backwards
+            while (nextId.get() < record.id) {
+                nextId.compareAndSet(nextId.get(), record.id);
+            }
+
+            return 1;
+
+        } else if (OPERATION_REMOVE.equals(record.operation)) {
+
+            return mailbox.removeMessage(record.id) ? -1 : 0;
+
+        } else if (OPERATION_REMOVE_FROM.equals(record.operation)) {
+            mailbox.removeSender(record.sender);
+
+        } else if (OPERATION_REMOVE_TYPE.equals(record.operation)) {
+            MessageKind kind = MessageKind.forClassName(record.type);
+            if (kind != null) {
+                mailbox.removeType(kind);
+            }
+
+        } else if (OPERATION_IMPORTED.equals(record.operation)) {
+            mailbox.setImported(true);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Counts records that are no longer needed, queuing a compaction once there are enough of them.
+     * Call this while holding the lock for the person.
+     */
+    private void addDeadRecords(String personName, int count) {
+
+        String key = personName.toLowerCase();
+
+        Integer current = deadRecords.get(key);
+        int total = (current == null) ? count : current + count;
+        deadRecords.put(key, total);
+
+        if (compactThreshold > 0 && total >= compactThreshold && pendingCompactions.add(key)) {
+
+            final String compactName = personName;
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        compact(compactName);
+                    }
+                });
+            } catch (RuntimeException e) {
+
+                // we're shutting down, it'll be picked up next time the file is read
+                pendingCompactions.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the mailbox file of the person with only the messages that are left in it.
+     */
+    private void compact(String personName) {
+
+        String key = personName.toLowerCase();
+        pendingCompactions.remove(key);
+
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            // Nothing can be appended while we hold the lock, so the file is up to date. The copy in memory is left
+            // alone since it would have to be locked as well, and changes to it lock the mailbox before the file.
+            Mailbox mailbox = readMailbox(personName, false);
+            writeMailbox(personName, mailbox);
+        }
+    }
+
+    /**
+     * Checks the next batch of mailbox files for messages that are too old or over a limit.
+     * Once every file has been checked, the totals for that pass are reported.
+     */
+    private void sweep() {
+
+        long now = System.currentTimeMillis();
+
+        int checkedFiles = 0;
+        int checkedFolders = 0;
+
+        // most folders are empty, so don't let a batch go on forever looking for files
+        while (checkedFiles < sweepBatchSize && checkedFolders < sweepBatchSize * 16) {
+
+            if (sweepFolder == 0) {
+                passRemovedCount = removedCount.get();
+                passReclaimedMemory = reclaimedMemory.get();
+                passReclaimedDisk = reclaimedDisk.get();
+            }
+
+            for (File file : DataFileLayout.listFolder(sweepFolder, DataFileLayout.MAILBOX_SUFFIX)) {
+
+                String fileName = file.getName();
+                sweepMailbox(fileName.substring(0, fileName.length() - DataFileLayout.MAILBOX_SUFFIX.length()), now);
+                checkedFiles++;
+            }
+
+            checkedFolders++;
+            sweepFolder = (sweepFolder + 1) % DataFileLayout.FOLDER_COUNT;
+
+            if (sweepFolder == 0) {
+                reportSweep();
+            }
+        }
+    }
+
+    private void sweepMailbox(String personName, long now) {
+
+        String key = personName.toLowerCase();
+
+        // If it's in memory, the removals are added to the file like any others
+        Mailbox mailbox = mailboxes.get(key);
+        if (mailbox != null) {
+
+            List<IMessage> removed = mailbox.expire(now, true);
+            if (!removed.isEmpty()) {
+                countRemoved(removed, true);
+            }
+            return;
+        }
+
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            // if it was read in while we were waiting, it will be checked on the next pass
+            if (mailboxes.containsKey(key)) {
+                return;
+            }
+
+            // otherwise the file is simply written again without them
+            mailbox = readMailbox(personName, false);
+
+            List<IMessage> removed = mailbox.expire(now, false);
+            if (!removed.isEmpty()) {
+                countRemoved(removed, false);
+                writeMailbox(personName, mailbox);
+            }
+        }
+    }
+
+    private void reportSweep() {
+
+        long removed = removedCount.get() - passRemovedCount;
+        if (removed == 0) {
+            return;
+        }
+
+        long memory = (reclaimedMemory.get() - passReclaimedMemory) / 1024;
+        long disk = (reclaimedDisk.get() - passReclaimedDisk) / 1024;
+
+        SocialNetworkPlugin.logger().info(
+                "Removed " + removed + " old messages, freeing about " + memory + "KB of memory and " + disk
+                        + "KB of disk.");
+    }
+
+    /**
+     * Writes the mailbox file with only the messages in the given mailbox, or deletes it if there are none and it
+     * doesn't need to remember that old messages were moved in. The mailbox
+     * must have been read with {@link #readMailbox(String, boolean)} while holding the lock for the person, which is
+     * still held.
+     */
+    private void writeMailbox(String personName, Mailbox mailbox) {
+
+        String key = personName.toLowerCase();
+
+        File file = DataFileLayout.prepareWrite(personName, DataFileLayout.MAILBOX_SUFFIX);
+        long previousLength = file.length();
+
+        if (mailbox.isEmpty() && !mailbox.isImported()) {
+
+            file.delete();
+            deadRecords.remove(key);
+            pendingAppends.remove(key);
+            reclaimedDisk.addAndGet(previousLength);
+
+            SocialNetworkPlugin.log("[" + personName + "] Removed their empty mailbox file.");
+            return;
+        }
+
+        try {
+
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+            final IOException[] failure = new IOException[1];
+
+            if (mailbox.isImported()) {
+                MailboxRecord record = new MailboxRecord();
+                record.operation = OPERATION_IMPORTED;
+                output.write((json.toJson(record) + "\n").getBytes(UTF8));
+            }
+
+            mailbox.visit(new Mailbox.MessageVisitor() {
+                public void visit(String senderName, IMessage message, long id, long time) {
+
+                    MailboxRecord record = new MailboxRecord();
+                    record.operation = OPERATION_ADD;
+                    record.id = id;
+                    record.sender = senderName;
+                    record.time = time;
+                    record.message = message;
+
+                    try {
+                        output.write((json.toJson(record) + "\n").getBytes(UTF8));
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+
+            DataFileStore.write(file, output.toByteArray());
+            deadRecords.remove(key);
+
+            // anything that was queued was read in with the rest, so it's in there now
+            pendingAppends.remove(key);
+            reclaimedDisk.addAndGet(Math.max(0, previousLength - output.size()));
+
+            SocialNetworkPlugin.log("[" + personName + "] Compacted their mailbox file.");
+
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to compact " + file.getName(), e);
+        }
+    }
+}
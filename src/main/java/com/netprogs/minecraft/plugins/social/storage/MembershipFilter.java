@@ -0,0 +1,166 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Answers "is this player in the network?" in memory for the players that aren't.
+ *
+ * A Bloom filter is built from the network player list. If the filter says no, the player is definitely not in the
+ * network. If it says yes they probably are, and the normal load will find out for sure. Any player a load couldn't
+ * find is remembered exactly in the non-member list so they're answered straight away next time.
+ *
+ * Players can't be taken out of a Bloom filter, so removed players are only added to the non-member list.
+ * Once more players have been added than the filter was sized for, it should be rebuilt to keep it accurate.
+ * </pre>
+ */
+public class MembershipFilter {
+
+    // Aim for about 1% of non-members getting through the filter
+    private static final int BITS_PER_PLAYER = 10;
+    private static final int HASH_COUNT = 7;
+
+    private static final int MINIMUM_CAPACITY = 1024;
+
+    // The non-member list is cleared once it gets this big so it can't grow without limit
+    private static final int MAXIMUM_NON_MEMBERS = 10000;
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int capacity;
+
+    private final AtomicInteger memberCount = new AtomicInteger();
+
+    // Set<lowerCaseName>
+    private final ConcurrentHashMap<String, Boolean> nonMembers = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Builds the filter from the players in the network, leaving room for the network to double in size.
+     */
+    public MembershipFilter(Collection<String> players) {
+
+        capacity = Math.max(MINIMUM_CAPACITY, players.size() * 2);
+        bitCount = capacity * BITS_PER_PLAYER;
+        bits = new AtomicLongArray((bitCount + 63) / 64);
+
+        for (String playerName : players) {
+            setBits(playerName.toLowerCase());
+        }
+        memberCount.set(players.size());
+    }
+
+    /**
+     * @return true if the player is known not to be in the network.
+     */
+    public boolean isNonMember(String playerName) {
+
+        String key = playerName.toLowerCase();
+        return nonMembers.containsKey(key) || !mightContain(key);
+    }
+
+    /**
+     * Remember that a load could not find this player.
+     */
+    public void addNonMember(String playerName) {
+
+        if (nonMembers.size() >= MAXIMUM_NON_MEMBERS) {
+            nonMembers.clear();
+        }
+
+        nonMembers.put(playerName.toLowerCase(), Boolean.TRUE);
+    }
+
+    public void addMember(String playerName) {
+
+        String key = playerName.toLowerCase();
+        nonMembers.remove(key);
+        setBits(key);
+        memberCount.incrementAndGet();
+    }
+
+    public void removeMember(String playerName) {
+        addNonMember(playerName);
+    }
+
+    /**
+     * @return true if more players have been added than the filter was built for.
+     */
+    public boolean isOverCapacity() {
+        return memberCount.get() > capacity;
+    }
+
+    private boolean mightContain(String key) {
+
+        int hash1 = key.hashCode();
+        int hash2 = secondHash(key);
+
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = bitIndex(hash1 + i * hash2);
+            if ((bits.get(bit >>> 6) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void setBits(String key) {
+
+        int hash1 = key.hashCode();
+        int hash2 = secondHash(key);
+
+        for (int i = 0; i < HASH_COUNT; i++) {
+
+            int bit = bitIndex(hash1 + i * hash2);
+            int index = bit >>> 6;
+            long mask = 1L << (bit & 63);
+
+            while (true) {
+                long current = bits.get(index);
+                if ((current & mask) != 0 || bits.compareAndSet(index, current, current | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private int bitIndex(int hash) {
+        return (hash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * FNV-1a, so it isn't related to String.hashCode(). Always odd so every step lands on a different bit.
+     */
+    private static int secondHash(String key) {
+
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+}
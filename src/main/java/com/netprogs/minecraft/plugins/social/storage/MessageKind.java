@@ -0,0 +1,74 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.netprogs.minecraft.plugins.social.storage.data.Alert;
+import com.netprogs.minecraft.plugins.social.storage.data.Gift;
+import com.netprogs.minecraft.plugins.social.storage.data.Request;
+import com.netprogs.minecraft.plugins.social.storage.data.Sticky;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * The types of message a {@link Mailbox} can hold.
+ */
+public enum MessageKind {
+
+    request(Request.class), alert(Alert.class), sticky(Sticky.class), gift(Gift.class);
+
+    // Map<MessageClass, MessageKind>
+    private static final Map<Class<?>, MessageKind> classMap = new HashMap<Class<?>, MessageKind>();
+
+    // Map<MessageClassName, MessageKind>. The names are what the mailbox files use.
+    private static final Map<String, MessageKind> classNameMap = new HashMap<String, MessageKind>();
+
+    static {
+        for (MessageKind kind : values()) {
+            classMap.put(kind.messageClass, kind);
+            classNameMap.put(kind.messageClass.getCanonicalName(), kind);
+        }
+    }
+
+    private final Class<? extends IMessage> messageClass;
+
+    private MessageKind(Class<? extends IMessage> messageClass) {
+        this.messageClass = messageClass;
+    }
+
+    public Class<? extends IMessage> getMessageClass() {
+        return messageClass;
+    }
+
+    /**
+     * @return The kind of message for the class, or null if it's not one a mailbox holds.
+     */
+    public static MessageKind forClass(Class<?> messageClass) {
+        return classMap.get(messageClass);
+    }
+
+    /**
+     * @return The kind of message for the class name written in a mailbox file, or null if it's not one we know.
+     */
+    public static MessageKind forClassName(String className) {
+        return classNameMap.get(className);
+    }
+}
@@ -0,0 +1,125 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * A read-only view of a {@link PersistentIntMap} keyed by player id, that looks like a map keyed by player name.
+ *
+ * Names are only looked up in the {@link PlayerNameTable} as the entries are walked, so the view itself costs
+ * nothing to hand out. The map under it never changes, so the view can be kept and walked from any thread.
+ * </pre>
+ */
+public class NameKeyedMap<V> extends AbstractMap<String, V> {
+
+    private final PersistentIntMap<V> map;
+    private final PlayerNameTable playerNames;
+
+    private Set<Map.Entry<String, V>> entrySet;
+
+    public NameKeyedMap(PersistentIntMap<V> map, PlayerNameTable playerNames) {
+        this.map = map;
+        this.playerNames = playerNames;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public V get(Object key) {
+
+        int id = findId(key);
+        return (id == -1) ? null : map.get(id);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        int id = findId(key);
+        return id != -1 && map.containsKey(id);
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, V>>() {
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+
+        return entrySet;
+    }
+
+    private int findId(Object key) {
+        return (key instanceof String) ? playerNames.findId((String) key) : -1;
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, V>> {
+
+        private final PersistentIntMap.Cursor<V> cursor = map.cursor();
+        private boolean hasNext = cursor.next();
+
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        public Map.Entry<String, V> next() {
+
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<String, V> entry =
+                    new AbstractMap.SimpleImmutableEntry<String, V>(playerNames.getName(cursor.key()), cursor.value());
+
+            hasNext = cursor.next();
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * An immutable map keyed by a primitive int, used where a map keyed by player id is handed out to readers.
+ *
+ * It's a hash trie (HAMT): each node holds up to 32 children picked by 5 bits of the key's hash, and only keeps the
+ * ones that are used. Adding or removing a key copies the nodes on the path to it and shares the rest with the map
+ * it came from, so a change costs a few small arrays instead of a copy of the whole map. A map never changes once
+ * it's made, so it can be read from any thread without a lock and kept as a snapshot for free.
+ *
+ * The hash never maps two keys to the same value, so two keys always end up in different slots by the last level
+ * and the trie never needs collision lists. Null values are not allowed.
+ * </pre>
+ */
+public final class PersistentIntMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    // 32 bits of hash at 5 bits per level
+    private static final int MAXIMUM_DEPTH = 7;
+
+    private static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<Object>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+
+        int hash = hash(key);
+        Node node = root;
+        int shift = 0;
+
+        while (node != null) {
+
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+
+            Object child = node.children[node.index(bit)];
+            if (child instanceof Leaf) {
+                Leaf leaf = (Leaf) child;
+                return (leaf.key == key) ? (V) leaf.value : null;
+            }
+
+            node = (Node) child;
+            shift += BITS;
+        }
+
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return A map with the key set to the value. This map is left as it was.
+     */
+    public PersistentIntMap<V> plus(int key, V value) {
+
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed");
+        }
+
+        V previous = get(key);
+        if (previous == value) {
+            return this;
+        }
+
+        Leaf leaf = new Leaf(key, value);
+        Node newRoot = (root == null) ? new Node(bit(hash(key), 0), new Object[] { leaf }) : put(root, 0, leaf);
+
+        return new PersistentIntMap<V>(newRoot, (previous == null) ? size + 1 : size);
+    }
+
+    /**
+     * @return A map without the key. This map is left as it was.
+     */
+    public PersistentIntMap<V> minus(int key) {
+
+        if (!containsKey(key)) {
+            return this;
+        }
+
+        if (size == 1) {
+            return empty();
+        }
+
+        return new PersistentIntMap<V>((Node) remove(root, 0, hash(key), key), size - 1);
+    }
+
+    /**
+     * Walks the map without copying it. Entries come back in no particular order.
+     */
+    public Cursor<V> cursor() {
+        return new Cursor<V>(root);
+    }
+
+    private static Node put(Node node, int shift, Leaf leaf) {
+
+        int bit = bit(hash(leaf.key), shift);
+        int index = node.index(bit);
+
+        if ((node.bitmap & bit) == 0) {
+
+            Object[] children = new Object[node.children.length + 1];
+            System.arraycopy(node.children, 0, children, 0, index);
+            children[index] = leaf;
+            System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+            return new Node(node.bitmap | bit, children);
+        }
+
+        Object child = node.children[index];
+        Object replacement;
+
+        if (child instanceof Leaf) {
+            Leaf existing = (Leaf) child;
+            replacement = (existing.key == leaf.key) ? leaf : pair(shift + BITS, existing, leaf);
+        } else {
+            replacement = put((Node) child, shift + BITS, leaf);
+        }
+
+        return node.with(index, replacement);
+    }
+
+    /**
+     * Makes the smallest branch that holds both leaves, which have different keys.
+     */
+    private static Node pair(int shift, Leaf first, Leaf second) {
+
+        int firstFragment = (hash(first.key) >>> shift) & MASK;
+        int secondFragment = (hash(second.key) >>> shift) & MASK;
+
+        if (firstFragment == secondFragment) {
+            return new Node(1 << firstFragment, new Object[] { pair(shift + BITS, first, second) });
+        }
+
+        Object[] children =
+                (firstFragment < secondFragment) ? new Object[] { first, second } : new Object[] { second, first };
+        return new Node((1 << firstFragment) | (1 << secondFragment), children);
+    }
+
+    /**
+     * Must only be called for a key that's in the branch.
+     * @return The branch without the key, its only leaf if that's all that's left below the root, or null if the
+     *         branch is now empty.
+     */
+    private static Object remove(Node node, int shift, int hash, int key) {
+
+        int bit = bit(hash, shift);
+        int index = node.index(bit);
+        Object child = node.children[index];
+
+        Object replacement = (child instanceof Leaf) ? null : remove((Node) child, shift + BITS, hash, key);
+
+        if (replacement == null) {
+
+            if (node.bitmap == bit) {
+                return null;
+            }
+
+            Object[] children = new Object[node.children.length - 1];
+            System.arraycopy(node.children, 0, children, 0, index);
+            System.arraycopy(node.children, index + 1, children, index, children.length - index);
+
+            // a branch with a single leaf can be replaced by the leaf itself
+            if (shift > 0 && children.length == 1 && children[0] instanceof Leaf) {
+                return children[0];
+            }
+
+            return new Node(node.bitmap & ~bit, children);
+        }
+
+        if (shift > 0 && node.children.length == 1 && replacement instanceof Leaf) {
+            return replacement;
+        }
+
+        return node.with(index, replacement);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Ids are handed out in order, so spread them out across the first levels. Both steps can be undone, so no two
+     * keys share a hash.
+     */
+    private static int hash(int key) {
+
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Leaf {
+
+        private final int key;
+        private final Object value;
+
+        private Leaf(int key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Node {
+
+        // Which of the 32 slots are used. The children are kept in slot order, either a Leaf or another Node.
+        private final int bitmap;
+        private final Object[] children;
+
+        private Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Node with(int index, Object child) {
+
+            Object[] copy = children.clone();
+            copy[index] = child;
+            return new Node(bitmap, copy);
+        }
+    }
+
+    /**
+     * Steps through the leaves of a map. Call {@link #next()} before reading the first entry.
+     */
+    public static final class Cursor<V> {
+
+        private final Object[][] path = new Object[MAXIMUM_DEPTH][];
+        private final int[] positions = new int[MAXIMUM_DEPTH];
+        private int depth;
+
+        private Leaf current;
+
+        private Cursor(Node root) {
+
+            if (root == null) {
+                depth = -1;
+            } else {
+                path[0] = root.children;
+            }
+        }
+
+        /**
+         * @return True if it moved to another entry, false if there are no more.
+         */
+        public boolean next() {
+
+            while (depth >= 0) {
+
+                Object[] children = path[depth];
+                if (positions[depth] == children.length) {
+                    depth--;
+                    continue;
+                }
+
+                Object child = children[positions[depth]++];
+                if (child instanceof Leaf) {
+                    current = (Leaf) child;
+                    return true;
+                }
+
+                depth++;
+                path[depth] = ((Node) child).children;
+                positions[depth] = 0;
+            }
+
+            current = null;
+            return false;
+        }
+
+        public int key() {
+            return current.key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return (V) current.value;
+        }
+    }
+}
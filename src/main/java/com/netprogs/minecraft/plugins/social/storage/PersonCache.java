@@ -0,0 +1,422 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.Bukkit;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.SocialPerson;
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Holds the people that have been loaded from the data manager.
+ *
+ * Lookups of people already loaded don't take any locks. When someone isn't loaded yet, the first thread to ask for
+ * them loads them while any others asking for the same person wait for that load to finish. Threads asking for other
+ * people are never held up by it.
+ *
+ * Each sweep removes anyone that hasn't been used for idleTime, then the least recently used people until there are
+ * no more than maximumSize left. Players that are online are never removed, and everyone is saved before they're
+ * removed.
+ *
+ * Each person's settings are loaded the first time they're used and kept with them. Changes are written back by
+ * each sweep, when they're removed and when the plug-in is disabled.
+ * </pre>
+ */
+public class PersonCache {
+
+    // Anyone used more recently than this is never removed, so we don't pull someone out from under a running command.
+    private static final long MINIMUM_IDLE_TIME = 60 * 1000L;
+
+    /**
+     * Loads a person that isn't in the cache yet.
+     */
+    public interface Loader {
+
+        /**
+         * @return The loaded person, or null if they don't exist.
+         * @throws IOException If they could not be read.
+         */
+        public CachedPerson load(String personName) throws IOException;
+    }
+
+    public static class CachedPerson {
+
+        private final Person person;
+        private final SocialPerson socialPerson;
+
+        // Loaded the first time they're needed. Guarded by synchronizing on this.
+        private PersonSettings settings;
+        private boolean settingsChanged;
+
+        public CachedPerson(SocialPerson socialPerson, Person person) {
+            this.person = person;
+            this.socialPerson = socialPerson;
+        }
+
+        public Person getPerson() {
+            return person;
+        }
+
+        public SocialPerson getSocialPerson() {
+            return socialPerson;
+        }
+
+        /**
+         * Returns their settings, loading them the first time they're asked for.
+         */
+        public synchronized PersonSettings getSettings(WriteBehindPersonDataManager personDataManager) {
+
+            if (settings == null) {
+                settings = personDataManager.loadPersonSettings(person);
+                if (settings == null) {
+                    settings = new PersonSettings();
+                }
+            }
+
+            return settings;
+        }
+
+        /**
+         * Marks the settings as needing to be written back on the next sweep.
+         */
+        public synchronized void settingsChanged() {
+            settingsChanged = true;
+        }
+
+        /**
+         * Writes back the settings if they've changed since they were last saved.
+         */
+        public synchronized void saveSettings(WriteBehindPersonDataManager personDataManager) {
+
+            if (settingsChanged) {
+                personDataManager.savePersonSettings(person, settings);
+                settingsChanged = false;
+            }
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final CachedPerson value;
+        private volatile long lastAccess;
+
+        // Set once the entry has been taken out of the cache. Guarded by synchronizing on this.
+        private boolean removed;
+
+        public CacheEntry(CachedPerson value) {
+            this.value = value;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * Marks the entry as used, unless it has already been removed. Removal checks the last use under the same
+         * lock, so nobody can be handed an entry that's on its way out.
+         * @return False if it has been removed.
+         */
+        public synchronized boolean use() {
+
+            if (removed) {
+                return false;
+            }
+
+            lastAccess = System.currentTimeMillis();
+            return true;
+        }
+
+        /**
+         * Takes the entry out of the cache, but only if it hasn't been used since the given time.
+         * @return True if it was removed.
+         */
+        public synchronized boolean removeIfUnused(long expectedLastAccess, String key,
+                ConcurrentHashMap<String, CacheEntry> entries) {
+
+            if (removed || lastAccess != expectedLastAccess) {
+                return false;
+            }
+
+            if (!entries.remove(key, this)) {
+                return false;
+            }
+
+            removed = true;
+            return true;
+        }
+    }
+
+    private static class EvictionCandidate {
+
+        private final String key;
+        private final CacheEntry entry;
+        private final long lastAccess;
+
+        public EvictionCandidate(String key, CacheEntry entry) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    private final WriteBehindPersonDataManager personDataManager;
+
+    private final int maximumSize;
+    private final long idleTime;
+
+    // Map<lowerCaseName, entry>
+    private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<String, CacheEntry>();
+
+    // The loads currently running. Map<lowerCaseName, load>
+    private final ConcurrentHashMap<String, FutureTask<CachedPerson>> loads =
+            new ConcurrentHashMap<String, FutureTask<CachedPerson>>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param personDataManager Used to save each person before they're removed.
+     * @param maximumSize The most people to keep once everyone idle has been removed. 0 for no limit.
+     * @param idleTime The time (in seconds) someone can go unused before they're removed. 0 for no limit.
+     */
+    public PersonCache(WriteBehindPersonDataManager personDataManager, int maximumSize, long idleTime) {
+
+        this.personDataManager = personDataManager;
+        this.maximumSize = maximumSize;
+        this.idleTime = idleTime * 1000L;
+    }
+
+    public CachedPerson get(String personName) {
+
+        // an entry that was removed while we were looking counts as not being there
+        CacheEntry entry = entries.get(personName.toLowerCase());
+        if (entry == null || !entry.use()) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Returns the person if they're loaded, without counting it as a use.
+     */
+    public CachedPerson peek(String personName) {
+
+        CacheEntry entry = entries.get(personName.toLowerCase());
+        return (entry != null) ? entry.value : null;
+    }
+
+    /**
+     * Returns the person from the cache, loading them if needed. Only one load is run for each person at a time.
+     * @return The person, or null if the loader couldn't find them.
+     * @throws IOException If the load failed. Nothing is known about whether they exist.
+     */
+    public CachedPerson get(final String personName, final Loader loader) throws IOException {
+
+        CachedPerson value = get(personName);
+        if (value != null) {
+            return value;
+        }
+
+        final String key = personName.toLowerCase();
+
+        FutureTask<CachedPerson> load = new FutureTask<CachedPerson>(new Callable<CachedPerson>() {
+            public CachedPerson call() throws IOException {
+
+                CachedPerson loaded = loader.load(personName);
+                if (loaded == null) {
+                    return null;
+                }
+
+                // if someone was added while we were loading, they win
+                CacheEntry existing = entries.putIfAbsent(key, new CacheEntry(loaded));
+                return (existing != null) ? existing.value : loaded;
+            }
+        });
+
+        FutureTask<CachedPerson> runningLoad = loads.putIfAbsent(key, load);
+        if (runningLoad == null) {
+
+            // A load could have finished between our first check and now, so check again before loading.
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.use()) {
+                loads.remove(key, load);
+                return entry.value;
+            }
+
+            try {
+                load.run();
+            } finally {
+                loads.remove(key, load);
+            }
+
+            runningLoad = load;
+        }
+
+        try {
+
+            return runningLoad.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return null;
+
+        } catch (ExecutionException e) {
+
+            throw new IOException("Unable to load " + personName, e.getCause());
+        }
+    }
+
+    /**
+     * Adds the person unless someone has already been added under the same name.
+     * @return The person that was already there, or null if the given person was added.
+     */
+    public CachedPerson putIfAbsent(String personName, CachedPerson value) {
+
+        CacheEntry existing = entries.putIfAbsent(personName.toLowerCase(), new CacheEntry(value));
+        return (existing != null) ? existing.value : null;
+    }
+
+    public void remove(String personName) {
+        entries.remove(personName.toLowerCase());
+    }
+
+    /**
+     * Removes the idle and least recently used people. This needs to be run on the main thread so the online player
+     * list can be checked safely.
+     * @return The number of people removed.
+     */
+    public int evict() {
+
+        long now = System.currentTimeMillis();
+
+        // Take a copy of when each person was last used, so they can't move around while we sort them.
+        List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>();
+        for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+            candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue()));
+        }
+
+        // least recently used first
+        Collections.sort(candidates, new Comparator<EvictionCandidate>() {
+            public int compare(EvictionCandidate candidate1, EvictionCandidate candidate2) {
+                return (candidate1.lastAccess < candidate2.lastAccess) ? -1
+                        : ((candidate1.lastAccess == candidate2.lastAccess) ? 0 : 1);
+            }
+        });
+
+        int remaining = candidates.size();
+        int evicted = 0;
+
+        for (EvictionCandidate candidate : candidates) {
+
+            long idle = now - candidate.lastAccess;
+
+            // Everyone after this point was used more recently, so if we're under the limit we're done.
+            boolean overSize = maximumSize > 0 && remaining > maximumSize;
+            boolean overIdle = idleTime > 0 && idle > idleTime;
+            if (!overSize && !overIdle) {
+                break;
+            }
+
+            if (idle < MINIMUM_IDLE_TIME) {
+                break;
+            }
+
+            // keep anyone that's online
+            Person person = candidate.entry.value.getPerson();
+            if (Bukkit.getPlayerExact(person.getName()) != null) {
+                continue;
+            }
+
+            // make sure they're saved before we let go of them
+            personDataManager.savePerson(person);
+            candidate.entry.value.saveSettings(personDataManager);
+
+            // Only remove them if they weren't replaced or used again while we were busy. This is checked and done
+            // as one step, so anyone who got hold of them since the save began keeps the same copy in the cache.
+            if (candidate.entry.removeIfUnused(candidate.lastAccess, candidate.key, entries)) {
+                remaining--;
+                evicted++;
+            }
+        }
+
+        if (evicted > 0) {
+            evictionCount.addAndGet(evicted);
+            SocialNetworkPlugin.log("Removed " + evicted + " people from the cache, " + entries.size() + " remain.");
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Writes back the settings of everyone loaded that have changed.
+     */
+    public void saveSettings() {
+
+        for (CacheEntry entry : entries.values()) {
+            entry.value.saveSettings(personDataManager);
+        }
+    }
+
+    /**
+     * @return The number of people currently loaded.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of lookups that found the person already loaded.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of lookups that had to go to the data manager.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return The number of people that have been removed to keep the cache within its limits.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+}
@@ -0,0 +1,269 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.SocialPerson;
+import com.netprogs.minecraft.plugins.social.command.SocialNetworkCommandType;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Loads people into the cache on background threads before they're needed on the main thread.
+ *
+ * A login waits at most preloadTimeout for the load to finish. If it takes longer the login carries on and the load
+ * keeps going in the background. When the join handler asks for them it either finds them loaded or waits on that
+ * same load, so nothing is ever loaded twice.
+ *
+ * Once someone has been preloaded, the people in their groups are queued to be loaded as well, since the login
+ * notifications and most commands will ask for them next. Their partner is loaded first, then their friends,
+ * family, relationships, affairs and finally their ex. These go through a separate pool with its own thread budget
+ * so they never hold up a login. With a prefetchDepth above 1, the groups of those people are queued as well.
+ * </pre>
+ */
+public class PersonPreloader {
+
+    private static final int PRIORITY_PARTNER = 0;
+    private static final int PRIORITY_FRIEND = 1;
+    private static final int PRIORITY_FAMILY = 2;
+    private static final int PRIORITY_RELATIONSHIP = 3;
+    private static final int PRIORITY_AFFAIR = 4;
+    private static final int PRIORITY_EX = 5;
+
+    private class PrefetchTask implements Runnable, Comparable<PrefetchTask> {
+
+        private final String personName;
+        private final int priority;
+        private final int depth;
+        private final long sequence;
+
+        public PrefetchTask(String personName, int priority, int depth) {
+            this.personName = personName;
+            this.priority = priority;
+            this.depth = depth;
+            this.sequence = prefetchSequence.incrementAndGet();
+        }
+
+        public void run() {
+
+            PersonCache.CachedPerson cachedPerson = personCache.peek(personName);
+            if (cachedPerson == null) {
+                try {
+                    cachedPerson = personCache.get(personName, loader);
+                } catch (IOException e) {
+                    SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to prefetch " + personName, e);
+                    return;
+                }
+            }
+
+            if (cachedPerson != null && depth > 1) {
+                prefetchGroups(cachedPerson.getSocialPerson(), depth - 1);
+            }
+        }
+
+        public int compareTo(PrefetchTask task) {
+
+            // higher priority groups first, then in the order they were queued
+            if (priority != task.priority) {
+                return (priority < task.priority) ? -1 : 1;
+            }
+            return (sequence < task.sequence) ? -1 : ((sequence == task.sequence) ? 0 : 1);
+        }
+    }
+
+    private final PersonCache personCache;
+    private final PersonCache.Loader loader;
+
+    private final long timeout;
+
+    private final ExecutorService executor;
+
+    private final int prefetchDepth;
+    private final int prefetchLimit;
+
+    private final ThreadPoolExecutor prefetchExecutor;
+    private final AtomicLong prefetchSequence = new AtomicLong();
+
+    /**
+     * @param timeout The longest time (in milliseconds) a login will wait for its preload.
+     * @param threads The number of loads that can run at the same time.
+     * @param prefetchDepth How many steps out from the player their groups are loaded. 0 turns this off.
+     * @param prefetchLimit The most group members loaded for each person.
+     * @param prefetchThreads The number of group members that can be loaded at the same time.
+     */
+    public PersonPreloader(PersonCache personCache, PersonCache.Loader loader, long timeout, int threads,
+            int prefetchDepth, int prefetchLimit, int prefetchThreads) {
+
+        this.personCache = personCache;
+        this.loader = loader;
+        this.timeout = timeout;
+        this.prefetchDepth = prefetchDepth;
+        this.prefetchLimit = prefetchLimit;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocialNetwork-Preload-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // the queue hands out the most important group members first
+        int prefetchThreadCount = Math.max(1, prefetchThreads);
+        prefetchExecutor =
+                new ThreadPoolExecutor(prefetchThreadCount, prefetchThreadCount, 60, TimeUnit.SECONDS,
+                        new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "SocialNetwork-Prefetch");
+                                thread.setDaemon(true);
+                                thread.setPriority(Thread.MIN_PRIORITY);
+                                return thread;
+                            }
+                        });
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts loading the person and waits up to the timeout for them to be ready.
+     * @return true if they're now in the cache or don't exist, false if the load is still running.
+     */
+    public boolean preload(final String personName) {
+
+        Future<?> load;
+        try {
+
+            load = executor.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+
+                    PersonCache.CachedPerson cachedPerson = personCache.get(personName, loader);
+                    if (cachedPerson != null && prefetchDepth > 0) {
+                        prefetchGroups(cachedPerson.getSocialPerson(), prefetchDepth);
+                    }
+                    return null;
+                }
+            });
+
+        } catch (Exception e) {
+
+            // we're shutting down, they'll be loaded when they're needed
+            return false;
+        }
+
+        try {
+
+            load.get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+
+        } catch (TimeoutException e) {
+
+            SocialNetworkPlugin.log("[" + personName + "] Preload is taking longer than " + timeout + "ms.");
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } catch (ExecutionException e) {
+
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to preload " + personName, e.getCause());
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops any loads that haven't started yet.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues loads for the people in each of their groups that aren't loaded yet.
+     */
+    private void prefetchGroups(SocialPerson person, int depth) {
+
+        // taken from a single state, so it can be read here while they keep changing
+        Map<SocialNetworkCommandType, List<String>> groups = person.getGroupMemberNames();
+
+        // Map<personName, priority> in the order they should be loaded
+        Map<String, Integer> members = new LinkedHashMap<String, Integer>();
+
+        addMembers(members, groups.get(SocialNetworkCommandType.marriage), PRIORITY_PARTNER);
+        addMembers(members, groups.get(SocialNetworkCommandType.engagement), PRIORITY_PARTNER);
+        addMembers(members, groups.get(SocialNetworkCommandType.friend), PRIORITY_FRIEND);
+        addMembers(members, groups.get(SocialNetworkCommandType.child), PRIORITY_FAMILY);
+        addMembers(members, groups.get(SocialNetworkCommandType.relationship), PRIORITY_RELATIONSHIP);
+        addMembers(members, groups.get(SocialNetworkCommandType.affair), PRIORITY_AFFAIR);
+        addMembers(members, groups.get(SocialNetworkCommandType.divorce), PRIORITY_EX);
+
+        try {
+
+            for (Map.Entry<String, Integer> member : members.entrySet()) {
+                prefetchExecutor.execute(new PrefetchTask(member.getKey(), member.getValue(), depth));
+            }
+
+        } catch (Exception e) {
+            // we're shutting down, they'll be loaded when they're needed
+        }
+    }
+
+    private void addMembers(Map<String, Integer> members, List<String> memberNames, int priority) {
+
+        if (memberNames == null) {
+            return;
+        }
+
+        for (String memberName : memberNames) {
+            addMember(members, memberName, priority);
+        }
+    }
+
+    private void addMember(Map<String, Integer> members, String memberName, int priority) {
+
+        if (memberName == null || members.size() >= prefetchLimit || members.containsKey(memberName)) {
+            return;
+        }
+
+        // no need to queue anyone that's already loaded
+        if (personCache.peek(memberName) == null) {
+            members.put(memberName, priority);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Gives every player name a small int id, so anything keyed by player can use an {@link IntHashMap} instead of
+ * hashing (and lower casing) their name over and over.
+ *
+ * Ids ignore case, and the name is kept as it was first seen. They're handed out in order starting from 0. Ids only
+ * live in memory, nothing is ever saved by id.
+ *
+ * The names of network members are stored with the network, so the table can be filled in up front when the
+ * plug-in starts. Storing a name is handed to a background thread, so whoever asked for the id never waits on the
+ * disk. When someone leaves the network their stored name is removed, but they keep their id until the next run.
+ *
+ * Players outside the network, such as someone with a command cooldown who never joined, can be given an id for
+ * this run only with {@link #getTemporaryId(String)}, which stores nothing. Those are the only ids ever handed out
+ * again: {@link #releaseTemporaryIds(IntHashMap)} frees the ones nobody uses any more.
+ *
+ * Looking up an id or a name never locks. Only handing out a new id does.
+ * </pre>
+ */
+public class PlayerNameTable {
+
+    private static final int MINIMUM_CAPACITY = 256;
+
+    private final ISocialNetworkDataManager dataManager;
+
+    // Map<lowerCaseName, id>
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    // The name for each id. Only changed while synchronized on this. An id is added to the map after its name is
+    // set, so anyone who can see an id can also see its name.
+    private volatile String[] names;
+    private int count;
+
+    // the ids given out by getTemporaryId() that haven't been stored since
+    private final Set<Integer> temporaryIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    // The ids whose names aren't stored: the temporary ones and those of players that have left the network.
+    private final Set<Integer> unstoredIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    // The temporary ids found unused by the last call to releaseTemporaryIds(), and the ids that have been freed
+    // since. Both guarded by synchronizing on this.
+    private Set<Integer> unusedIds = new HashSet<Integer>();
+    private final List<Integer> freeIds = new ArrayList<Integer>();
+
+    // Stores new names in the order they were given out
+    private final ExecutorService executor;
+
+    public PlayerNameTable(ISocialNetworkDataManager dataManager) {
+
+        this.dataManager = dataManager;
+
+        List<String> storedNames = dataManager.getPlayerNames();
+        names = new String[Math.max(MINIMUM_CAPACITY, storedNames.size() * 2)];
+
+        for (String playerName : storedNames) {
+            addName(playerName, false, false);
+        }
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocialNetwork-Names");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the id for a network member, giving them one if they don't have one yet. Their name is stored with the
+     * network if it isn't already.
+     */
+    public int getId(String playerName) {
+
+        Integer id = ids.get(playerName.toLowerCase());
+        if (id != null && (unstoredIds.isEmpty() || !unstoredIds.contains(id))) {
+            return id;
+        }
+
+        return addName(playerName, true, false);
+    }
+
+    /**
+     * Returns the id for a player that may not be in the network, giving them one for this run only if they don't
+     * have one yet. Nothing is stored.
+     */
+    public int getTemporaryId(String playerName) {
+
+        Integer id = ids.get(playerName.toLowerCase());
+        if (id != null) {
+            return id;
+        }
+
+        return addName(playerName, false, true);
+    }
+
+    /**
+     * Returns the id for the player without giving them one.
+     * @return The id, or -1 if they don't have one.
+     */
+    public int findId(String playerName) {
+
+        Integer id = ids.get(playerName.toLowerCase());
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @param id An id that came from this table.
+     * @return The name as it was first seen.
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Removes the stored name of a player that has left the network. They keep their id for this run, as anything
+     * that still refers to them needs it. If they rejoin, their name is stored again.
+     */
+    public synchronized void removeName(String playerName) {
+
+        Integer id = ids.get(playerName.toLowerCase());
+        if (id == null || unstoredIds.contains(id)) {
+            return;
+        }
+
+        unstoredIds.add(id);
+
+        final String storedName = names[id];
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    dataManager.removePlayerName(storedName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+
+            // we're shutting down, so remove it here
+            dataManager.removePlayerName(storedName);
+        }
+    }
+
+    /**
+     * Frees the temporary ids that aren't in use, so their slots can be handed out again. An id is only freed once
+     * it has been found unused by two calls in a row, which gives anyone that read it just before the first call
+     * time to finish with it. The caller has to make sure nothing new can start using an id while this runs.
+     * @param inUse The ids that are still in use. Only the keys are looked at.
+     * @return The number of ids freed.
+     */
+    public synchronized int releaseTemporaryIds(IntHashMap<?> inUse) {
+
+        Set<Integer> unused = new HashSet<Integer>();
+        List<Integer> released = new ArrayList<Integer>();
+
+        for (Integer id : temporaryIds) {
+
+            if (inUse.containsKey(id)) {
+                continue;
+            }
+
+            if (unusedIds.contains(id)) {
+                released.add(id);
+            } else {
+                unused.add(id);
+            }
+        }
+
+        // The name is left in its slot until the id is given out again, so a late lookup still finds something.
+        for (Integer id : released) {
+            temporaryIds.remove(id);
+            unstoredIds.remove(id);
+            ids.remove(names[id].toLowerCase(), id);
+            freeIds.add(id);
+        }
+
+        unusedIds = unused;
+        return released.size();
+    }
+
+    /**
+     * Waits for the names still waiting to be stored.
+     * @param timeout The maximum time (in seconds) to wait.
+     */
+    public void shutdown(long timeout) {
+
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Timed out waiting for the player names to be stored.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param store True to store the name with the network.
+     * @param temporary True if it's only for this run. It's stored if they're later given an id as a member.
+     */
+    private synchronized int addName(String playerName, boolean store, boolean temporary) {
+
+        // someone else may have added them while we were waiting
+        String key = playerName.toLowerCase();
+        Integer existing = ids.get(key);
+
+        if (existing != null) {
+
+            // they had an id for this run only or had left the network, and have now turned up as a member
+            if (store && unstoredIds.remove(existing)) {
+                temporaryIds.remove(existing);
+                unusedIds.remove(existing);
+                storeName(names[existing]);
+            }
+            return existing;
+        }
+
+        int id;
+        if (!freeIds.isEmpty()) {
+
+            id = freeIds.remove(freeIds.size() - 1);
+
+        } else {
+
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+            }
+
+            id = count++;
+        }
+
+        names[id] = playerName;
+
+        if (store) {
+            storeName(playerName);
+        } else if (temporary) {
+            temporaryIds.add(id);
+            unstoredIds.add(id);
+        }
+
+        ids.put(key, id);
+        return id;
+    }
+
+    /**
+     * Call this while synchronized on the table, so names are stored in the order they were given out.
+     */
+    private void storeName(final String playerName) {
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    dataManager.addPlayerName(playerName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+
+            // we're shutting down, so store it here
+            dataManager.addPlayerName(playerName);
+        }
+    }
+}
@@ -1,24 +1,37 @@
 package com.netprogs.minecraft.plugins.social.storage;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.logging.Level;
 
 import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.SocialPerson;
 import com.netprogs.minecraft.plugins.social.command.util.PlayerUtil;
 import com.netprogs.minecraft.plugins.social.command.util.TimerManager;
 import com.netprogs.minecraft.plugins.social.config.resources.ResourcesConfig;
+import com.netprogs.minecraft.plugins.social.config.settings.StorageSettings;
+import com.netprogs.minecraft.plugins.social.io.DataFileStore;
 import com.netprogs.minecraft.plugins.social.storage.data.Alert;
 import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonChange;
 import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
 import com.netprogs.minecraft.plugins.social.storage.data.perk.IPersonPerkSettings;
+import com.netprogs.minecraft.plugins.social.storage.driver.binary.BinaryPersonDataManager;
+import com.netprogs.minecraft.plugins.social.storage.driver.journal.JournalPersonDataManager;
+import com.netprogs.minecraft.plugins.social.storage.driver.json.DataFileLayout;
 import com.netprogs.minecraft.plugins.social.storage.driver.json.JsonPersonDataManager;
 import com.netprogs.minecraft.plugins.social.storage.driver.json.JsonSocialNetworkDataManager;
+import com.netprogs.minecraft.plugins.social.storage.driver.sqlite.SqliteDatabase;
+import com.netprogs.minecraft.plugins.social.storage.driver.sqlite.SqlitePersonDataManager;
+import com.netprogs.minecraft.plugins.social.storage.driver.sqlite.SqliteSocialNetworkDataManager;
 
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 /*
@@ -43,24 +56,7 @@ import org.bukkit.entity.Player;
 
 public class SocialNetworkStorage {
 
-    private class PersonMapValue {
-
-        public Person person;
-        public SocialPerson socialPerson;
-
-        public PersonMapValue(SocialPerson socialPerson, Person person) {
-            this.person = person;
-            this.socialPerson = socialPerson;
-        }
-
-        public Person getPerson() {
-            return person;
-        }
-
-        public SocialPerson getSocialPerson() {
-            return socialPerson;
-        }
-    }
+    private static final long HOUR = 60 * 60 * 1000L;
 
     // This holds the list of all available players that are currently registered.
     private ISocialNetworkDataManager socialDataManager;
@@ -68,38 +64,211 @@ public class SocialNetworkStorage {
     // This holds the individual data for each player (Person). These are not loaded at startup.
     // Instead, we use the references from the socialDataManager to determine if the user is in the network, then we
     // lazy-load their data once they've been verified.
-    private IPersonDataManager personDataManager;
+    // This is the write-behind queue in front of the driver, so that saves are merged and written out on a background
+    // thread.
+    private WriteBehindPersonDataManager personDataManager;
+
+    // Only used when the sqlite driver has been chosen
+    private SqliteDatabase database;
+
+    // Only used when the network is being stored in network.json
+    private JsonSocialNetworkDataManager networkFile;
+
+    // Only used when the journal driver has been chosen
+    private JournalPersonDataManager journal;
 
     // List of the players that have used the network recently (since last restart)
     // The plug-in starts with this list as empty, but lazy-loads each player as they run commands for the first time.
     // If you reload the server, they won't be affected, the next command they run will load them back into this list.
-    // This helps control memory a bit better since we'll only be storing those who are active.
-    private Map<String, PersonMapValue> loadedPersonMap;
+    // This helps control memory a bit better since we'll only be storing those who are active. Anyone offline that
+    // hasn't been used in a while is saved and removed again by the cache sweep.
+    private PersonCache loadedPersonMap;
+
+    // Lets us turn away lookups for players that aren't in the network without going to the disk
+    private volatile MembershipFilter membershipFilter;
+
+    // Loads people on background threads as they log in
+    private PersonPreloader preloader;
+
+    // Holds the messages sent to each person, outside of their person data
+    private MailboxStore mailboxStore;
+
+    // The id each player is known by inside the plug-in
+    private PlayerNameTable playerNames;
+
+    private final PersonCache.Loader personLoader = new PersonCache.Loader() {
+        public PersonCache.CachedPerson load(String personName) throws IOException {
+            return loadPerson(personName);
+        }
+    };
 
     public SocialNetworkStorage() {
 
-        // create our data manager instances
-        // later on we should be able to "hot-swap" these with other forms of data managers (mysql, sqlite etc)
-        socialDataManager = new JsonSocialNetworkDataManager();
-        personDataManager = new JsonPersonDataManager();
-    }
+        StorageSettings storageSettings = SocialNetworkPlugin.getSettings().getStorageSettings();
+
+        DataFileStore.setSyncWindow(storageSettings.getFileSyncWindow());
+
+        // create our data manager instances based on the driver chosen in the configuration
+        IPersonDataManager driverDataManager;
+        if ("sqlite".equalsIgnoreCase(storageSettings.getDriver())) {
 
-    private Map<String, PersonMapValue> getSocialNetworkMap() {
+            database = new SqliteDatabase(SocialNetworkPlugin.instance.getDataFolder() + "/"
+                    + storageSettings.getDatabaseFile());
+            boolean created = database.open();
 
-        if (loadedPersonMap == null) {
-            loadedPersonMap = new HashMap<String, PersonMapValue>();
-            for (String personName : socialDataManager.getPlayers()) {
+            socialDataManager = new SqliteSocialNetworkDataManager(database, created);
+            driverDataManager = new SqlitePersonDataManager(database);
 
-                // We start off placing NULL into the map for the person object. We'll lazy load this later.
-                loadedPersonMap.put(personName.toLowerCase(), null);
+        } else if ("binary".equalsIgnoreCase(storageSettings.getDriver())) {
+
+            driverDataManager = new BinaryPersonDataManager();
+
+        } else if ("journal".equalsIgnoreCase(storageSettings.getDriver())) {
+
+            journal = new JournalPersonDataManager(storageSettings.getJournalCompactInterval());
+
+            driverDataManager = journal;
+
+        } else {
+
+            driverDataManager = new JsonPersonDataManager();
+        }
+
+        // all but the sqlite driver keep the network in network.json
+        if (socialDataManager == null) {
+            networkFile = new JsonSocialNetworkDataManager(storageSettings.getNetworkCompactInterval());
+            socialDataManager = networkFile;
+
+            // and their players in the DataFiles folder, so move any files still in the old layout
+            DataFileLayout.startMigration();
+        }
+
+        playerNames = new PlayerNameTable(socialDataManager);
+
+        personDataManager =
+                new WriteBehindPersonDataManager(driverDataManager, storageSettings.getSaveFlushInterval());
+
+        Map<MessageKind, Long> messageTimeToLive = new EnumMap<MessageKind, Long>(MessageKind.class);
+        messageTimeToLive.put(MessageKind.request, storageSettings.getRequestTimeToLive() * HOUR);
+        messageTimeToLive.put(MessageKind.alert, storageSettings.getAlertTimeToLive() * HOUR);
+        messageTimeToLive.put(MessageKind.sticky, storageSettings.getStickyTimeToLive() * HOUR);
+        messageTimeToLive.put(MessageKind.gift, storageSettings.getGiftTimeToLive() * HOUR);
+
+        mailboxStore =
+                new MailboxStore(playerNames, storageSettings.getMailboxCompactThreshold(), messageTimeToLive,
+                        storageSettings.getMessageTypeLimit(), storageSettings.getMessageSenderLimit());
+        mailboxStore.startSweeper(storageSettings.getMailboxSweepInterval(),
+                storageSettings.getMailboxSweepBatchSize());
+
+        loadedPersonMap =
+                new PersonCache(personDataManager, storageSettings.getCacheMaximumSize(),
+                        storageSettings.getCacheIdleTime());
+
+        preloader =
+                new PersonPreloader(loadedPersonMap, personLoader, storageSettings.getPreloadTimeout(),
+                        storageSettings.getPreloadThreads(), storageSettings.getPrefetchDepth(),
+                        storageSettings.getPrefetchLimit(), storageSettings.getPrefetchThreads());
+
+        membershipFilter = new MembershipFilter(socialDataManager.getPlayers());
+
+        // the sweep checks who is online, so it runs on the main thread
+        long sweepTicks = Math.max(1, storageSettings.getCacheSweepInterval()) * 20L;
+        Bukkit.getScheduler().scheduleSyncRepeatingTask(SocialNetworkPlugin.instance, new Runnable() {
+            public void run() {
+                loadedPersonMap.saveSettings();
+                loadedPersonMap.evict();
+                mailboxStore.unloadMailboxes(loadedPersonMap);
+
+                // if the network has grown a lot since startup, the filter needs to be bigger to stay accurate
+                if (membershipFilter.isOverCapacity()) {
+                    membershipFilter = new MembershipFilter(socialDataManager.getPlayers());
+                }
             }
+        }, sweepTicks, sweepTicks);
+    }
+
+    /**
+     * Writes out any pending saves. This will wait at most saveShutdownTimeout seconds for them to complete.
+     */
+    public void shutdown() {
+
+        StorageSettings storageSettings = SocialNetworkPlugin.getSettings().getStorageSettings();
+        preloader.shutdown();
+
+        // settings are only written back occasionally, so get any changes into the queue first
+        loadedPersonMap.saveSettings();
+        personDataManager.shutdown(storageSettings.getSaveShutdownTimeout());
+        mailboxStore.shutdown(storageSettings.getSaveShutdownTimeout());
+        playerNames.shutdown(storageSettings.getSaveShutdownTimeout());
+
+        if (journal != null) {
+            journal.shutdown(storageSettings.getSaveShutdownTimeout());
         }
 
+        if (networkFile != null) {
+            DataFileLayout.stopMigration();
+            networkFile.shutdown(storageSettings.getSaveShutdownTimeout());
+        }
+
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    public WriteBehindPersonDataManager getSaveQueue() {
+        return personDataManager;
+    }
+
+    public PersonCache getPersonCache() {
         return loadedPersonMap;
     }
 
+    public MailboxStore getMailboxStore() {
+        return mailboxStore;
+    }
+
+    public PlayerNameTable getPlayerNames() {
+        return playerNames;
+    }
+
+    /**
+     * Used by PlayerPreLoginListener to load people before they join. This is called from a login thread.
+     * If the load takes longer than the preload timeout it's left to finish in the background.
+     */
+    public void preloadPerson(String playerName) {
+
+        // nothing to load for players outside the network
+        if (!membershipFilter.isNonMember(playerName)) {
+            preloader.preload(playerName);
+        }
+    }
+
+    /**
+     * Finds the Person data behind the SocialPerson. If they've been removed from the cache since the caller got
+     * hold of them, they're loaded again.
+     * @return The person, or null if they couldn't be loaded.
+     */
+    private Person getLoadedPerson(SocialPerson socialPerson) {
+
+        PersonCache.CachedPerson cachedPerson = getCachedPerson(socialPerson);
+        return (cachedPerson != null) ? cachedPerson.getPerson() : null;
+    }
+
+    /**
+     * @return The cached person, or null if they couldn't be loaded. The failure has already been logged.
+     */
+    private PersonCache.CachedPerson getCachedPerson(SocialPerson socialPerson) {
+
+        try {
+            return loadedPersonMap.get(socialPerson.getName(), personLoader);
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to load " + socialPerson.getName(), e);
+            return null;
+        }
+    }
+
     // Used by PlayerJoinListener to create accounts upon login
-    public synchronized SocialPerson addPerson(Player player) {
+    public SocialPerson addPerson(Player player) {
 
         // We need to check the excludedPlayers list and if they are here, return null
         if (SocialNetworkPlugin.getStorage().isExcludedPlayer(player.getName())) {
@@ -110,21 +279,29 @@ public class SocialNetworkStorage {
         Person person = new Person();
         person.setName(player.getName());
         person.setDateJoined(System.currentTimeMillis());
+        person.markModified();
 
         SocialPerson socialPerson = new SocialPerson(person);
 
+        // let lookups through for them before they can be found in the map
+        membershipFilter.addMember(person.getName());
+
+        // now wrap them in our CachedPerson object
+        PersonCache.CachedPerson value = new PersonCache.CachedPerson(socialPerson, person);
+
+        // add to the map using lower case name as key
+        // if they were added or loaded by someone else in the meantime, use that one instead
+        PersonCache.CachedPerson existing = loadedPersonMap.putIfAbsent(person.getName(), value);
+        if (existing != null) {
+            return existing.getSocialPerson();
+        }
+
         // create their data entry
         personDataManager.savePerson(person);
 
         // add their name to the player list
         socialDataManager.addPlayer(person.getName());
 
-        // now wrap them in our PersonMapValue object
-        PersonMapValue value = new PersonMapValue(socialPerson, person);
-
-        // add to the map using lower case name as key
-        getSocialNetworkMap().put(person.getName().toLowerCase(), value);
-
         // return the SocialPerson instance
         return socialPerson;
     }
@@ -133,20 +310,26 @@ public class SocialNetworkStorage {
 
         synchronized (socialPerson) {
 
-            // get the person data
-            Person person = getSocialNetworkMap().get(socialPerson.getName().toLowerCase()).getPerson();
+            // get the person data, leaving everything as it is if we can't read it
+            Person person = getLoadedPerson(socialPerson);
+            if (person == null) {
+                return;
+            }
 
             // remove all their relations to everyone and send alerts to each of them
             removeFromAllGroups(socialPerson);
 
             // delete their data file
             personDataManager.deletePerson(person);
+            mailboxStore.deleteMailbox(person.getName());
 
             // remove from the data source
             socialDataManager.removePlayer(person.getName());
+            playerNames.removeName(person.getName());
 
             // remove from the map
-            getSocialNetworkMap().remove(person.getName().toLowerCase());
+            loadedPersonMap.remove(person.getName());
+            membershipFilter.removeMember(person.getName());
         }
     }
 
@@ -155,14 +338,17 @@ public class SocialNetworkStorage {
         synchronized (socialPerson) {
 
             // get the person data
-            Person person = getSocialNetworkMap().get(socialPerson.getName().toLowerCase()).getPerson();
+            Person person = getLoadedPerson(socialPerson);
+            if (person == null) {
+                return;
+            }
 
             // Saves to their data file
             personDataManager.savePerson(person);
         }
     }
 
-    public synchronized SocialPerson getPerson(String personName) {
+    public SocialPerson getPerson(String personName) {
 
         // Take the name given and look up their real name from Bukkit
         // This should allow people to use any nicknames also for sending requests.
@@ -170,46 +356,30 @@ public class SocialNetworkStorage {
         String playerName = PlayerUtil.getPlayerName(personName);
         if (playerName != null) {
 
-            // Do the lazy load here. Check to see if they've been loaded from file yet, if not, so it now.
-            if (getSocialNetworkMap().get(playerName.toLowerCase()) == null) {
-
-                // load their data from the data manager
-                Person person = personDataManager.loadPerson(playerName);
-                if (person != null) {
-
-                    // add their name to the data source if they're not there yet
-                    // (case of new player being loaded for the first time)
-                    if (!socialDataManager.hasPlayer(person.getName())) {
-                        socialDataManager.addPlayer(person.getName());
-                    }
-
-                    // TODO: We should be able to remove this eventually and force people to update
-                    // We now want to check to see if they have a valid join date
-                    // This is only used for older versions that did not have this value previously.
-                    if (person.getDateJoined() == 0) {
-                        person.setDateJoined(System.currentTimeMillis());
-                        personDataManager.savePerson(person);
-                    }
-
-                    // now wrap them in our SocialPerson object
-                    SocialPerson socialPerson = new SocialPerson(person);
-                    PersonMapValue value = new PersonMapValue(socialPerson, person);
-
-                    // add to the map using lower case name as key
-                    getSocialNetworkMap().put(person.getName().toLowerCase(), value);
-
-                    // return the new instance
-                    // SocialNetworkPlugin.log("getPerson returning: " + socialPerson.getName());
-                    return socialPerson;
-                }
+            // Most lookups for players outside the network can be answered without going any further
+            if (membershipFilter.isNonMember(playerName)) {
+                return null;
+            }
+
+            // Do the lazy load here. If they haven't been loaded from file yet, the cache will do it now.
+            PersonCache.CachedPerson cachedPerson;
+            try {
+                cachedPerson = loadedPersonMap.get(playerName, personLoader);
+            } catch (IOException e) {
+
+                // they may well be a member, so don't remember them as missing and try again next time
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to load " + playerName, e);
+                return null;
+            }
 
-            } else {
+            if (cachedPerson != null) {
 
-                // we found them in the network list, so return their object
-                SocialPerson socialPerson = getSocialNetworkMap().get(playerName.toLowerCase()).getSocialPerson();
-                // SocialNetworkPlugin.log("getPerson returning: " + socialPerson.getName());
-                return socialPerson;
+                // SocialNetworkPlugin.log("getPerson returning: " + cachedPerson.getSocialPerson().getName());
+                return cachedPerson.getSocialPerson();
             }
+
+            // remember they aren't here so we don't look for them again
+            membershipFilter.addNonMember(playerName);
         }
 
         // nothing found
@@ -217,6 +387,57 @@ public class SocialNetworkStorage {
         return null;
     }
 
+    /**
+     * Loads the person from the data manager. Only called by the cache when they aren't loaded yet.
+     */
+    private PersonCache.CachedPerson loadPerson(String playerName) throws IOException {
+
+        // load their data from the data manager
+        Person person = personDataManager.loadPerson(playerName);
+        if (person == null) {
+            return null;
+        }
+
+        // add their name to the data source if they're not there yet
+        // (case of new player being loaded for the first time)
+        if (!socialDataManager.hasPlayer(person.getName())) {
+            socialDataManager.addPlayer(person.getName());
+            membershipFilter.addMember(person.getName());
+        }
+
+        // they could be waiting in the save queue, so only change them under their lock
+        person.getLock().lock();
+        try {
+
+            // TODO: We should be able to remove this eventually and force people to update
+            // We now want to check to see if they have a valid join date
+            // This is only used for older versions that did not have this value previously.
+            if (person.getDateJoined() == 0) {
+                person.setDateJoined(System.currentTimeMillis());
+                person.recordChange(PersonChange.set("dateJoined", person.getDateJoined()));
+                personDataManager.savePerson(person);
+            }
+
+            // Messages used to be kept in the person file. Move any that are still there over to their mailbox.
+            if (!person.getMessageQueue().isEmpty()) {
+                mailboxStore.importMessages(person.getName(), person.getMessageQueue());
+                person.getMessageQueue().clear();
+
+                // recorded so the journal driver writes the cleared queue instead of leaving the old messages in
+                person.recordChange(PersonChange.set("messageQueue",
+                        new HashMap<String, Map<String, List<? extends IMessage>>>()));
+                personDataManager.savePerson(person);
+            }
+
+        } finally {
+            person.getLock().unlock();
+        }
+
+        // now wrap them in our SocialPerson object
+        SocialPerson socialPerson = new SocialPerson(person);
+        return new PersonCache.CachedPerson(socialPerson, person);
+    }
+
     public boolean isExcludedPlayer(String playerName) {
         return socialDataManager.isExcludedPlayer(playerName);
     }
@@ -263,9 +484,13 @@ public class SocialNetworkStorage {
 
     public <P extends IPersonPerkSettings> P getPersonPerkSettings(SocialPerson socialPerson, String perkName) {
 
-        Person person = getSocialNetworkMap().get(socialPerson.getName().toLowerCase()).getPerson();
-        PersonSettings settings = personDataManager.loadPersonSettings(person);
-        if (settings != null && settings.hasPerkSettings(perkName)) {
+        PersonCache.CachedPerson cachedPerson = getCachedPerson(socialPerson);
+        if (cachedPerson == null) {
+            return null;
+        }
+
+        PersonSettings settings = cachedPerson.getSettings(personDataManager);
+        if (settings.hasPerkSettings(perkName)) {
             return settings.getPerkSettings(perkName);
         }
         return null;
@@ -274,17 +499,15 @@ public class SocialNetworkStorage {
     public <P extends IPersonPerkSettings> void setPersonPerkSettings(SocialPerson socialPerson, String perkName,
             P perkSettings) {
 
-        Person person = getSocialNetworkMap().get(socialPerson.getName().toLowerCase()).getPerson();
-        PersonSettings settings = personDataManager.loadPersonSettings(person);
-        if (settings != null) {
-            settings.setPerkSettings(perkName, perkSettings);
-        } else {
-            settings = new PersonSettings();
-            settings.setPerkSettings(perkName, perkSettings);
+        PersonCache.CachedPerson cachedPerson = getCachedPerson(socialPerson);
+        if (cachedPerson == null) {
+            return;
         }
 
-        // save it
-        personDataManager.savePersonSettings(person, settings);
+        cachedPerson.getSettings(personDataManager).setPerkSettings(perkName, perkSettings);
+
+        // it gets written back on the next sweep
+        cachedPerson.settingsChanged();
     }
 
     public int purgePlayers(int purgeDays) {
@@ -315,6 +538,10 @@ public class SocialNetworkStorage {
 
                 // obtain their details, then delete their account
                 SocialPerson purgePerson = getPerson(playerName);
+                if (purgePerson == null) {
+                    continue;
+                }
+
                 removePerson(purgePerson);
 
                 SocialNetworkPlugin.logger().info(
@@ -337,7 +564,10 @@ public class SocialNetworkStorage {
         Map<String, SocialPerson> notifyPlayers = new HashMap<String, SocialPerson>();
 
         // go through each group type and remove this user from their lists
-        Person person = getSocialNetworkMap().get(socialPerson.getName().toLowerCase()).getPerson();
+        Person person = getLoadedPerson(socialPerson);
+        if (person == null) {
+            return notifyPlayers;
+        }
 
         for (String memberName : person.getFriends().keySet()) {
             SocialPerson groupPerson = getPerson(memberName);
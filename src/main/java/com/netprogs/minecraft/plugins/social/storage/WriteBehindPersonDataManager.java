@@ -0,0 +1,371 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.io.DataFileStore;
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Write-behind stage placed in front of another {@link IPersonDataManager}.
+ *
+ * Calls to savePerson() only mark the person as dirty. Every flush interval the dirty people are written out to the
+ * wrapped data manager on a background thread. Saving the same person several times within one interval results in
+ * only a single write. People without any changes since their last write are skipped entirely.
+ *
+ * Each person is copied under their lock before being written, so a write never sees them half way through a change.
+ * A person is only marked as saved once the driver has written them without an error. Otherwise they stay in the
+ * queue and are tried again on the next flush.
+ *
+ * Loads will always see the most recent save, even if it hasn't been written out yet.
+ * </pre>
+ */
+public class WriteBehindPersonDataManager implements IPersonDataManager {
+
+    private final IPersonDataManager dataManager;
+
+    // people waiting for the next flush. Map<LowerCasePersonName, Person>
+    private final ConcurrentHashMap<String, Person> dirtyPersons = new ConcurrentHashMap<String, Person>();
+
+    // people currently being written by the flush. Loads need to see these until the write has completed.
+    private final ConcurrentHashMap<String, Person> writingPersons = new ConcurrentHashMap<String, Person>();
+
+    // settings waiting to be written. Map<LowerCasePersonName, PersonSettings>
+    private final ConcurrentHashMap<String, PersonSettings> pendingSettings =
+            new ConcurrentHashMap<String, PersonSettings>();
+
+    private final ScheduledExecutorService executor;
+    private final long flushInterval;
+
+    // statistics
+    private final AtomicLong savesRequested = new AtomicLong();
+    private final AtomicLong savesSkipped = new AtomicLong();
+    private final AtomicLong savesWritten = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushTimeTotal = new AtomicLong();
+    private volatile long lastFlushTime;
+
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    public WriteBehindPersonDataManager(IPersonDataManager dataManager, long flushInterval) {
+
+        this.dataManager = dataManager;
+        this.flushInterval = flushInterval;
+
+        // we only want a single writer so that the saves for a person are always written in order
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocialNetwork-Storage");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        executor.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Person loadPerson(String personName) throws IOException {
+
+        // check to see if we have a newer copy waiting to be written
+        String key = personName.toLowerCase();
+
+        Person person = dirtyPersons.get(key);
+        if (person == null) {
+            person = writingPersons.get(key);
+        }
+
+        if (person != null) {
+            return person;
+        }
+
+        return dataManager.loadPerson(personName);
+    }
+
+    @Override
+    public void savePerson(Person person) {
+
+        savesRequested.incrementAndGet();
+
+        // nothing has changed since they were last written, so there's nothing to do
+        if (!person.isModified()) {
+            savesSkipped.incrementAndGet();
+            return;
+        }
+
+        // If they're already waiting, this simply replaces the entry with the same instance
+        dirtyPersons.put(person.getName().toLowerCase(), person);
+    }
+
+    @Override
+    public void deletePerson(final Person person) {
+
+        // anything pending for them is no longer needed
+        dirtyPersons.remove(person.getName().toLowerCase());
+
+        // run the delete on the writer thread so it can't be overwritten by a flush that is already in progress
+        waitFor(executor.submit(new Runnable() {
+            public void run() {
+                dataManager.deletePerson(person);
+            }
+        }));
+    }
+
+    @Override
+    public PersonSettings loadPersonSettings(Person person) {
+
+        // check to see if we have a newer copy waiting to be written
+        PersonSettings settings = pendingSettings.get(person.getName().toLowerCase());
+        if (settings != null) {
+            return settings;
+        }
+
+        return dataManager.loadPersonSettings(person);
+    }
+
+    @Override
+    public void savePersonSettings(final Person person, final PersonSettings settings) {
+
+        final String key = person.getName().toLowerCase();
+        pendingSettings.put(key, settings);
+
+        // settings are only written back occasionally, so they're written on their own instead of waiting for a flush
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+
+                    dataManager.savePersonSettings(person, settings);
+                    pendingSettings.remove(key, settings);
+
+                } catch (IOException e) {
+
+                    // loads keep finding them in the pending list until we manage to write them
+                    SocialNetworkPlugin.logger().log(Level.WARNING, "Failed to save the settings for "
+                            + person.getName(), e);
+
+                    if (!executor.isShutdown()) {
+                        executor.schedule(this, flushInterval, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void deletePersonSettings(final Person person) {
+
+        pendingSettings.remove(person.getName().toLowerCase());
+
+        // run the delete on the writer thread so it happens after any writes already waiting
+        waitFor(executor.submit(new Runnable() {
+            public void run() {
+                dataManager.deletePersonSettings(person);
+            }
+        }));
+    }
+
+    /**
+     * Writes all the currently dirty people to the wrapped data manager.
+     * This should only be called from the writer thread.
+     */
+    private void flush() {
+
+        if (dirtyPersons.isEmpty()) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        // Hold all the file writes so they can be forced to disk together at the end.
+        // Until then the files still have the old data, so loads need to keep finding everyone in the writing list.
+        DataFileStore.beginBatch();
+
+        List<String> keys = new ArrayList<String>(dirtyPersons.keySet());
+        Map<String, Person> writtenPersons = new HashMap<String, Person>();
+        Map<Person, Long> writtenModifications = new HashMap<Person, Long>();
+        try {
+
+            for (String key : keys) {
+
+                Person person = dirtyPersons.get(key);
+                if (person == null) {
+                    continue;
+                }
+
+                // Move them over to the writing list before removing them from the dirty list so loads always find
+                // them. If another save comes in while we're writing, it will put them back into the dirty list.
+                writingPersons.put(key, person);
+                dirtyPersons.remove(key, person);
+                writtenPersons.put(key, person);
+
+                // Write a copy taken under their lock, so the write never sees them half way through a change.
+                // Anything changed after this point will be picked up by the next save.
+                Person copy;
+                person.getLock().lock();
+                try {
+                    copy = person.copyForSave();
+                } finally {
+                    person.getLock().unlock();
+                }
+
+                try {
+
+                    dataManager.savePerson(copy);
+                    writtenModifications.put(person, copy.getModificationCount());
+                    savesWritten.incrementAndGet();
+
+                } catch (Exception e) {
+
+                    // put them back so we try again on the next flush, in full since the copy took their changes
+                    SocialNetworkPlugin.logger().log(Level.WARNING, "Failed to save " + person.getName(), e);
+                    person.resetChanges();
+                    dirtyPersons.putIfAbsent(key, person);
+                }
+            }
+
+            DataFileStore.commitBatch();
+
+            // only now is their data safely on disk
+            for (Map.Entry<Person, Long> entry : writtenModifications.entrySet()) {
+                entry.getKey().markSaved(entry.getValue());
+            }
+
+        } catch (IOException e) {
+
+            // none of the batch made it to disk, so they all need to be written again
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Failed to write the pending saves", e);
+            for (Map.Entry<String, Person> entry : writtenPersons.entrySet()) {
+                entry.getValue().resetChanges();
+                dirtyPersons.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+
+        } finally {
+
+            for (Map.Entry<String, Person> entry : writtenPersons.entrySet()) {
+                writingPersons.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        lastFlushTime = System.currentTimeMillis() - startTime;
+        flushTimeTotal.addAndGet(lastFlushTime);
+        flushCount.incrementAndGet();
+
+        SocialNetworkPlugin.log("Flushed " + keys.size() + " person saves in " + lastFlushTime + "ms");
+    }
+
+    /**
+     * Writes out everything that is pending and stops the writer thread.
+     * @param timeout The maximum time (in seconds) to wait for the pending saves to be written.
+     */
+    public void shutdown(long timeout) {
+
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        // queue a final flush, then stop accepting any more work (this also cancels the periodic flush)
+        executor.execute(flushTask);
+        executor.shutdown();
+
+        try {
+
+            if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE,
+                        "Timed out writing player data. " + getQueueDepth() + " saves were not written.");
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitFor(Future<?> future) {
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Storage task failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return The number of people waiting to be written.
+     */
+    public int getQueueDepth() {
+        return dirtyPersons.size();
+    }
+
+    /**
+     * @return The number of saves that were merged into another save instead of being written separately.
+     */
+    public long getCoalescedSaves() {
+        return savesRequested.get() - savesSkipped.get() - savesWritten.get() - getQueueDepth();
+    }
+
+    /**
+     * @return The number of saves that were skipped because the person had no changes to write.
+     */
+    public long getSkippedSaves() {
+        return savesSkipped.get();
+    }
+
+    /**
+     * @return The time (in milliseconds) the last flush took.
+     */
+    public long getLastFlushTime() {
+        return lastFlushTime;
+    }
+
+    /**
+     * @return The average time (in milliseconds) taken by each flush.
+     */
+    public long getAverageFlushTime() {
+
+        long count = flushCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return flushTimeTotal.get() / count;
+    }
+}
@@ -0,0 +1,87 @@
+package com.netprogs.minecraft.plugins.social.storage.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * A set of player names that ignores case when checking membership.
+ *
+ * Names are indexed by their lower case form, so lookups stay constant time no matter how many players are stored.
+ * The name is kept as it was first added so it can be shown back to players the same way.
+ * This class is not thread safe. Its owner must guard access to it.
+ * </pre>
+ */
+public class MemberSet {
+
+    // Map<lowerCaseName, name>
+    private final Map<String, String> members = new LinkedHashMap<String, String>();
+
+    public MemberSet() {
+    }
+
+    public MemberSet(Collection<String> names) {
+        for (String name : names) {
+            add(name);
+        }
+    }
+
+    public boolean contains(String name) {
+        return members.containsKey(name.toLowerCase());
+    }
+
+    /**
+     * @return true if the name was not already in the set.
+     */
+    public boolean add(String name) {
+
+        String key = name.toLowerCase();
+        if (members.containsKey(key)) {
+            return false;
+        }
+
+        members.put(key, name);
+        return true;
+    }
+
+    /**
+     * @return true if the name was in the set.
+     */
+    public boolean remove(String name) {
+        return members.remove(name.toLowerCase()) != null;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * @return A copy of the names in the order they were added.
+     */
+    public List<String> toList() {
+        return new ArrayList<String>(members.values());
+    }
+}
@@ -1,8 +1,5 @@
 package com.netprogs.minecraft.plugins.social.storage.data;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /*
  * Copyright (C) 2012 Scott Milne
  * 
@@ -27,24 +24,45 @@ public class Network {
 
     // We only store here the names of each player that are in the network.
     // We use that name to reference their data files later on.
-    private List<String> players = new ArrayList<String>();
-    private List<String> excludedPlayers = new ArrayList<String>();
-    private List<String> priests = new ArrayList<String>();
-    private List<String> lawyers = new ArrayList<String>();
+    private MemberSet players = new MemberSet();
+    private MemberSet excludedPlayers = new MemberSet();
+    private MemberSet priests = new MemberSet();
+    private MemberSet lawyers = new MemberSet();
+
+    // Every member that has been given an id, in the order the ids were given out. Removed when they leave.
+    private MemberSet playerNames = new MemberSet();
 
-    public List<String> getPlayers() {
+    public MemberSet getPlayers() {
         return players;
     }
 
-    public List<String> getPriests() {
+    public MemberSet getPriests() {
         return priests;
     }
 
-    public List<String> getLawyers() {
+    public MemberSet getLawyers() {
         return lawyers;
     }
 
-    public List<String> getExcludedPlayers() {
+    public MemberSet getExcludedPlayers() {
         return excludedPlayers;
     }
+
+    public MemberSet getPlayerNames() {
+        return playerNames;
+    }
+
+    /**
+     * @return A copy of the lists, so they can be written out while this one keeps changing.
+     */
+    public Network copy() {
+
+        Network copy = new Network();
+        copy.players = new MemberSet(players.toList());
+        copy.excludedPlayers = new MemberSet(excludedPlayers.toList());
+        copy.priests = new MemberSet(priests.toList());
+        copy.lawyers = new MemberSet(lawyers.toList());
+        copy.playerNames = new MemberSet(playerNames.toList());
+        return copy;
+    }
 }
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.netprogs.minecraft.plugins.social.SocialPerson.Gender;
 import com.netprogs.minecraft.plugins.social.SocialPerson.Status;
@@ -49,6 +50,7 @@ public class Person {
     private boolean genderChoiceRemindersIgnored;
 
     // <MessageClassName, <PlayerName, List<MessageInstance>>>
+    // Messages are kept in the MailboxStore now. This only holds the ones from older files until they're moved over.
     private Map<String, Map<String, List<? extends IMessage>>> messageQueue =
             new HashMap<String, Map<String, List<? extends IMessage>>>();
 
@@ -77,6 +79,17 @@ public class Person {
     private WaitState waitState;
     private IMessage waitData;
 
+    // The changes made since the last save. These are only tracked once the journal driver asks for them.
+    private transient List<PersonChange> changes;
+
+    // Counts every change made to this person. If it still matches the count from their last save, their data file
+    // is already up to date and saving them again can be skipped.
+    private transient long modificationCount;
+    private transient long savedModificationCount;
+
+    // Held while this person is being changed, and while they're copied to be saved
+    private final transient ReentrantLock lock = new ReentrantLock();
+
     public String getName() {
         return name;
     }
@@ -256,4 +269,132 @@ public class Person {
     public void setGenderChoiceRemindersIgnored(boolean genderChoiceRemindersIgnored) {
         this.genderChoiceRemindersIgnored = genderChoiceRemindersIgnored;
     }
+
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * <pre>
+     * Copies this person so the copy can be written out while they carry on changing. The caller must hold the lock.
+     *
+     * The changes made since the last copy move over to it, and from here on the changes are always tracked so the next
+     * copy has them. The group members and messages never change, so they're shared with the copy.
+     * </pre>
+     */
+    public Person copyForSave() {
+
+        Person copy = new Person();
+
+        copy.name = name;
+        copy.gender = gender;
+        copy.socialStatus = socialStatus;
+        copy.dateJoined = dateJoined;
+        copy.statusMessage = statusMessage;
+        copy.statusUpdatesIgnored = statusUpdatesIgnored;
+        copy.loginUpdatesIgnored = loginUpdatesIgnored;
+        copy.genderChoiceRemindersIgnored = genderChoiceRemindersIgnored;
+
+        for (Map.Entry<String, Map<String, List<? extends IMessage>>> entry : messageQueue.entrySet()) {
+
+            Map<String, List<? extends IMessage>> playerMessageMap = new HashMap<String, List<? extends IMessage>>();
+            for (Map.Entry<String, List<? extends IMessage>> playerEntry : entry.getValue().entrySet()) {
+                playerMessageMap.put(playerEntry.getKey(), new ArrayList<IMessage>(playerEntry.getValue()));
+            }
+            copy.messageQueue.put(entry.getKey(), playerMessageMap);
+        }
+
+        copy.friends.putAll(friends);
+        copy.relationships.putAll(relationships);
+        copy.affairs.putAll(affairs);
+        copy.children.putAll(children);
+        copy.ignoreList.addAll(ignoreList);
+
+        copy.childOf = childOf;
+        copy.engagement = engagement;
+        copy.marriage = marriage;
+        copy.weddingVows = weddingVows;
+        copy.divorce = divorce;
+        copy.lawyer = lawyer;
+        copy.priest = priest;
+
+        copy.waitCommand = waitCommand;
+        copy.waitCommandType = waitCommandType;
+        copy.waitState = waitState;
+        copy.waitData = waitData;
+
+        synchronized (this) {
+
+            copy.changes = changes;
+            changes = new ArrayList<PersonChange>();
+
+            copy.modificationCount = modificationCount;
+            copy.savedModificationCount = savedModificationCount;
+        }
+
+        return copy;
+    }
+
+    /**
+     * Forgets the changes that were taken by a copy that couldn't be saved, so the next save writes them in full.
+     */
+    public synchronized void resetChanges() {
+        changes = null;
+    }
+
+    /**
+     * Starts keeping track of the changes made to this person.
+     */
+    public synchronized void trackChanges() {
+        if (changes == null) {
+            changes = new ArrayList<PersonChange>();
+        }
+    }
+
+    public synchronized void recordChange(PersonChange change) {
+        modificationCount++;
+        if (changes != null) {
+            changes.add(change);
+        }
+    }
+
+    /**
+     * Marks this person as needing to be saved without recording a change. Used for people that have never been saved.
+     */
+    public synchronized void markModified() {
+        modificationCount++;
+    }
+
+    /**
+     * @return True if there are changes that haven't been saved yet.
+     */
+    public synchronized boolean isModified() {
+        return modificationCount != savedModificationCount;
+    }
+
+    public synchronized long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Marks the changes up to the given count as saved. Any made after it was taken still need to be saved.
+     */
+    public synchronized void markSaved(long modificationCount) {
+        if (modificationCount > savedModificationCount) {
+            savedModificationCount = modificationCount;
+        }
+    }
+
+    /**
+     * Returns the changes made since the last call and starts a new list.
+     * @return The list of changes, or null if changes are not being tracked.
+     */
+    public synchronized List<PersonChange> takeChanges() {
+
+        List<PersonChange> takenChanges = changes;
+        if (changes != null) {
+            changes = new ArrayList<PersonChange>();
+        }
+        return takenChanges;
+    }
 }
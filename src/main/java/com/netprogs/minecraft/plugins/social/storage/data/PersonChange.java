@@ -0,0 +1,94 @@
+package com.netprogs.minecraft.plugins.social.storage.data;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * A single change made to a {@link Person}.
+ *
+ * These are recorded by SocialPerson as it modifies the Person and are used by the journal driver so that only the
+ * changes need to be written instead of the entire Person.
+ *
+ * The field is the name of the field within Person that was changed.
+ * </pre>
+ */
+public class PersonChange {
+
+    public enum Operation {
+        set, put, remove, add
+    }
+
+    private final Operation operation;
+    private final String field;
+    private final String key;
+    private final Object value;
+
+    private PersonChange(Operation operation, String field, String key, Object value) {
+        this.operation = operation;
+        this.field = field;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Replaces the value of a field.
+     */
+    public static PersonChange set(String field, Object value) {
+        return new PersonChange(Operation.set, field, null, value);
+    }
+
+    /**
+     * Places an entry into a map field.
+     */
+    public static PersonChange put(String field, String key, Object value) {
+        return new PersonChange(Operation.put, field, key, value);
+    }
+
+    /**
+     * Removes an entry from a map field, or the given key from a list field.
+     */
+    public static PersonChange remove(String field, String key) {
+        return new PersonChange(Operation.remove, field, key, null);
+    }
+
+    /**
+     * Adds a value to a list field.
+     */
+    public static PersonChange add(String field, Object value) {
+        return new PersonChange(Operation.add, field, null, value);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+}
@@ -2,6 +2,7 @@ package com.netprogs.minecraft.plugins.social.storage.data;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import com.netprogs.minecraft.plugins.social.storage.data.perk.IPersonPerkSettings;
 
@@ -39,6 +40,10 @@ public class PersonSettings {
         return perkSettingsList.containsKey(perkName);
     }
 
+    public Set<String> getPerkNames() {
+        return perkSettingsList.keySet();
+    }
+
     public <T extends IPersonPerkSettings> T getPerkSettings(String perkName) {
 
         @SuppressWarnings("unchecked")
@@ -0,0 +1,121 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.io.DataFileStore;
+import com.netprogs.minecraft.plugins.social.storage.IPersonDataManager;
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+import com.netprogs.minecraft.plugins.social.storage.driver.json.DataFileLayout;
+import com.netprogs.minecraft.plugins.social.storage.driver.json.JsonPersonDataManager;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Stores each Person and their PersonSettings in the DataFiles folder using the {@link PersonCodec} binary format.
+ *
+ * The same file names as the JSON driver are used and each file is checked for the binary header when loading, so
+ * both drivers can read either format. Existing JSON files are converted the next time the person is saved.
+ * To inspect someone's data, switch the driver back to "json" and their file will be written as JSON again.
+ * Where each file lives is decided by {@link DataFileLayout}.
+ * </pre>
+ */
+public class BinaryPersonDataManager implements IPersonDataManager {
+
+    private final PersonCodec codec = new PersonCodec();
+
+    // used for the files that are still JSON
+    private final JsonPersonDataManager jsonDataManager = new JsonPersonDataManager();
+
+    @Override
+    public Person loadPerson(String personName) throws IOException {
+
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            File dataFile = DataFileLayout.findFile(personName, "");
+
+            SocialNetworkPlugin.log("loadPerson: " + dataFile);
+
+            if (PersonCodec.isEncoded(dataFile)) {
+                return codec.decodePerson(PersonCodec.readFile(dataFile));
+            }
+
+            return jsonDataManager.loadPerson(personName);
+        }
+    }
+
+    @Override
+    public void savePerson(Person person) throws IOException {
+
+        SocialNetworkPlugin.log("[" + person.getName() + "] Saving.");
+
+        synchronized (DataFileLayout.getLock(person.getName())) {
+            DataFileStore.write(DataFileLayout.prepareWrite(person.getName(), ""), codec.encodePerson(person));
+        }
+    }
+
+    @Override
+    public void deletePerson(Person person) {
+
+        SocialNetworkPlugin.log("[" + person.getName() + "] Deleting.");
+
+        DataFileLayout.deleteFile(person.getName(), "");
+    }
+
+    @Override
+    public PersonSettings loadPersonSettings(Person person) {
+
+        synchronized (DataFileLayout.getLock(person.getName())) {
+
+            File dataFile = DataFileLayout.findFile(person.getName(), DataFileLayout.SETTINGS_SUFFIX);
+            if (PersonCodec.isEncoded(dataFile)) {
+
+                try {
+                    return codec.decodePersonSettings(PersonCodec.readFile(dataFile));
+                } catch (IOException e) {
+                    SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to read " + dataFile.getName(), e);
+                    return new PersonSettings();
+                }
+            }
+
+            return jsonDataManager.loadPersonSettings(person);
+        }
+    }
+
+    @Override
+    public void savePersonSettings(Person person, PersonSettings personSettings) throws IOException {
+
+        synchronized (DataFileLayout.getLock(person.getName())) {
+            File dataFile = DataFileLayout.prepareWrite(person.getName(), DataFileLayout.SETTINGS_SUFFIX);
+            DataFileStore.write(dataFile, codec.encodePersonSettings(personSettings));
+        }
+    }
+
+    @Override
+    public void deletePersonSettings(Person person) {
+
+        DataFileLayout.deleteFile(person.getName(), DataFileLayout.SETTINGS_SUFFIX);
+    }
+}
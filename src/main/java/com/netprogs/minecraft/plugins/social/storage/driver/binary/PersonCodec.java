@@ -0,0 +1,735 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.netprogs.minecraft.plugins.social.SocialPerson.Gender;
+import com.netprogs.minecraft.plugins.social.SocialPerson.Status;
+import com.netprogs.minecraft.plugins.social.SocialPerson.WaitState;
+import com.netprogs.minecraft.plugins.social.SocialPerson.WeddingVows;
+import com.netprogs.minecraft.plugins.social.command.ISocialNetworkCommand.ICommandType;
+import com.netprogs.minecraft.plugins.social.command.SocialNetworkCommandType;
+import com.netprogs.minecraft.plugins.social.storage.IMessage;
+import com.netprogs.minecraft.plugins.social.storage.data.Affair;
+import com.netprogs.minecraft.plugins.social.storage.data.Alert;
+import com.netprogs.minecraft.plugins.social.storage.data.Child;
+import com.netprogs.minecraft.plugins.social.storage.data.Divorce;
+import com.netprogs.minecraft.plugins.social.storage.data.Engagement;
+import com.netprogs.minecraft.plugins.social.storage.data.Friend;
+import com.netprogs.minecraft.plugins.social.storage.data.Gift;
+import com.netprogs.minecraft.plugins.social.storage.data.GroupMember;
+import com.netprogs.minecraft.plugins.social.storage.data.Marriage;
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+import com.netprogs.minecraft.plugins.social.storage.data.Relationship;
+import com.netprogs.minecraft.plugins.social.storage.data.Request;
+import com.netprogs.minecraft.plugins.social.storage.data.Sticky;
+import com.netprogs.minecraft.plugins.social.storage.data.Wedding;
+import com.netprogs.minecraft.plugins.social.storage.data.perk.IPersonPerkSettings;
+import com.netprogs.minecraft.plugins.social.storage.data.perk.PersonPlayerDamageSettings;
+import com.netprogs.minecraft.plugins.social.storage.data.perk.PersonTeleportSettings;
+
+import org.bukkit.craftbukkit.libs.com.google.gson.Gson;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Compact binary encoding of Person and PersonSettings.
+ *
+ * Layout:
+ *   magic ("SNB"), format version, kind (P for Person, S for PersonSettings)
+ *   symbol table: varint count, then each symbol as a varint length and UTF-8 bytes
+ *   body
+ *
+ * Player names, enum values, world names and class names are written once into the symbol table and then referred
+ * to by their varint index. All counts and lengths are varints. Nullable values use 0 for null and index + 1 otherwise.
+ *
+ * Each IMessage and IPersonPerkSettings is written with a short type tag. Classes without a tag fall back to their
+ * class name and Gson JSON, so new message types can be stored before they have been given one.
+ *
+ * Any change to the layout must increase the VERSION.
+ * </pre>
+ */
+public class PersonCodec {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = { 'S', 'N', 'B' };
+
+    private static final byte KIND_PERSON = 'P';
+    private static final byte KIND_SETTINGS = 'S';
+
+    // message type tags
+    private static final int MESSAGE_NULL = 0;
+    private static final int MESSAGE_ALERT = 1;
+    private static final int MESSAGE_GIFT = 2;
+    private static final int MESSAGE_REQUEST = 3;
+    private static final int MESSAGE_STICKY = 4;
+    private static final int MESSAGE_WEDDING = 5;
+    private static final int MESSAGE_JSON = 15;
+
+    // perk settings type tags
+    private static final int PERK_NULL = 0;
+    private static final int PERK_TELEPORT = 1;
+    private static final int PERK_PLAYER_DAMAGE = 2;
+    private static final int PERK_JSON = 15;
+
+    // Person flag bits
+    private static final int FLAG_STATUS_UPDATES_IGNORED = 1;
+    private static final int FLAG_LOGIN_UPDATES_IGNORED = 2;
+    private static final int FLAG_GENDER_REMINDERS_IGNORED = 4;
+    private static final int FLAG_LAWYER = 8;
+    private static final int FLAG_PRIEST = 16;
+
+    // only used for the JSON fallback
+    private final Gson json = new Gson();
+
+    /**
+     * @return true if the data starts with the binary header. Used to tell these apart from the JSON data files.
+     */
+    public static boolean isEncoded(byte[] data) {
+
+        if (data.length < MAGIC.length + 2) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the file starts with the binary header.
+     */
+    public static boolean isEncoded(File file) {
+
+        byte[] header = new byte[MAGIC.length + 2];
+        try {
+
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+            try {
+                input.readFully(header);
+            } finally {
+                input.close();
+            }
+
+        } catch (IOException e) {
+            // too short or can't be read, either way it isn't ours
+            return false;
+        }
+
+        return isEncoded(header);
+    }
+
+    public static byte[] readFile(File file) throws IOException {
+
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] data = new byte[(int) file.length()];
+            input.readFully(data);
+            return data;
+        } finally {
+            input.close();
+        }
+    }
+
+    public byte[] encodePerson(Person person) {
+
+        Encoder encoder = new Encoder();
+
+        encoder.writeSymbol(person.getName());
+        encoder.writeSymbol(fromEnum(person.getGender()));
+        encoder.writeSymbol(fromEnum(person.getSocialStatus()));
+        encoder.writeVarLong(person.getDateJoined());
+        encoder.writeString(person.getStatusMessage());
+
+        int flags = 0;
+        flags |= person.isStatusUpdatesIgnored() ? FLAG_STATUS_UPDATES_IGNORED : 0;
+        flags |= person.isLoginUpdatesIgnored() ? FLAG_LOGIN_UPDATES_IGNORED : 0;
+        flags |= person.isGenderChoiceRemindersIgnored() ? FLAG_GENDER_REMINDERS_IGNORED : 0;
+        flags |= person.isLawyer() ? FLAG_LAWYER : 0;
+        flags |= person.isPriest() ? FLAG_PRIEST : 0;
+        encoder.writeVarInt(flags);
+
+        encoder.writeNames(person.getFriends().keySet());
+        encoder.writeNames(person.getRelationships().keySet());
+        encoder.writeNames(person.getAffairs().keySet());
+        encoder.writeNames(person.getChildren().keySet());
+        encoder.writeNames(person.getIgnoreList());
+
+        encoder.writeSymbol(person.getChildOf());
+        encoder.writeSymbol(getPlayerName(person.getEngagement()));
+        encoder.writeSymbol(getPlayerName(person.getMarriage()));
+        encoder.writeSymbol(getPlayerName(person.getDivorce()));
+        encoder.writeSymbol(fromEnum(person.getWeddingVows()));
+
+        encoder.writeSymbol(fromEnum(person.getWaitState()));
+        ICommandType waitCommand = person.getWaitCommand();
+        encoder.writeSymbol((waitCommand != null) ? waitCommand.toString() : null);
+        writeMessage(encoder, person.getWaitData());
+
+        Map<String, Map<String, List<? extends IMessage>>> messageQueue = person.getMessageQueue();
+        encoder.writeVarInt(messageQueue.size());
+        for (Map.Entry<String, Map<String, List<? extends IMessage>>> typeEntry : messageQueue.entrySet()) {
+
+            encoder.writeSymbol(typeEntry.getKey());
+            encoder.writeVarInt(typeEntry.getValue().size());
+
+            for (Map.Entry<String, List<? extends IMessage>> playerEntry : typeEntry.getValue().entrySet()) {
+
+                encoder.writeSymbol(playerEntry.getKey());
+                encoder.writeVarInt(playerEntry.getValue().size());
+
+                for (IMessage message : playerEntry.getValue()) {
+                    writeMessage(encoder, message);
+                }
+            }
+        }
+
+        return encoder.toByteArray(KIND_PERSON);
+    }
+
+    public Person decodePerson(byte[] data) throws IOException {
+
+        Decoder decoder = new Decoder(data, KIND_PERSON);
+
+        Person person = new Person();
+        person.setName(decoder.readSymbol());
+        person.setGender(toEnum(Gender.class, decoder.readSymbol()));
+        person.setSocialStatus(toEnum(Status.class, decoder.readSymbol()));
+        person.setDateJoined(decoder.readVarLong());
+        person.setStatusMessage(decoder.readString());
+
+        int flags = decoder.readVarInt();
+        person.setStatusUpdatesIgnored((flags & FLAG_STATUS_UPDATES_IGNORED) != 0);
+        person.setLoginUpdatesIgnored((flags & FLAG_LOGIN_UPDATES_IGNORED) != 0);
+        person.setGenderChoiceRemindersIgnored((flags & FLAG_GENDER_REMINDERS_IGNORED) != 0);
+        person.setLawyer((flags & FLAG_LAWYER) != 0);
+        person.setPriest((flags & FLAG_PRIEST) != 0);
+
+        for (String playerName : decoder.readNames()) {
+            person.getFriends().put(playerName, new Friend(playerName));
+        }
+        for (String playerName : decoder.readNames()) {
+            person.getRelationships().put(playerName, new Relationship(playerName));
+        }
+        for (String playerName : decoder.readNames()) {
+            person.getAffairs().put(playerName, new Affair(playerName));
+        }
+        for (String playerName : decoder.readNames()) {
+            person.getChildren().put(playerName, new Child(playerName));
+        }
+        person.getIgnoreList().addAll(decoder.readNames());
+
+        person.setChildOf(decoder.readSymbol());
+
+        String engagementName = decoder.readSymbol();
+        if (engagementName != null) {
+            person.setEngagement(new Engagement(engagementName));
+        }
+
+        String marriageName = decoder.readSymbol();
+        if (marriageName != null) {
+            person.setMarriage(new Marriage(marriageName));
+        }
+
+        String divorceName = decoder.readSymbol();
+        if (divorceName != null) {
+            person.setDivorce(new Divorce(divorceName));
+        }
+
+        person.setWeddingVows(toEnum(WeddingVows.class, decoder.readSymbol()));
+
+        person.setWaitState(toEnum(WaitState.class, decoder.readSymbol()));
+        person.setWaitCommand(toEnum(SocialNetworkCommandType.class, decoder.readSymbol()));
+        person.setWaitData(readMessage(decoder));
+
+        int typeCount = decoder.readVarInt();
+        for (int i = 0; i < typeCount; i++) {
+
+            String className = decoder.readSymbol();
+            Map<String, List<? extends IMessage>> playerMessageMap = new HashMap<String, List<? extends IMessage>>();
+
+            int playerCount = decoder.readVarInt();
+            for (int j = 0; j < playerCount; j++) {
+
+                String playerName = decoder.readSymbol();
+                int messageCount = decoder.readVarInt();
+
+                List<IMessage> messageList = new ArrayList<IMessage>(messageCount);
+                for (int k = 0; k < messageCount; k++) {
+                    messageList.add(readMessage(decoder));
+                }
+
+                playerMessageMap.put(playerName, messageList);
+            }
+
+            person.getMessageQueue().put(className, playerMessageMap);
+        }
+
+        return person;
+    }
+
+    public byte[] encodePersonSettings(PersonSettings personSettings) {
+
+        Encoder encoder = new Encoder();
+
+        encoder.writeVarInt(personSettings.getPerkNames().size());
+        for (String perkName : personSettings.getPerkNames()) {
+
+            encoder.writeSymbol(perkName);
+
+            IPersonPerkSettings perkSettings = personSettings.getPerkSettings(perkName);
+            if (perkSettings == null) {
+
+                encoder.writeVarInt(PERK_NULL);
+
+            } else if (perkSettings.getClass() == PersonTeleportSettings.class) {
+
+                PersonTeleportSettings teleportSettings = (PersonTeleportSettings) perkSettings;
+                encoder.writeVarInt(PERK_TELEPORT);
+                encoder.writeSymbol(teleportSettings.getWorld());
+                encoder.writeSignedVarInt(teleportSettings.getBlockX());
+                encoder.writeSignedVarInt(teleportSettings.getBlockY());
+                encoder.writeSignedVarInt(teleportSettings.getBlockZ());
+
+            } else if (perkSettings.getClass() == PersonPlayerDamageSettings.class) {
+
+                encoder.writeVarInt(PERK_PLAYER_DAMAGE);
+
+            } else {
+
+                encoder.writeVarInt(PERK_JSON);
+                encoder.writeSymbol(perkSettings.getClass().getName());
+                encoder.writeString(json.toJson(perkSettings));
+            }
+        }
+
+        return encoder.toByteArray(KIND_SETTINGS);
+    }
+
+    public PersonSettings decodePersonSettings(byte[] data) throws IOException {
+
+        Decoder decoder = new Decoder(data, KIND_SETTINGS);
+
+        PersonSettings personSettings = new PersonSettings();
+
+        int perkCount = decoder.readVarInt();
+        for (int i = 0; i < perkCount; i++) {
+
+            String perkName = decoder.readSymbol();
+
+            int tag = decoder.readVarInt();
+            switch (tag) {
+
+                case PERK_NULL:
+                    personSettings.setPerkSettings(perkName, null);
+                    break;
+
+                case PERK_TELEPORT:
+                    PersonTeleportSettings teleportSettings = new PersonTeleportSettings();
+                    teleportSettings.setWorld(decoder.readSymbol());
+                    teleportSettings.setBlockX(decoder.readSignedVarInt());
+                    teleportSettings.setBlockY(decoder.readSignedVarInt());
+                    teleportSettings.setBlockZ(decoder.readSignedVarInt());
+                    personSettings.setPerkSettings(perkName, teleportSettings);
+                    break;
+
+                case PERK_PLAYER_DAMAGE:
+                    personSettings.setPerkSettings(perkName, new PersonPlayerDamageSettings());
+                    break;
+
+                case PERK_JSON:
+                    IPersonPerkSettings perkSettings = fromJson(decoder.readSymbol(), decoder.readString());
+                    personSettings.setPerkSettings(perkName, perkSettings);
+                    break;
+
+                default:
+                    throw new IOException("Unknown perk settings tag " + tag);
+            }
+        }
+
+        return personSettings;
+    }
+
+    private void writeMessage(Encoder encoder, IMessage message) {
+
+        if (message == null) {
+
+            encoder.writeVarInt(MESSAGE_NULL);
+
+        } else if (message.getClass() == Alert.class) {
+
+            Alert alert = (Alert) message;
+            encoder.writeVarInt(MESSAGE_ALERT);
+            encoder.writeSymbol(alert.getPlayerName());
+            encoder.writeSymbol(fromEnum(alert.getAlertType()));
+            encoder.writeString(alert.getAlertMessage());
+
+        } else if (message.getClass() == Gift.class) {
+
+            Gift gift = (Gift) message;
+            encoder.writeVarInt(MESSAGE_GIFT);
+            encoder.writeSymbol(fromEnum(gift.getType()));
+            encoder.writeSymbol(gift.getSenderPlayerName());
+            encoder.writeSymbol(gift.getReceiverPlayerName());
+            encoder.writeSymbol(gift.getSenderWorld());
+            encoder.writeDouble(gift.getAmount());
+            encoder.writeSignedVarInt(gift.getItemId());
+            encoder.writeSignedVarInt(gift.getItemCount());
+
+        } else if (message.getClass() == Request.class) {
+
+            Request request = (Request) message;
+            encoder.writeVarInt(MESSAGE_REQUEST);
+            encoder.writeSymbol(request.getPlayerName());
+            encoder.writeSymbol(request.getCommandType().toString());
+
+        } else if (message.getClass() == Sticky.class) {
+
+            Sticky sticky = (Sticky) message;
+            encoder.writeVarInt(MESSAGE_STICKY);
+            encoder.writeSymbol(sticky.getPlayerName());
+            encoder.writeString(sticky.getMessage());
+
+        } else if (message.getClass() == Wedding.class) {
+
+            Wedding wedding = (Wedding) message;
+            encoder.writeVarInt(MESSAGE_WEDDING);
+            encoder.writeSymbol(wedding.getPriest());
+            encoder.writeSymbol(wedding.getPlayerName());
+            encoder.writeSymbol(wedding.getSpouseName());
+
+        } else {
+
+            encoder.writeVarInt(MESSAGE_JSON);
+            encoder.writeSymbol(message.getClass().getName());
+            encoder.writeString(json.toJson(message));
+        }
+    }
+
+    private IMessage readMessage(Decoder decoder) throws IOException {
+
+        int tag = decoder.readVarInt();
+        switch (tag) {
+
+            case MESSAGE_NULL:
+                return null;
+
+            case MESSAGE_ALERT: {
+                String playerName = decoder.readSymbol();
+                Alert.Type alertType = toEnum(Alert.Type.class, decoder.readSymbol());
+                return new Alert(playerName, alertType, decoder.readString());
+            }
+
+            case MESSAGE_GIFT: {
+                Gift.Type giftType = toEnum(Gift.Type.class, decoder.readSymbol());
+                String senderPlayerName = decoder.readSymbol();
+                String receiverPlayerName = decoder.readSymbol();
+                String senderWorld = decoder.readSymbol();
+                double amount = decoder.readDouble();
+                int itemId = decoder.readSignedVarInt();
+                int itemCount = decoder.readSignedVarInt();
+
+                if (giftType == Gift.Type.item) {
+                    return new Gift(giftType, senderPlayerName, receiverPlayerName, senderWorld, itemId, itemCount);
+                }
+                return new Gift(giftType, senderPlayerName, receiverPlayerName, senderWorld, amount);
+            }
+
+            case MESSAGE_REQUEST: {
+                String playerName = decoder.readSymbol();
+                return new Request(playerName, SocialNetworkCommandType.valueOf(decoder.readSymbol()));
+            }
+
+            case MESSAGE_STICKY: {
+                String playerName = decoder.readSymbol();
+                return new Sticky(playerName, decoder.readString());
+            }
+
+            case MESSAGE_WEDDING: {
+                String priest = decoder.readSymbol();
+                String playerName = decoder.readSymbol();
+                return new Wedding(priest, playerName, decoder.readSymbol());
+            }
+
+            case MESSAGE_JSON:
+                return fromJson(decoder.readSymbol(), decoder.readString());
+
+            default:
+                throw new IOException("Unknown message tag " + tag);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T fromJson(String className, String data) throws IOException {
+
+        try {
+            return (T) json.fromJson(data, Class.forName(className));
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class " + className);
+        }
+    }
+
+    private static String getPlayerName(GroupMember groupMember) {
+        return (groupMember != null) ? groupMember.getPlayerName() : null;
+    }
+
+    private static String fromEnum(Enum<?> value) {
+        return (value != null) ? value.toString() : null;
+    }
+
+    private static <E extends Enum<E>> E toEnum(Class<E> enumClass, String value) {
+        return (value != null) ? Enum.valueOf(enumClass, value) : null;
+    }
+
+    /**
+     * Writes the body while collecting the symbol table. The symbol table is placed in front of the body at the end.
+     */
+    private static class Encoder {
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        private final Map<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+
+        public void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        public void writeSignedVarInt(int value) {
+            // zig-zag so small negative numbers stay small
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        public void writeVarLong(long value) {
+            writeVarLong(body, value);
+        }
+
+        public void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                body.write((int) (bits >>> shift));
+            }
+        }
+
+        public void writeString(String value) {
+
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            byte[] bytes = toBytes(value);
+            writeVarInt(bytes.length + 1);
+            body.write(bytes, 0, bytes.length);
+        }
+
+        public void writeSymbol(String value) {
+
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            Integer index = symbols.get(value);
+            if (index == null) {
+                index = symbols.size();
+                symbols.put(value, index);
+            }
+
+            writeVarInt(index + 1);
+        }
+
+        public void writeNames(Collection<String> names) {
+
+            writeVarInt(names.size());
+            for (String name : names) {
+                writeSymbol(name);
+            }
+        }
+
+        public byte[] toByteArray(byte kind) {
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(body.size() + symbols.size() * 12 + 8);
+            output.write(MAGIC, 0, MAGIC.length);
+            output.write(VERSION);
+            output.write(kind);
+
+            writeVarLong(output, symbols.size());
+            for (String symbol : symbols.keySet()) {
+                byte[] bytes = toBytes(symbol);
+                writeVarLong(output, bytes.length);
+                output.write(bytes, 0, bytes.length);
+            }
+
+            byte[] bodyBytes = body.toByteArray();
+            output.write(bodyBytes, 0, bodyBytes.length);
+
+            return output.toByteArray();
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream output, long value) {
+
+            while ((value & ~0x7FL) != 0) {
+                output.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            output.write((int) value);
+        }
+
+        private static byte[] toBytes(String value) {
+            try {
+                return value.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class Decoder {
+
+        private final byte[] data;
+        private int position;
+        private final String[] symbols;
+
+        public Decoder(byte[] data, byte kind) throws IOException {
+
+            this.data = data;
+
+            if (!isEncoded(data)) {
+                throw new IOException("Not a binary data file");
+            }
+
+            position = MAGIC.length;
+
+            int version = readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary data version " + version);
+            }
+
+            int dataKind = readByte();
+            if (dataKind != kind) {
+                throw new IOException("Unexpected binary data kind " + (char) dataKind);
+            }
+
+            symbols = new String[readVarInt()];
+            for (int i = 0; i < symbols.length; i++) {
+                symbols[i] = readUtf8(readVarInt());
+            }
+        }
+
+        public int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        public int readSignedVarInt() throws IOException {
+            int value = readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public long readVarLong() throws IOException {
+
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("Malformed varint");
+        }
+
+        public double readDouble() throws IOException {
+
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | readByte();
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        public String readString() throws IOException {
+
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            return readUtf8(length - 1);
+        }
+
+        public String readSymbol() throws IOException {
+
+            int index = readVarInt();
+            if (index == 0) {
+                return null;
+            }
+            if (index > symbols.length) {
+                throw new IOException("Symbol " + index + " is not in the table");
+            }
+            return symbols[index - 1];
+        }
+
+        public List<String> readNames() throws IOException {
+
+            int count = readVarInt();
+            List<String> names = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(readSymbol());
+            }
+            return names;
+        }
+
+        private int readByte() throws IOException {
+
+            if (position >= data.length) {
+                throw new IOException("Unexpected end of binary data");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        private String readUtf8(int length) throws IOException {
+
+            if (length < 0 || position + length > data.length) {
+                throw new IOException("Unexpected end of binary data");
+            }
+
+            String value = new String(data, position, length, "UTF-8");
+            position += length;
+            return value;
+        }
+    }
+}
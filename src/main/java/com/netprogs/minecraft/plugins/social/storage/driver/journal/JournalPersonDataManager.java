@@ -0,0 +1,626 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.journal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.io.JsonInterfaceTypeAdapterFactory;
+import com.netprogs.minecraft.plugins.social.storage.IMessage;
+import com.netprogs.minecraft.plugins.social.storage.IPersonDataManager;
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonChange;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonChange.Operation;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+import com.netprogs.minecraft.plugins.social.storage.driver.json.JsonPersonDataManager;
+
+import org.bukkit.craftbukkit.libs.com.google.gson.Gson;
+import org.bukkit.craftbukkit.libs.com.google.gson.GsonBuilder;
+import org.bukkit.craftbukkit.libs.com.google.gson.JsonElement;
+import org.bukkit.craftbukkit.libs.com.google.gson.JsonParseException;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Stores the changes made to each Person as small records appended to a journal instead of rewriting the whole Person.
+ *
+ * The journal is split into numbered segment files. Every compact interval the current segment is closed and a new
+ * one started. The closed segments are then folded into the regular JSON data files (the snapshots) on a background
+ * thread and deleted. The number of the last folded segment is kept in the checkpoint file.
+ *
+ * At startup only the segments after the checkpoint are replayed, which also recovers anything written before a crash.
+ *
+ * Saving a Person that isn't tracking changes yet (new players, or ones loaded before the journal was turned on)
+ * writes a single record holding the entire Person.
+ * </pre>
+ */
+public class JournalPersonDataManager implements IPersonDataManager {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * A single line in the journal.
+     */
+    private static class JournalRecord {
+
+        // replace and delete apply to the whole Person. The rest are the PersonChange operations.
+        private String operation;
+        private String person;
+        private String field;
+        private String key;
+        private String type;
+        private JsonElement value;
+    }
+
+    private static final String OPERATION_REPLACE = "replace";
+    private static final String OPERATION_DELETE = "delete";
+
+    /**
+     * A person with records in a segment that hasn't been folded into their snapshot yet.
+     */
+    private static class PendingPerson {
+
+        private final Person person;
+        private final long segment;
+
+        public PendingPerson(Person person, long segment) {
+            this.person = person;
+            this.segment = segment;
+        }
+    }
+
+    private final File journalFolder;
+
+    // The JSON data files are used as the snapshots
+    private final JsonPersonDataManager snapshotDataManager = new JsonPersonDataManager();
+
+    // Messages are stored through their interface, so we need the same adapter the data files use
+    private final Gson json = new GsonBuilder().registerTypeAdapterFactory(
+            new JsonInterfaceTypeAdapterFactory<IMessage>(IMessage.class)).create();
+
+    // The people that have records which aren't in their snapshot yet. Loads must use these instead of the snapshot.
+    private final ConcurrentHashMap<String, PendingPerson> pendingPersons =
+            new ConcurrentHashMap<String, PendingPerson>();
+
+    private final Map<String, Field> personFields = new HashMap<String, Field>();
+
+    private final ScheduledExecutorService executor;
+
+    // The segment currently being appended to. Access is guarded by synchronizing on this.
+    private long currentSegment;
+    private Writer segmentWriter;
+
+    // The last segment folded into the snapshots. Only used by the compactor.
+    private long checkpoint;
+
+    public JournalPersonDataManager(long compactInterval) {
+
+        journalFolder = new File(SocialNetworkPlugin.instance.getDataFolder(), "Journal");
+        journalFolder.mkdirs();
+
+        // replay anything that was written after the last checkpoint
+        checkpoint = readCheckpoint();
+        long lastSegment = checkpoint;
+        for (long segment : listSegments()) {
+            if (segment <= checkpoint) {
+                // already in the snapshots, we must have stopped before it could be removed
+                getSegmentFile(segment).delete();
+            }
+            lastSegment = Math.max(lastSegment, segment);
+        }
+
+        compactSegments(lastSegment);
+
+        // now start a new segment for this run
+        openSegment(lastSegment + 1);
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocialNetwork-Journal");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                compact();
+            }
+        }, compactInterval, compactInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Person loadPerson(String personName) throws IOException {
+
+        // if they have changes that haven't made it to their snapshot yet, use the copy we already have
+        PendingPerson pendingPerson = pendingPersons.get(personName.toLowerCase());
+        if (pendingPerson != null) {
+            return pendingPerson.person;
+        }
+
+        Person person = snapshotDataManager.loadPerson(personName);
+        if (person != null) {
+            person.trackChanges();
+        }
+
+        return person;
+    }
+
+    @Override
+    public void savePerson(Person person) throws IOException {
+
+        List<JournalRecord> records = new ArrayList<JournalRecord>();
+
+        List<PersonChange> changes = person.takeChanges();
+        if (changes == null) {
+
+            // We don't know what has changed, so write them out in full. This is the copy taken for the save, which
+            // loads are handed until it's in their snapshot, so it starts tracking from here too.
+            person.trackChanges();
+
+            JournalRecord record = createRecord(OPERATION_REPLACE, person.getName());
+            record.type = Person.class.getName();
+            record.value = json.toJsonTree(person);
+            records.add(record);
+
+        } else {
+
+            for (PersonChange change : changes) {
+
+                JournalRecord record = createRecord(change.getOperation().toString(), person.getName());
+                record.field = change.getField();
+                record.key = change.getKey();
+
+                Object value = change.getValue();
+                if (value != null) {
+                    record.type = value.getClass().getName();
+                    record.value = json.toJsonTree(value);
+                }
+
+                records.add(record);
+            }
+        }
+
+        if (!records.isEmpty()) {
+            append(person, records);
+        }
+    }
+
+    @Override
+    public void deletePerson(Person person) {
+
+        SocialNetworkPlugin.log("[" + person.getName() + "] Deleting.");
+
+        List<JournalRecord> records = new ArrayList<JournalRecord>();
+        records.add(createRecord(OPERATION_DELETE, person.getName()));
+
+        try {
+            append(null, records);
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to write to the journal", e);
+        }
+
+        // remove the snapshot now, the delete record makes sure an older segment can't bring them back
+        pendingPersons.remove(person.getName().toLowerCase());
+        snapshotDataManager.deletePerson(person);
+    }
+
+    @Override
+    public PersonSettings loadPersonSettings(Person person) {
+        return snapshotDataManager.loadPersonSettings(person);
+    }
+
+    @Override
+    public void savePersonSettings(Person person, PersonSettings settings) throws IOException {
+        snapshotDataManager.savePersonSettings(person, settings);
+    }
+
+    @Override
+    public void deletePersonSettings(Person person) {
+        snapshotDataManager.deletePersonSettings(person);
+    }
+
+    /**
+     * Stops the compactor, then closes the current segment and folds it into the snapshots.
+     * The write-behind queue in front of us must already be shut down so nothing else gets appended.
+     * @param timeout The maximum time (in seconds) to wait for a compaction that is already running.
+     */
+    public void shutdown(long timeout) {
+
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Timed out waiting for the journal compaction.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            closeSegment();
+        }
+
+        compactSegments(currentSegment);
+        pendingPersons.clear();
+    }
+
+    private JournalRecord createRecord(String operation, String personName) {
+
+        JournalRecord record = new JournalRecord();
+        record.operation = operation;
+        record.person = personName;
+        return record;
+    }
+
+    private synchronized void append(Person person, List<JournalRecord> records) throws IOException {
+
+        if (segmentWriter == null) {
+            throw new IOException("Journal is closed, unable to write " + records.size() + " changes for "
+                    + records.get(0).person);
+        }
+
+        for (JournalRecord record : records) {
+            segmentWriter.write(json.toJson(record));
+            segmentWriter.write('\n');
+        }
+        segmentWriter.flush();
+
+        // keep them around until this segment has been folded into their snapshot
+        if (person != null) {
+            pendingPersons.put(person.getName().toLowerCase(), new PendingPerson(person, currentSegment));
+        }
+    }
+
+    /**
+     * Starts a new segment and folds the previous one into the snapshots.
+     */
+    private void compact() {
+
+        long compactSegment;
+        synchronized (this) {
+            compactSegment = currentSegment;
+            closeSegment();
+            openSegment(compactSegment + 1);
+        }
+
+        // if anything couldn't be folded in, loads need to keep using the copies we have until it has been
+        if (!compactSegments(compactSegment)) {
+            return;
+        }
+
+        // anyone without changes in a newer segment can now be read from their snapshot again
+        for (Map.Entry<String, PendingPerson> entry : pendingPersons.entrySet()) {
+            if (entry.getValue().segment <= compactSegment) {
+                pendingPersons.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Folds every segment after the checkpoint, up to and including the given one, into the snapshots. It stops at the
+     * first one that can't be folded in, so the checkpoint never moves past a segment that isn't in the snapshots.
+     * @return True if they were all folded in.
+     */
+    private boolean compactSegments(long lastSegment) {
+
+        for (long segment : listSegments()) {
+            if (segment > checkpoint && segment <= lastSegment) {
+
+                SocialNetworkPlugin.log("Compacting journal segment " + segment);
+                if (!compactSegment(segment)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replays the given segment on top of the snapshots, writes the new snapshots and then removes the segment.
+     * @return True if the segment is now in the snapshots.
+     */
+    private boolean compactSegment(long segment) {
+
+        File segmentFile = getSegmentFile(segment);
+        if (!segmentFile.exists()) {
+            return true;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        // Map<LowerCasePersonName, Person> of everyone in the segment. A null value means they have been deleted.
+        Map<String, Person> persons = new LinkedHashMap<String, Person>();
+        Map<String, String> personNames = new HashMap<String, String>();
+
+        int recordCount = 0;
+        try {
+
+            BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(new FileInputStream(segmentFile), "UTF-8"));
+            try {
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    JournalRecord record;
+                    try {
+                        record = json.fromJson(line, JournalRecord.class);
+                    } catch (JsonParseException e) {
+
+                        // the last line can be cut short if the server went down while writing it
+                        SocialNetworkPlugin.logger().log(Level.WARNING, "Ignoring damaged journal record in segment "
+                                + segment + ": " + line);
+                        continue;
+                    }
+
+                    String key = record.person.toLowerCase();
+                    personNames.put(key, record.person);
+
+                    if (!persons.containsKey(key)) {
+                        persons.put(key, snapshotDataManager.loadPerson(record.person));
+                    }
+
+                    persons.put(key, applyRecord(persons.get(key), record));
+                    recordCount++;
+                }
+
+            } finally {
+                reader.close();
+            }
+
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to read journal segment " + segment, e);
+            return false;
+        }
+
+        // write out the new snapshots
+        for (Map.Entry<String, Person> entry : persons.entrySet()) {
+
+            Person person = entry.getValue();
+            if (person != null) {
+
+                try {
+                    snapshotDataManager.savePerson(person);
+                } catch (IOException e) {
+
+                    // keep the segment so it's replayed again later
+                    SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to fold journal segment " + segment
+                            + " into the snapshot for " + person.getName(), e);
+                    return false;
+                }
+
+            } else {
+                Person deletedPerson = new Person();
+                deletedPerson.setName(personNames.get(entry.getKey()));
+                snapshotDataManager.deletePerson(deletedPerson);
+            }
+        }
+
+        writeCheckpoint(segment);
+        checkpoint = segment;
+        segmentFile.delete();
+
+        SocialNetworkPlugin.log("Compacted " + recordCount + " journal records for " + persons.size() + " people in "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        return true;
+    }
+
+    /**
+     * Applies a single record to the given person.
+     * @return The person after the change, or null if they have been deleted.
+     */
+    @SuppressWarnings("unchecked")
+    private Person applyRecord(Person person, JournalRecord record) {
+
+        if (OPERATION_DELETE.equals(record.operation)) {
+            return null;
+        }
+
+        try {
+
+            Object value = null;
+            if (record.type != null && record.value != null) {
+                value = json.fromJson(record.value, Class.forName(record.type));
+            }
+
+            if (OPERATION_REPLACE.equals(record.operation)) {
+                return (Person) value;
+            }
+
+            if (person == null) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Journal record for unknown person: " + record.person);
+                return null;
+            }
+
+            Operation operation = Operation.valueOf(record.operation);
+            switch (operation) {
+
+                case set:
+                    getPersonField(record.field).set(person, value);
+                    break;
+
+                case put:
+                    ((Map<String, Object>) getPersonField(record.field).get(person)).put(record.key, value);
+                    break;
+
+                case remove:
+                    Object fieldValue = getPersonField(record.field).get(person);
+                    if (fieldValue instanceof Map) {
+                        ((Map<String, Object>) fieldValue).remove(record.key);
+                    } else {
+                        ((List<Object>) fieldValue).remove(record.key);
+                    }
+                    break;
+
+                case add:
+                    ((List<Object>) getPersonField(record.field).get(person)).add(value);
+                    break;
+            }
+
+        } catch (Exception e) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to apply journal record " + record.operation
+                    + " for " + record.person, e);
+        }
+
+        return person;
+    }
+
+    private Field getPersonField(String fieldName) throws NoSuchFieldException {
+
+        synchronized (personFields) {
+
+            Field field = personFields.get(fieldName);
+            if (field == null) {
+                field = Person.class.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                personFields.put(fieldName, field);
+            }
+            return field;
+        }
+    }
+
+    private void openSegment(long segment) {
+
+        currentSegment = segment;
+
+        try {
+            segmentWriter =
+                    new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getSegmentFile(segment), true),
+                            "UTF-8"));
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to open journal segment " + segment, e);
+        }
+    }
+
+    private void closeSegment() {
+
+        if (segmentWriter != null) {
+            try {
+                segmentWriter.close();
+            } catch (IOException e) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to close journal segment " + currentSegment, e);
+            }
+            segmentWriter = null;
+        }
+    }
+
+    private File getSegmentFile(long segment) {
+        return new File(journalFolder, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    private List<Long> listSegments() {
+
+        List<Long> segments = new ArrayList<Long>();
+
+        String[] fileNames = journalFolder.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length()
+                                - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not one of ours
+                    }
+                }
+            }
+        }
+
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private long readCheckpoint() {
+
+        File checkpointFile = new File(journalFolder, CHECKPOINT_FILE);
+        if (!checkpointFile.exists()) {
+            return 0;
+        }
+
+        try {
+
+            BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(new FileInputStream(checkpointFile), "UTF-8"));
+            try {
+                return Long.parseLong(reader.readLine().trim());
+            } finally {
+                reader.close();
+            }
+
+        } catch (Exception e) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to read the journal checkpoint", e);
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(long segment) {
+
+        // write to a temporary file first so a crash can never leave us with a damaged checkpoint
+        File checkpointFile = new File(journalFolder, CHECKPOINT_FILE);
+        File tempFile = new File(journalFolder, CHECKPOINT_FILE + ".tmp");
+
+        try {
+
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+            try {
+                writer.write(Long.toString(segment));
+            } finally {
+                writer.close();
+            }
+
+            checkpointFile.delete();
+            if (!tempFile.renameTo(checkpointFile)) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to replace the journal checkpoint");
+            }
+
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to write the journal checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.json;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Works out where each person's data files are kept in the DataFiles folder.
+ *
+ * Files are spread over two levels of sub-folders named from a hash of the person's name, for example
+ * DataFiles/3f/a2/Notch and DataFiles/3f/a2/Notch.settings, so no single folder ends up with every player in it.
+ *
+ * Older versions kept every file directly in DataFiles. Those are moved into place in the background a few at a
+ * time. Until that's done, lookups check the new location first and then the old one. Any file that's written is
+ * moved first, so the new data always ends up in the new location. Once the old folder is empty, a marker file is
+ * written so the old location isn't checked any more. If some files couldn't be moved, they're tried again the next
+ * time the migration is started.
+ *
+ * Each move, read and delete holds a lock for that person, so a file can't be moved while it's being used.
+ * </pre>
+ */
+public final class DataFileLayout {
+
+    public static final String SETTINGS_SUFFIX = ".settings";
+    public static final String MAILBOX_SUFFIX = ".mailbox";
+
+    // the number of sub-folders files can be spread over, see listFolder()
+    public static final int FOLDER_COUNT = 256 * 256;
+
+    private static final File DATA_FOLDER = new File(SocialNetworkPlugin.instance.getDataFolder(), "DataFiles");
+    private static final File MIGRATED_MARKER = new File(DATA_FOLDER, ".sharded");
+
+    // How many files are moved at a time, and how long (in milliseconds) to wait in between
+    private static final int MIGRATION_BATCH_SIZE = 100;
+    private static final long MIGRATION_DELAY = 1000;
+
+    private static final Object[] locks = new Object[64];
+    static {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private static volatile boolean migrated = MIGRATED_MARKER.exists();
+
+    private static ScheduledExecutorService migrator;
+
+    // The old files still to be moved, and how many of them couldn't be. Only used by the migrator thread.
+    private static String[] pendingFiles;
+    private static int pendingIndex;
+    private static int failedCount;
+
+    private DataFileLayout() {
+    }
+
+    /**
+     * Returns the lock that must be held while finding and using the files of this person.
+     */
+    public static Object getLock(String personName) {
+        return locks[(personName.toLowerCase().hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * Finds an existing file for the person, checking the old location if it hasn't been moved yet.
+     * Call this while holding {@link #getLock(String)}.
+     * @param suffix Either empty for the person file, {@link #SETTINGS_SUFFIX} or {@link #MAILBOX_SUFFIX}.
+     * @return The file, which may not exist yet.
+     */
+    public static File findFile(String personName, String suffix) {
+
+        File file = getFile(personName, suffix);
+        if (!migrated && !file.exists()) {
+
+            File flatFile = new File(DATA_FOLDER, personName + suffix);
+            if (flatFile.exists()) {
+                return flatFile;
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Returns the file to write for the person, moving their old file over first if there is one.
+     * Call this while holding {@link #getLock(String)}.
+     */
+    public static File prepareWrite(String personName, String suffix) {
+
+        if (!migrated) {
+            moveFile(personName + suffix);
+        }
+
+        File file = getFile(personName, suffix);
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    /**
+     * Deletes the file for the person from both locations.
+     */
+    public static void deleteFile(String personName, String suffix) {
+
+        synchronized (getLock(personName)) {
+
+            getFile(personName, suffix).delete();
+            if (!migrated) {
+                new File(DATA_FOLDER, personName + suffix).delete();
+            }
+        }
+    }
+
+    /**
+     * Starts moving files out of the old layout in the background, if there are any left.
+     */
+    public static synchronized void startMigration() {
+
+        if (migrated || migrator != null) {
+            return;
+        }
+
+        migrator = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocialNetwork-Migrate");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+
+        migrator.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                migrateBatch();
+            }
+        }, MIGRATION_DELAY, MIGRATION_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background migration. Anything not moved yet is picked up on the next start.
+     */
+    public static synchronized void stopMigration() {
+
+        if (migrator != null) {
+            migrator.shutdownNow();
+            migrator = null;
+        }
+    }
+
+    /**
+     * Lists the files with the given suffix in one of the sub-folders, so every file can be worked through a few at
+     * a time. Files still in the old layout aren't included.
+     * @param folderIndex From 0 up to {@link #FOLDER_COUNT} - 1.
+     */
+    public static File[] listFolder(int folderIndex, final String suffix) {
+
+        File folder = new File(new File(DATA_FOLDER, String.format("%02x", folderIndex >> 8)),
+                String.format("%02x", folderIndex & 0xFF));
+
+        File[] files = folder.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(suffix) && file.isFile();
+            }
+        });
+
+        return (files == null) ? new File[0] : files;
+    }
+
+    private static File getFile(String personName, String suffix) {
+
+        // Use the lower case name so every spelling of a name ends up in the same folder
+        String hash = String.format("%08x", personName.toLowerCase().hashCode());
+        File folder = new File(new File(DATA_FOLDER, hash.substring(0, 2)), hash.substring(2, 4));
+        return new File(folder, personName + suffix);
+    }
+
+    /**
+     * Moves a file from the old layout into the new one. If there is already a file in the new location, it's newer,
+     * so the old one is simply removed. Call this while holding the lock for the person.
+     * @return False if the old file is still there.
+     */
+    private static boolean moveFile(String fileName) {
+
+        File flatFile = new File(DATA_FOLDER, fileName);
+        if (!flatFile.isFile()) {
+            return true;
+        }
+
+        String personName = fileName;
+        if (personName.endsWith(SETTINGS_SUFFIX)) {
+            personName = personName.substring(0, personName.length() - SETTINGS_SUFFIX.length());
+        }
+
+        File file = getFile(personName, fileName.substring(personName.length()));
+        if (file.exists()) {
+
+            if (!flatFile.delete()) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to remove " + flatFile);
+                return false;
+            }
+            return true;
+        }
+
+        file.getParentFile().mkdirs();
+        if (!flatFile.renameTo(file)) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to move " + flatFile + " to " + file);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Only data files are moved. This skips the shard folders, our marker and any file that is part way through
+     * being written.
+     */
+    private static boolean isFlatDataFile(String fileName) {
+        return !fileName.startsWith(".") && !fileName.endsWith(".tmp") && new File(DATA_FOLDER, fileName).isFile();
+    }
+
+    private static void migrateBatch() {
+
+        // Only list the folder once, it could be very large.
+        // Anything written since then already goes to the new layout.
+        if (pendingFiles == null) {
+            pendingFiles = DATA_FOLDER.list();
+            pendingIndex = 0;
+            failedCount = 0;
+            if (pendingFiles == null) {
+                pendingFiles = new String[0];
+            }
+        }
+
+        int checked = 0;
+        int moved = 0;
+        while (pendingIndex < pendingFiles.length && checked < MIGRATION_BATCH_SIZE) {
+
+            String fileName = pendingFiles[pendingIndex++];
+            if (!isFlatDataFile(fileName)) {
+                continue;
+            }
+
+            String personName = fileName;
+            if (personName.endsWith(SETTINGS_SUFFIX)) {
+                personName = personName.substring(0, personName.length() - SETTINGS_SUFFIX.length());
+            }
+
+            synchronized (getLock(personName)) {
+                if (moveFile(fileName)) {
+                    moved++;
+                } else {
+                    failedCount++;
+                }
+            }
+            checked++;
+        }
+
+        if (moved > 0) {
+            SocialNetworkPlugin.log("Moved " + moved + " data files into the new folder layout.");
+        }
+
+        if (pendingIndex < pendingFiles.length) {
+            return;
+        }
+
+        if (failedCount > 0) {
+            SocialNetworkPlugin.logger().warning("Unable to move " + failedCount + " data files.");
+        }
+
+        // Check the folder again rather than trusting the count, the old location can only be dropped once it's empty
+        int remaining = 0;
+        String[] fileNames = DATA_FOLDER.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (isFlatDataFile(fileName)) {
+                    remaining++;
+                }
+            }
+        }
+
+        if (remaining > 0) {
+
+            // keep looking in the old location, and list the folder again the next time we're started
+            SocialNetworkPlugin.logger().warning(remaining + " data files are still in the old folder layout. "
+                    + "They will be moved on the next start.");
+
+            pendingFiles = null;
+            stopMigration();
+            return;
+        }
+
+        // nothing left to move, so we're done for good
+        try {
+            MIGRATED_MARKER.createNewFile();
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to create " + MIGRATED_MARKER, e);
+        }
+
+        migrated = true;
+        pendingFiles = null;
+        SocialNetworkPlugin.logger().info("All data files have been moved into the new folder layout.");
+
+        stopMigration();
+    }
+}
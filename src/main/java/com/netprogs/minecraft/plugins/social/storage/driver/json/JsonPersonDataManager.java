@@ -1,11 +1,14 @@
 package com.netprogs.minecraft.plugins.social.storage.driver.json;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
 
 import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.storage.IPersonDataManager;
 import com.netprogs.minecraft.plugins.social.storage.data.Person;
 import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+import com.netprogs.minecraft.plugins.social.storage.driver.binary.PersonCodec;
 
 /*
  * Copyright (C) 2012 Scott Milne
@@ -29,21 +32,35 @@ import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
 
 public class JsonPersonDataManager implements IPersonDataManager {
 
-    private static String DATA_FOLDER = SocialNetworkPlugin.instance.getDataFolder() + "/DataFiles/";
+    // used to read the files written by the binary driver
+    private final PersonCodec codec = new PersonCodec();
 
     @Override
-    public Person loadPerson(String personName) {
+    public Person loadPerson(String personName) throws IOException {
 
-        SocialNetworkPlugin.log("loadPerson: " + DATA_FOLDER + personName);
+        synchronized (DataFileLayout.getLock(personName)) {
 
-        // check to make sure they have a file, if not, they aren't in the network
-        File checkFile = new File(DATA_FOLDER + personName);
-        if (checkFile.exists()) {
+            File checkFile = DataFileLayout.findFile(personName, "");
 
-            // now load their data
-            PersonConfig config = new PersonConfig(DATA_FOLDER + personName);
-            config.loadConfig();
-            return config.getPerson();
+            SocialNetworkPlugin.log("loadPerson: " + checkFile);
+
+            // check to make sure they have a file, if not, they aren't in the network
+            if (checkFile.exists()) {
+
+                // if the binary driver was used to save them, read it that way
+                if (PersonCodec.isEncoded(checkFile)) {
+                    return codec.decodePerson(PersonCodec.readFile(checkFile));
+                }
+
+                // now load their data
+                PersonConfig config = new PersonConfig(checkFile.getPath());
+                Person person = config.loadPerson();
+                if (person == null) {
+                    throw new IOException(checkFile.getName() + " is empty");
+                }
+
+                return person;
+            }
         }
 
         SocialNetworkPlugin.log("[" + personName + "] No file found.");
@@ -52,13 +69,17 @@ public class JsonPersonDataManager implements IPersonDataManager {
     }
 
     @Override
-    public void savePerson(Person person) {
+    public void savePerson(Person person) throws IOException {
 
         SocialNetworkPlugin.log("[" + person.getName() + "] Saving.");
 
-        // this will create the file if it doesn't already exist
-        PersonConfig config = new PersonConfig(DATA_FOLDER + person.getName(), person);
-        config.saveConfig();
+        synchronized (DataFileLayout.getLock(person.getName())) {
+
+            // this will create the file if it doesn't already exist
+            File dataFile = DataFileLayout.prepareWrite(person.getName(), "");
+            PersonConfig config = new PersonConfig(dataFile.getPath(), person);
+            config.savePerson();
+        }
     }
 
     @Override
@@ -67,62 +88,71 @@ public class JsonPersonDataManager implements IPersonDataManager {
         SocialNetworkPlugin.log("[" + person.getName() + "] Deleting.");
 
         // deletes the file
-        File checkFile = new File(DATA_FOLDER + person.getName());
-        checkFile.delete();
+        DataFileLayout.deleteFile(person.getName(), "");
     }
 
     @Override
     public PersonSettings loadPersonSettings(Person person) {
 
         String personName = person.getName();
-        String FILE_NAME = DATA_FOLDER + personName + ".settings";
 
-        SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Attempting to load: " + FILE_NAME);
+        synchronized (DataFileLayout.getLock(personName)) {
 
-        // check to make sure they have a file, if not, they probably haven't saved any personal settings yet
-        File checkFile = new File(FILE_NAME);
-        if (checkFile.exists()) {
+            File checkFile = DataFileLayout.findFile(personName, DataFileLayout.SETTINGS_SUFFIX);
 
-            SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Calling config...");
+            SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Attempting to load: " + checkFile);
 
-            // now load their data
-            PersonSettingsConfig config = new PersonSettingsConfig(FILE_NAME);
-            config.loadConfig();
+            // check to make sure they have a file, if not, they probably haven't saved any personal settings yet
+            if (checkFile.exists()) {
 
-            return config.getPersonSettings();
+                // if the binary driver was used to save them, read it that way
+                if (PersonCodec.isEncoded(checkFile)) {
+                    try {
+                        return codec.decodePersonSettings(PersonCodec.readFile(checkFile));
+                    } catch (IOException e) {
+                        SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to read " + checkFile.getName(), e);
+                        return new PersonSettings();
+                    }
+                }
 
-        } else {
+                SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Calling config...");
 
-            // create an empty settings, save it, and return it
-            PersonSettings personSettings = new PersonSettings();
-            PersonSettingsConfig config = new PersonSettingsConfig(FILE_NAME, personSettings);
-            config.saveConfig();
-            return personSettings;
+                // now load their data
+                PersonSettingsConfig config = new PersonSettingsConfig(checkFile.getPath());
+                config.loadConfig();
+
+                return config.getPersonSettings();
+            }
         }
+
+        // Nothing saved yet, so give them an empty one. The file is created the first time it's saved.
+        return new PersonSettings();
     }
 
     @Override
-    public void savePersonSettings(Person person, PersonSettings personSettings) {
+    public void savePersonSettings(Person person, PersonSettings personSettings) throws IOException {
 
         String personName = person.getName();
-        String FILE_NAME = DATA_FOLDER + personName + ".settings";
 
-        SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Attempting to save: " + FILE_NAME);
+        synchronized (DataFileLayout.getLock(personName)) {
+
+            File dataFile = DataFileLayout.prepareWrite(personName, DataFileLayout.SETTINGS_SUFFIX);
 
-        // this will create the file if it doesn't already exist
-        PersonSettingsConfig config = new PersonSettingsConfig(FILE_NAME, personSettings);
-        config.saveConfig();
+            SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Attempting to save: " + dataFile);
+
+            // this will create the file if it doesn't already exist
+            PersonSettingsConfig config = new PersonSettingsConfig(dataFile.getPath(), personSettings);
+            config.savePersonSettings();
+        }
     }
 
     @Override
     public void deletePersonSettings(Person person) {
 
         String personName = person.getName();
-        String FILE_NAME = DATA_FOLDER + personName + ".settings";
 
-        SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Attempting to save: " + FILE_NAME);
+        SocialNetworkPlugin.log("[" + personName + "] PersonSettings. Attempting to delete.");
 
-        File checkFile = new File(FILE_NAME);
-        checkFile.delete();
+        DataFileLayout.deleteFile(personName, DataFileLayout.SETTINGS_SUFFIX);
     }
 }
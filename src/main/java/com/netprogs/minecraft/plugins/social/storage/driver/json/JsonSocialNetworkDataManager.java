@@ -1,9 +1,27 @@
 package com.netprogs.minecraft.plugins.social.storage.driver.json;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 
 import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.storage.ISocialNetworkDataManager;
+import com.netprogs.minecraft.plugins.social.storage.data.MemberSet;
+import com.netprogs.minecraft.plugins.social.storage.data.Network;
 
 /*
  * Copyright (C) 2012 Scott Milne
@@ -25,102 +43,442 @@ import com.netprogs.minecraft.plugins.social.storage.ISocialNetworkDataManager;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>
  */
 
+/**
+ * <pre>
+ * Stores the network membership lists in network.json.
+ *
+ * The lists are held in memory as {@link MemberSet}s, so checking a player is a single hash lookup.
+ * Changes are appended to network.log as they happen instead of rewriting the whole file each time. The log is
+ * folded back into network.json every compactInterval, at startup and when the plug-in is disabled.
+ * The log is only removed once network.json is safely on disk. Replaying a change twice has no effect, so it doesn't
+ * matter if we stop before then and the log is replayed over a network.json that already has it.
+ *
+ * The lists in memory change straight away, but the disk is only touched in the background. Log lines are queued and
+ * written with one sync for everything queued since the last write. Compaction writes a copy of the lists, so
+ * membership checks never wait on the disk.
+ * </pre>
+ */
 public class JsonSocialNetworkDataManager implements ISocialNetworkDataManager {
 
+    private static final String OPERATION_ADD = "add";
+    private static final String OPERATION_REMOVE = "remove";
+
+    private static final String UTF8 = "UTF-8";
+
+    private enum MemberList {
+
+        players, excludedPlayers, priests, lawyers, playerNames;
+
+        public MemberSet getMembers(Network network) {
+
+            switch (this) {
+                case excludedPlayers:
+                    return network.getExcludedPlayers();
+                case priests:
+                    return network.getPriests();
+                case lawyers:
+                    return network.getLawyers();
+                case playerNames:
+                    return network.getPlayerNames();
+                default:
+                    return network.getPlayers();
+            }
+        }
+    }
+
     private SocialNetworkConfig config;
 
+    private final File logFile;
+
+    // The network and the queued log lines are guarded by synchronizing on this
+    private List<String> pendingLines = new ArrayList<String>();
+
+    // Held while writing the log or network.json. Taken before this, never while holding it.
+    private final Object fileLock = new Object();
+
+    // Guarded by fileLock
+    private FileChannel logChannel;
+    private int changeCount;
+
+    // set while a write of the queued lines is waiting to run
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Loads the network without compacting in the background. The log is still folded in at startup.
+     */
     public JsonSocialNetworkDataManager() {
+        this(0);
+    }
+
+    public JsonSocialNetworkDataManager(long compactInterval) {
 
         // create and run the JSON configuration loader
         config = new SocialNetworkConfig(SocialNetworkPlugin.instance.getDataFolder() + "/network.json");
         config.loadConfig();
+
+        logFile = new File(SocialNetworkPlugin.instance.getDataFolder(), "network.log");
+
+        // bring in anything that didn't make it into network.json last time
+        changeCount = replay(logFile);
+        compact();
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocialNetwork-Network");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (compactInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    compact();
+                }
+            }, compactInterval, compactInterval, TimeUnit.SECONDS);
+        }
     }
 
     @Override
-    public List<String> getPlayers() {
-        return config.getNetwork().getPlayers();
+    public synchronized List<String> getPlayers() {
+        return config.getNetwork().getPlayers().toList();
     }
 
     @Override
-    public boolean hasPlayer(String playerName) {
+    public synchronized boolean hasPlayer(String playerName) {
         return config.getNetwork().getPlayers().contains(playerName);
     }
 
     @Override
     public void addPlayer(String playerName) {
-        config.getNetwork().getPlayers().add(playerName);
-        config.saveConfig();
+        change(OPERATION_ADD, MemberList.players, playerName);
     }
 
     @Override
     public void removePlayer(String playerName) {
-        config.getNetwork().getPlayers().remove(playerName);
-        config.saveConfig();
+        change(OPERATION_REMOVE, MemberList.players, playerName);
     }
 
     @Override
-    public List<String> getExcludedPlayers() {
-        return config.getNetwork().getExcludedPlayers();
+    public synchronized List<String> getExcludedPlayers() {
+        return config.getNetwork().getExcludedPlayers().toList();
     }
 
     @Override
-    public boolean isExcludedPlayer(String playerName) {
+    public synchronized boolean isExcludedPlayer(String playerName) {
         return config.getNetwork().getExcludedPlayers().contains(playerName);
     }
 
     @Override
     public void addExcludedPlayer(String playerName) {
-        config.getNetwork().getExcludedPlayers().add(playerName);
-        config.saveConfig();
+        change(OPERATION_ADD, MemberList.excludedPlayers, playerName);
     }
 
     @Override
     public void removeExcludedPlayer(String playerName) {
-        config.getNetwork().getExcludedPlayers().remove(playerName);
-        config.saveConfig();
+        change(OPERATION_REMOVE, MemberList.excludedPlayers, playerName);
     }
 
     @Override
-    public List<String> getPriests() {
-        return config.getNetwork().getPriests();
+    public synchronized List<String> getPriests() {
+        return config.getNetwork().getPriests().toList();
     }
 
     @Override
-    public boolean hasPriest(String playerName) {
+    public synchronized boolean hasPriest(String playerName) {
         return config.getNetwork().getPriests().contains(playerName);
     }
 
     @Override
     public void addPriest(String playerName) {
-        config.getNetwork().getPriests().add(playerName);
-        config.saveConfig();
+        change(OPERATION_ADD, MemberList.priests, playerName);
     }
 
     @Override
     public void removePriest(String playerName) {
-        config.getNetwork().getPriests().remove(playerName);
-        config.saveConfig();
+        change(OPERATION_REMOVE, MemberList.priests, playerName);
     }
 
     @Override
-    public List<String> getLawyers() {
-        return config.getNetwork().getLawyers();
+    public synchronized List<String> getLawyers() {
+        return config.getNetwork().getLawyers().toList();
     }
 
     @Override
-    public boolean hasLawyer(String playerName) {
+    public synchronized boolean hasLawyer(String playerName) {
         return config.getNetwork().getLawyers().contains(playerName);
     }
 
     @Override
     public void addLawyer(String playerName) {
-        config.getNetwork().getLawyers().add(playerName);
-        config.saveConfig();
+        change(OPERATION_ADD, MemberList.lawyers, playerName);
     }
 
     @Override
     public void removeLawyer(String playerName) {
-        config.getNetwork().getLawyers().remove(playerName);
-        config.saveConfig();
+        change(OPERATION_REMOVE, MemberList.lawyers, playerName);
+    }
+
+    @Override
+    public synchronized List<String> getPlayerNames() {
+        return config.getNetwork().getPlayerNames().toList();
+    }
+
+    @Override
+    public void addPlayerName(String playerName) {
+        change(OPERATION_ADD, MemberList.playerNames, playerName);
+    }
+
+    @Override
+    public void removePlayerName(String playerName) {
+        change(OPERATION_REMOVE, MemberList.playerNames, playerName);
+    }
+
+    /**
+     * Stops the compactor, writes out the queued changes and folds the log into network.json.
+     * @param timeout The maximum time (in seconds) to wait for a write or compaction that is already running.
+     */
+    public void shutdown(long timeout) {
+
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Timed out waiting for the network compaction.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flushLog();
+        compact();
+
+        synchronized (fileLock) {
+            closeLog();
+        }
+    }
+
+    /**
+     * Writes a copy of the current network out to network.json and removes the log.
+     * Membership checks only wait while the copy is taken.
+     */
+    public void compact() {
+
+        synchronized (fileLock) {
+
+            // everything changed up to the copy has to be in the old log, in case network.json can't be written
+            writeLog();
+
+            if (changeCount == 0) {
+                return;
+            }
+
+            Network network;
+            synchronized (this) {
+                network = config.getNetwork().copy();
+            }
+
+            try {
+
+                config.saveNetwork(network);
+
+                // It's all in network.json now, so the log can start over. Anything changed since the copy is still
+                // queued and goes into the new one.
+                closeLog();
+                logFile.delete();
+                changeCount = 0;
+
+            } catch (IOException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to write network.json, will try again later",
+                        e);
+            }
+        }
+    }
+
+    private void change(String operation, MemberList memberList, String playerName) {
+
+        synchronized (this) {
+
+            MemberSet members = memberList.getMembers(config.getNetwork());
+
+            boolean changed;
+            if (OPERATION_ADD.equals(operation)) {
+                changed = members.add(playerName);
+            } else {
+                changed = members.remove(playerName);
+            }
+
+            // nothing to record if they were already there (or already gone)
+            if (!changed) {
+                return;
+            }
+
+            pendingLines.add(operation + " " + memberList + " " + playerName + "\n");
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        flushLog();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+
+                // we're shutting down, so write it out now
+                flushLog();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued lines to the log.
+     */
+    private void flushLog() {
+
+        flushScheduled.set(false);
+
+        synchronized (fileLock) {
+            writeLog();
+        }
+    }
+
+    /**
+     * Appends everything queued to the log with a single sync. Call this while holding the file lock.
+     */
+    private void writeLog() {
+
+        List<String> lines;
+        synchronized (this) {
+
+            if (pendingLines.isEmpty()) {
+                return;
+            }
+
+            lines = pendingLines;
+            pendingLines = new ArrayList<String>();
+        }
+
+        try {
+
+            if (logChannel == null) {
+                logChannel = new FileOutputStream(logFile, true).getChannel();
+            }
+
+            StringBuilder text = new StringBuilder();
+            for (String line : lines) {
+                text.append(line);
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(UTF8));
+            while (buffer.hasRemaining()) {
+                logChannel.write(buffer);
+            }
+            logChannel.force(false);
+
+            changeCount += lines.size();
+
+        } catch (IOException e) {
+
+            // The changes are already in the network, so fall back to writing the whole of it. The copy is taken
+            // after these changes, so they aren't lost.
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to write to " + logFile.getName(), e);
+            closeLog();
+
+            changeCount += lines.size();
+
+            Network network;
+            synchronized (this) {
+                network = config.getNetwork().copy();
+            }
+
+            try {
+                config.saveNetwork(network);
+                logFile.delete();
+                changeCount = 0;
+            } catch (IOException saveException) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to write network.json", saveException);
+            }
+        }
+    }
+
+    private void closeLog() {
+
+        if (logChannel != null) {
+
+            try {
+                logChannel.close();
+            } catch (IOException e) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to close " + logFile.getName(), e);
+            }
+
+            logChannel = null;
+        }
+    }
+
+    /**
+     * Applies every change in the log to the network.
+     * @return The number of changes found.
+     */
+    private int replay(File file) {
+
+        if (!file.exists()) {
+            return 0;
+        }
+
+        SocialNetworkPlugin.logger().info("Replaying " + file.getName());
+
+        int count = 0;
+
+        BufferedReader reader = null;
+        try {
+
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                String[] parts = line.split(" ");
+                if (parts.length != 3) {
+                    // most likely the last line was cut short by a crash
+                    SocialNetworkPlugin.logger().log(Level.WARNING, "Skipping bad network log entry: " + line);
+                    continue;
+                }
+
+                MemberSet members;
+                try {
+                    members = MemberList.valueOf(parts[1]).getMembers(config.getNetwork());
+                } catch (IllegalArgumentException e) {
+                    SocialNetworkPlugin.logger().log(Level.WARNING, "Skipping bad network log entry: " + line);
+                    continue;
+                }
+
+                if (OPERATION_ADD.equals(parts[0])) {
+                    members.add(parts[2]);
+                } else {
+                    members.remove(parts[2]);
+                }
+
+                count++;
+            }
+
+        } catch (IOException e) {
+            SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to read " + file.getName(), e);
+
+        } finally {
+
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to close " + file.getName(), e);
+            }
+        }
+
+        return count;
     }
 }
@@ -0,0 +1,72 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.craftbukkit.libs.com.google.gson.TypeAdapter;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonReader;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonToken;
+import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonWriter;
+
+import com.netprogs.minecraft.plugins.social.storage.data.MemberSet;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * Writes a {@link MemberSet} as a plain array of names, so network.json keeps the same layout it has always had.
+ */
+public class MemberSetTypeAdapter extends TypeAdapter<MemberSet> {
+
+    @Override
+    public void write(JsonWriter writer, MemberSet memberSet) throws IOException {
+
+        if (memberSet == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginArray();
+        for (String name : memberSet.toList()) {
+            writer.value(name);
+        }
+        writer.endArray();
+    }
+
+    @Override
+    public MemberSet read(JsonReader reader) throws IOException {
+
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return new MemberSet();
+        }
+
+        List<String> names = new ArrayList<String>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            names.add(reader.nextString());
+        }
+        reader.endArray();
+
+        return new MemberSet(names);
+    }
+}
@@ -1,7 +1,10 @@
 package com.netprogs.minecraft.plugins.social.storage.driver.json;
 
+import java.io.IOException;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.io.JsonConfiguration;
-import com.netprogs.minecraft.plugins.social.io.JsonInterfaceAdapter;
+import com.netprogs.minecraft.plugins.social.io.JsonInterfaceTypeAdapterFactory;
 import com.netprogs.minecraft.plugins.social.storage.IMessage;
 import com.netprogs.minecraft.plugins.social.storage.data.Person;
 
@@ -42,10 +45,30 @@ public class PersonConfig extends JsonConfiguration<Person> {
         return getDataObject();
     }
 
+    /**
+     * Reads the person from the file, throwing an exception if they could not be read.
+     */
+    public Person loadPerson() throws IOException {
+        read();
+        return getDataObject();
+    }
+
+    /**
+     * Saves the person, throwing an exception if they could not be written.
+     */
+    public void savePerson() throws IOException {
+        write();
+    }
+
+    @Override
+    protected boolean isCompressionEnabled() {
+        return SocialNetworkPlugin.getSettings().getStorageSettings().isCompressDataFiles();
+    }
+
     @Override
     protected void registerTypeAdapters(GsonBuilder builder) {
 
         // register the Message interface
-        builder.registerTypeAdapter(IMessage.class, new JsonInterfaceAdapter<IMessage>()).create();
+        builder.registerTypeAdapterFactory(new JsonInterfaceTypeAdapterFactory<IMessage>(IMessage.class));
     }
 }
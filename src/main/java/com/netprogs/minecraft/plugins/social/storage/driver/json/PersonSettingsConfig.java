@@ -1,7 +1,10 @@
 package com.netprogs.minecraft.plugins.social.storage.driver.json;
 
+import java.io.IOException;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
 import com.netprogs.minecraft.plugins.social.io.JsonConfiguration;
-import com.netprogs.minecraft.plugins.social.io.JsonInterfaceAdapter;
+import com.netprogs.minecraft.plugins.social.io.JsonInterfaceTypeAdapterFactory;
 import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
 import com.netprogs.minecraft.plugins.social.storage.data.perk.IPersonPerkSettings;
 
@@ -42,11 +45,23 @@ public class PersonSettingsConfig extends JsonConfiguration<PersonSettings> {
         return getDataObject();
     }
 
+    /**
+     * Saves the settings, throwing an exception if they could not be written.
+     */
+    public void savePersonSettings() throws IOException {
+        write();
+    }
+
+    @Override
+    protected boolean isCompressionEnabled() {
+        return SocialNetworkPlugin.getSettings().getStorageSettings().isCompressDataFiles();
+    }
+
     @Override
     protected void registerTypeAdapters(GsonBuilder builder) {
 
         // register the person perk settings interface
-        builder.registerTypeAdapter(IPersonPerkSettings.class, new JsonInterfaceAdapter<IPersonPerkSettings>())
-                .create();
+        builder.registerTypeAdapterFactory(new JsonInterfaceTypeAdapterFactory<IPersonPerkSettings>(
+                IPersonPerkSettings.class));
     }
 }
@@ -1,8 +1,13 @@
 package com.netprogs.minecraft.plugins.social.storage.driver.json;
 
+import java.io.IOException;
+
 import com.netprogs.minecraft.plugins.social.io.JsonConfiguration;
+import com.netprogs.minecraft.plugins.social.storage.data.MemberSet;
 import com.netprogs.minecraft.plugins.social.storage.data.Network;
 
+import org.bukkit.craftbukkit.libs.com.google.gson.GsonBuilder;
+
 /*
  * Copyright (C) 2012 Scott Milne
  * 
@@ -32,4 +37,18 @@ public class SocialNetworkConfig extends JsonConfiguration<Network> {
     public Network getNetwork() {
         return getDataObject();
     }
+
+    /**
+     * Saves a copy of the network in place of the one held here, throwing an exception if it could not be written.
+     */
+    public void saveNetwork(Network network) throws IOException {
+        write(network);
+    }
+
+    @Override
+    protected void registerTypeAdapters(GsonBuilder builder) {
+
+        // the member lists are stored as plain arrays of names
+        builder.registerTypeAdapter(MemberSet.class, new MemberSetTypeAdapter());
+    }
 }
@@ -0,0 +1,212 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.sqlite;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Manages the connection to the embedded SQLite database file used by the sqlite data managers.
+ *
+ * The connection is shared by both data managers and SQLite connections are not thread safe, so every caller must
+ * synchronize on this object while using it.
+ * </pre>
+ */
+public class SqliteDatabase {
+
+    private static final String[] SCHEMA = {
+
+            "CREATE TABLE IF NOT EXISTS person ("
+                    + "name TEXT NOT NULL PRIMARY KEY COLLATE NOCASE, "
+                    + "gender TEXT, social_status TEXT, date_joined INTEGER NOT NULL DEFAULT 0, status_message TEXT, "
+                    + "status_updates_ignored INTEGER NOT NULL DEFAULT 0, "
+                    + "login_updates_ignored INTEGER NOT NULL DEFAULT 0, "
+                    + "gender_reminders_ignored INTEGER NOT NULL DEFAULT 0, "
+                    + "child_of TEXT, engagement TEXT, marriage TEXT, divorce TEXT, wedding_vows TEXT, "
+                    + "lawyer INTEGER NOT NULL DEFAULT 0, priest INTEGER NOT NULL DEFAULT 0, "
+                    + "wait_state TEXT, wait_command TEXT, wait_data_type TEXT, wait_data TEXT)",
+
+            // friends, relationships, affairs and children
+            "CREATE TABLE IF NOT EXISTS person_group ("
+                    + "person TEXT NOT NULL COLLATE NOCASE, "
+                    + "group_type TEXT NOT NULL, member TEXT NOT NULL, "
+                    + "PRIMARY KEY (person, group_type, member))",
+
+            "CREATE INDEX IF NOT EXISTS person_group_member ON person_group (member)",
+
+            "CREATE TABLE IF NOT EXISTS person_ignore ("
+                    + "person TEXT NOT NULL COLLATE NOCASE, "
+                    + "member TEXT NOT NULL, PRIMARY KEY (person, member))",
+
+            "CREATE TABLE IF NOT EXISTS person_perk ("
+                    + "person TEXT NOT NULL COLLATE NOCASE, "
+                    + "perk TEXT NOT NULL, data_type TEXT NOT NULL, data TEXT NOT NULL, PRIMARY KEY (person, perk))",
+
+            // players, excluded players, priests and lawyers
+            "CREATE TABLE IF NOT EXISTS network_member ("
+                    + "role TEXT NOT NULL, "
+                    + "name TEXT NOT NULL COLLATE NOCASE, PRIMARY KEY (role, name))",
+
+            // the names of network members, in the order they were given their ids
+            "CREATE TABLE IF NOT EXISTS player_name ("
+                    + "id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE COLLATE NOCASE)" };
+
+    private final String databaseFileName;
+    private Connection connection;
+
+    // Messages are kept in mailbox files now. Databases made before then can still have some in person_message,
+    // which are moved over as each person is loaded. The table is dropped once it's empty.
+    private boolean legacyMessages;
+
+    public SqliteDatabase(String databaseFileName) {
+        this.databaseFileName = databaseFileName;
+    }
+
+    /**
+     * Opens the database file, creating it and the tables if needed.
+     * @return true if the tables had to be created.
+     */
+    public synchronized boolean open() {
+
+        try {
+
+            Class.forName("org.sqlite.JDBC");
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFileName);
+
+            boolean created = !hasTable("person");
+
+            Statement statement = connection.createStatement();
+            try {
+                for (String sql : SCHEMA) {
+                    statement.executeUpdate(sql);
+                }
+
+                legacyMessages = hasTable("person_message");
+                if (legacyMessages && !hasRows("person_message")) {
+                    statement.executeUpdate("DROP TABLE person_message");
+                    legacyMessages = false;
+                }
+
+            } finally {
+                statement.close();
+            }
+
+            return created;
+
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The SQLite JDBC driver is not available", e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to open database " + databaseFileName, e);
+        }
+    }
+
+    public synchronized void close() {
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to close database", e);
+            }
+            connection = null;
+        }
+    }
+
+    public synchronized PreparedStatement prepare(String sql) throws SQLException {
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * @return True if there may still be messages in person_message waiting to be moved to the mailboxes.
+     */
+    public synchronized boolean hasLegacyMessages() {
+        return legacyMessages;
+    }
+
+    public synchronized void beginTransaction() throws SQLException {
+        connection.setAutoCommit(false);
+    }
+
+    public synchronized void commit() throws SQLException {
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    public synchronized void rollback() {
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unable to roll back transaction", e);
+        }
+    }
+
+    private boolean hasTable(String tableName) throws SQLException {
+
+        PreparedStatement statement =
+                connection.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?");
+        try {
+            statement.setString(1, tableName);
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                return resultSet.next();
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private boolean hasRows(String tableName) throws SQLException {
+
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT 1 FROM " + tableName + " LIMIT 1");
+            try {
+                return resultSet.next();
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    public static void close(Statement statement) {
+
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // nothing we can do about it
+            }
+        }
+    }
+}
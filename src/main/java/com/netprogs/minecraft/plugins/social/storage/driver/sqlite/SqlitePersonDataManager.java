@@ -0,0 +1,543 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.sqlite;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.SocialPerson.Gender;
+import com.netprogs.minecraft.plugins.social.SocialPerson.Status;
+import com.netprogs.minecraft.plugins.social.SocialPerson.WaitState;
+import com.netprogs.minecraft.plugins.social.SocialPerson.WeddingVows;
+import com.netprogs.minecraft.plugins.social.command.SocialNetworkCommandType;
+import com.netprogs.minecraft.plugins.social.storage.IMessage;
+import com.netprogs.minecraft.plugins.social.storage.IPersonDataManager;
+import com.netprogs.minecraft.plugins.social.storage.data.Affair;
+import com.netprogs.minecraft.plugins.social.storage.data.Child;
+import com.netprogs.minecraft.plugins.social.storage.data.Divorce;
+import com.netprogs.minecraft.plugins.social.storage.data.Engagement;
+import com.netprogs.minecraft.plugins.social.storage.data.Friend;
+import com.netprogs.minecraft.plugins.social.storage.data.Marriage;
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+import com.netprogs.minecraft.plugins.social.storage.data.Relationship;
+import com.netprogs.minecraft.plugins.social.storage.data.perk.IPersonPerkSettings;
+import com.netprogs.minecraft.plugins.social.storage.driver.json.JsonPersonDataManager;
+
+import org.bukkit.craftbukkit.libs.com.google.gson.Gson;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Stores each Person across a set of normalized tables in the embedded SQLite database.
+ *
+ * People that are not in the database yet but still have a JSON data file are imported the first time they're loaded.
+ * </pre>
+ */
+public class SqlitePersonDataManager implements IPersonDataManager {
+
+    private static final String GROUP_FRIEND = "friend";
+    private static final String GROUP_RELATIONSHIP = "relationship";
+    private static final String GROUP_AFFAIR = "affair";
+    private static final String GROUP_CHILD = "child";
+
+    private final SqliteDatabase database;
+
+    // used to convert the message and perk settings objects
+    private final Gson json = new Gson();
+
+    // used to import people that were saved before switching to this driver
+    private final JsonPersonDataManager legacyDataManager = new JsonPersonDataManager();
+
+    public SqlitePersonDataManager(SqliteDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public Person loadPerson(String personName) throws IOException {
+
+        SocialNetworkPlugin.log("loadPerson: " + personName);
+
+        synchronized (database) {
+
+            try {
+
+                Person person = selectPerson(personName);
+                if (person != null) {
+                    return person;
+                }
+
+            } catch (SQLException e) {
+                throw new IOException("Unable to load " + personName, e);
+            }
+        }
+
+        // not in the database, so check to see if they have an old data file we can bring in
+        Person person = legacyDataManager.loadPerson(personName);
+        if (person != null) {
+
+            SocialNetworkPlugin.log("[" + personName + "] Importing from data file.");
+            try {
+                savePerson(person);
+                savePersonSettings(person, legacyDataManager.loadPersonSettings(person));
+            } catch (IOException e) {
+
+                // if they didn't make it into the database, their data file is imported again the next time
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to import " + personName, e);
+            }
+        }
+
+        return person;
+    }
+
+    @Override
+    public void savePerson(Person person) throws IOException {
+
+        SocialNetworkPlugin.log("[" + person.getName() + "] Saving.");
+
+        synchronized (database) {
+
+            try {
+
+                database.beginTransaction();
+
+                insertPerson(person);
+
+                deleteRows("DELETE FROM person_group WHERE person = ?", person.getName());
+                insertGroup(person.getName(), GROUP_FRIEND, person.getFriends().keySet());
+                insertGroup(person.getName(), GROUP_RELATIONSHIP, person.getRelationships().keySet());
+                insertGroup(person.getName(), GROUP_AFFAIR, person.getAffairs().keySet());
+                insertGroup(person.getName(), GROUP_CHILD, person.getChildren().keySet());
+
+                deleteRows("DELETE FROM person_ignore WHERE person = ?", person.getName());
+                insertIgnores(person);
+
+                // any old messages were moved over to their mailbox when they were loaded
+                if (database.hasLegacyMessages()) {
+                    deleteRows("DELETE FROM person_message WHERE person = ?", person.getName());
+                }
+
+                database.commit();
+
+            } catch (SQLException e) {
+
+                database.rollback();
+                throw new IOException("Unable to save " + person.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void deletePerson(Person person) {
+
+        SocialNetworkPlugin.log("[" + person.getName() + "] Deleting.");
+
+        synchronized (database) {
+
+            try {
+
+                database.beginTransaction();
+
+                deleteRows("DELETE FROM person WHERE name = ?", person.getName());
+                deleteRows("DELETE FROM person_group WHERE person = ?", person.getName());
+                deleteRows("DELETE FROM person_ignore WHERE person = ?", person.getName());
+                if (database.hasLegacyMessages()) {
+                    deleteRows("DELETE FROM person_message WHERE person = ?", person.getName());
+                }
+
+                database.commit();
+
+            } catch (SQLException e) {
+
+                database.rollback();
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to delete " + person.getName(), e);
+            }
+        }
+
+        // make sure an old data file can't bring them back
+        legacyDataManager.deletePerson(person);
+    }
+
+    @Override
+    public PersonSettings loadPersonSettings(Person person) {
+
+        PersonSettings personSettings = new PersonSettings();
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                statement = database.prepare("SELECT perk, data_type, data FROM person_perk WHERE person = ?");
+                statement.setString(1, person.getName());
+
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+
+                    IPersonPerkSettings perkSettings =
+                            fromJson(resultSet.getString("data"), resultSet.getString("data_type"));
+
+                    if (perkSettings != null) {
+                        personSettings.setPerkSettings(resultSet.getString("perk"), perkSettings);
+                    }
+                }
+                resultSet.close();
+
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to load settings for " + person.getName(), e);
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+
+        return personSettings;
+    }
+
+    @Override
+    public void savePersonSettings(Person person, PersonSettings personSettings) throws IOException {
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                database.beginTransaction();
+
+                deleteRows("DELETE FROM person_perk WHERE person = ?", person.getName());
+
+                statement =
+                        database.prepare("INSERT INTO person_perk (person, perk, data_type, data) VALUES (?, ?, ?, ?)");
+                for (String perkName : personSettings.getPerkNames()) {
+
+                    IPersonPerkSettings perkSettings = personSettings.getPerkSettings(perkName);
+                    if (perkSettings != null) {
+
+                        statement.setString(1, person.getName());
+                        statement.setString(2, perkName);
+                        statement.setString(3, perkSettings.getClass().getName());
+                        statement.setString(4, json.toJson(perkSettings));
+                        statement.addBatch();
+                    }
+                }
+                statement.executeBatch();
+
+                database.commit();
+
+            } catch (SQLException e) {
+
+                database.rollback();
+                throw new IOException("Unable to save settings for " + person.getName(), e);
+
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+    }
+
+    @Override
+    public void deletePersonSettings(Person person) {
+
+        synchronized (database) {
+
+            try {
+                deleteRows("DELETE FROM person_perk WHERE person = ?", person.getName());
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to delete settings for " + person.getName(), e);
+            }
+        }
+
+        legacyDataManager.deletePersonSettings(person);
+    }
+
+    private Person selectPerson(String personName) throws SQLException {
+
+        PreparedStatement statement = database.prepare("SELECT * FROM person WHERE name = ?");
+        try {
+
+            statement.setString(1, personName);
+
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                resultSet.close();
+                return null;
+            }
+
+            Person person = new Person();
+            person.setName(resultSet.getString("name"));
+            person.setGender(toEnum(Gender.class, resultSet.getString("gender")));
+            person.setSocialStatus(toEnum(Status.class, resultSet.getString("social_status")));
+            person.setDateJoined(resultSet.getLong("date_joined"));
+            person.setStatusMessage(resultSet.getString("status_message"));
+            person.setStatusUpdatesIgnored(resultSet.getBoolean("status_updates_ignored"));
+            person.setLoginUpdatesIgnored(resultSet.getBoolean("login_updates_ignored"));
+            person.setGenderChoiceRemindersIgnored(resultSet.getBoolean("gender_reminders_ignored"));
+            person.setChildOf(resultSet.getString("child_of"));
+            person.setWeddingVows(toEnum(WeddingVows.class, resultSet.getString("wedding_vows")));
+            person.setLawyer(resultSet.getBoolean("lawyer"));
+            person.setPriest(resultSet.getBoolean("priest"));
+
+            String engagement = resultSet.getString("engagement");
+            if (engagement != null) {
+                person.setEngagement(new Engagement(engagement));
+            }
+
+            String marriage = resultSet.getString("marriage");
+            if (marriage != null) {
+                person.setMarriage(new Marriage(marriage));
+            }
+
+            String divorce = resultSet.getString("divorce");
+            if (divorce != null) {
+                person.setDivorce(new Divorce(divorce));
+            }
+
+            person.setWaitState(toEnum(WaitState.class, resultSet.getString("wait_state")));
+            person.setWaitCommand(toEnum(SocialNetworkCommandType.class, resultSet.getString("wait_command")));
+
+            String waitData = resultSet.getString("wait_data");
+            if (waitData != null) {
+                IMessage message = fromJson(waitData, resultSet.getString("wait_data_type"));
+                person.setWaitData(message);
+            }
+
+            resultSet.close();
+
+            selectGroups(person);
+            selectIgnores(person);
+
+            // these are moved over to their mailbox as they're loaded
+            if (database.hasLegacyMessages()) {
+                selectMessages(person);
+            }
+
+            return person;
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void selectGroups(Person person) throws SQLException {
+
+        PreparedStatement statement = database.prepare("SELECT group_type, member FROM person_group WHERE person = ?");
+        try {
+
+            statement.setString(1, person.getName());
+
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+
+                String groupType = resultSet.getString("group_type");
+                String member = resultSet.getString("member");
+
+                if (GROUP_FRIEND.equals(groupType)) {
+                    person.getFriends().put(member, new Friend(member));
+                } else if (GROUP_RELATIONSHIP.equals(groupType)) {
+                    person.getRelationships().put(member, new Relationship(member));
+                } else if (GROUP_AFFAIR.equals(groupType)) {
+                    person.getAffairs().put(member, new Affair(member));
+                } else if (GROUP_CHILD.equals(groupType)) {
+                    person.getChildren().put(member, new Child(member));
+                }
+            }
+            resultSet.close();
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void selectIgnores(Person person) throws SQLException {
+
+        PreparedStatement statement = database.prepare("SELECT member FROM person_ignore WHERE person = ?");
+        try {
+
+            statement.setString(1, person.getName());
+
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                person.getIgnoreList().add(resultSet.getString("member"));
+            }
+            resultSet.close();
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void selectMessages(Person person) throws SQLException {
+
+        PreparedStatement statement =
+                database.prepare("SELECT message_type, sender, data_type, data FROM person_message "
+                        + "WHERE person = ? ORDER BY id");
+        try {
+
+            statement.setString(1, person.getName());
+
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+
+                IMessage message = fromJson(resultSet.getString("data"), resultSet.getString("data_type"));
+                if (message == null) {
+                    continue;
+                }
+
+                String messageType = resultSet.getString("message_type");
+                String sender = resultSet.getString("sender");
+
+                Map<String, List<? extends IMessage>> senderMap = person.getMessageQueue().get(messageType);
+                if (senderMap == null) {
+                    senderMap = new HashMap<String, List<? extends IMessage>>();
+                    person.getMessageQueue().put(messageType, senderMap);
+                }
+
+                List<IMessage> messages = (List<IMessage>) senderMap.get(sender);
+                if (messages == null) {
+                    messages = new ArrayList<IMessage>();
+                    senderMap.put(sender, messages);
+                }
+
+                messages.add(message);
+            }
+            resultSet.close();
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertPerson(Person person) throws SQLException {
+
+        PreparedStatement statement =
+                database.prepare("INSERT OR REPLACE INTO person (name, gender, social_status, date_joined, "
+                        + "status_message, status_updates_ignored, login_updates_ignored, gender_reminders_ignored, "
+                        + "child_of, engagement, marriage, divorce, wedding_vows, lawyer, priest, "
+                        + "wait_state, wait_command, wait_data_type, wait_data) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+
+            int index = 1;
+            statement.setString(index++, person.getName());
+            statement.setString(index++, fromEnum(person.getGender()));
+            statement.setString(index++, fromEnum(person.getSocialStatus()));
+            statement.setLong(index++, person.getDateJoined());
+            statement.setString(index++, person.getStatusMessage());
+            statement.setBoolean(index++, person.isStatusUpdatesIgnored());
+            statement.setBoolean(index++, person.isLoginUpdatesIgnored());
+            statement.setBoolean(index++, person.isGenderChoiceRemindersIgnored());
+            statement.setString(index++, person.getChildOf());
+            statement.setString(index++, (person.getEngagement() != null) ? person.getEngagement().getPlayerName()
+                    : null);
+            statement.setString(index++, (person.getMarriage() != null) ? person.getMarriage().getPlayerName() : null);
+            statement.setString(index++, (person.getDivorce() != null) ? person.getDivorce().getPlayerName() : null);
+            statement.setString(index++, fromEnum(person.getWeddingVows()));
+            statement.setBoolean(index++, person.isLawyer());
+            statement.setBoolean(index++, person.isPriest());
+            statement.setString(index++, fromEnum(person.getWaitState()));
+            statement.setString(index++, (person.getWaitCommand() != null) ? person.getWaitCommand().toString()
+                    : null);
+
+            IMessage waitData = person.getWaitData();
+            statement.setString(index++, (waitData != null) ? waitData.getClass().getName() : null);
+            statement.setString(index++, (waitData != null) ? json.toJson(waitData) : null);
+
+            statement.executeUpdate();
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertGroup(String personName, String groupType, Iterable<String> members) throws SQLException {
+
+        PreparedStatement statement =
+                database.prepare("INSERT INTO person_group (person, group_type, member) VALUES (?, ?, ?)");
+        try {
+
+            for (String member : members) {
+                statement.setString(1, personName);
+                statement.setString(2, groupType);
+                statement.setString(3, member);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertIgnores(Person person) throws SQLException {
+
+        PreparedStatement statement =
+                database.prepare("INSERT OR IGNORE INTO person_ignore (person, member) VALUES (?, ?)");
+        try {
+
+            for (String member : person.getIgnoreList()) {
+                statement.setString(1, person.getName());
+                statement.setString(2, member);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void deleteRows(String sql, String personName) throws SQLException {
+
+        PreparedStatement statement = database.prepare(sql);
+        try {
+            statement.setString(1, personName);
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T fromJson(String data, String className) {
+
+        try {
+            return (T) json.fromJson(data, Class.forName(className));
+        } catch (ClassNotFoundException e) {
+            SocialNetworkPlugin.logger().log(Level.WARNING, "Unknown stored type: " + className);
+            return null;
+        }
+    }
+
+    private static String fromEnum(Enum<?> value) {
+        return (value != null) ? value.toString() : null;
+    }
+
+    private static <E extends Enum<E>> E toEnum(Class<E> enumClass, String value) {
+        return (value != null) ? Enum.valueOf(enumClass, value) : null;
+    }
+}
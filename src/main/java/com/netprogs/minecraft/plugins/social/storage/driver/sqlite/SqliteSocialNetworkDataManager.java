@@ -0,0 +1,362 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.sqlite;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import com.netprogs.minecraft.plugins.social.SocialNetworkPlugin;
+import com.netprogs.minecraft.plugins.social.storage.ISocialNetworkDataManager;
+import com.netprogs.minecraft.plugins.social.storage.driver.json.JsonSocialNetworkDataManager;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+/**
+ * <pre>
+ * Stores the network membership lists in the embedded SQLite database.
+ *
+ * Each membership check is a single indexed lookup instead of a scan of the full player list.
+ * </pre>
+ */
+public class SqliteSocialNetworkDataManager implements ISocialNetworkDataManager {
+
+    private static final String ROLE_PLAYER = "player";
+    private static final String ROLE_EXCLUDED = "excluded";
+    private static final String ROLE_PRIEST = "priest";
+    private static final String ROLE_LAWYER = "lawyer";
+
+    private final SqliteDatabase database;
+
+    public SqliteSocialNetworkDataManager(SqliteDatabase database, boolean importNetwork) {
+
+        this.database = database;
+
+        // if the database was just created, bring in the existing network.json data
+        if (importNetwork) {
+
+            File networkFile = new File(SocialNetworkPlugin.instance.getDataFolder(), "network.json");
+            if (networkFile.exists()) {
+
+                SocialNetworkPlugin.logger().info("Importing network.json into the database...");
+
+                JsonSocialNetworkDataManager jsonDataManager = new JsonSocialNetworkDataManager();
+                insertMembers(ROLE_PLAYER, jsonDataManager.getPlayers());
+                insertMembers(ROLE_EXCLUDED, jsonDataManager.getExcludedPlayers());
+                insertMembers(ROLE_PRIEST, jsonDataManager.getPriests());
+                insertMembers(ROLE_LAWYER, jsonDataManager.getLawyers());
+                insertPlayerNames(jsonDataManager.getPlayerNames());
+            }
+        }
+    }
+
+    @Override
+    public List<String> getPlayers() {
+        return selectMembers(ROLE_PLAYER);
+    }
+
+    @Override
+    public boolean hasPlayer(String playerName) {
+        return hasMember(ROLE_PLAYER, playerName);
+    }
+
+    @Override
+    public void addPlayer(String playerName) {
+        addMember(ROLE_PLAYER, playerName);
+    }
+
+    @Override
+    public void removePlayer(String playerName) {
+        removeMember(ROLE_PLAYER, playerName);
+    }
+
+    @Override
+    public List<String> getExcludedPlayers() {
+        return selectMembers(ROLE_EXCLUDED);
+    }
+
+    @Override
+    public boolean isExcludedPlayer(String playerName) {
+        return hasMember(ROLE_EXCLUDED, playerName);
+    }
+
+    @Override
+    public void addExcludedPlayer(String playerName) {
+        addMember(ROLE_EXCLUDED, playerName);
+    }
+
+    @Override
+    public void removeExcludedPlayer(String playerName) {
+        removeMember(ROLE_EXCLUDED, playerName);
+    }
+
+    @Override
+    public List<String> getPriests() {
+        return selectMembers(ROLE_PRIEST);
+    }
+
+    @Override
+    public boolean hasPriest(String playerName) {
+        return hasMember(ROLE_PRIEST, playerName);
+    }
+
+    @Override
+    public void addPriest(String playerName) {
+        addMember(ROLE_PRIEST, playerName);
+    }
+
+    @Override
+    public void removePriest(String playerName) {
+        removeMember(ROLE_PRIEST, playerName);
+    }
+
+    @Override
+    public List<String> getLawyers() {
+        return selectMembers(ROLE_LAWYER);
+    }
+
+    @Override
+    public boolean hasLawyer(String playerName) {
+        return hasMember(ROLE_LAWYER, playerName);
+    }
+
+    @Override
+    public void addLawyer(String playerName) {
+        addMember(ROLE_LAWYER, playerName);
+    }
+
+    @Override
+    public void removeLawyer(String playerName) {
+        removeMember(ROLE_LAWYER, playerName);
+    }
+
+    @Override
+    public List<String> getPlayerNames() {
+
+        List<String> playerNames = new ArrayList<String>();
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                statement = database.prepare("SELECT name FROM player_name ORDER BY id");
+
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    playerNames.add(resultSet.getString("name"));
+                }
+                resultSet.close();
+
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to load the player names", e);
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+
+        return playerNames;
+    }
+
+    @Override
+    public void addPlayerName(String playerName) {
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                statement = database.prepare("INSERT OR IGNORE INTO player_name (name) VALUES (?)");
+                statement.setString(1, playerName);
+                statement.executeUpdate();
+
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to add the player name " + playerName, e);
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+    }
+
+    @Override
+    public void removePlayerName(String playerName) {
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                statement = database.prepare("DELETE FROM player_name WHERE name = ?");
+                statement.setString(1, playerName);
+                statement.executeUpdate();
+
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to remove the player name " + playerName, e);
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+    }
+
+    private List<String> selectMembers(String role) {
+
+        List<String> members = new ArrayList<String>();
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                statement = database.prepare("SELECT name FROM network_member WHERE role = ?");
+                statement.setString(1, role);
+
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    members.add(resultSet.getString("name"));
+                }
+                resultSet.close();
+
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to load the " + role + " list", e);
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+
+        return members;
+    }
+
+    private boolean hasMember(String role, String playerName) {
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                statement = database.prepare("SELECT 1 FROM network_member WHERE role = ? AND name = ?");
+                statement.setString(1, role);
+                statement.setString(2, playerName);
+
+                ResultSet resultSet = statement.executeQuery();
+                boolean found = resultSet.next();
+                resultSet.close();
+
+                return found;
+
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to check the " + role + " list", e);
+                return false;
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+    }
+
+    private void addMember(String role, String playerName) {
+        updateMember("INSERT OR IGNORE INTO network_member (role, name) VALUES (?, ?)", role, playerName);
+    }
+
+    private void removeMember(String role, String playerName) {
+        updateMember("DELETE FROM network_member WHERE role = ? AND name = ?", role, playerName);
+    }
+
+    private void updateMember(String sql, String role, String playerName) {
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                statement = database.prepare(sql);
+                statement.setString(1, role);
+                statement.setString(2, playerName);
+                statement.executeUpdate();
+
+            } catch (SQLException e) {
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to update the " + role + " list", e);
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+    }
+
+    private void insertPlayerNames(List<String> playerNames) {
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                database.beginTransaction();
+
+                // inserted in id order, so the row ids line up with them
+                statement = database.prepare("INSERT OR IGNORE INTO player_name (name) VALUES (?)");
+                for (String playerName : playerNames) {
+                    statement.setString(1, playerName);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                database.commit();
+
+            } catch (SQLException e) {
+
+                database.rollback();
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to import the player names", e);
+
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+    }
+
+    private void insertMembers(String role, List<String> playerNames) {
+
+        synchronized (database) {
+
+            PreparedStatement statement = null;
+            try {
+
+                database.beginTransaction();
+
+                statement = database.prepare("INSERT OR IGNORE INTO network_member (role, name) VALUES (?, ?)");
+                for (String playerName : playerNames) {
+                    statement.setString(1, role);
+                    statement.setString(2, playerName);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                database.commit();
+
+            } catch (SQLException e) {
+
+                database.rollback();
+                SocialNetworkPlugin.logger().log(Level.SEVERE, "Unable to import the " + role + " list", e);
+
+            } finally {
+                SqliteDatabase.close(statement);
+            }
+        }
+    }
+}
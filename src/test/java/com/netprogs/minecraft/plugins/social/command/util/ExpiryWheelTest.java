@@ -0,0 +1,146 @@
+package com.netprogs.minecraft.plugins.social.command.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class ExpiryWheelTest {
+
+    private static final long TICK = 1000;
+
+    @Test
+    public void testDueOnItsTick() {
+
+        ExpiryWheel wheel = new ExpiryWheel(TICK, 0);
+        ExpiryWheel.Entry entry = new ExpiryWheel.Entry(5000);
+        wheel.add(entry);
+        assertEquals(1, wheel.size());
+
+        List<ExpiryWheel.Entry> due = new ArrayList<ExpiryWheel.Entry>();
+        wheel.advance(4999, due);
+        assertTrue(due.isEmpty());
+
+        wheel.advance(5000, due);
+        assertEquals(1, due.size());
+        assertSame(entry, due.get(0));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testNeverDueEarly() {
+
+        // part way through a tick is rounded up to the next one
+        ExpiryWheel wheel = new ExpiryWheel(TICK, 0);
+        wheel.add(new ExpiryWheel.Entry(5500));
+
+        List<ExpiryWheel.Entry> due = new ArrayList<ExpiryWheel.Entry>();
+        wheel.advance(5999, due);
+        assertTrue(due.isEmpty());
+
+        wheel.advance(6000, due);
+        assertEquals(1, due.size());
+    }
+
+    @Test
+    public void testAlreadyDue() {
+
+        ExpiryWheel wheel = new ExpiryWheel(TICK, 10000);
+        wheel.add(new ExpiryWheel.Entry(3000));
+
+        List<ExpiryWheel.Entry> due = new ArrayList<ExpiryWheel.Entry>();
+        wheel.advance(10999, due);
+        assertTrue(due.isEmpty());
+
+        wheel.advance(11000, due);
+        assertEquals(1, due.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testHigherWheels() {
+
+        // one entry for each wheel it has to come down through
+        long[] times = { 63 * TICK, 64 * TICK, 4095 * TICK, 4096 * TICK, (3 * 64 * 64 * 64 + 17) * TICK };
+
+        ExpiryWheel wheel = new ExpiryWheel(TICK, 0);
+        for (long time : times) {
+            wheel.add(new ExpiryWheel.Entry(time));
+        }
+
+        List<ExpiryWheel.Entry> due = new ArrayList<ExpiryWheel.Entry>();
+        for (long time : times) {
+
+            wheel.advance(time - 1, due);
+            assertTrue(due.isEmpty());
+
+            wheel.advance(time, due);
+            assertEquals(1, due.size());
+            assertEquals(time, due.get(0).getTime());
+            due.clear();
+        }
+
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRandomTimes() {
+
+        Random random = new Random(42);
+        long startTime = 123456789L;
+
+        ExpiryWheel wheel = new ExpiryWheel(TICK, startTime);
+        for (int i = 0; i < 5000; i++) {
+            wheel.add(new ExpiryWheel.Entry(startTime + (long) random.nextInt(3 * 24 * 60 * 60) * TICK
+                    + random.nextInt((int) TICK)));
+        }
+
+        // jump ahead by uneven steps, checking each entry comes back on the first step that reaches it
+        List<ExpiryWheel.Entry> due = new ArrayList<ExpiryWheel.Entry>();
+        long time = startTime;
+        int count = 0;
+
+        while (wheel.size() > 0) {
+
+            long previous = time;
+            time += random.nextInt(100 * (int) TICK);
+            wheel.advance(time, due);
+
+            for (ExpiryWheel.Entry entry : due) {
+                assertTrue(entry.getTime() <= time);
+                assertTrue(entry.getTime() > previous - TICK);
+            }
+
+            count += due.size();
+            due.clear();
+        }
+
+        assertEquals(5000, count);
+    }
+}
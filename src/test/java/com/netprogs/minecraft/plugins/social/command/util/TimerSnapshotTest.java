@@ -0,0 +1,352 @@
+package com.netprogs.minecraft.plugins.social.command.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.netprogs.minecraft.plugins.social.command.util.TimerManager.EventType;
+import com.netprogs.minecraft.plugins.social.command.util.TimerManager.PlayerTimers;
+import com.netprogs.minecraft.plugins.social.storage.ISocialNetworkDataManager;
+import com.netprogs.minecraft.plugins.social.storage.PersistentIntMap;
+import com.netprogs.minecraft.plugins.social.storage.PlayerNameTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class TimerSnapshotTest {
+
+    private static final int MAGIC = 0x534E544D;
+    private static final int VERSION = 1;
+
+    /**
+     * A clock that only moves when it's told to.
+     */
+    private static class TestClock implements TimerManager.Clock {
+
+        private long time;
+
+        private TestClock(long time) {
+            this.time = time;
+        }
+
+        public long currentTimeMillis() {
+            return time;
+        }
+    }
+
+
+    /**
+     * Only keeps the player names, which is all the table uses.
+     */
+    private static class NameDataManager implements ISocialNetworkDataManager {
+
+        private final List<String> playerNames = Collections.synchronizedList(new ArrayList<String>());
+
+        public NameDataManager(String... storedNames) {
+            playerNames.addAll(Arrays.asList(storedNames));
+        }
+
+        public List<String> getPlayerNames() {
+            return new ArrayList<String>(playerNames);
+        }
+
+        public void addPlayerName(String playerName) {
+            playerNames.add(playerName);
+        }
+
+        public void removePlayerName(String playerName) {
+            playerNames.remove(playerName);
+        }
+
+        public List<String> getPlayers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasPlayer(String playerName) {
+            return false;
+        }
+
+        public void addPlayer(String playerName) {
+        }
+
+        public void removePlayer(String playerName) {
+        }
+
+        public List<String> getExcludedPlayers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean isExcludedPlayer(String playerName) {
+            return false;
+        }
+
+        public void addExcludedPlayer(String playerName) {
+        }
+
+        public void removeExcludedPlayer(String playerName) {
+        }
+
+        public List<String> getPriests() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasPriest(String playerName) {
+            return false;
+        }
+
+        public void addPriest(String playerName) {
+        }
+
+        public void removePriest(String playerName) {
+        }
+
+        public List<String> getLawyers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasLawyer(String playerName) {
+            return false;
+        }
+
+        public void addLawyer(String playerName) {
+        }
+
+        public void removeLawyer(String playerName) {
+        }
+    }
+
+    private final Logger logger = Logger.getLogger("TimerSnapshotTest");
+
+    private File file;
+    private PlayerNameTable playerNames;
+
+    @Before
+    public void setUp() throws IOException {
+
+        // the damaged snapshots below are meant to be warned about, so keep them out of the test output
+        logger.setUseParentHandlers(false);
+
+        file = File.createTempFile("timers", ".dat");
+        playerNames = new PlayerNameTable(new NameDataManager("Steve", "Alex"));
+    }
+
+    @After
+    public void tearDown() {
+
+        playerNames.shutdown(10);
+        file.delete();
+    }
+
+    @Test
+    public void testSaveAndRestore() {
+
+        TestClock clock = new TestClock(100000);
+        TimerManager timerManager = new TimerManager(logger, false, clock);
+
+        int steve = playerNames.findId("Steve");
+        int alex = playerNames.findId("Alex");
+        int bob = playerNames.getTemporaryId("Bob");
+
+        PersistentIntMap<PlayerTimers> timers = PersistentIntMap.empty();
+        timers = timers.plus(steve, new PlayerTimers(new Object[] { EventType.login, EventType.status },
+                new int[] { TimerManager.NO_MEMBER, bob }, new long[] { 150000, 300000 }));
+        timers = timers.plus(alex, new PlayerTimers(new Object[] { EventType.login },
+                new int[] { TimerManager.NO_MEMBER }, new long[] { 200000 }));
+        timerManager.restoreTimers(timers);
+
+        new TimerSnapshot(timerManager, playerNames, file, 0).save();
+
+        // later on, after the first of Steve's timers has run out
+        clock.time = 160000;
+        TimerManager restoredManager = new TimerManager(logger, false, clock);
+        new TimerSnapshot(restoredManager, playerNames, file, 0);
+
+        PersistentIntMap<PlayerTimers> restored = restoredManager.getTimers();
+        assertEquals(2, restored.size());
+
+        PlayerTimers steveTimers = restored.get(steve);
+        assertEquals(1, steveTimers.size());
+        assertEquals(EventType.status, steveTimers.getTimerType(0));
+        assertEquals(bob, steveTimers.getMemberId(0));
+        assertEquals(300000, steveTimers.getExpiryTime(0));
+
+        PlayerTimers alexTimers = restored.get(alex);
+        assertEquals(1, alexTimers.size());
+        assertEquals(EventType.login, alexTimers.getTimerType(0));
+        assertEquals(TimerManager.NO_MEMBER, alexTimers.getMemberId(0));
+        assertEquals(200000, alexTimers.getExpiryTime(0));
+    }
+
+    @Test
+    public void testExpiredNotSaved() {
+
+        TestClock clock = new TestClock(100000);
+        TimerManager timerManager = new TimerManager(logger, false, clock);
+
+        int steve = playerNames.findId("Steve");
+        timerManager.restoreTimers(PersistentIntMap.<PlayerTimers> empty().plus(steve,
+                new PlayerTimers(new Object[] { EventType.login }, new int[] { TimerManager.NO_MEMBER },
+                        new long[] { 150000 })));
+
+        clock.time = 150000;
+        new TimerSnapshot(timerManager, playerNames, file, 0).save();
+
+        clock.time = 0;
+        TimerManager restoredManager = new TimerManager(logger, false, clock);
+        new TimerSnapshot(restoredManager, playerNames, file, 0);
+
+        assertTrue(restoredManager.getTimers().isEmpty());
+    }
+
+    @Test
+    public void testUnknownType() throws IOException {
+
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeInt(3);
+            output.writeUTF(EventType.class.getName());
+            output.writeUTF("login");
+            output.writeUTF(EventType.class.getName());
+            output.writeUTF("removed");
+            output.writeUTF("com.netprogs.minecraft.plugins.social.Missing");
+            output.writeUTF("login");
+
+            output.writeInt(1);
+            output.writeUTF("Steve");
+
+            output.writeInt(1);
+            output.writeInt(0);
+            output.writeInt(3);
+            for (int type = 0; type < 3; type++) {
+                output.writeInt(type);
+                output.writeInt(-1);
+                output.writeLong(200000);
+            }
+
+        } finally {
+            output.close();
+        }
+
+        TimerManager timerManager = new TimerManager(logger, false, new TestClock(100000));
+        new TimerSnapshot(timerManager, playerNames, file, 0);
+
+        // only the type that still exists comes back
+        PlayerTimers steveTimers = timerManager.getTimers().get(playerNames.findId("Steve"));
+        assertEquals(1, steveTimers.size());
+        assertEquals(EventType.login, steveTimers.getTimerType(0));
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+
+        TestClock clock = new TestClock(100000);
+        TimerManager timerManager = new TimerManager(logger, false, clock);
+
+        int steve = playerNames.findId("Steve");
+        timerManager.restoreTimers(PersistentIntMap.<PlayerTimers> empty().plus(steve,
+                new PlayerTimers(new Object[] { EventType.login }, new int[] { TimerManager.NO_MEMBER },
+                        new long[] { 150000 })));
+
+        new TimerSnapshot(timerManager, playerNames, file, 0).save();
+
+        RandomAccessFile randomAccess = new RandomAccessFile(file, "rw");
+        try {
+            randomAccess.setLength(randomAccess.length() - 4);
+        } finally {
+            randomAccess.close();
+        }
+
+        TimerManager restoredManager = new TimerManager(logger, false, clock);
+        new TimerSnapshot(restoredManager, playerNames, file, 0);
+
+        assertTrue(restoredManager.getTimers().isEmpty());
+    }
+
+    @Test
+    public void testDamagedIndex() throws IOException {
+
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeInt(1);
+            output.writeUTF(EventType.class.getName());
+            output.writeUTF("login");
+
+            output.writeInt(1);
+            output.writeUTF("Steve");
+
+            // a type index past the one type written
+            output.writeInt(1);
+            output.writeInt(0);
+            output.writeInt(1);
+            output.writeInt(7);
+            output.writeInt(-1);
+            output.writeLong(200000);
+
+        } finally {
+            output.close();
+        }
+
+        TimerManager timerManager = new TimerManager(logger, false, new TestClock(100000));
+        new TimerSnapshot(timerManager, playerNames, file, 0);
+
+        assertTrue(timerManager.getTimers().isEmpty());
+    }
+
+    @Test
+    public void testDamagedCount() throws IOException {
+
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(Integer.MAX_VALUE);
+        } finally {
+            output.close();
+        }
+
+        TimerManager timerManager = new TimerManager(logger, false, new TestClock(100000));
+        new TimerSnapshot(timerManager, playerNames, file, 0);
+
+        assertTrue(timerManager.getTimers().isEmpty());
+    }
+}
@@ -0,0 +1,160 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class DataFileCompressionTest {
+
+    private static final String PERSON = "{\n  \"name\": \"Steve\",\n  \"gender\": \"male\",\n  \"friends\": {\n"
+            + "    \"Alex\": {\n      \"playerName\": \"Alex\",\n      \"dateJoined\": 1340000000000\n    }\n  },\n"
+            + "  \"messages\": {},\n  \"ignoreList\": [],\n  \"marriage\": null,\n  \"engagement\": null\n}";
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("compression", ".json");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        byte[] data = PERSON.getBytes("UTF-8");
+        byte[] compressed = DataFileCompression.compress(data);
+
+        assertTrue(DataFileCompression.isCompressed(compressed, compressed.length));
+        assertFalse(DataFileCompression.isCompressed(data, data.length));
+        assertTrue(compressed.length < data.length);
+
+        assertArrayEquals(data, DataFileCompression.decompress(compressed));
+    }
+
+    @Test
+    public void testEmptyAndLarge() throws IOException {
+
+        assertArrayEquals(new byte[0], DataFileCompression.decompress(DataFileCompression.compress(new byte[0])));
+
+        // random data doesn't shrink, and is bigger than the buffers used
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        assertArrayEquals(data, DataFileCompression.decompress(DataFileCompression.compress(data)));
+    }
+
+    @Test
+    public void testDamaged() throws IOException {
+
+        byte[] compressed = DataFileCompression.compress(PERSON.getBytes("UTF-8"));
+
+        assertNotReadable(Arrays.copyOf(compressed, compressed.length - 5));
+        assertNotReadable(Arrays.copyOf(compressed, 4));
+        assertNotReadable(PERSON.getBytes("UTF-8"));
+
+        // a version we don't know
+        byte[] version = compressed.clone();
+        version[3] = 2;
+        assertNotReadable(version);
+
+        // a length that doesn't match the data
+        byte[] length = compressed.clone();
+        length[7]++;
+        assertNotReadable(length);
+    }
+
+    @Test
+    public void testOpenFile() throws IOException {
+
+        byte[] data = PERSON.getBytes("UTF-8");
+
+        // plain and compressed files read back the same
+        writeFile(data);
+        assertArrayEquals(data, readFile());
+
+        writeFile(DataFileCompression.compress(data));
+        assertArrayEquals(data, readFile());
+
+        // a file shorter than the header is still plain data
+        writeFile(new byte[] { '{' });
+        assertArrayEquals(new byte[] { '{' }, readFile());
+
+        writeFile(new byte[0]);
+        assertArrayEquals(new byte[0], readFile());
+    }
+
+    private void assertNotReadable(byte[] data) {
+
+        try {
+            DataFileCompression.decompress(data);
+            fail("The data should not be readable");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void writeFile(byte[] data) throws IOException {
+
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+    }
+
+    private byte[] readFile() throws IOException {
+
+        InputStream input = DataFileCompression.openFile(file);
+        try {
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                data.write(buffer, 0, count);
+            }
+            return data.toByteArray();
+
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class DataFileStoreTest {
+
+    private File folder;
+
+    @Before
+    public void setUp() throws IOException {
+
+        folder = File.createTempFile("datafilestore", "");
+        folder.delete();
+        folder.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void testWriteReplacesContents() throws IOException {
+
+        File file = new File(folder, "Steve.dat");
+
+        DataFileStore.write(file, new byte[] { 1, 2, 3 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, read(file));
+
+        DataFileStore.write(file, new byte[] { 4 });
+        assertArrayEquals(new byte[] { 4 }, read(file));
+
+        assertEquals(Arrays.asList("Steve.dat"), Arrays.asList(folder.list()));
+    }
+
+    @Test
+    public void testLargerThanBuffer() throws IOException {
+
+        byte[] data = new byte[200 * 1024 + 7];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        File file = new File(folder, "Steve.dat");
+        DataFileStore.write(file, data);
+
+        assertArrayEquals(data, read(file));
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+
+        File first = new File(folder, "Steve.dat");
+        File second = new File(folder, "Alex.dat");
+
+        DataFileStore.beginBatch();
+        DataFileStore.write(first, new byte[] { 1 });
+        DataFileStore.write(second, new byte[] { 2 });
+
+        // nothing is moved into place until the batch is committed
+        assertFalse(first.exists());
+        assertFalse(second.exists());
+
+        DataFileStore.commitBatch();
+
+        assertArrayEquals(new byte[] { 1 }, read(first));
+        assertArrayEquals(new byte[] { 2 }, read(second));
+        assertEquals(2, folder.list().length);
+    }
+
+    @Test
+    public void testStaleTempFilesRemoved() throws IOException {
+
+        // what a crash between staging and commit leaves behind
+        File stale = new File(folder, "Steve.dat.17.tmp");
+        File otherStale = new File(folder, "Alex.json.3.tmp");
+        writeRaw(stale);
+        writeRaw(otherStale);
+
+        // not ours, so they're left alone
+        File snapshotTemp = new File(folder, "timers.dat.tmp");
+        File other = new File(folder, "notes.txt");
+        writeRaw(snapshotTemp);
+        writeRaw(other);
+
+        DataFileStore.write(new File(folder, "Bob.dat"), new byte[] { 1 });
+
+        assertFalse(stale.exists());
+        assertFalse(otherStale.exists());
+        assertTrue(snapshotTemp.exists());
+        assertTrue(other.exists());
+        assertTrue(new File(folder, "Bob.dat").exists());
+    }
+
+    @Test
+    public void testStagedFilesKeptWhileBatchOpen() throws IOException {
+
+        File first = new File(folder, "Steve.dat");
+        File second = new File(folder, "Alex.dat");
+
+        DataFileStore.beginBatch();
+        try {
+
+            // the first write cleans the folder, so the second one mustn't remove what the first has staged
+            DataFileStore.write(first, new byte[] { 1 });
+            DataFileStore.write(second, new byte[] { 2 });
+
+        } finally {
+            DataFileStore.commitBatch();
+        }
+
+        assertArrayEquals(new byte[] { 1 }, read(first));
+        assertArrayEquals(new byte[] { 2 }, read(second));
+    }
+
+    private static void writeRaw(File file) throws IOException {
+
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(0);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+
+        byte[] data = new byte[(int) file.length()];
+
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int count = input.read(data, offset, data.length - offset);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                offset += count;
+            }
+        } finally {
+            input.close();
+        }
+
+        return data;
+    }
+}
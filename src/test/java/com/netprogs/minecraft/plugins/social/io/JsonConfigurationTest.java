@@ -0,0 +1,214 @@
+package com.netprogs.minecraft.plugins.social.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.craftbukkit.libs.com.google.gson.GsonBuilder;
+import org.bukkit.craftbukkit.libs.com.google.gson.JsonParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class JsonConfigurationTest {
+
+    public interface IShape {
+    }
+
+    public static class Circle implements IShape {
+        private int radius;
+    }
+
+    public static class Label implements IShape {
+        private String text;
+    }
+
+    public static class Drawing {
+        private String name;
+        private List<IShape> shapes = new ArrayList<IShape>();
+    }
+
+    private static class DrawingConfig extends JsonConfiguration<Drawing> {
+
+        private DrawingConfig(File file) {
+            super(file.getPath(), true);
+        }
+
+        @Override
+        protected void registerTypeAdapters(GsonBuilder builder) {
+            builder.registerTypeAdapterFactory(new JsonInterfaceTypeAdapterFactory<IShape>(IShape.class));
+        }
+    }
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("drawing", ".json");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        Circle circle = new Circle();
+        circle.radius = 5;
+
+        // longer than a pooled buffer, so the readers and writers have to refill them
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3 * CharBufferPool.BUFFER_SIZE; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+
+        Label label = new Label();
+        label.text = text.toString();
+
+        Drawing drawing = new Drawing();
+        drawing.name = "<pictures & \"quotes\">";
+        drawing.shapes.add(circle);
+        drawing.shapes.add(null);
+        drawing.shapes.add(label);
+
+        Drawing read = writeAndRead(drawing);
+
+        assertEquals(drawing.name, read.name);
+        assertEquals(3, read.shapes.size());
+        assertEquals(5, ((Circle) read.shapes.get(0)).radius);
+        assertNull(read.shapes.get(1));
+        assertEquals(label.text, ((Label) read.shapes.get(2)).text);
+    }
+
+    @Test
+    public void testFileFormat() throws IOException {
+
+        Circle circle = new Circle();
+        circle.radius = 5;
+
+        Drawing drawing = new Drawing();
+        drawing.shapes.add(circle);
+
+        DrawingConfig config = new DrawingConfig(file);
+        config.setDataObject(drawing);
+        config.write();
+
+        // indented, nulls kept, no HTML escaping and each shape wrapped with its class
+        String expected = "{\n"
+                + "  \"name\": null,\n"
+                + "  \"shapes\": [\n"
+                + "    {\n"
+                + "      \"type\": \"" + Circle.class.getName() + "\",\n"
+                + "      \"data\": {\n"
+                + "        \"radius\": 5\n"
+                + "      }\n"
+                + "    }\n"
+                + "  ]\n"
+                + "}";
+        assertEquals(expected, readFile());
+    }
+
+    @Test
+    public void testDataBeforeType() throws IOException {
+
+        writeFile("{ \"name\": \"edited\", \"shapes\": [ { \"data\": { \"radius\": 7 }, \"type\": \""
+                + Circle.class.getName() + "\" } ] }");
+
+        DrawingConfig config = new DrawingConfig(file);
+        config.read();
+
+        assertEquals("edited", config.getDataObject().name);
+        assertEquals(7, ((Circle) config.getDataObject().shapes.get(0)).radius);
+    }
+
+    @Test
+    public void testMissingType() throws IOException {
+
+        writeFile("{ \"shapes\": [ { \"data\": { \"radius\": 7 } } ] }");
+        assertUnreadable();
+    }
+
+    @Test
+    public void testUnknownType() throws IOException {
+
+        writeFile("{ \"shapes\": [ { \"type\": \"com.netprogs.Missing\", \"data\": {} } ] }");
+        assertUnreadable();
+    }
+
+    private Drawing writeAndRead(Drawing drawing) throws IOException {
+
+        DrawingConfig config = new DrawingConfig(file);
+        config.setDataObject(drawing);
+        config.write();
+
+        DrawingConfig reader = new DrawingConfig(file);
+        reader.read();
+        return reader.getDataObject();
+    }
+
+    private void assertUnreadable() {
+
+        try {
+            new DrawingConfig(file).read();
+            fail("The file should not be readable");
+        } catch (IOException e) {
+            // expected
+        } catch (JsonParseException e) {
+            fail("Parse errors should be reported as an IOException");
+        }
+    }
+
+    private String readFile() throws IOException {
+
+        FileInputStream input = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int length = 0;
+            while (length < data.length) {
+                length += input.read(data, length, data.length - length);
+            }
+            return new String(data, "UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+
+    private void writeFile(String contents) throws IOException {
+
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(contents.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+}
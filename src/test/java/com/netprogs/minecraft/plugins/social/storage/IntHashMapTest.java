@@ -0,0 +1,211 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class IntHashMapTest {
+
+    @Test
+    public void testPutAndGet() {
+
+        IntHashMap<String> map = new IntHashMap<String>();
+        assertTrue(map.isEmpty());
+
+        assertNull(map.put(1, "one"));
+        assertNull(map.put(0, "zero"));
+        assertNull(map.put(-5, "minus five"));
+
+        assertEquals(3, map.size());
+        assertEquals("one", map.get(1));
+        assertEquals("zero", map.get(0));
+        assertEquals("minus five", map.get(-5));
+        assertNull(map.get(2));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(2));
+
+        // replacing keeps the size
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals("uno", map.get(1));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testNullValue() {
+
+        IntHashMap<String> map = new IntHashMap<String>();
+        try {
+            map.put(1, null);
+            fail("Null values are not allowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testRemove() {
+
+        IntHashMap<String> map = new IntHashMap<String>();
+        map.put(1, "one");
+        map.put(2, "two");
+
+        assertEquals("one", map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals("two", map.get(2));
+        assertEquals(1, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(2));
+    }
+
+    @Test
+    public void testCollisions() {
+
+        // The smallest table has 16 slots. Find keys that all start from the same one, so they sit in a single run.
+        List<Integer> colliding = findColliding(16, 5);
+
+        IntHashMap<Integer> map = new IntHashMap<Integer>();
+        for (int key : colliding) {
+            map.put(key, key);
+        }
+
+        for (int key : colliding) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+        }
+
+        // taking one out of the middle of the run must not hide the ones after it
+        map.remove(colliding.get(1));
+        assertNull(map.get(colliding.get(1)));
+        for (int key : colliding) {
+            if (key != colliding.get(1)) {
+                assertEquals(Integer.valueOf(key), map.get(key));
+            }
+        }
+
+        map.remove(colliding.get(0));
+        map.remove(colliding.get(4));
+        assertEquals(Integer.valueOf(colliding.get(2)), map.get(colliding.get(2)));
+        assertEquals(Integer.valueOf(colliding.get(3)), map.get(colliding.get(3)));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testResize() {
+
+        IntHashMap<Integer> map = new IntHashMap<Integer>();
+        for (int key = 0; key < 10000; key++) {
+            map.put(key, key * 2);
+        }
+
+        assertEquals(10000, map.size());
+        for (int key = 0; key < 10000; key++) {
+            assertEquals(Integer.valueOf(key * 2), map.get(key));
+        }
+
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(10000, keys.length);
+        for (int key = 0; key < 10000; key++) {
+            assertEquals(key, keys[key]);
+        }
+    }
+
+    @Test
+    public void testWalk() {
+
+        IntHashMap<Integer> map = new IntHashMap<Integer>(100);
+        for (int key = 0; key < 50; key++) {
+            map.put(key * 7, key);
+        }
+
+        int count = 0;
+        for (int slot = map.nextSlot(0); slot != -1; slot = map.nextSlot(slot + 1)) {
+            assertEquals(Integer.valueOf(map.keyAt(slot) / 7), map.valueAt(slot));
+            count++;
+        }
+        assertEquals(50, count);
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+
+        // a long run of random changes, checked against a HashMap after each one
+        Random random = new Random(42);
+        IntHashMap<Integer> map = new IntHashMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+        for (int i = 0; i < 50000; i++) {
+
+            int key = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        for (int key = 0; key < 500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    /**
+     * Finds keys that hash to the same slot, using the same hash as the map.
+     */
+    private static List<Integer> findColliding(int capacity, int count) {
+
+        List<Integer> keys = new ArrayList<Integer>();
+        int home = slot(0, capacity);
+
+        for (int key = 0; keys.size() < count; key++) {
+            if (slot(key, capacity) == home) {
+                keys.add(key);
+            }
+        }
+
+        return keys;
+    }
+
+    private static int slot(int key, int capacity) {
+
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (capacity - 1);
+    }
+}
@@ -0,0 +1,290 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class NameKeyedMapTest {
+
+    /**
+     * Only keeps the player names, which is all the table uses.
+     */
+    private static class NameDataManager implements ISocialNetworkDataManager {
+
+        private final List<String> playerNames = Collections.synchronizedList(new ArrayList<String>());
+
+        public NameDataManager(String... storedNames) {
+            playerNames.addAll(Arrays.asList(storedNames));
+        }
+
+        public List<String> getPlayerNames() {
+            return new ArrayList<String>(playerNames);
+        }
+
+        public void addPlayerName(String playerName) {
+            playerNames.add(playerName);
+        }
+
+        public void removePlayerName(String playerName) {
+            playerNames.remove(playerName);
+        }
+
+        public List<String> getPlayers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasPlayer(String playerName) {
+            return false;
+        }
+
+        public void addPlayer(String playerName) {
+        }
+
+        public void removePlayer(String playerName) {
+        }
+
+        public List<String> getExcludedPlayers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean isExcludedPlayer(String playerName) {
+            return false;
+        }
+
+        public void addExcludedPlayer(String playerName) {
+        }
+
+        public void removeExcludedPlayer(String playerName) {
+        }
+
+        public List<String> getPriests() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasPriest(String playerName) {
+            return false;
+        }
+
+        public void addPriest(String playerName) {
+        }
+
+        public void removePriest(String playerName) {
+        }
+
+        public List<String> getLawyers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasLawyer(String playerName) {
+            return false;
+        }
+
+        public void addLawyer(String playerName) {
+        }
+
+        public void removeLawyer(String playerName) {
+        }
+    }
+
+    private PlayerNameTable playerNames;
+
+    @Before
+    public void setUp() {
+        playerNames = new PlayerNameTable(new NameDataManager("Steve", "Alex", "Bob"));
+    }
+
+    @After
+    public void tearDown() {
+        playerNames.shutdown(10);
+    }
+
+    @Test
+    public void testLookups() {
+
+        PersistentIntMap<String> friends = PersistentIntMap.<String> empty()
+                .plus(playerNames.findId("Steve"), "steve's data").plus(playerNames.findId("Alex"), "alex's data");
+
+        Map<String, String> map = new NameKeyedMap<String>(friends, playerNames);
+
+        assertEquals(2, map.size());
+        assertFalse(map.isEmpty());
+        assertEquals("steve's data", map.get("Steve"));
+        assertEquals("alex's data", map.get("ALEX"));
+        assertTrue(map.containsKey("steve"));
+
+        // a stored player without an entry, an unknown player and a key that isn't a name
+        assertNull(map.get("Bob"));
+        assertFalse(map.containsKey("Bob"));
+        assertNull(map.get("Nobody"));
+        assertNull(map.get(Integer.valueOf(0)));
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("Steve", "steve's data");
+        expected.put("Alex", "alex's data");
+        assertEquals(expected, map);
+        assertEquals(expected.keySet(), map.keySet());
+    }
+
+    @Test
+    public void testReadOnly() {
+
+        Map<String, String> map = new NameKeyedMap<String>(
+                PersistentIntMap.<String> empty().plus(playerNames.findId("Steve"), "data"), playerNames);
+
+        try {
+            map.put("Alex", "data");
+            fail("The view should not be changeable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        iterator.next();
+        try {
+            iterator.remove();
+            fail("The view should not be changeable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testSnapshotUnchanged() {
+
+        int steve = playerNames.findId("Steve");
+        int alex = playerNames.findId("Alex");
+        int bob = playerNames.findId("Bob");
+
+        PersistentIntMap<String> friends = PersistentIntMap.<String> empty().plus(steve, "a").plus(alex, "b");
+        Map<String, String> before = new NameKeyedMap<String>(friends, playerNames);
+
+        // walk part of the way, then change the groups the way a person does
+        Iterator<Map.Entry<String, String>> iterator = before.entrySet().iterator();
+        iterator.next();
+
+        friends = friends.minus(steve).plus(bob, "c").plus(alex, "changed");
+
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        assertFalse(iterator.hasNext());
+
+        assertEquals(2, before.size());
+        assertEquals("a", before.get("Steve"));
+        assertEquals("b", before.get("Alex"));
+        assertNull(before.get("Bob"));
+
+        Map<String, String> after = new NameKeyedMap<String>(friends, playerNames);
+        assertEquals(2, after.size());
+        assertEquals("changed", after.get("Alex"));
+        assertEquals("c", after.get("Bob"));
+    }
+
+    @Test
+    public void testReadWhileChanging() throws InterruptedException {
+
+        // One thread keeps publishing new maps, the way a person publishes a new state after each change. Every map
+        // a reader picks up must hold together: an even key count, every key with its pair.
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 64; i++) {
+            ids.add(playerNames.getTemporaryId("Player" + i));
+        }
+
+        final List<Integer> playerIds = Collections.unmodifiableList(ids);
+        final AtomicReference<PersistentIntMap<Integer>> published =
+                new AtomicReference<PersistentIntMap<Integer>>(PersistentIntMap.<Integer> empty());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+
+                for (int round = 0; round < 20000; round++) {
+
+                    int pair = round % (playerIds.size() / 2);
+                    int first = playerIds.get(pair * 2);
+                    int second = playerIds.get(pair * 2 + 1);
+
+                    PersistentIntMap<Integer> current = published.get();
+                    if (current.containsKey(first)) {
+                        published.set(current.minus(first).minus(second));
+                    } else {
+                        published.set(current.plus(first, round).plus(second, round));
+                    }
+                }
+            }
+        });
+
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+
+                try {
+                    for (int round = 0; round < 20000; round++) {
+
+                        Map<String, Integer> map = new NameKeyedMap<Integer>(published.get(), playerNames);
+
+                        int count = 0;
+                        for (Map.Entry<String, Integer> entry : map.entrySet()) {
+
+                            int index = Integer.parseInt(entry.getKey().substring("Player".length()));
+                            String pairName = "Player" + (index ^ 1);
+
+                            assertEquals(entry.getValue(), map.get(pairName));
+                            count++;
+                        }
+
+                        assertEquals(map.size(), count);
+                        assertEquals(0, count % 2);
+                    }
+
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
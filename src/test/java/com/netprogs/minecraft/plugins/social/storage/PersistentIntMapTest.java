@@ -0,0 +1,236 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class PersistentIntMapTest {
+
+    @Test
+    public void testPlusAndGet() {
+
+        PersistentIntMap<String> empty = PersistentIntMap.empty();
+        assertTrue(empty.isEmpty());
+        assertNull(empty.get(1));
+
+        PersistentIntMap<String> map = empty.plus(1, "one").plus(2, "two").plus(-3, "minus three");
+
+        assertEquals(3, map.size());
+        assertEquals("one", map.get(1));
+        assertEquals("two", map.get(2));
+        assertEquals("minus three", map.get(-3));
+        assertNull(map.get(4));
+        assertTrue(map.containsKey(2));
+        assertFalse(map.containsKey(4));
+
+        // replacing keeps the size
+        PersistentIntMap<String> replaced = map.plus(1, "uno");
+        assertEquals("uno", replaced.get(1));
+        assertEquals(3, replaced.size());
+    }
+
+    @Test
+    public void testUnchangedReturnsSameMap() {
+
+        String value = "one";
+        PersistentIntMap<String> map = PersistentIntMap.<String> empty().plus(1, value);
+
+        assertSame(map, map.plus(1, value));
+        assertSame(map, map.minus(2));
+    }
+
+    @Test
+    public void testNullValue() {
+
+        try {
+            PersistentIntMap.<String> empty().plus(1, null);
+            fail("Null values are not allowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMinus() {
+
+        PersistentIntMap<String> map = PersistentIntMap.<String> empty().plus(1, "one").plus(2, "two");
+
+        PersistentIntMap<String> removed = map.minus(1);
+        assertEquals(1, removed.size());
+        assertNull(removed.get(1));
+        assertEquals("two", removed.get(2));
+
+        PersistentIntMap<String> none = removed.minus(2);
+        assertTrue(none.isEmpty());
+        assertFalse(none.cursor().next());
+    }
+
+    @Test
+    public void testOlderVersionsUnchanged() {
+
+        PersistentIntMap<Integer> first = PersistentIntMap.empty();
+        for (int key = 0; key < 100; key++) {
+            first = first.plus(key, key);
+        }
+
+        PersistentIntMap<Integer> second = first.plus(5, 500).plus(1000, 1000).minus(7);
+        PersistentIntMap<Integer> third = second.minus(5).minus(1000);
+
+        assertEquals(100, first.size());
+        for (int key = 0; key < 100; key++) {
+            assertEquals(Integer.valueOf(key), first.get(key));
+        }
+        assertNull(first.get(1000));
+
+        assertEquals(100, second.size());
+        assertEquals(Integer.valueOf(500), second.get(5));
+        assertEquals(Integer.valueOf(1000), second.get(1000));
+        assertNull(second.get(7));
+
+        assertEquals(98, third.size());
+        assertNull(third.get(5));
+        assertNull(third.get(7));
+        assertEquals(Integer.valueOf(6), third.get(6));
+    }
+
+    @Test
+    public void testDeepCollisions() {
+
+        // keys that share the first four levels of the trie, so they only split further down
+        List<Integer> colliding = findColliding(20, 3);
+
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (int key : colliding) {
+            map = map.plus(key, key);
+        }
+
+        assertEquals(3, map.size());
+        for (int key : colliding) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+        }
+
+        // taking them out again collapses the branch back to the one left
+        PersistentIntMap<Integer> one = map.minus(colliding.get(0)).minus(colliding.get(1));
+        assertEquals(1, one.size());
+        assertEquals(Integer.valueOf(colliding.get(2)), one.get(colliding.get(2)));
+        assertNull(one.get(colliding.get(0)));
+
+        PersistentIntMap<Integer> added = one.plus(colliding.get(0), -1);
+        assertEquals(Integer.valueOf(-1), added.get(colliding.get(0)));
+        assertEquals(Integer.valueOf(colliding.get(2)), added.get(colliding.get(2)));
+
+        for (int key : colliding) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void testCursor() {
+
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (int key = 0; key < 5000; key++) {
+            map = map.plus(key, key * 2);
+        }
+
+        boolean[] seen = new boolean[5000];
+        int count = 0;
+
+        PersistentIntMap.Cursor<Integer> cursor = map.cursor();
+        while (cursor.next()) {
+            assertFalse(seen[cursor.key()]);
+            seen[cursor.key()] = true;
+            assertEquals(Integer.valueOf(cursor.key() * 2), cursor.value());
+            count++;
+        }
+
+        assertEquals(5000, count);
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+
+        // a long run of random changes, checked against a HashMap after each one
+        Random random = new Random(42);
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+        for (int i = 0; i < 50000; i++) {
+
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expected.put(key, i);
+            }
+
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        int count = 0;
+        PersistentIntMap.Cursor<Integer> cursor = map.cursor();
+        while (cursor.next()) {
+            assertEquals(expected.get(cursor.key()), cursor.value());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    /**
+     * Finds keys whose hashes share the given number of low bits, using the same hash as the map.
+     */
+    private static List<Integer> findColliding(int bits, int count) {
+
+        List<Integer> keys = new ArrayList<Integer>();
+        int mask = (1 << bits) - 1;
+        int target = hash(0) & mask;
+
+        for (int key = 0; keys.size() < count; key++) {
+            if ((hash(key) & mask) == target) {
+                keys.add(key);
+            }
+        }
+
+        return keys;
+    }
+
+    private static int hash(int key) {
+
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
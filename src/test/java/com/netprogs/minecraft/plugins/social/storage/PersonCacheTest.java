@@ -0,0 +1,110 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class PersonCacheTest {
+
+    private final PersonCache cache = new PersonCache(null, 0, 0);
+
+    @Test
+    public void testLoadedOnce() throws IOException {
+
+        final AtomicInteger loads = new AtomicInteger();
+        PersonCache.Loader loader = new PersonCache.Loader() {
+            public PersonCache.CachedPerson load(String personName) {
+                loads.incrementAndGet();
+                return createPerson(personName);
+            }
+        };
+
+        PersonCache.CachedPerson first = cache.get("Steve", loader);
+        PersonCache.CachedPerson second = cache.get("steve", loader);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testNotFound() throws IOException {
+
+        final AtomicInteger loads = new AtomicInteger();
+        PersonCache.Loader loader = new PersonCache.Loader() {
+            public PersonCache.CachedPerson load(String personName) {
+                loads.incrementAndGet();
+                return null;
+            }
+        };
+
+        assertNull(cache.get("Steve", loader));
+        assertNull(cache.peek("Steve"));
+
+        // nobody is cached, so the next call asks the loader again
+        assertNull(cache.get("Steve", loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testLoadFailure() throws IOException {
+
+        PersonCache.Loader failingLoader = new PersonCache.Loader() {
+            public PersonCache.CachedPerson load(String personName) throws IOException {
+                throw new IOException("damaged");
+            }
+        };
+
+        try {
+            cache.get("Steve", failingLoader);
+            fail("A failed load must not look like a missing person");
+        } catch (IOException e) {
+            assertEquals("damaged", e.getCause().getMessage());
+        }
+
+        assertNull(cache.peek("Steve"));
+
+        // once the data can be read again they're loaded as normal
+        PersonCache.CachedPerson loaded = cache.get("Steve", new PersonCache.Loader() {
+            public PersonCache.CachedPerson load(String personName) {
+                return createPerson(personName);
+            }
+        });
+
+        assertEquals("Steve", loaded.getPerson().getName());
+    }
+
+    private static PersonCache.CachedPerson createPerson(String personName) {
+
+        Person person = new Person();
+        person.setName(personName);
+        return new PersonCache.CachedPerson(null, person);
+    }
+}
@@ -0,0 +1,267 @@
+package com.netprogs.minecraft.plugins.social.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class PlayerNameTableTest {
+
+    /**
+     * Only keeps the player names, which is all the table uses.
+     */
+    private static class NameDataManager implements ISocialNetworkDataManager {
+
+        private final List<String> playerNames = Collections.synchronizedList(new ArrayList<String>());
+
+        public NameDataManager(String... storedNames) {
+            playerNames.addAll(Arrays.asList(storedNames));
+        }
+
+        public List<String> getPlayerNames() {
+            return new ArrayList<String>(playerNames);
+        }
+
+        public void addPlayerName(String playerName) {
+            playerNames.add(playerName);
+        }
+
+        public void removePlayerName(String playerName) {
+            playerNames.remove(playerName);
+        }
+
+        public List<String> getPlayers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasPlayer(String playerName) {
+            return false;
+        }
+
+        public void addPlayer(String playerName) {
+        }
+
+        public void removePlayer(String playerName) {
+        }
+
+        public List<String> getExcludedPlayers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean isExcludedPlayer(String playerName) {
+            return false;
+        }
+
+        public void addExcludedPlayer(String playerName) {
+        }
+
+        public void removeExcludedPlayer(String playerName) {
+        }
+
+        public List<String> getPriests() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasPriest(String playerName) {
+            return false;
+        }
+
+        public void addPriest(String playerName) {
+        }
+
+        public void removePriest(String playerName) {
+        }
+
+        public List<String> getLawyers() {
+            return new ArrayList<String>();
+        }
+
+        public boolean hasLawyer(String playerName) {
+            return false;
+        }
+
+        public void addLawyer(String playerName) {
+        }
+
+        public void removeLawyer(String playerName) {
+        }
+    }
+
+    @Test
+    public void testStoredNames() {
+
+        PlayerNameTable table = new PlayerNameTable(new NameDataManager("Steve", "Alex"));
+
+        assertEquals(0, table.findId("Steve"));
+        assertEquals(1, table.findId("alex"));
+        assertEquals("Alex", table.getName(1));
+        assertEquals(-1, table.findId("Bob"));
+
+        table.shutdown(10);
+    }
+
+    @Test
+    public void testMemberStored() {
+
+        NameDataManager dataManager = new NameDataManager("Steve");
+        PlayerNameTable table = new PlayerNameTable(dataManager);
+
+        int id = table.getId("Bob");
+        assertEquals(id, table.getId("BOB"));
+        assertEquals("Bob", table.getName(id));
+
+        table.shutdown(10);
+        assertEquals(Arrays.asList("Steve", "Bob"), dataManager.getPlayerNames());
+    }
+
+    @Test
+    public void testTemporaryNotStored() {
+
+        NameDataManager dataManager = new NameDataManager("Steve");
+        PlayerNameTable table = new PlayerNameTable(dataManager);
+
+        int id = table.getTemporaryId("Visitor");
+        assertEquals(id, table.findId("visitor"));
+        assertEquals(id, table.getTemporaryId("Visitor"));
+
+        // a member's id is simply looked up
+        assertEquals(0, table.getTemporaryId("Steve"));
+
+        table.shutdown(10);
+        assertEquals(Arrays.asList("Steve"), dataManager.getPlayerNames());
+    }
+
+    @Test
+    public void testTemporaryThenMember() {
+
+        NameDataManager dataManager = new NameDataManager();
+        PlayerNameTable table = new PlayerNameTable(dataManager);
+
+        int id = table.getTemporaryId("Visitor");
+
+        // they keep the same id once they join, and only then is their name stored
+        assertEquals(id, table.getId("visitor"));
+        assertEquals(id, table.getId("Visitor"));
+
+        table.shutdown(10);
+        assertEquals(Arrays.asList("Visitor"), dataManager.getPlayerNames());
+    }
+
+    @Test
+    public void testRemovedName() {
+
+        NameDataManager dataManager = new NameDataManager("Steve", "Alex");
+        PlayerNameTable table = new PlayerNameTable(dataManager);
+
+        // they keep their id for this run, but their name is no longer stored
+        table.removeName("steve");
+        assertEquals(0, table.findId("Steve"));
+
+        table.getId("Bob");
+        table.shutdown(10);
+        assertEquals(Arrays.asList("Alex", "Bob"), dataManager.getPlayerNames());
+
+        // rejoining stores them again
+        assertEquals(0, table.getId("Steve"));
+        assertEquals(Arrays.asList("Alex", "Bob", "Steve"), dataManager.getPlayerNames());
+    }
+
+    @Test
+    public void testTemporaryReleased() {
+
+        PlayerNameTable table = new PlayerNameTable(new NameDataManager("Steve"));
+
+        int visitorId = table.getTemporaryId("Visitor");
+        int guestId = table.getTemporaryId("Guest");
+
+        IntHashMap<Boolean> inUse = new IntHashMap<Boolean>();
+        inUse.put(guestId, Boolean.TRUE);
+
+        // the first call only notes that it's unused
+        assertEquals(0, table.releaseTemporaryIds(inUse));
+        assertEquals(visitorId, table.findId("Visitor"));
+
+        assertEquals(1, table.releaseTemporaryIds(inUse));
+        assertEquals(-1, table.findId("Visitor"));
+        assertEquals(guestId, table.findId("Guest"));
+
+        // the slot is handed out again
+        assertEquals(visitorId, table.getTemporaryId("Other"));
+        assertEquals("Other", table.getName(visitorId));
+
+        table.shutdown(10);
+    }
+
+    @Test
+    public void testMemberNotReleased() {
+
+        PlayerNameTable table = new PlayerNameTable(new NameDataManager());
+
+        int id = table.getTemporaryId("Visitor");
+        table.releaseTemporaryIds(new IntHashMap<Boolean>());
+
+        // they joined in between, so their id is theirs to keep
+        assertEquals(id, table.getId("Visitor"));
+        assertEquals(0, table.releaseTemporaryIds(new IntHashMap<Boolean>()));
+        assertEquals(0, table.releaseTemporaryIds(new IntHashMap<Boolean>()));
+        assertEquals(id, table.findId("visitor"));
+
+        table.shutdown(10);
+    }
+
+    @Test
+    public void testStoredInOrder() {
+
+        NameDataManager dataManager = new NameDataManager();
+        PlayerNameTable table = new PlayerNameTable(dataManager);
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            String playerName = "Player" + i;
+            table.getId(playerName);
+            expected.add(playerName);
+        }
+
+        table.shutdown(10);
+        assertEquals(expected, dataManager.getPlayerNames());
+
+        // the table grew past its starting size
+        assertEquals(1000, table.size());
+        assertEquals("Player999", table.getName(table.findId("player999")));
+    }
+
+    @Test
+    public void testStoredAfterShutdown() {
+
+        NameDataManager dataManager = new NameDataManager();
+        PlayerNameTable table = new PlayerNameTable(dataManager);
+        table.shutdown(10);
+
+        table.getId("Late");
+        assertEquals(Arrays.asList("Late"), dataManager.getPlayerNames());
+    }
+}
@@ -0,0 +1,365 @@
+package com.netprogs.minecraft.plugins.social.storage.driver.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.netprogs.minecraft.plugins.social.SocialPerson.Gender;
+import com.netprogs.minecraft.plugins.social.SocialPerson.Status;
+import com.netprogs.minecraft.plugins.social.SocialPerson.WaitState;
+import com.netprogs.minecraft.plugins.social.SocialPerson.WeddingVows;
+import com.netprogs.minecraft.plugins.social.command.SocialNetworkCommandType;
+import com.netprogs.minecraft.plugins.social.storage.IMessage;
+import com.netprogs.minecraft.plugins.social.storage.data.Affair;
+import com.netprogs.minecraft.plugins.social.storage.data.Alert;
+import com.netprogs.minecraft.plugins.social.storage.data.Child;
+import com.netprogs.minecraft.plugins.social.storage.data.Divorce;
+import com.netprogs.minecraft.plugins.social.storage.data.Engagement;
+import com.netprogs.minecraft.plugins.social.storage.data.Friend;
+import com.netprogs.minecraft.plugins.social.storage.data.Gift;
+import com.netprogs.minecraft.plugins.social.storage.data.Marriage;
+import com.netprogs.minecraft.plugins.social.storage.data.Person;
+import com.netprogs.minecraft.plugins.social.storage.data.PersonSettings;
+import com.netprogs.minecraft.plugins.social.storage.data.Relationship;
+import com.netprogs.minecraft.plugins.social.storage.data.Request;
+import com.netprogs.minecraft.plugins.social.storage.data.Sticky;
+import com.netprogs.minecraft.plugins.social.storage.data.Wedding;
+import com.netprogs.minecraft.plugins.social.storage.data.perk.IPersonPerkSettings;
+import com.netprogs.minecraft.plugins.social.storage.data.perk.PersonPlayerDamageSettings;
+import com.netprogs.minecraft.plugins.social.storage.data.perk.PersonTeleportSettings;
+
+import org.junit.Test;
+
+/*
+ * Copyright (C) 2012 Scott Milne
+ * 
+ * "Social Network" is a Craftbukkit Minecraft server modification plug-in. It attempts to add a 
+ * social environment to your server by allowing players to be placed into different types of social groups.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+public class PersonCodecTest {
+
+    /**
+     * A message without a type tag, so it has to be written through the JSON fallback.
+     */
+    public static class NoteMessage implements IMessage {
+
+        private String playerName;
+        private String note;
+
+        public NoteMessage(String playerName, String note) {
+            this.playerName = playerName;
+            this.note = note;
+        }
+    }
+
+    /**
+     * Perk settings without a type tag.
+     */
+    public static class NotePerkSettings implements IPersonPerkSettings {
+
+        private String note;
+
+        public NotePerkSettings(String note) {
+            this.note = note;
+        }
+    }
+
+    private final PersonCodec codec = new PersonCodec();
+
+    @Test
+    public void testEmptyPerson() throws IOException {
+
+        Person person = new Person();
+        person.setName("Steve");
+
+        byte[] data = codec.encodePerson(person);
+        assertTrue(PersonCodec.isEncoded(data));
+
+        Person decoded = codec.decodePerson(data);
+
+        assertEquals("Steve", decoded.getName());
+        assertNull(decoded.getGender());
+        assertNull(decoded.getSocialStatus());
+        assertEquals(0, decoded.getDateJoined());
+        assertNull(decoded.getStatusMessage());
+        assertFalse(decoded.isStatusUpdatesIgnored());
+        assertFalse(decoded.isLoginUpdatesIgnored());
+        assertFalse(decoded.isGenderChoiceRemindersIgnored());
+        assertFalse(decoded.isLawyer());
+        assertFalse(decoded.isPriest());
+
+        assertTrue(decoded.getFriends().isEmpty());
+        assertTrue(decoded.getRelationships().isEmpty());
+        assertTrue(decoded.getAffairs().isEmpty());
+        assertTrue(decoded.getChildren().isEmpty());
+        assertTrue(decoded.getIgnoreList().isEmpty());
+
+        assertNull(decoded.getChildOf());
+        assertNull(decoded.getEngagement());
+        assertNull(decoded.getMarriage());
+        assertNull(decoded.getDivorce());
+        assertNull(decoded.getWeddingVows());
+        assertNull(decoded.getWaitState());
+        assertNull(decoded.getWaitCommand());
+        assertNull(decoded.getWaitData());
+        assertTrue(decoded.getMessageQueue().isEmpty());
+    }
+
+    @Test
+    public void testFullPerson() throws IOException {
+
+        Person person = new Person();
+        person.setName("Steve");
+        person.setGender(Gender.male);
+        person.setSocialStatus(Status.married);
+        person.setDateJoined(1346000000000L);
+        person.setStatusMessage("Out mining \u00e9\u00e8");
+        person.setStatusUpdatesIgnored(true);
+        person.setGenderChoiceRemindersIgnored(true);
+        person.setPriest(true);
+
+        person.getFriends().put("Alex", new Friend("Alex"));
+        person.getFriends().put("Notch", new Friend("Notch"));
+        person.getRelationships().put("Herobrine", new Relationship("Herobrine"));
+        person.getAffairs().put("Alex", new Affair("Alex"));
+        person.getChildren().put("Jeb", new Child("Jeb"));
+        person.getIgnoreList().add("Griefer");
+
+        person.setChildOf("Notch");
+        person.setEngagement(new Engagement("Alex"));
+        person.setMarriage(new Marriage("Alex"));
+        person.setDivorce(new Divorce("Herobrine"));
+        person.setWeddingVows(WeddingVows.accepted);
+
+        person.setWaitState(WaitState.waitMarriageResponse);
+        person.setWaitCommand(SocialNetworkCommandType.marriage);
+        person.setWaitData(new Request("Alex", SocialNetworkCommandType.marriage));
+
+        Person decoded = codec.decodePerson(codec.encodePerson(person));
+
+        assertEquals("Steve", decoded.getName());
+        assertSame(Gender.male, decoded.getGender());
+        assertSame(Status.married, decoded.getSocialStatus());
+        assertEquals(1346000000000L, decoded.getDateJoined());
+        assertEquals("Out mining \u00e9\u00e8", decoded.getStatusMessage());
+        assertTrue(decoded.isStatusUpdatesIgnored());
+        assertFalse(decoded.isLoginUpdatesIgnored());
+        assertTrue(decoded.isGenderChoiceRemindersIgnored());
+        assertFalse(decoded.isLawyer());
+        assertTrue(decoded.isPriest());
+
+        assertEquals(person.getFriends().keySet(), decoded.getFriends().keySet());
+        assertEquals("Notch", decoded.getFriends().get("Notch").getPlayerName());
+        assertEquals(person.getRelationships().keySet(), decoded.getRelationships().keySet());
+        assertEquals(person.getAffairs().keySet(), decoded.getAffairs().keySet());
+        assertEquals(person.getChildren().keySet(), decoded.getChildren().keySet());
+        assertEquals(Arrays.asList("Griefer"), decoded.getIgnoreList());
+
+        assertEquals("Notch", decoded.getChildOf());
+        assertEquals("Alex", decoded.getEngagement().getPlayerName());
+        assertEquals("Alex", decoded.getMarriage().getPlayerName());
+        assertEquals("Herobrine", decoded.getDivorce().getPlayerName());
+        assertSame(WeddingVows.accepted, decoded.getWeddingVows());
+
+        assertSame(WaitState.waitMarriageResponse, decoded.getWaitState());
+        assertSame(SocialNetworkCommandType.marriage, decoded.getWaitCommand());
+
+        Request waitData = decoded.getWaitData();
+        assertEquals("Alex", waitData.getPlayerName());
+        assertSame(SocialNetworkCommandType.marriage, waitData.getCommandType());
+    }
+
+    @Test
+    public void testEveryMessageKind() throws IOException {
+
+        Person person = new Person();
+        person.setName("Steve");
+
+        List<IMessage> messages = new ArrayList<IMessage>();
+        messages.add(new Alert("Alex", Alert.Type.deleted, "Alex has left the network"));
+        messages.add(new Gift(Gift.Type.cash, "Alex", "Steve", "world", 12.5));
+        messages.add(new Gift(Gift.Type.item, "Alex", "Steve", "world_nether", 264, 3));
+        messages.add(new Request("Alex", SocialNetworkCommandType.friend));
+        messages.add(new Sticky("Alex", "Meet at spawn"));
+        messages.add(new Wedding("Notch", "Alex", "Steve"));
+        messages.add(new NoteMessage("Alex", "Not tagged"));
+        messages.add(null);
+
+        Map<String, List<? extends IMessage>> playerMessageMap = new HashMap<String, List<? extends IMessage>>();
+        playerMessageMap.put("Alex", messages);
+        playerMessageMap.put("Notch", new ArrayList<IMessage>());
+        person.getMessageQueue().put(Alert.class.getName(), playerMessageMap);
+        person.getMessageQueue().put(Gift.class.getName(), new HashMap<String, List<? extends IMessage>>());
+
+        Person decoded = codec.decodePerson(codec.encodePerson(person));
+
+        Map<String, Map<String, List<? extends IMessage>>> messageQueue = decoded.getMessageQueue();
+        assertEquals(2, messageQueue.size());
+        assertTrue(messageQueue.get(Gift.class.getName()).isEmpty());
+        assertTrue(messageQueue.get(Alert.class.getName()).get("Notch").isEmpty());
+
+        List<? extends IMessage> decodedMessages = messageQueue.get(Alert.class.getName()).get("Alex");
+        assertEquals(messages.size(), decodedMessages.size());
+
+        Alert alert = (Alert) decodedMessages.get(0);
+        assertEquals("Alex", alert.getPlayerName());
+        assertSame(Alert.Type.deleted, alert.getAlertType());
+        assertEquals("Alex has left the network", alert.getAlertMessage());
+
+        Gift cashGift = (Gift) decodedMessages.get(1);
+        assertSame(Gift.Type.cash, cashGift.getType());
+        assertEquals("Alex", cashGift.getSenderPlayerName());
+        assertEquals("Steve", cashGift.getReceiverPlayerName());
+        assertEquals("world", cashGift.getSenderWorld());
+        assertEquals(12.5, cashGift.getAmount(), 0);
+
+        Gift itemGift = (Gift) decodedMessages.get(2);
+        assertSame(Gift.Type.item, itemGift.getType());
+        assertEquals("world_nether", itemGift.getSenderWorld());
+        assertEquals(264, itemGift.getItemId());
+        assertEquals(3, itemGift.getItemCount());
+
+        Request request = (Request) decodedMessages.get(3);
+        assertEquals("Alex", request.getPlayerName());
+        assertSame(SocialNetworkCommandType.friend, request.getCommandType());
+
+        Sticky sticky = (Sticky) decodedMessages.get(4);
+        assertEquals("Alex", sticky.getPlayerName());
+        assertEquals("Meet at spawn", sticky.getMessage());
+
+        Wedding wedding = (Wedding) decodedMessages.get(5);
+        assertEquals("Notch", wedding.getPriest());
+        assertEquals("Alex", wedding.getPlayerName());
+        assertEquals("Steve", wedding.getSpouseName());
+
+        NoteMessage note = (NoteMessage) decodedMessages.get(6);
+        assertEquals("Alex", note.playerName);
+        assertEquals("Not tagged", note.note);
+
+        assertNull(decodedMessages.get(7));
+    }
+
+    @Test
+    public void testSettings() throws IOException {
+
+        PersonTeleportSettings teleportSettings = new PersonTeleportSettings();
+        teleportSettings.setWorld("world");
+        teleportSettings.setBlockX(-1200);
+        teleportSettings.setBlockY(64);
+        teleportSettings.setBlockZ(0);
+
+        PersonSettings personSettings = new PersonSettings();
+        personSettings.setPerkSettings("teleport", teleportSettings);
+        personSettings.setPerkSettings("damage", new PersonPlayerDamageSettings());
+        personSettings.setPerkSettings("note", new NotePerkSettings("Not tagged"));
+        personSettings.setPerkSettings("empty", null);
+
+        PersonSettings decoded = codec.decodePersonSettings(codec.encodePersonSettings(personSettings));
+
+        assertEquals(personSettings.getPerkNames(), decoded.getPerkNames());
+
+        PersonTeleportSettings decodedTeleport = decoded.getPerkSettings("teleport");
+        assertEquals("world", decodedTeleport.getWorld());
+        assertEquals(-1200, decodedTeleport.getBlockX());
+        assertEquals(64, decodedTeleport.getBlockY());
+        assertEquals(0, decodedTeleport.getBlockZ());
+
+        assertTrue(decoded.getPerkSettings("damage") instanceof PersonPlayerDamageSettings);
+
+        NotePerkSettings note = decoded.getPerkSettings("note");
+        assertEquals("Not tagged", note.note);
+
+        assertTrue(decoded.hasPerkSettings("empty"));
+        assertNull(decoded.getPerkSettings("empty"));
+    }
+
+    @Test
+    public void testEmptySettings() throws IOException {
+
+        PersonSettings decoded = codec.decodePersonSettings(codec.encodePersonSettings(new PersonSettings()));
+        assertTrue(decoded.getPerkNames().isEmpty());
+    }
+
+    @Test
+    public void testSameOutputForSameInput() {
+
+        Person person = new Person();
+        person.setName("Steve");
+        person.getFriends().put("Alex", new Friend("Alex"));
+
+        assertArrayEquals(codec.encodePerson(person), codec.encodePerson(person));
+    }
+
+    @Test
+    public void testWrongKind() {
+
+        byte[] data = codec.encodePersonSettings(new PersonSettings());
+        try {
+            codec.decodePerson(data);
+            fail("Settings data was read as a person");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNotEncoded() {
+
+        byte[] data = "{\"name\":\"Steve\"}".getBytes();
+        assertFalse(PersonCodec.isEncoded(data));
+
+        try {
+            codec.decodePerson(data);
+            fail("JSON data was read as binary");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTruncated() {
+
+        Person person = new Person();
+        person.setName("Steve");
+        person.setStatusMessage("Out mining");
+        person.getFriends().put("Alex", new Friend("Alex"));
+        person.setWaitData(new Sticky("Alex", "Meet at spawn"));
+
+        byte[] data = codec.encodePerson(person);
+
+        // every cut has to be reported as damaged, never read as a different person
+        for (int length = 0; length < data.length; length++) {
+            try {
+                codec.decodePerson(Arrays.copyOf(data, length));
+                fail("Read a person from the first " + length + " of " + data.length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}